@@ -1,3 +1,6 @@
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+
 plugins {
     alias(libs.plugins.android.application)
     alias(libs.plugins.kotlin.android)
@@ -105,6 +108,220 @@ android {
             }
         }
     }
+
+    // The pose sample index is memory-mapped at runtime, which requires an uncompressed asset.
+    androidResources {
+        noCompress += "bin"
+    }
+}
+
+/**
+ * Validates pose/fitness_pose_samples.csv and compiles it into the binary index read by
+ * PoseSampleIndex, so samples are neither parsed nor embedded on the device. Any malformed line
+ * fails the build. The file layout, INDEX_VERSION and the embedding maths must stay in sync with
+ * PoseSampleIndex and PoseEmbedding.
+ */
+abstract class CompilePoseSampleIndexTask : DefaultTask() {
+    @get:Optional
+    @get:InputFile
+    @get:PathSensitive(PathSensitivity.RELATIVE)
+    abstract val samplesCsv: RegularFileProperty
+
+    @get:OutputDirectory
+    abstract val outputDir: DirectoryProperty
+
+    @TaskAction
+    fun compile() {
+        val outputRoot = outputDir.get().asFile
+        outputRoot.deleteRecursively()
+        if (!samplesCsv.isPresent) {
+            logger.warn("No pose samples csv found, pose classification will have no samples")
+            return
+        }
+        val csv = samplesCsv.get().asFile
+
+        val classIds = LinkedHashMap<String, Int>()
+        val sampleClassIds = ArrayList<Int>()
+        val embeddings = ArrayList<FloatArray>()
+        csv.readLines().forEachIndexed { index, line ->
+            if (line.isBlank()) return@forEachIndexed
+            val location = "${csv.name}:${index + 1}"
+            // Format is expected to be Name,Class,X1,Y1,Z1,X2,Y2,Z2...
+            val tokens = line.split(',')
+            if (tokens.size != NUM_LANDMARKS * NUM_DIMS + 2) {
+                throw GradleException(
+                    "$location: expected ${NUM_LANDMARKS * NUM_DIMS + 2} values, found ${tokens.size}"
+                )
+            }
+            val className = tokens[1].trim()
+            if (tokens[0].isBlank() || className.isEmpty()) {
+                throw GradleException("$location: sample name and class must not be empty")
+            }
+            val landmarks = FloatArray(NUM_LANDMARKS * NUM_DIMS) { i ->
+                val value = tokens[i + 2].trim().toFloatOrNull()
+                if (value == null || !value.isFinite()) {
+                    throw GradleException("$location: invalid landmark value '${tokens[i + 2]}'")
+                }
+                value
+            }
+            sampleClassIds += classIds.getOrPut(className) { classIds.size }
+            embeddings += embed(landmarks)
+        }
+        if (embeddings.isEmpty()) {
+            throw GradleException("${csv.name}: no pose samples")
+        }
+
+        val indexFile = outputRoot.resolve("pose/fitness_pose_samples.bin")
+        indexFile.parentFile.mkdirs()
+        DataOutputStream(BufferedOutputStream(indexFile.outputStream())).use { out ->
+            out.writeInt(INDEX_MAGIC)
+            out.writeInt(INDEX_VERSION)
+            out.writeInt(EMBEDDING_SIZE)
+            out.writeInt(NUM_DIMS)
+            out.writeInt(classIds.size)
+            for (className in classIds.keys) {
+                val bytes = className.toByteArray(Charsets.UTF_8)
+                out.writeShort(bytes.size)
+                out.write(bytes)
+            }
+            while (out.size() % 4 != 0) {
+                out.writeByte(0)
+            }
+            // One contiguous shard per class, so PoseSampleIndex can load single exercises.
+            val shards = embeddings.indices.groupBy { sampleClassIds[it] }
+            var shardStart = 0
+            for (classId in classIds.values) {
+                val shardSize = shards.getValue(classId).size
+                out.writeInt(shardStart)
+                out.writeInt(shardSize)
+                shardStart += shardSize
+            }
+            out.writeInt(embeddings.size)
+            for (classId in classIds.values) {
+                shards.getValue(classId).forEach { sample ->
+                    embeddings[sample].forEach { out.writeFloat(it) }
+                }
+            }
+        }
+        logger.lifecycle("Compiled ${embeddings.size} pose samples in ${classIds.size} classes")
+    }
+
+    // Mirrors PoseEmbedding.getPoseEmbedding float for float.
+    private fun embed(landmarks: FloatArray): FloatArray {
+        fun x(i: Int) = landmarks[i * NUM_DIMS]
+        fun y(i: Int) = landmarks[i * NUM_DIMS + 1]
+        fun z(i: Int) = landmarks[i * NUM_DIMS + 2]
+
+        // Normalize translation.
+        val centerX = (x(LEFT_HIP) + x(RIGHT_HIP)) * 0.5f
+        val centerY = (y(LEFT_HIP) + y(RIGHT_HIP)) * 0.5f
+        val centerZ = (z(LEFT_HIP) + z(RIGHT_HIP)) * 0.5f
+        val lm = FloatArray(landmarks.size)
+        for (i in 0 until NUM_LANDMARKS) {
+            lm[i * NUM_DIMS] = x(i) - centerX
+            lm[i * NUM_DIMS + 1] = y(i) - centerY
+            lm[i * NUM_DIMS + 2] = z(i) - centerZ
+        }
+
+        // Normalize scale, using 2D distances from the hips center only.
+        fun nx(i: Int) = lm[i * NUM_DIMS]
+        fun ny(i: Int) = lm[i * NUM_DIMS + 1]
+        val hipsX = (nx(LEFT_HIP) + nx(RIGHT_HIP)) * 0.5f
+        val hipsY = (ny(LEFT_HIP) + ny(RIGHT_HIP)) * 0.5f
+        val shouldersX = (nx(LEFT_SHOULDER) + nx(RIGHT_SHOULDER)) * 0.5f
+        val shouldersY = (ny(LEFT_SHOULDER) + ny(RIGHT_SHOULDER)) * 0.5f
+        var poseSize =
+            Math.hypot((shouldersX - hipsX).toDouble(), (shouldersY - hipsY).toDouble()).toFloat() *
+                TORSO_MULTIPLIER
+        for (i in 0 until NUM_LANDMARKS) {
+            val distance =
+                Math.hypot((nx(i) - hipsX).toDouble(), (ny(i) - hipsY).toDouble()).toFloat()
+            if (distance > poseSize) {
+                poseSize = distance
+            }
+        }
+        val scale = 1 / poseSize
+        for (i in lm.indices) {
+            lm[i] = lm[i] * scale * 100
+        }
+
+        val embedding = FloatArray(EMBEDDING_SIZE * NUM_DIMS)
+        var offset = 0
+        fun add(fromX: Float, fromY: Float, fromZ: Float, toX: Float, toY: Float, toZ: Float) {
+            embedding[offset++] = toX - fromX
+            embedding[offset++] = toY - fromY
+            embedding[offset++] = toZ - fromZ
+        }
+        fun add(from: Int, to: Int) = add(
+            lm[from * NUM_DIMS], lm[from * NUM_DIMS + 1], lm[from * NUM_DIMS + 2],
+            lm[to * NUM_DIMS], lm[to * NUM_DIMS + 1], lm[to * NUM_DIMS + 2]
+        )
+        fun mid(a: Int, b: Int, dim: Int) =
+            (lm[a * NUM_DIMS + dim] + lm[b * NUM_DIMS + dim]) * 0.5f
+
+        add(
+            mid(LEFT_HIP, RIGHT_HIP, 0), mid(LEFT_HIP, RIGHT_HIP, 1), mid(LEFT_HIP, RIGHT_HIP, 2),
+            mid(LEFT_SHOULDER, RIGHT_SHOULDER, 0), mid(LEFT_SHOULDER, RIGHT_SHOULDER, 1),
+            mid(LEFT_SHOULDER, RIGHT_SHOULDER, 2)
+        )
+        EMBEDDING_PAIRS.forEach { (from, to) -> add(from, to) }
+        return embedding
+    }
+
+    private companion object {
+        const val INDEX_MAGIC = 0x50534958 // 'PSIX'
+        const val INDEX_VERSION = 2
+        const val NUM_LANDMARKS = 33
+        const val NUM_DIMS = 3
+        const val EMBEDDING_SIZE = 23
+        const val TORSO_MULTIPLIER = 2.5f
+
+        // ML Kit PoseLandmark ids.
+        const val LEFT_SHOULDER = 11
+        const val RIGHT_SHOULDER = 12
+        const val LEFT_ELBOW = 13
+        const val RIGHT_ELBOW = 14
+        const val LEFT_WRIST = 15
+        const val RIGHT_WRIST = 16
+        const val LEFT_HIP = 23
+        const val RIGHT_HIP = 24
+        const val LEFT_KNEE = 25
+        const val RIGHT_KNEE = 26
+        const val LEFT_ANKLE = 27
+        const val RIGHT_ANKLE = 28
+
+        // Landmark pairs of PoseEmbedding after the hips to shoulders center entry, in order.
+        val EMBEDDING_PAIRS = listOf(
+            LEFT_SHOULDER to LEFT_ELBOW, RIGHT_SHOULDER to RIGHT_ELBOW,
+            LEFT_ELBOW to LEFT_WRIST, RIGHT_ELBOW to RIGHT_WRIST,
+            LEFT_HIP to LEFT_KNEE, RIGHT_HIP to RIGHT_KNEE,
+            LEFT_KNEE to LEFT_ANKLE, RIGHT_KNEE to RIGHT_ANKLE,
+            LEFT_SHOULDER to LEFT_WRIST, RIGHT_SHOULDER to RIGHT_WRIST,
+            LEFT_HIP to LEFT_ANKLE, RIGHT_HIP to RIGHT_ANKLE,
+            LEFT_HIP to LEFT_WRIST, RIGHT_HIP to RIGHT_WRIST,
+            LEFT_SHOULDER to LEFT_ANKLE, RIGHT_SHOULDER to RIGHT_ANKLE,
+            LEFT_HIP to LEFT_WRIST, RIGHT_HIP to RIGHT_WRIST,
+            LEFT_ELBOW to RIGHT_ELBOW, LEFT_KNEE to RIGHT_KNEE,
+            LEFT_WRIST to RIGHT_WRIST, LEFT_ANKLE to RIGHT_ANKLE
+        )
+    }
+}
+
+val compilePoseSampleIndex = tasks.register<CompilePoseSampleIndexTask>("compilePoseSampleIndex") {
+    val csv = layout.projectDirectory.file("src/main/assets/pose/fitness_pose_samples.csv")
+    if (csv.asFile.exists()) {
+        samplesCsv.set(csv)
+    }
+    outputDir.set(layout.buildDirectory.dir("generated/assets/poseSampleIndex"))
+}
+
+androidComponents {
+    onVariants { variant ->
+        variant.sources.assets?.addGeneratedSourceDirectory(
+            compilePoseSampleIndex,
+            CompilePoseSampleIndexTask::outputDir
+        )
+    }
 }
 
 dependencies {
@@ -148,6 +365,9 @@ dependencies {
     implementation(libs.androidx.navigation.ui.ktx)
     implementation(libs.androidx.work.runtime.ktx)
 
+    // Pose classification, plain Java
+    implementation(project(":pose-core"))
+
     // ML Kit
     implementation("com.google.mlkit:pose-detection:18.0.0-beta5")
     implementation("com.google.mlkit:pose-detection-accurate:18.0.0-beta5")
@@ -0,0 +1,109 @@
+package com.example.physiqueaiapkfinal
+
+import android.graphics.Bitmap
+import android.os.SystemClock
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import com.example.physiqueaiapkfinal.visionutils.FrameMetadata
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.nio.ByteBuffer
+
+/**
+ * Compares the direct NV21 conversion of [BitmapUtils.getBitmap] with the JPEG round trip it
+ * replaced, at the camera resolutions the app runs at. Timings go to logcat under [TAG]; the test
+ * only fails if the two paths disagree on the picture.
+ */
+@RunWith(AndroidJUnit4::class)
+@LargeTest
+class BitmapUtilsBenchmark {
+
+    @Test
+    fun getBitmap_640x480() {
+        benchmark(640, 480)
+    }
+
+    @Test
+    fun getBitmap_1280x720() {
+        benchmark(1280, 720)
+    }
+
+    private fun benchmark(width: Int, height: Int) {
+        val data = ByteBuffer.wrap(gradientFrame(width, height))
+        val metadata = FrameMetadata.Builder().setWidth(width).setHeight(height).build()
+
+        assertSamePicture(
+            BitmapUtils.getBitmapViaJpeg(data, metadata),
+            BitmapUtils.getBitmap(data, metadata)
+        )
+
+        val jpegMs = medianMs { BitmapUtils.getBitmapViaJpeg(data, metadata) }
+        val directMs = medianMs { BitmapUtils.getBitmap(data, metadata) }
+        val rotatedMs = medianMs { BitmapUtils.getBitmap(data, metadata, 90, 2) }
+        Log.i(
+            TAG,
+            "${width}x$height: jpeg %.2f ms, direct %.2f ms, direct rotated and halved %.2f ms"
+                .format(jpegMs, directMs, rotatedMs)
+        )
+    }
+
+    /** Runs [convert] [WARM_UP_RUNS] times, then returns the median of [RUNS] timed runs. */
+    private fun medianMs(convert: () -> Unit): Double {
+        repeat(WARM_UP_RUNS) { convert() }
+        val nanos = LongArray(RUNS)
+        for (run in 0 until RUNS) {
+            val start = SystemClock.elapsedRealtimeNanos()
+            convert()
+            nanos[run] = SystemClock.elapsedRealtimeNanos() - start
+        }
+        nanos.sort()
+        return nanos[RUNS / 2] / 1e6
+    }
+
+    /** Allows for the JPEG round trip's own error: average channel difference of at most 3. */
+    private fun assertSamePicture(expected: Bitmap, actual: Bitmap) {
+        assertEquals(expected.width, actual.width)
+        assertEquals(expected.height, actual.height)
+        val expectedPixels = IntArray(expected.width * expected.height)
+        val actualPixels = IntArray(actual.width * actual.height)
+        expected.getPixels(expectedPixels, 0, expected.width, 0, 0, expected.width, expected.height)
+        actual.getPixels(actualPixels, 0, actual.width, 0, 0, actual.width, actual.height)
+        var difference = 0L
+        for (i in expectedPixels.indices) {
+            for (shift in 0 until 24 step 8) {
+                difference += Math.abs(
+                    (expectedPixels[i] shr shift and 0xff) - (actualPixels[i] shr shift and 0xff)
+                )
+            }
+        }
+        val average = difference.toDouble() / (expectedPixels.size * 3)
+        assertTrue("average channel difference $average", average <= 3)
+    }
+
+    /** A smooth frame, luma rising to the right and chroma drifting down, that JPEG keeps well. */
+    private fun gradientFrame(width: Int, height: Int): ByteArray {
+        val nv21 = ByteArray(width * height * 3 / 2)
+        for (y in 0 until height) {
+            for (x in 0 until width) {
+                nv21[y * width + x] = (16 + x * 219 / width).toByte()
+            }
+        }
+        for (y in 0 until height / 2) {
+            for (x in 0 until width step 2) {
+                val index = width * height + y * width + x
+                nv21[index] = (64 + y * 128 / (height / 2)).toByte()
+                nv21[index + 1] = (192 - x * 128 / width).toByte()
+            }
+        }
+        return nv21
+    }
+
+    private companion object {
+        const val TAG = "BitmapUtilsBenchmark"
+        const val WARM_UP_RUNS = 10
+        const val RUNS = 50
+    }
+}
@@ -10,7 +10,10 @@ import android.net.Uri
 import android.os.Build
 import android.provider.MediaStore
 import android.util.Log
+import androidx.annotation.VisibleForTesting
 import com.example.physiqueaiapkfinal.visionutils.FrameMetadata
+import com.example.physiqueaiapkfinal.visionutils.FramePipeline
+import com.example.physiqueaiapkfinal.visionutils.Nv21Converter
 import java.io.IOException
 import java.nio.ByteBuffer
 import kotlin.jvm.Throws
@@ -107,8 +110,70 @@ object BitmapUtils {
         return rotatedBitmap
     }
 
-    /** Converts ByteBuffer + metadata (NV21) to Bitmap */
-    fun getBitmap(data: ByteBuffer, metadata: FrameMetadata): Bitmap {
+    // Bitmaps handed out by getBitmap, reused round robin so that camera frames do not allocate.
+    // VisionProcessorBase converts up to FramePipeline.MAX_DEPTH frames in flight, while the
+    // overlay holds two more: the front frame being drawn and the published one not yet picked up.
+    private const val FRAME_BITMAP_POOL_SIZE = FramePipeline.MAX_DEPTH + 2
+    private val frameBitmaps = arrayOfNulls<Bitmap>(FRAME_BITMAP_POOL_SIZE)
+    private var nextFrameBitmap = 0
+    private var framePixels = IntArray(0)
+    // Copy of frames that are not backed by an array.
+    private var frameBytes = ByteArray(0)
+
+    /**
+     * Converts an NV21 frame to a bitmap, rotated clockwise by [rotation] degrees and shrunk by
+     * [downscale] in the same pass, see [Nv21Converter].
+     *
+     * The bitmap is taken from a pool reused round robin, so it stays valid only until
+     * [FRAME_BITMAP_POOL_SIZE] - 1 more frames have been converted; callers must not recycle it.
+     */
+    @Synchronized
+    fun getBitmap(
+        data: ByteBuffer,
+        metadata: FrameMetadata,
+        rotation: Int = 0,
+        downscale: Int = 1
+    ): Bitmap {
+        val width = Nv21Converter.getOutputWidth(metadata.width, metadata.height, rotation, downscale)
+        val height =
+            Nv21Converter.getOutputHeight(metadata.width, metadata.height, rotation, downscale)
+        if (framePixels.size < width * height) {
+            framePixels = IntArray(width * height)
+        }
+        val frameSize = metadata.width * metadata.height * 3 / 2
+        if (data.hasArray()) {
+            Nv21Converter.convert(
+                data.array(), data.arrayOffset(), metadata.width, metadata.height, rotation,
+                downscale, framePixels
+            )
+        } else {
+            if (frameBytes.size < frameSize) {
+                frameBytes = ByteArray(frameSize)
+            }
+            data.rewind()
+            data.get(frameBytes, 0, frameSize)
+            data.rewind()
+            Nv21Converter.convert(
+                frameBytes, 0, metadata.width, metadata.height, rotation, downscale, framePixels
+            )
+        }
+
+        var bitmap = frameBitmaps[nextFrameBitmap]
+        if (bitmap == null || bitmap.width != width || bitmap.height != height) {
+            bitmap = Bitmap.createBitmap(width, height, Config.ARGB_8888)
+            frameBitmaps[nextFrameBitmap] = bitmap
+        }
+        nextFrameBitmap = (nextFrameBitmap + 1) % FRAME_BITMAP_POOL_SIZE
+        bitmap.setPixels(framePixels, 0, width, 0, 0, width, height)
+        return bitmap
+    }
+
+    /**
+     * Converts an NV21 frame to a new bitmap through a JPEG round trip, as [getBitmap] used to.
+     * Only kept as the baseline of BitmapUtilsBenchmark.
+     */
+    @VisibleForTesting
+    internal fun getBitmapViaJpeg(data: ByteBuffer, metadata: FrameMetadata): Bitmap {
         data.rewind()
         val yuvImage = android.graphics.YuvImage(
             data.array(),
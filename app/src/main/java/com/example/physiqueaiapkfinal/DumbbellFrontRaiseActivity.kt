@@ -5,8 +5,6 @@ package com.example.physiqueaiapkfinal
 import android.Manifest
 import android.content.Context
 import android.content.pm.PackageManager
-import android.media.AudioManager
-import android.media.ToneGenerator
 import android.os.Build
 import android.os.Bundle
 import android.os.CountDownTimer
@@ -22,17 +20,19 @@ import androidx.camera.lifecycle.ProcessCameraProvider
 import androidx.core.app.ActivityCompat
 import androidx.core.content.ContextCompat
 import com.example.physiqueaiapkfinal.databinding.ActivityDumbbellFrontRaiseBinding
+import com.example.physiqueaiapkfinal.visionutils.AdaptiveAnalysis
+import com.example.physiqueaiapkfinal.visionutils.AnalysisGovernor
+import com.example.physiqueaiapkfinal.visionutils.AudioCueEngine
+import com.example.physiqueaiapkfinal.visionutils.FrameTraceDumper
 import com.example.physiqueaiapkfinal.visionutils.GraphicOverlay
 import com.example.physiqueaiapkfinal.visionutils.PoseGraphic
+import com.example.physiqueaiapkfinal.visionutils.classification.PoseExercise
 import com.example.physiqueaiapkfinal.visionutils.classification.PoseClassifierProcessor
 import com.google.mlkit.vision.common.InputImage
 import com.google.mlkit.vision.pose.Pose
-import com.google.mlkit.vision.pose.PoseDetection
 import com.google.mlkit.vision.pose.PoseLandmark
-import com.google.mlkit.vision.pose.defaults.PoseDetectorOptions
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
-import java.util.ArrayList as JavaArrayList
 import kotlin.math.pow
 import kotlin.math.atan2
 import kotlin.math.sqrt
@@ -43,12 +43,13 @@ class DumbbellFrontRaiseActivity : AppCompatActivity() {
     private lateinit var binding: ActivityDumbbellFrontRaiseBinding
     private lateinit var cameraExecutor: ExecutorService
     private lateinit var backgroundExecutor: ExecutorService
-    private lateinit var poseDetector: com.google.mlkit.vision.pose.PoseDetector
+    private lateinit var adaptiveAnalysis: AdaptiveAnalysis
     private var poseClassifierProcessor: PoseClassifierProcessor? = null
     private val TAG = "DumbbellFrontRaiseActivity"
     private var frontRaiseCount = 0
     private var targetReps: Int = 0
     private val mainHandler = Handler(Looper.getMainLooper())
+    private val audioCues: AudioCueEngine by lazy { (application as PhysiqueAiApplication).audioCueEngine }
 
     // Ultra-accurate front raise detection variables
     private var isRaised = false
@@ -66,9 +67,8 @@ class DumbbellFrontRaiseActivity : AppCompatActivity() {
     // Orientation tracking
     private var lastRotation = Surface.ROTATION_0
 
-    // Performance optimization variables
-    private var frameSkipCounter = 0
-    private val FRAME_SKIP_COUNT = 1 // Reduce skip for better accuracy
+    // Analyzed frames, for throttling UI updates
+    private var frameCounter = 0
 
     // Camera switching variables
     private var isUsingFrontCamera = true
@@ -130,11 +130,10 @@ class DumbbellFrontRaiseActivity : AppCompatActivity() {
             )
         }
 
-        // Initialize pose detector with stream mode
-        val options = PoseDetectorOptions.Builder()
-            .setDetectorMode(PoseDetectorOptions.STREAM_MODE)
-            .build()
-        poseDetector = PoseDetection.getClient(options)
+        // Pose detector, analysis resolution and frame skipping follow how well the device keeps up
+        adaptiveAnalysis = AdaptiveAnalysis(this, AnalysisGovernor.builder().build()) {
+            mainHandler.post { bindCameraUseCases() }
+        }
 
         // Initialize executors
         cameraExecutor = Executors.newSingleThreadExecutor()
@@ -142,7 +141,8 @@ class DumbbellFrontRaiseActivity : AppCompatActivity() {
 
         // Initialize pose classifier in a background thread
         backgroundExecutor.execute {
-            poseClassifierProcessor = PoseClassifierProcessor(this, true)
+            poseClassifierProcessor =
+                (application as PhysiqueAiApplication).poseClassifierRegistry.newProcessor(PoseExercise.FRONT_RAISE)
         }
 
         // Update UI
@@ -193,7 +193,7 @@ class DumbbellFrontRaiseActivity : AppCompatActivity() {
         }
 
         val imageAnalyzer = ImageAnalysis.Builder()
-            .setTargetResolution(android.util.Size(640, 480))
+            .setResolutionSelector(adaptiveAnalysis.resolutionSelector())
             .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
             .setImageQueueDepth(1)
             .build()
@@ -249,13 +249,16 @@ class DumbbellFrontRaiseActivity : AppCompatActivity() {
         @androidx.camera.core.ExperimentalGetImage
         override fun analyze(imageProxy: ImageProxy) {
             val mediaImage = imageProxy.image
-            if (mediaImage != null) {
+            val timestampNanos = imageProxy.imageInfo.timestamp
+            if (mediaImage != null && adaptiveAnalysis.shouldAnalyze(timestampNanos)) {
                 val image = InputImage.fromMediaImage(mediaImage, imageProxy.imageInfo.rotationDegrees)
 
-                poseDetector.process(image)
+                val detectStartNanos = System.nanoTime()
+                adaptiveAnalysis.detector.process(image)
                     .addOnSuccessListener { pose ->
+                        adaptiveAnalysis.onFrameAnalyzed(timestampNanos, detectStartNanos)
                         // Process pose detection results
-                        processPose(pose, imageProxy.width, imageProxy.height)
+                        processPose(pose, imageProxy.width, imageProxy.height, detectStartNanos)
                     }
                     .addOnFailureListener { e ->
                         Log.e(TAG, "Pose detection failed: ${e.message}", e)
@@ -269,16 +272,11 @@ class DumbbellFrontRaiseActivity : AppCompatActivity() {
         }
     }
 
-    private fun processPose(pose: Pose, width: Int, height: Int) {
-        // Frame skipping for better performance
-        frameSkipCounter++
-        if (frameSkipCounter <= FRAME_SKIP_COUNT) {
-            return
-        }
-        frameSkipCounter = 0
+    private fun processPose(pose: Pose, width: Int, height: Int, detectStartNanos: Long) {
+        frameCounter++
 
         // Clear the overlay
-        binding.graphicOverlay.clear()
+        val overlayFrame = binding.graphicOverlay.beginFrame()
 
         // Get all landmarks
         val allPoseLandmarks = listOfNotNull(
@@ -299,19 +297,20 @@ class DumbbellFrontRaiseActivity : AppCompatActivity() {
 
         if (allPoseLandmarks.isEmpty()) {
             // No landmarks detected
+            binding.graphicOverlay.publishFrame()
             return
         }
 
         // Add the graphic to the overlay
-        binding.graphicOverlay.add(
-            PoseGraphic(
-                binding.graphicOverlay,
-                pose,
-                false, // showInFrameLikelihood - disabled for performance
-                false, // visualizeZ - disabled for performance
-                false, // rescaleZForVisualization - disabled for performance
-                JavaArrayList<String>() // poseClassification
-            )
+        overlayFrame.add(
+            overlayFrame.retain(PoseGraphic::class.java) { PoseGraphic(binding.graphicOverlay) }
+                .update(
+                    pose,
+                    false, // showInFrameLikelihood - disabled for performance
+                    false, // visualizeZ - disabled for performance
+                    false, // rescaleZForVisualization - disabled for performance
+                    null // repResult
+                )
         )
 
         // Get display orientation for proper coordinate handling
@@ -325,15 +324,15 @@ class DumbbellFrontRaiseActivity : AppCompatActivity() {
 
         // Update the overlay's image source info with correct orientation
         val isImageFlipped = isUsingFrontCamera // Mirror front camera
-        binding.graphicOverlay.setImageSourceInfo(width, height, isImageFlipped)
-        binding.graphicOverlay.postInvalidate()
+        overlayFrame.setImageSourceInfo(width, height, isImageFlipped)
+        binding.graphicOverlay.publishFrame()
 
         // Check for front raises with orientation awareness
-        checkForFrontRaiseDirectly(pose, rotation)
+        checkForFrontRaiseDirectly(pose, rotation, detectStartNanos)
     }
 
     // Ultra-accurate front raise detection with multiple criteria
-    private fun checkForFrontRaiseDirectly(pose: Pose, rotation: Int) {
+    private fun checkForFrontRaiseDirectly(pose: Pose, rotation: Int, detectStartNanos: Long) {
         val leftShoulder = pose.getPoseLandmark(PoseLandmark.LEFT_SHOULDER)
         val rightShoulder = pose.getPoseLandmark(PoseLandmark.RIGHT_SHOULDER)
         val leftElbow = pose.getPoseLandmark(PoseLandmark.LEFT_ELBOW)
@@ -364,7 +363,9 @@ class DumbbellFrontRaiseActivity : AppCompatActivity() {
             val avgConfidence = allLandmarks.map { it.inFrameLikelihood }.average().toFloat()
 
             if (avgConfidence < 0.5f) { // Lower threshold for better detection
-                Log.d(TAG, "Low confidence: ${(avgConfidence*100).toInt()}%")
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "Low confidence: ${(avgConfidence*100).toInt()}%")
+                }
                 return
             }
 
@@ -447,33 +448,37 @@ class DumbbellFrontRaiseActivity : AppCompatActivity() {
                     )
 
             // Detailed logging for debugging
-            Log.d(TAG, "=== Front Raise Detection ===")
-            Log.d(TAG, "RAW POSITIONS:")
-            Log.d(TAG, "  Left Shoulder Y: ${leftShoulderY}, Left Wrist Y: ${leftWristY}")
-            Log.d(TAG, "  Right Shoulder Y: ${rightShoulderY}, Right Wrist Y: ${rightWristY}")
-            Log.d(TAG, "  Average Shoulder Y: ${avgShoulderY}, Average Wrist Y: ${avgWristY}")
-            Log.d(TAG, "POSITION DIFFERENCE:")
-            Log.d(TAG, "  Wrist-to-Shoulder Diff: ${String.format("%.1f", wristToShoulderDiff)} (positive=lower, negative=higher)")
-            Log.d(TAG, "  Smoothed Diff: ${String.format("%.1f", smoothedDiff)}")
-            Log.d(TAG, "ARM EXTENSION:")
-            Log.d(TAG, "  Left Extension: ${String.format("%.2f", leftArmExtension)}, Right Extension: ${String.format("%.2f", rightArmExtension)}")
-            Log.d(TAG, "  Average Extension: ${String.format("%.2f", avgArmExtension)}, Arms Extended: $armsExtended (>1.8)")
-            Log.d(TAG, "DETECTION RANGES:")
-            Log.d(TAG, "  LOWERED: >60 | RAISED: -20 to 60 | OVER-RAISED: <-20")
-            Log.d(TAG, "OTHER CHECKS:")
-            Log.d(TAG, "  Is Upright: $isUpright, Both Arms Used: $bothArmsUsed")
-            Log.d(TAG, "  Left Arm Visible: $leftArmVisible, Right Arm Visible: $rightArmVisible")
-            Log.d(TAG, "  Confidence: ${(avgConfidence*100).toInt()}%")
-            Log.d(TAG, "POSITION DETECTION:")
-            Log.d(TAG, "  Position - Raised: $isRaisedPosition, Lowered: $isLoweredPosition, Over-raised: $isOverRaised")
-            Log.d(TAG, "STATE:")
-            Log.d(TAG, "  State - hasBeenLowered: $hasBeenLowered, lastCountedRaise: $lastCountedRaise")
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "=== Front Raise Detection ===")
+                Log.d(TAG, "RAW POSITIONS:")
+                Log.d(TAG, "  Left Shoulder Y: ${leftShoulderY}, Left Wrist Y: ${leftWristY}")
+                Log.d(TAG, "  Right Shoulder Y: ${rightShoulderY}, Right Wrist Y: ${rightWristY}")
+                Log.d(TAG, "  Average Shoulder Y: ${avgShoulderY}, Average Wrist Y: ${avgWristY}")
+                Log.d(TAG, "POSITION DIFFERENCE:")
+                Log.d(TAG, "  Wrist-to-Shoulder Diff: ${String.format("%.1f", wristToShoulderDiff)} (positive=lower, negative=higher)")
+                Log.d(TAG, "  Smoothed Diff: ${String.format("%.1f", smoothedDiff)}")
+                Log.d(TAG, "ARM EXTENSION:")
+                Log.d(TAG, "  Left Extension: ${String.format("%.2f", leftArmExtension)}, Right Extension: ${String.format("%.2f", rightArmExtension)}")
+                Log.d(TAG, "  Average Extension: ${String.format("%.2f", avgArmExtension)}, Arms Extended: $armsExtended (>1.8)")
+                Log.d(TAG, "DETECTION RANGES:")
+                Log.d(TAG, "  LOWERED: >60 | RAISED: -20 to 60 | OVER-RAISED: <-20")
+                Log.d(TAG, "OTHER CHECKS:")
+                Log.d(TAG, "  Is Upright: $isUpright, Both Arms Used: $bothArmsUsed")
+                Log.d(TAG, "  Left Arm Visible: $leftArmVisible, Right Arm Visible: $rightArmVisible")
+                Log.d(TAG, "  Confidence: ${(avgConfidence*100).toInt()}%")
+                Log.d(TAG, "POSITION DETECTION:")
+                Log.d(TAG, "  Position - Raised: $isRaisedPosition, Lowered: $isLoweredPosition, Over-raised: $isOverRaised")
+                Log.d(TAG, "STATE:")
+                Log.d(TAG, "  State - hasBeenLowered: $hasBeenLowered, lastCountedRaise: $lastCountedRaise")
+            }
 
             // State tracking - count immediately when reaching shoulder level from lowered position
             if (isRaisedPosition) {
                 raisedFrameCount++
                 loweredFrameCount = 0
-                Log.d(TAG, "RAISED frames: $raisedFrameCount/$MIN_STABLE_FRAMES")
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "RAISED frames: $raisedFrameCount/$MIN_STABLE_FRAMES")
+                }
 
                 // IMPROVED LOGIC: Count when reaching shoulder level with proper form
                 if (!isRaised && hasBeenLowered && !lastCountedRaise && raisedFrameCount >= 2 && armsExtended && bothArmsUsed) {
@@ -496,16 +501,7 @@ class DumbbellFrontRaiseActivity : AppCompatActivity() {
                             }
 
                             // Audio feedback - play beep when rep is counted
-                            backgroundExecutor.execute {
-                                try {
-                                    val toneGenerator = ToneGenerator(AudioManager.STREAM_MUSIC, 100)
-                                    toneGenerator.startTone(ToneGenerator.TONE_PROP_BEEP, 200)
-                                    Thread.sleep(250)
-                                    toneGenerator.release()
-                                } catch (e: Exception) {
-                                    Log.e(TAG, "Failed to play beep sound: ${e.message}")
-                                }
-                            }
+                            audioCues.play(AudioCueEngine.Cue.REP, detectStartNanos)
                         }
                     }
                     hasBeenLowered = false // Reset for next cycle
@@ -515,7 +511,9 @@ class DumbbellFrontRaiseActivity : AppCompatActivity() {
             } else if (isLoweredPosition) {
                 loweredFrameCount++
                 raisedFrameCount = 0
-                Log.d(TAG, "LOWERED frames: $loweredFrameCount/$MIN_STABLE_FRAMES")
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "LOWERED frames: $loweredFrameCount/$MIN_STABLE_FRAMES")
+                }
 
                 // Set lowered state when stable (relaxed arm extension requirement for lowered position)
                 if (loweredFrameCount >= MIN_STABLE_FRAMES && bothArmsUsed) {
@@ -533,14 +531,18 @@ class DumbbellFrontRaiseActivity : AppCompatActivity() {
             } else if (isOverRaised) {
                 // Reset raised frames when over-raised to prevent counting
                 raisedFrameCount = 0
-                Log.d(TAG, "OVER-RAISED - resetting raised frames (no count for improper form)")
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "OVER-RAISED - resetting raised frames (no count for improper form)")
+                }
             } else {
                 // In transition - maintain current state
-                Log.d(TAG, "IN TRANSITION - maintaining current state")
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "IN TRANSITION - maintaining current state")
+                }
             }
 
             // Enhanced UI updates with proper cautions
-            if ((frameSkipCounter % 10 == 0)) {
+            if ((frameCounter % 10 == 0)) {
                 mainHandler.post {
                     when {
                         !bothArmsUsed -> {
@@ -602,7 +604,9 @@ class DumbbellFrontRaiseActivity : AppCompatActivity() {
 
         } else {
             // Reset when landmarks are lost
-            Log.d(TAG, "❌ Landmarks missing - resetting state")
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "❌ Landmarks missing - resetting state")
+            }
             if (isRaised) {
                 isRaised = false
                 mainHandler.post {
@@ -694,16 +698,7 @@ class DumbbellFrontRaiseActivity : AppCompatActivity() {
 
     private fun onSetComplete() {
         // Play completion sound
-        try {
-            val toneGenerator = ToneGenerator(AudioManager.STREAM_NOTIFICATION, 100)
-            toneGenerator.startTone(ToneGenerator.TONE_PROP_BEEP, 300)
-            backgroundExecutor.execute {
-                Thread.sleep(350)
-                toneGenerator.release()
-            }
-        } catch (e: Exception) {
-            Log.w(TAG, "Audio feedback failed: ${e.message}")
-        }
+        audioCues.play(AudioCueEngine.Cue.SET_COMPLETE)
 
         if (currentSet < totalSets) {
             // More sets remaining, start rest period
@@ -792,6 +787,7 @@ class DumbbellFrontRaiseActivity : AppCompatActivity() {
     override fun onPause() {
         super.onPause()
         pauseTimer()
+        FrameTraceDumper.dump(this, TAG)
     }
 
     override fun onResume() {
@@ -805,6 +801,7 @@ class DumbbellFrontRaiseActivity : AppCompatActivity() {
         super.onDestroy()
         countDownTimer?.cancel()
         cameraExecutor.shutdown()
+        adaptiveAnalysis.close()
     }
 
     private fun removeExerciseAndFinish() {
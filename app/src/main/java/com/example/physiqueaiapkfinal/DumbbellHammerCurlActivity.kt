@@ -6,8 +6,6 @@ import android.Manifest
 import android.content.Context
 import android.content.pm.PackageManager
 import android.graphics.Color
-import android.media.AudioManager
-import android.media.ToneGenerator
 import android.os.Build
 import android.os.Bundle
 import android.os.CountDownTimer
@@ -23,17 +21,19 @@ import androidx.camera.lifecycle.ProcessCameraProvider
 import androidx.core.app.ActivityCompat
 import androidx.core.content.ContextCompat
 import com.example.physiqueaiapkfinal.databinding.ActivityDumbbellHammerCurlBinding
+import com.example.physiqueaiapkfinal.visionutils.AdaptiveAnalysis
+import com.example.physiqueaiapkfinal.visionutils.AnalysisGovernor
+import com.example.physiqueaiapkfinal.visionutils.AudioCueEngine
+import com.example.physiqueaiapkfinal.visionutils.FrameTraceDumper
 import com.example.physiqueaiapkfinal.visionutils.GraphicOverlay
 import com.example.physiqueaiapkfinal.visionutils.PoseGraphic
+import com.example.physiqueaiapkfinal.visionutils.classification.PoseExercise
 import com.example.physiqueaiapkfinal.visionutils.classification.PoseClassifierProcessor
 import com.google.mlkit.vision.common.InputImage
 import com.google.mlkit.vision.pose.Pose
-import com.google.mlkit.vision.pose.PoseDetection
 import com.google.mlkit.vision.pose.PoseLandmark
-import com.google.mlkit.vision.pose.defaults.PoseDetectorOptions
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
-import java.util.ArrayList as JavaArrayList
 import kotlin.math.pow
 import kotlin.math.atan2
 import kotlin.math.sqrt
@@ -44,12 +44,13 @@ class DumbbellHammerCurlActivity : AppCompatActivity() {
     private lateinit var binding: ActivityDumbbellHammerCurlBinding
     private lateinit var cameraExecutor: ExecutorService
     private lateinit var backgroundExecutor: ExecutorService
-    private lateinit var poseDetector: com.google.mlkit.vision.pose.PoseDetector
+    private lateinit var adaptiveAnalysis: AdaptiveAnalysis
     private var poseClassifierProcessor: PoseClassifierProcessor? = null
     private val TAG = "DumbbellHammerCurlActivity"
     private var hammerCurlCount = 0
     private var targetReps: Int = 0
     private val mainHandler = Handler(Looper.getMainLooper())
+    private val audioCues: AudioCueEngine by lazy { (application as PhysiqueAiApplication).audioCueEngine }
 
     // Ultra-accurate hammer curl detection variables
     private var isRaised = false
@@ -67,9 +68,8 @@ class DumbbellHammerCurlActivity : AppCompatActivity() {
     // Orientation tracking
     private var lastRotation = Surface.ROTATION_0
 
-    // Performance optimization variables
-    private var frameSkipCounter = 0
-    private val FRAME_SKIP_COUNT = 2 // Balanced frame processing for stability
+    // Analyzed frames, for throttling UI updates
+    private var frameCounter = 0
 
     // Camera switching variables
     private var isUsingFrontCamera = true
@@ -136,11 +136,10 @@ class DumbbellHammerCurlActivity : AppCompatActivity() {
             )
         }
 
-        // Initialize pose detector with stream mode
-        val options = PoseDetectorOptions.Builder()
-            .setDetectorMode(PoseDetectorOptions.STREAM_MODE)
-            .build()
-        poseDetector = PoseDetection.getClient(options)
+        // Pose detector, analysis resolution and frame skipping follow how well the device keeps up
+        adaptiveAnalysis = AdaptiveAnalysis(this, AnalysisGovernor.builder().build()) {
+            mainHandler.post { bindCameraUseCases() }
+        }
 
         // Initialize executors
         cameraExecutor = Executors.newSingleThreadExecutor()
@@ -148,7 +147,8 @@ class DumbbellHammerCurlActivity : AppCompatActivity() {
 
         // Initialize pose classifier in a background thread
         backgroundExecutor.execute {
-            poseClassifierProcessor = PoseClassifierProcessor(this, true)
+            poseClassifierProcessor =
+                (application as PhysiqueAiApplication).poseClassifierRegistry.newProcessor(PoseExercise.HAMMER_CURL)
         }
 
         // Update UI
@@ -199,7 +199,7 @@ class DumbbellHammerCurlActivity : AppCompatActivity() {
         }
 
         val imageAnalyzer = ImageAnalysis.Builder()
-            .setTargetResolution(android.util.Size(480, 360))
+            .setResolutionSelector(adaptiveAnalysis.resolutionSelector())
             .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
             .setImageQueueDepth(1)
             .build()
@@ -264,13 +264,16 @@ class DumbbellHammerCurlActivity : AppCompatActivity() {
         @androidx.camera.core.ExperimentalGetImage
         override fun analyze(imageProxy: ImageProxy) {
             val mediaImage = imageProxy.image
-            if (mediaImage != null) {
+            val timestampNanos = imageProxy.imageInfo.timestamp
+            if (mediaImage != null && adaptiveAnalysis.shouldAnalyze(timestampNanos)) {
                 val image = InputImage.fromMediaImage(mediaImage, imageProxy.imageInfo.rotationDegrees)
 
-                poseDetector.process(image)
+                val detectStartNanos = System.nanoTime()
+                adaptiveAnalysis.detector.process(image)
                     .addOnSuccessListener { pose ->
+                        adaptiveAnalysis.onFrameAnalyzed(timestampNanos, detectStartNanos)
                         // Process pose detection results
-                        processPose(pose, imageProxy.width, imageProxy.height)
+                        processPose(pose, imageProxy.width, imageProxy.height, detectStartNanos)
                     }
                     .addOnFailureListener { e ->
                         Log.e(TAG, "Pose detection failed: ${e.message}", e)
@@ -284,10 +287,10 @@ class DumbbellHammerCurlActivity : AppCompatActivity() {
         }
     }
 
-    private fun processPose(pose: Pose, width: Int, height: Int) {
+    private fun processPose(pose: Pose, width: Int, height: Int, detectStartNanos: Long) {
         try {
             // Always clear and update overlay for smooth skeleton display
-            binding.graphicOverlay.clear()
+            val overlayFrame = binding.graphicOverlay.beginFrame()
 
             // Get display orientation for proper coordinate handling
             val windowManager = getSystemService(Context.WINDOW_SERVICE) as WindowManager
@@ -317,33 +320,28 @@ class DumbbellHammerCurlActivity : AppCompatActivity() {
 
             if (allPoseLandmarks.isNotEmpty()) {
                 // Always add the graphic to the overlay for smooth skeleton
-                binding.graphicOverlay.add(
-                    PoseGraphic(
-                        binding.graphicOverlay,
-                        pose,
-                        false, // showInFrameLikelihood - disabled for performance
-                        false, // visualizeZ - disabled for performance
-                        false, // rescaleZForVisualization - disabled for performance
-                        JavaArrayList<String>() // poseClassification
-                    )
+                overlayFrame.add(
+                    overlayFrame.retain(PoseGraphic::class.java) { PoseGraphic(binding.graphicOverlay) }
+                        .update(
+                            pose,
+                            false, // showInFrameLikelihood - disabled for performance
+                            false, // visualizeZ - disabled for performance
+                            false, // rescaleZForVisualization - disabled for performance
+                            null // repResult
+                        )
                 )
 
                 // Update the overlay's image source info with correct orientation
                 val isImageFlipped = isUsingFrontCamera // Mirror front camera
-                binding.graphicOverlay.setImageSourceInfo(width, height, isImageFlipped)
-                binding.graphicOverlay.postInvalidate()
+                overlayFrame.setImageSourceInfo(width, height, isImageFlipped)
             }
+            binding.graphicOverlay.publishFrame()
 
-            // Frame skipping for detection logic only (not for skeleton display)
-            frameSkipCounter++
-            if (frameSkipCounter <= FRAME_SKIP_COUNT) {
-                return
-            }
-            frameSkipCounter = 0
+            frameCounter++
 
-            // Check for hammer curls with orientation awareness (only every few frames)
+            // Check for hammer curls with orientation awareness
             if (allPoseLandmarks.isNotEmpty()) {
-                checkForHammerCurlDirectly(pose, rotation)
+                checkForHammerCurlDirectly(pose, rotation, detectStartNanos)
             }
 
         } catch (e: Exception) {
@@ -352,7 +350,7 @@ class DumbbellHammerCurlActivity : AppCompatActivity() {
     }
 
     // Ultra-accurate hammer curl detection with multiple criteria
-    private fun checkForHammerCurlDirectly(pose: Pose, rotation: Int) {
+    private fun checkForHammerCurlDirectly(pose: Pose, rotation: Int, detectStartNanos: Long) {
         val leftShoulder = pose.getPoseLandmark(PoseLandmark.LEFT_SHOULDER)
         val rightShoulder = pose.getPoseLandmark(PoseLandmark.RIGHT_SHOULDER)
         val leftElbow = pose.getPoseLandmark(PoseLandmark.LEFT_ELBOW)
@@ -383,7 +381,9 @@ class DumbbellHammerCurlActivity : AppCompatActivity() {
             val avgConfidence = allLandmarks.map { it.inFrameLikelihood }.average().toFloat()
 
             if (avgConfidence < 0.5f) { // Balanced threshold for reliable detection
-                Log.d(TAG, "Low confidence: ${(avgConfidence*100).toInt()}%")
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "Low confidence: ${(avgConfidence*100).toInt()}%")
+                }
                 return
             }
 
@@ -547,7 +547,7 @@ class DumbbellHammerCurlActivity : AppCompatActivity() {
                     )
 
             // Enhanced logging for debugging (reduced frequency)
-            if (frameSkipCounter % 15 == 0) { // More frequent logging for debugging
+            if (BuildConfig.DEBUG && frameCounter % 15 == 0) {
                 Log.d(TAG, "Hammer Curl Debug:")
                 Log.d(TAG, "  - Smoothed Diff: ${String.format("%.1f", smoothedDiff)}")
                 Log.d(TAG, "  - Left W-E Diff: ${String.format("%.1f", leftWristToElbowDiff)}, Right W-E Diff: ${String.format("%.1f", rightWristToElbowDiff)}")
@@ -576,9 +576,11 @@ class DumbbellHammerCurlActivity : AppCompatActivity() {
                 // Don't reset hasBeenLowered - keep exercise state but prevent counting
                 // Reset timer to prevent immediate false counts
                 lastHammerCurlTime = System.currentTimeMillis()
-                Log.d(TAG, "🚫 BLOCKED: Invalid movement detected - FULL STATE RESET")
-                Log.d(TAG, "    Single arm: $singleArmDetected, Both moving: $bothArmsMoving, Synchronized: $armsMovingSynchronously")
-                Log.d(TAG, "    Cleared history, reset raised state and count flags, reset timer")
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "🚫 BLOCKED: Invalid movement detected - FULL STATE RESET")
+                    Log.d(TAG, "    Single arm: $singleArmDetected, Both moving: $bothArmsMoving, Synchronized: $armsMovingSynchronously")
+                    Log.d(TAG, "    Cleared history, reset raised state and count flags, reset timer")
+                }
             }
             // SIMPLIFIED state machine - similar to working exercises (SquatActivity pattern)
             else {
@@ -612,16 +614,8 @@ class DumbbellHammerCurlActivity : AppCompatActivity() {
                                     lastCountedRaise = true // Prevent double counting
                                     isRaised = true // Mark as raised
 
-                                // Play sound feedback in background thread
-                                backgroundExecutor.execute {
-                                    try {
-                                        val toneGen = ToneGenerator(AudioManager.STREAM_MUSIC, 100)
-                                        toneGen.startTone(ToneGenerator.TONE_PROP_BEEP, 150)
-                                        toneGen.release()
-                                    } catch (e: Exception) {
-                                        Log.e(TAG, "Failed to play sound: ${e.message}")
-                                    }
-                                }
+                                // Play sound feedback
+                                audioCues.play(AudioCueEngine.Cue.REP, detectStartNanos)
 
                                     val countType = if (isValidHammerCurlMovement) "validated" else "basic (not elbow raise)"
                                     Log.d(TAG, "🎉 HAMMER CURL #$hammerCurlCount COUNTED! ($countType)")
@@ -632,34 +626,42 @@ class DumbbellHammerCurlActivity : AppCompatActivity() {
                                     hasBeenLowered = false
                                 }
                             } else {
-                                Log.d(TAG, "⏰ Count blocked by time interval (${currentTime - lastHammerCurlTime}ms < ${MIN_HAMMER_CURL_INTERVAL}ms)")
+                                if (BuildConfig.DEBUG) {
+                                    Log.d(TAG, "⏰ Count blocked by time interval (${currentTime - lastHammerCurlTime}ms < ${MIN_HAMMER_CURL_INTERVAL}ms)")
+                                }
                             }
                         } else {
                             // Position detected but not validated
-                            if (isLateralRaise) {
-                                Log.d(TAG, "⚠️ BLOCKED: Detected lateral raise instead of hammer curl")
-                            } else if (!isNotElbowRaise) {
-                                Log.d(TAG, "⚠️ BLOCKED: Detected wrong exercise (elbow raise or other)")
-                            } else {
-                                Log.d(TAG, "⚠️ RAISED position detected but movement not validated")
+                            if (BuildConfig.DEBUG) {
+                                if (isLateralRaise) {
+                                    Log.d(TAG, "⚠️ BLOCKED: Detected lateral raise instead of hammer curl")
+                                } else if (!isNotElbowRaise) {
+                                    Log.d(TAG, "⚠️ BLOCKED: Detected wrong exercise (elbow raise or other)")
+                                } else {
+                                    Log.d(TAG, "⚠️ RAISED position detected but movement not validated")
+                                }
                             }
                         }
                     } else {
                         // Debug why counting is not happening
-                        Log.d(TAG, "🔍 Count conditions: frames=$raisedFrameCount>=$MIN_STABLE_FRAMES, lowered=$hasBeenLowered, notCounted=${!lastCountedRaise}, notRaised=${!isRaised}")
+                        if (BuildConfig.DEBUG) {
+                            Log.d(TAG, "🔍 Count conditions: frames=$raisedFrameCount>=$MIN_STABLE_FRAMES, lowered=$hasBeenLowered, notCounted=${!lastCountedRaise}, notRaised=${!isRaised}")
+                        }
                     }
                 } else {
                     // Reset frame counters if not in a clear position
                     if (avgConfidence < 0.3f) {
                         raisedFrameCount = 0
                         loweredFrameCount = 0
-                        Log.d(TAG, "🔄 Reset frame counters due to low confidence")
+                        if (BuildConfig.DEBUG) {
+                            Log.d(TAG, "🔄 Reset frame counters due to low confidence")
+                        }
                     }
                 }
             }
 
             // Enhanced UI updates with detailed cautions and exercise validation (reduced frequency)
-            if (frameSkipCounter % 15 == 0) { // Update UI less frequently
+            if (frameCounter % 15 == 0) { // Update UI less frequently
                 mainHandler.post {
                     when {
                         singleArmDetected -> {
@@ -841,16 +843,8 @@ class DumbbellHammerCurlActivity : AppCompatActivity() {
     }
 
     private fun onSetComplete() {
-        try {
-            val toneGenerator = ToneGenerator(AudioManager.STREAM_NOTIFICATION, 100)
-            toneGenerator.startTone(ToneGenerator.TONE_PROP_BEEP, 300)
-            backgroundExecutor.execute {
-                Thread.sleep(350)
-                toneGenerator.release()
-            }
-        } catch (e: Exception) {
-            Log.w(TAG, "Audio feedback failed: ${e.message}")
-        }
+        // Play completion sound
+        audioCues.play(AudioCueEngine.Cue.SET_COMPLETE)
 
         if (currentSet < totalSets) {
             Toast.makeText(this, "✅ Set $currentSet completed! Rest for ${REST_TIME_SECONDS}s", Toast.LENGTH_SHORT).show()
@@ -932,6 +926,7 @@ class DumbbellHammerCurlActivity : AppCompatActivity() {
     override fun onPause() {
         super.onPause()
         pauseTimer()
+        FrameTraceDumper.dump(this, TAG)
     }
 
     override fun onResume() {
@@ -945,7 +940,7 @@ class DumbbellHammerCurlActivity : AppCompatActivity() {
         super.onDestroy()
         countDownTimer?.cancel()
         cameraExecutor.shutdown()
-        poseDetector.close()
+        adaptiveAnalysis.close()
     }
 
     private fun removeExerciseAndFinish() {
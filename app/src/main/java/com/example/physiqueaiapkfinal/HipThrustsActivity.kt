@@ -5,8 +5,6 @@ package com.example.physiqueaiapkfinal
 import android.Manifest
 import android.content.Context
 import android.content.pm.PackageManager
-import android.media.AudioManager
-import android.media.ToneGenerator
 import android.os.Build
 import android.os.Bundle
 import android.os.CountDownTimer
@@ -22,17 +20,19 @@ import androidx.camera.lifecycle.ProcessCameraProvider
 import androidx.core.app.ActivityCompat
 import androidx.core.content.ContextCompat
 import com.example.physiqueaiapkfinal.databinding.ActivityHipThrustsBinding
+import com.example.physiqueaiapkfinal.visionutils.AdaptiveAnalysis
+import com.example.physiqueaiapkfinal.visionutils.AnalysisGovernor
+import com.example.physiqueaiapkfinal.visionutils.AudioCueEngine
+import com.example.physiqueaiapkfinal.visionutils.FrameTraceDumper
 import com.example.physiqueaiapkfinal.visionutils.GraphicOverlay
 import com.example.physiqueaiapkfinal.visionutils.PoseGraphic
+import com.example.physiqueaiapkfinal.visionutils.classification.PoseExercise
 import com.example.physiqueaiapkfinal.visionutils.classification.PoseClassifierProcessor
 import com.google.mlkit.vision.common.InputImage
 import com.google.mlkit.vision.pose.Pose
-import com.google.mlkit.vision.pose.PoseDetection
 import com.google.mlkit.vision.pose.PoseLandmark
-import com.google.mlkit.vision.pose.defaults.PoseDetectorOptions
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
-import java.util.ArrayList as JavaArrayList
 import kotlin.math.pow
 import kotlin.math.atan2
 import kotlin.math.sqrt
@@ -43,12 +43,13 @@ class HipThrustsActivity : AppCompatActivity() {
     private lateinit var binding: ActivityHipThrustsBinding
     private lateinit var cameraExecutor: ExecutorService
     private lateinit var backgroundExecutor: ExecutorService
-    private lateinit var poseDetector: com.google.mlkit.vision.pose.PoseDetector
+    private lateinit var adaptiveAnalysis: AdaptiveAnalysis
     private var poseClassifierProcessor: PoseClassifierProcessor? = null
     private val TAG = "HipThrustsActivity"
     private var hipThrustCount = 0
     private var targetReps: Int = 0
     private val mainHandler = Handler(Looper.getMainLooper())
+    private val audioCues: AudioCueEngine by lazy { (application as PhysiqueAiApplication).audioCueEngine }
 
     // Ultra-accurate hip thrust detection variables
     private var isUp = false
@@ -78,10 +79,6 @@ class HipThrustsActivity : AppCompatActivity() {
     // Orientation tracking
     private var lastRotation = Surface.ROTATION_0
 
-    // Performance optimization variables
-    private var frameSkipCounter = 0
-    private val FRAME_SKIP_COUNT = 1 // Reduce skip for better accuracy
-
     // Camera switching variables
     private var isUsingFrontCamera = true
     private var cameraProvider: ProcessCameraProvider? = null
@@ -141,11 +138,10 @@ class HipThrustsActivity : AppCompatActivity() {
             )
         }
 
-        // Initialize pose detector with stream mode
-        val options = PoseDetectorOptions.Builder()
-            .setDetectorMode(PoseDetectorOptions.STREAM_MODE)
-            .build()
-        poseDetector = PoseDetection.getClient(options)
+        // Pose detector, analysis resolution and frame skipping follow how well the device keeps up
+        adaptiveAnalysis = AdaptiveAnalysis(this, AnalysisGovernor.builder().build()) {
+            mainHandler.post { bindCameraUseCases() }
+        }
 
         // Initialize executors
         cameraExecutor = Executors.newSingleThreadExecutor()
@@ -153,7 +149,8 @@ class HipThrustsActivity : AppCompatActivity() {
 
         // Initialize pose classifier in a background thread
         backgroundExecutor.execute {
-            poseClassifierProcessor = PoseClassifierProcessor(this, true)
+            poseClassifierProcessor =
+                (application as PhysiqueAiApplication).poseClassifierRegistry.newProcessor(PoseExercise.HIP_THRUST)
         }
 
         // Update UI
@@ -198,7 +195,7 @@ class HipThrustsActivity : AppCompatActivity() {
         }
 
         val imageAnalyzer = ImageAnalysis.Builder()
-            .setTargetResolution(android.util.Size(640, 480))
+            .setResolutionSelector(adaptiveAnalysis.resolutionSelector())
             .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
             .setImageQueueDepth(1)
             .build()
@@ -254,13 +251,16 @@ class HipThrustsActivity : AppCompatActivity() {
         @androidx.camera.core.ExperimentalGetImage
         override fun analyze(imageProxy: ImageProxy) {
             val mediaImage = imageProxy.image
-            if (mediaImage != null) {
+            val timestampNanos = imageProxy.imageInfo.timestamp
+            if (mediaImage != null && adaptiveAnalysis.shouldAnalyze(timestampNanos)) {
                 val image = InputImage.fromMediaImage(mediaImage, imageProxy.imageInfo.rotationDegrees)
 
-                poseDetector.process(image)
+                val detectStartNanos = System.nanoTime()
+                adaptiveAnalysis.detector.process(image)
                     .addOnSuccessListener { pose ->
+                        adaptiveAnalysis.onFrameAnalyzed(timestampNanos, detectStartNanos)
                         // Process pose detection results
-                        processPose(pose, imageProxy.width, imageProxy.height)
+                        processPose(pose, imageProxy.width, imageProxy.height, detectStartNanos)
                     }
                     .addOnFailureListener { e ->
                         Log.e(TAG, "Pose detection failed: ${e.message}", e)
@@ -274,16 +274,9 @@ class HipThrustsActivity : AppCompatActivity() {
         }
     }
 
-    private fun processPose(pose: Pose, width: Int, height: Int) {
-        // Frame skipping for better performance
-        frameSkipCounter++
-        if (frameSkipCounter <= FRAME_SKIP_COUNT) {
-            return
-        }
-        frameSkipCounter = 0
-
+    private fun processPose(pose: Pose, width: Int, height: Int, detectStartNanos: Long) {
         // Clear the overlay
-        binding.graphicOverlay.clear()
+        val overlayFrame = binding.graphicOverlay.beginFrame()
 
         // Get all landmarks
         val allPoseLandmarks = listOfNotNull(
@@ -308,19 +301,20 @@ class HipThrustsActivity : AppCompatActivity() {
 
         if (allPoseLandmarks.isEmpty()) {
             // No landmarks detected
+            binding.graphicOverlay.publishFrame()
             return
         }
 
         // Add the graphic to the overlay
-        binding.graphicOverlay.add(
-            PoseGraphic(
-                binding.graphicOverlay,
-                pose,
-                false, // showInFrameLikelihood - disabled for performance
-                false, // visualizeZ - disabled for performance
-                false, // rescaleZForVisualization - disabled for performance
-                JavaArrayList<String>() // poseClassification
-            )
+        overlayFrame.add(
+            overlayFrame.retain(PoseGraphic::class.java) { PoseGraphic(binding.graphicOverlay) }
+                .update(
+                    pose,
+                    false, // showInFrameLikelihood - disabled for performance
+                    false, // visualizeZ - disabled for performance
+                    false, // rescaleZForVisualization - disabled for performance
+                    null // repResult
+                )
         )
 
         // Get display orientation for proper coordinate handling
@@ -334,15 +328,15 @@ class HipThrustsActivity : AppCompatActivity() {
 
         // Update the overlay's image source info with correct orientation
         val isImageFlipped = isUsingFrontCamera // Mirror front camera
-        binding.graphicOverlay.setImageSourceInfo(width, height, isImageFlipped)
-        binding.graphicOverlay.postInvalidate()
+        overlayFrame.setImageSourceInfo(width, height, isImageFlipped)
+        binding.graphicOverlay.publishFrame()
 
         // Check for hip thrusts with orientation awareness
-        checkForHipThrustDirectly(pose, rotation)
+        checkForHipThrustDirectly(pose, rotation, detectStartNanos)
     }
 
     // CLEAR & ACCURATE hip thrust detection using only Y-coordinates
-    private fun checkForHipThrustDirectly(pose: Pose, rotation: Int) {
+    private fun checkForHipThrustDirectly(pose: Pose, rotation: Int, detectStartNanos: Long) {
         val leftHip = pose.getPoseLandmark(PoseLandmark.LEFT_HIP)
         val rightHip = pose.getPoseLandmark(PoseLandmark.RIGHT_HIP)
         val leftShoulder = pose.getPoseLandmark(PoseLandmark.LEFT_SHOULDER)
@@ -380,16 +374,7 @@ class HipThrustsActivity : AppCompatActivity() {
                         binding.tvPositionStatus.setTextColor(ContextCompat.getColor(this@HipThrustsActivity, android.R.color.holo_blue_light))
                     }
                     // Audio feedback
-                    try {
-                        val toneGenerator = ToneGenerator(AudioManager.STREAM_NOTIFICATION, 100)
-                        toneGenerator.startTone(ToneGenerator.TONE_PROP_BEEP, 150)
-                        backgroundExecutor.execute {
-                            Thread.sleep(200)
-                            toneGenerator.release()
-                        }
-                    } catch (e: Exception) {
-                        Log.w(TAG, "Audio failed: ${e.message}")
-                    }
+                    audioCues.play(AudioCueEngine.Cue.REP, detectStartNanos)
                     }
                 }
                 isUp = true
@@ -468,6 +453,7 @@ class HipThrustsActivity : AppCompatActivity() {
     override fun onPause() {
         super.onPause()
         pauseTimer()
+        FrameTraceDumper.dump(this, TAG)
     }
 
     override fun onResume() {
@@ -481,6 +467,7 @@ class HipThrustsActivity : AppCompatActivity() {
         super.onDestroy()
         countDownTimer?.cancel()
         cameraExecutor.shutdown()
+        adaptiveAnalysis.close()
     }
 
     companion object {
@@ -532,16 +519,7 @@ class HipThrustsActivity : AppCompatActivity() {
 
     private fun onSetComplete() {
         // Play completion sound
-        try {
-            val toneGenerator = ToneGenerator(AudioManager.STREAM_NOTIFICATION, 100)
-            toneGenerator.startTone(ToneGenerator.TONE_PROP_BEEP, 300)
-            backgroundExecutor.execute {
-                Thread.sleep(350)
-                toneGenerator.release()
-            }
-        } catch (e: Exception) {
-            Log.w(TAG, "Audio feedback failed: ${e.message}")
-        }
+        audioCues.play(AudioCueEngine.Cue.SET_COMPLETE)
 
         if (currentSet < totalSets) {
             // More sets remaining, start rest period
@@ -5,8 +5,6 @@ package com.example.physiqueaiapkfinal
 import android.Manifest
 import android.content.Context
 import android.content.pm.PackageManager
-import android.media.AudioManager
-import android.media.ToneGenerator
 import android.os.Vibrator
 import android.os.Build
 import android.os.Bundle
@@ -23,17 +21,19 @@ import androidx.camera.lifecycle.ProcessCameraProvider
 import androidx.core.app.ActivityCompat
 import androidx.core.content.ContextCompat
 import com.example.physiqueaiapkfinal.databinding.ActivityMilitaryPressBinding
+import com.example.physiqueaiapkfinal.visionutils.AdaptiveAnalysis
+import com.example.physiqueaiapkfinal.visionutils.AnalysisGovernor
+import com.example.physiqueaiapkfinal.visionutils.AudioCueEngine
+import com.example.physiqueaiapkfinal.visionutils.FrameTraceDumper
 import com.example.physiqueaiapkfinal.visionutils.GraphicOverlay
 import com.example.physiqueaiapkfinal.visionutils.PoseGraphic
+import com.example.physiqueaiapkfinal.visionutils.classification.PoseExercise
 import com.example.physiqueaiapkfinal.visionutils.classification.PoseClassifierProcessor
 import com.google.mlkit.vision.common.InputImage
 import com.google.mlkit.vision.pose.Pose
-import com.google.mlkit.vision.pose.PoseDetection
 import com.google.mlkit.vision.pose.PoseLandmark
-import com.google.mlkit.vision.pose.defaults.PoseDetectorOptions
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
-import java.util.ArrayList as JavaArrayList
 import kotlin.math.pow
 import kotlin.math.atan2
 import kotlin.math.sqrt
@@ -44,12 +44,13 @@ class MilitaryPressActivity : AppCompatActivity() {
     private lateinit var binding: ActivityMilitaryPressBinding
     private lateinit var cameraExecutor: ExecutorService
     private lateinit var backgroundExecutor: ExecutorService
-    private lateinit var poseDetector: com.google.mlkit.vision.pose.PoseDetector
+    private lateinit var adaptiveAnalysis: AdaptiveAnalysis
     private var poseClassifierProcessor: PoseClassifierProcessor? = null
     private val TAG = "MilitaryPressActivity"
     private var militaryPressCount = 0
     private var targetReps: Int = 0
     private val mainHandler = Handler(Looper.getMainLooper())
+    private val audioCues: AudioCueEngine by lazy { (application as PhysiqueAiApplication).audioCueEngine }
 
     // Military press detection variables
     private var isDown = false
@@ -83,9 +84,8 @@ class MilitaryPressActivity : AppCompatActivity() {
     // Orientation tracking
     private var lastRotation = Surface.ROTATION_0
 
-    // Performance optimization variables
-    private var frameSkipCounter = 0
-    private val FRAME_SKIP_COUNT = 1 // Reduce skip for better accuracy
+    // Analyzed frames, for throttling UI updates
+    private var frameCounter = 0
 
     // Camera switching variables
     private var isUsingFrontCamera = true
@@ -154,11 +154,10 @@ class MilitaryPressActivity : AppCompatActivity() {
             )
         }
 
-        // Initialize pose detector with stream mode
-        val options = PoseDetectorOptions.Builder()
-            .setDetectorMode(PoseDetectorOptions.STREAM_MODE)
-            .build()
-        poseDetector = PoseDetection.getClient(options)
+        // Pose detector, analysis resolution and frame skipping follow how well the device keeps up
+        adaptiveAnalysis = AdaptiveAnalysis(this, AnalysisGovernor.builder().build()) {
+            mainHandler.post { bindCameraUseCases() }
+        }
 
         // Initialize executors
         cameraExecutor = Executors.newSingleThreadExecutor()
@@ -166,7 +165,8 @@ class MilitaryPressActivity : AppCompatActivity() {
 
         // Initialize pose classifier in a background thread
         backgroundExecutor.execute {
-            poseClassifierProcessor = PoseClassifierProcessor(this, true)
+            poseClassifierProcessor =
+                (application as PhysiqueAiApplication).poseClassifierRegistry.newProcessor(PoseExercise.MILITARY_PRESS)
         }
 
         // Update UI
@@ -217,7 +217,7 @@ class MilitaryPressActivity : AppCompatActivity() {
         }
 
         val imageAnalyzer = ImageAnalysis.Builder()
-            .setTargetResolution(android.util.Size(640, 480))
+            .setResolutionSelector(adaptiveAnalysis.resolutionSelector())
             .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
             .setImageQueueDepth(1)
             .build()
@@ -281,13 +281,7 @@ class MilitaryPressActivity : AppCompatActivity() {
         resetDetectionState()
 
         // Play reset sound
-        try {
-            val toneGen = ToneGenerator(AudioManager.STREAM_NOTIFICATION, 100)
-            toneGen.startTone(ToneGenerator.TONE_PROP_BEEP2, 150)
-            toneGen.release()
-        } catch (e: Exception) {
-            Log.e(TAG, "Error playing reset sound", e)
-        }
+        audioCues.play(AudioCueEngine.Cue.RESET)
 
         Log.d(TAG, "Dumbbell Shoulder Press counter reset")
         Toast.makeText(this, "Counter reset!", Toast.LENGTH_SHORT).show()
@@ -296,19 +290,16 @@ class MilitaryPressActivity : AppCompatActivity() {
     private inner class PoseAnalyzer : ImageAnalysis.Analyzer {
         @androidx.camera.core.ExperimentalGetImage
         override fun analyze(imageProxy: ImageProxy) {
-            frameSkipCounter++
-            if (frameSkipCounter % (FRAME_SKIP_COUNT + 1) != 0) {
-                imageProxy.close()
-                return
-            }
-
             val mediaImage = imageProxy.image
-            if (mediaImage != null) {
+            val timestampNanos = imageProxy.imageInfo.timestamp
+            if (mediaImage != null && adaptiveAnalysis.shouldAnalyze(timestampNanos)) {
                 val image = InputImage.fromMediaImage(mediaImage, imageProxy.imageInfo.rotationDegrees)
 
-                poseDetector.process(image)
+                val detectStartNanos = System.nanoTime()
+                adaptiveAnalysis.detector.process(image)
                     .addOnSuccessListener { pose ->
-                        processPose(pose, imageProxy)
+                        adaptiveAnalysis.onFrameAnalyzed(timestampNanos, detectStartNanos)
+                        processPose(pose, imageProxy, detectStartNanos)
                     }
                     .addOnFailureListener { e ->
                         Log.e(TAG, "Pose detection failed", e)
@@ -320,42 +311,36 @@ class MilitaryPressActivity : AppCompatActivity() {
         }
     }
 
-    private fun processPose(pose: Pose, imageProxy: ImageProxy) {
+    private fun processPose(pose: Pose, imageProxy: ImageProxy, detectStartNanos: Long) {
         try {
             val currentTime = System.currentTimeMillis()
 
-            // Optimized frame processing - skip every 3rd frame for balance
-            frameSkipCounter++
-            if (frameSkipCounter % 3 == 0) { // Process 2 out of 3 frames
-                imageProxy.close()
-                return
-            }
+            frameCounter++
 
             // Clear overlay and draw pose with proper setup
-            binding.graphicOverlay.clear()
+            val overlayFrame = binding.graphicOverlay.beginFrame()
 
             // Set up the overlay with correct image source info
             val imageWidth = imageProxy.width
             val imageHeight = imageProxy.height
             val isImageFlipped = isUsingFrontCamera
 
-            binding.graphicOverlay.setImageSourceInfo(imageWidth, imageHeight, isImageFlipped)
+            overlayFrame.setImageSourceInfo(imageWidth, imageHeight, isImageFlipped)
 
             if (pose.allPoseLandmarks.isNotEmpty()) {
-                binding.graphicOverlay.add(
-                    PoseGraphic(
-                        binding.graphicOverlay,
-                        pose,
-                        false, // showInFrameLikelihood - disabled to remove numbers and improve performance
-                        false, // visualizeZ - disabled for performance
-                        false, // rescaleZForVisualization - disabled for performance
-                        JavaArrayList<String>() // poseClassification
-                    )
+                overlayFrame.add(
+                    overlayFrame.retain(PoseGraphic::class.java) { PoseGraphic(binding.graphicOverlay) }
+                        .update(
+                            pose,
+                            false, // showInFrameLikelihood - disabled to remove numbers and improve performance
+                            false, // visualizeZ - disabled for performance
+                            false, // rescaleZForVisualization - disabled for performance
+                            null // repResult
+                        )
                 )
             }
 
-            // Skip frequent overlay redraws to maintain FPS
-            // binding.graphicOverlay.postInvalidate()
+            binding.graphicOverlay.publishFrame()
 
             // Get key landmarks for military press
             val leftShoulder = pose.getPoseLandmark(PoseLandmark.LEFT_SHOULDER)
@@ -374,7 +359,9 @@ class MilitaryPressActivity : AppCompatActivity() {
                 val avgConfidence = allLandmarks.map { it.inFrameLikelihood }.average().toFloat()
 
                 if (avgConfidence < 0.4f) {
-                    Log.d(TAG, "Low confidence: ${(avgConfidence*100).toInt()}%")
+                    if (BuildConfig.DEBUG) {
+                        Log.d(TAG, "Low confidence: ${(avgConfidence*100).toInt()}%")
+                    }
                     imageProxy.close()
                     return
                 }
@@ -491,7 +478,7 @@ class MilitaryPressActivity : AppCompatActivity() {
                 val isValidMilitaryPress = bothArmsUsed && avgConfidence > 0.2f
 
                 // ENHANCED DEBUG logging for troubleshooting
-                if (frameSkipCounter % 1 == 0) { // Every frame logging
+                if (BuildConfig.DEBUG) { // Every frame logging
                     Log.d(TAG, "═══ MILITARY PRESS DEBUG ═══")
                     Log.d(TAG, "💪 ELBOW ANGLES: L=${String.format("%.1f", leftElbowAngle)}° | R=${String.format("%.1f", rightElbowAngle)}°")
                     Log.d(TAG, "📍 READY=$isReadyPosition | UP=$isUpPosition | Valid=$isValidMilitaryPress")
@@ -526,7 +513,7 @@ class MilitaryPressActivity : AppCompatActivity() {
                 }
 
                 // State machine for military press counting
-                handleMilitaryPressStateMachine(isUpPosition, isReadyPosition, isValidMilitaryPress, singleArmDetected, isTooHighPosition, currentTime)
+                handleMilitaryPressStateMachine(isUpPosition, isReadyPosition, isValidMilitaryPress, singleArmDetected, isTooHighPosition, currentTime, detectStartNanos)
 
                 // Update UI with enhanced status
                 updatePoseStatusEnhanced(isUpPosition, isReadyPosition, isValidMilitaryPress, isTooHighPosition, isCrossedArms, isTooWide, isTooHigh, smoothedDiff, avgConfidence, pose, upFrameCount)
@@ -569,7 +556,7 @@ class MilitaryPressActivity : AppCompatActivity() {
         return Math.toDegrees(kotlin.math.acos(clampedCos.toDouble())).toFloat()
     }
 
-    private fun handleMilitaryPressStateMachine(isUpPosition: Boolean, isReadyPosition: Boolean, isValidMilitaryPress: Boolean, singleArmDetected: Boolean, isTooHighPosition: Boolean, currentTime: Long) {
+    private fun handleMilitaryPressStateMachine(isUpPosition: Boolean, isReadyPosition: Boolean, isValidMilitaryPress: Boolean, singleArmDetected: Boolean, isTooHighPosition: Boolean, currentTime: Long, detectStartNanos: Long) {
         // FIXED: ENSURE COUNTING ONLY HAPPENS IN UP POSITION
         when {
             isReadyPosition && isValidMilitaryPress -> {
@@ -594,14 +581,18 @@ class MilitaryPressActivity : AppCompatActivity() {
                 }
 
                 // DEBUG: This should NEVER count in ready position
-                Log.d(TAG, "📍 In READY position - NO COUNTING here")
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "📍 In READY position - NO COUNTING here")
+                }
             }
 
             isTooHighPosition && isValidMilitaryPress -> {
                 // TOO HIGH WARNING - arms over-extended
                 upFrameCount = 0 // Reset count frames
                 downFrameCount = 0
-                Log.d(TAG, "🚨 TOO HIGH - Arms over-extended! Bring arms down slightly")
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "🚨 TOO HIGH - Arms over-extended! Bring arms down slightly")
+                }
             }
 
             isUpPosition && isValidMilitaryPress -> {
@@ -610,11 +601,15 @@ class MilitaryPressActivity : AppCompatActivity() {
                 stableDownFrames = 0 // Reset down stability when moving up
 
                 // DEBUG: Show when we're in UP position
-                Log.d(TAG, "⬆️ In UP position - CHECKING for count...")
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "⬆️ In UP position - CHECKING for count...")
+                }
 
                 // CHECK: Must establish ready position first
                 if (!hasBeenDown) {
-                    Log.d(TAG, "🚨 UP POSITION detected but NO READY POSITION established first - must go to flexing pose!")
+                    if (BuildConfig.DEBUG) {
+                        Log.d(TAG, "🚨 UP POSITION detected but NO READY POSITION established first - must go to flexing pose!")
+                    }
                     return // Exit early, don't count
                 }
 
@@ -630,15 +625,7 @@ class MilitaryPressActivity : AppCompatActivity() {
                         lastPressTime = currentTime
 
                         // Play sound feedback
-                        backgroundExecutor.execute {
-                            try {
-                                val toneGen = ToneGenerator(AudioManager.STREAM_MUSIC, 100)
-                                toneGen.startTone(ToneGenerator.TONE_PROP_BEEP, 150)
-                                toneGen.release()
-                            } catch (e: Exception) {
-                                Log.e(TAG, "Failed to play sound: ${e.message}")
-                            }
-                        }
+                        audioCues.play(AudioCueEngine.Cue.REP, detectStartNanos)
 
                         Log.d(TAG, "🎉 MILITARY PRESS COUNTED! Total: $militaryPressCount - NOW GO DOWN TO RESET")
 
@@ -651,21 +638,27 @@ class MilitaryPressActivity : AppCompatActivity() {
                         }
                         }
                     } else {
-                        Log.d(TAG, "⏰ Count blocked by time interval (${timeSinceLastPress}ms < ${MIN_PRESS_INTERVAL}ms)")
+                        if (BuildConfig.DEBUG) {
+                            Log.d(TAG, "⏰ Count blocked by time interval (${timeSinceLastPress}ms < ${MIN_PRESS_INTERVAL}ms)")
+                        }
                     }
                 } else {
                     // Enhanced debugging
-                    when {
-                        !hasBeenDown -> Log.d(TAG, "⚠️ Must establish base position first")
-                        lastCountedUp -> Log.d(TAG, "✅ Already counted this rep - GO DOWN to reset for next count")
-                        upFrameCount < MIN_STABLE_FRAMES -> Log.d(TAG, "⚠️ Not enough stable UP frames (${upFrameCount}/${MIN_STABLE_FRAMES})")
+                    if (BuildConfig.DEBUG) {
+                        when {
+                            !hasBeenDown -> Log.d(TAG, "⚠️ Must establish base position first")
+                            lastCountedUp -> Log.d(TAG, "✅ Already counted this rep - GO DOWN to reset for next count")
+                            upFrameCount < MIN_STABLE_FRAMES -> Log.d(TAG, "⚠️ Not enough stable UP frames (${upFrameCount}/${MIN_STABLE_FRAMES})")
+                        }
                     }
                 }
             }
 
             // Reset frame counters when not in valid position
             else -> {
-                Log.d(TAG, "❓ In TRANSITION/INVALID position - no counting")
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "❓ In TRANSITION/INVALID position - no counting")
+                }
                 if (upFrameCount > 0) upFrameCount--
                 if (downFrameCount > 0) downFrameCount--
                 if (stableDownFrames > 0) stableDownFrames--
@@ -677,7 +670,7 @@ class MilitaryPressActivity : AppCompatActivity() {
                                          isValidMilitaryPress: Boolean, isTooHighPosition: Boolean, isCrossedArms: Boolean, isTooWide: Boolean, isTooHigh: Boolean, smoothedDiff: Float, avgConfidence: Float,
                                          pose: Pose, currentUpFrameCount: Int) {
         // Enhanced UI updates with detailed feedback for single arm detection
-        if (frameSkipCounter % 5 == 0) { // Update UI more frequently for better responsiveness
+        if (frameCounter % 5 == 0) { // Update UI more frequently for better responsiveness
             mainHandler.post {
                 // Get the required landmarks for single arm detection using ELBOW ANGLES
                 val leftShoulder = pose.getPoseLandmark(PoseLandmark.LEFT_SHOULDER)
@@ -822,16 +815,7 @@ class MilitaryPressActivity : AppCompatActivity() {
 
     private fun onSetComplete() {
         // Play completion sound
-        try {
-            val toneGenerator = ToneGenerator(AudioManager.STREAM_NOTIFICATION, 100)
-            toneGenerator.startTone(ToneGenerator.TONE_PROP_BEEP, 300)
-            backgroundExecutor.execute {
-                Thread.sleep(350)
-                toneGenerator.release()
-            }
-        } catch (e: Exception) {
-            Log.w(TAG, "Audio feedback failed: ${e.message}")
-        }
+        audioCues.play(AudioCueEngine.Cue.SET_COMPLETE)
 
         if (currentSet < totalSets) {
             // More sets remaining, start rest period
@@ -947,10 +931,15 @@ class MilitaryPressActivity : AppCompatActivity() {
         }
     }
 
+    override fun onPause() {
+        super.onPause()
+        FrameTraceDumper.dump(this, TAG)
+    }
+
     override fun onDestroy() {
         super.onDestroy()
         countDownTimer?.cancel()
         cameraExecutor.shutdown()
-        poseDetector.close()
+        adaptiveAnalysis.close()
     }
 }
\ No newline at end of file
@@ -4,6 +4,8 @@ import android.app.Application
 import android.content.Context
 import android.content.SharedPreferences
 import android.util.Log
+import com.example.physiqueaiapkfinal.visionutils.AudioCueEngine
+import com.example.physiqueaiapkfinal.visionutils.classification.PoseClassifierRegistry
 import com.google.firebase.FirebaseApp
 import com.google.firebase.auth.FirebaseAuth
 import com.google.firebase.firestore.FirebaseFirestore
@@ -16,6 +18,12 @@ class PhysiqueAiApplication : Application() {
 
     private lateinit var crashPrefs: SharedPreferences
 
+    // Pose samples shared by every exercise screen, loaded once per process.
+    val poseClassifierRegistry: PoseClassifierRegistry by lazy { PoseClassifierRegistry(this) }
+
+    // Rep and set sounds, played off the vision threads.
+    val audioCueEngine: AudioCueEngine by lazy { AudioCueEngine() }
+
     override fun onCreate() {
         super.onCreate()
         
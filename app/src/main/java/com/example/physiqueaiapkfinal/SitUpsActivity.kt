@@ -4,8 +4,6 @@ package com.example.physiqueaiapkfinal
 
 import android.Manifest
 import android.content.pm.PackageManager
-import android.media.AudioManager
-import android.media.ToneGenerator
 import android.os.Bundle
 import android.os.CountDownTimer
 import android.os.Handler
@@ -18,17 +16,19 @@ import androidx.camera.lifecycle.ProcessCameraProvider
 import androidx.core.app.ActivityCompat
 import androidx.core.content.ContextCompat
 import com.example.physiqueaiapkfinal.databinding.ActivitySitUpsBinding
+import com.example.physiqueaiapkfinal.visionutils.AdaptiveAnalysis
+import com.example.physiqueaiapkfinal.visionutils.AnalysisGovernor
+import com.example.physiqueaiapkfinal.visionutils.AudioCueEngine
+import com.example.physiqueaiapkfinal.visionutils.FrameTraceDumper
 import com.example.physiqueaiapkfinal.visionutils.GraphicOverlay
 import com.example.physiqueaiapkfinal.visionutils.PoseGraphic
+import com.example.physiqueaiapkfinal.visionutils.classification.PoseExercise
 import com.example.physiqueaiapkfinal.visionutils.classification.PoseClassifierProcessor
 import com.google.mlkit.vision.common.InputImage
 import com.google.mlkit.vision.pose.Pose
-import com.google.mlkit.vision.pose.PoseDetection
 import com.google.mlkit.vision.pose.PoseLandmark
-import com.google.mlkit.vision.pose.defaults.PoseDetectorOptions
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
-import java.util.ArrayList as JavaArrayList
 import kotlin.math.atan2
 
 class SitUpsActivity : AppCompatActivity() {
@@ -36,12 +36,13 @@ class SitUpsActivity : AppCompatActivity() {
     private lateinit var binding: ActivitySitUpsBinding
     private lateinit var cameraExecutor: ExecutorService
     private lateinit var backgroundExecutor: ExecutorService
-    private lateinit var poseDetector: com.google.mlkit.vision.pose.PoseDetector
+    private lateinit var adaptiveAnalysis: AdaptiveAnalysis
     private var poseClassifierProcessor: PoseClassifierProcessor? = null
     private val TAG = "SitUpsActivity"
     private var sitUpCount = 0
     private var targetReps: Int = 0
     private val mainHandler = Handler(Looper.getMainLooper())
+    private val audioCues: AudioCueEngine by lazy { (application as PhysiqueAiApplication).audioCueEngine }
 
     // Sit-up detection variables
     private var isDown = false
@@ -57,10 +58,6 @@ class SitUpsActivity : AppCompatActivity() {
     private val torsoAngleHistory = mutableListOf<Float>()
     private val HISTORY_SIZE = 8 // History size for smoothing
 
-    // Performance optimization variables
-    private var frameSkipCounter = 0
-    private val FRAME_SKIP_COUNT = 1 // Reduce skip for better accuracy
-
     // Camera switching variables
     private var isUsingFrontCamera = true
     private var cameraProvider: ProcessCameraProvider? = null
@@ -126,11 +123,10 @@ class SitUpsActivity : AppCompatActivity() {
             )
         }
 
-        // Initialize pose detector with stream mode
-        val options = PoseDetectorOptions.Builder()
-            .setDetectorMode(PoseDetectorOptions.STREAM_MODE)
-            .build()
-        poseDetector = PoseDetection.getClient(options)
+        // Pose detector, analysis resolution and frame skipping follow how well the device keeps up
+        adaptiveAnalysis = AdaptiveAnalysis(this, AnalysisGovernor.builder().build()) {
+            mainHandler.post { bindCameraUseCases() }
+        }
 
         // Initialize executors
         cameraExecutor = Executors.newSingleThreadExecutor()
@@ -138,7 +134,8 @@ class SitUpsActivity : AppCompatActivity() {
 
         // Initialize pose classifier in a background thread
         backgroundExecutor.execute {
-            poseClassifierProcessor = PoseClassifierProcessor(this, true)
+            poseClassifierProcessor =
+                (application as PhysiqueAiApplication).poseClassifierRegistry.newProcessor(PoseExercise.SIT_UPS)
         }
 
         // Update UI
@@ -189,7 +186,7 @@ class SitUpsActivity : AppCompatActivity() {
         }
 
         val imageAnalyzer = ImageAnalysis.Builder()
-            .setTargetResolution(android.util.Size(640, 480))
+            .setResolutionSelector(adaptiveAnalysis.resolutionSelector())
             .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
             .setImageQueueDepth(1)
             .build()
@@ -243,7 +240,6 @@ class SitUpsActivity : AppCompatActivity() {
         lastCountedUp = false
         downFrameCount = 0
         upFrameCount = 0
-        frameSkipCounter = 0
         torsoAngleHistory.clear()
     }
 
@@ -251,12 +247,15 @@ class SitUpsActivity : AppCompatActivity() {
         @androidx.camera.core.ExperimentalGetImage
         override fun analyze(imageProxy: ImageProxy) {
             val mediaImage = imageProxy.image
-            if (mediaImage != null) {
+            val timestampNanos = imageProxy.imageInfo.timestamp
+            if (mediaImage != null && adaptiveAnalysis.shouldAnalyze(timestampNanos)) {
                 val image = InputImage.fromMediaImage(mediaImage, imageProxy.imageInfo.rotationDegrees)
 
-                poseDetector.process(image)
+                val detectStartNanos = System.nanoTime()
+                adaptiveAnalysis.detector.process(image)
                     .addOnSuccessListener { pose ->
-                        processPose(pose, imageProxy.width, imageProxy.height)
+                        adaptiveAnalysis.onFrameAnalyzed(timestampNanos, detectStartNanos)
+                        processPose(pose, imageProxy.width, imageProxy.height, detectStartNanos)
                     }
                     .addOnFailureListener { e ->
                         Log.e(TAG, "Pose detection failed: ${e.message}", e)
@@ -270,40 +269,33 @@ class SitUpsActivity : AppCompatActivity() {
         }
     }
 
-    private fun processPose(pose: Pose, width: Int, height: Int) {
-        // Frame skipping for performance
-        frameSkipCounter++
-        if (frameSkipCounter <= FRAME_SKIP_COUNT) {
-            return
-        }
-        frameSkipCounter = 0
-
+    private fun processPose(pose: Pose, width: Int, height: Int, detectStartNanos: Long) {
         // Clear the overlay and draw pose
-        binding.graphicOverlay.clear()
+        val overlayFrame = binding.graphicOverlay.beginFrame()
 
         if (pose.allPoseLandmarks.isNotEmpty()) {
-            binding.graphicOverlay.add(
-                PoseGraphic(
-                    binding.graphicOverlay,
-                    pose,
-                    false, // showInFrameLikelihood
-                    false, // visualizeZ
-                    false, // rescaleZForVisualization
-                    JavaArrayList<String>() // poseClassification
-                )
+            overlayFrame.add(
+                overlayFrame.retain(PoseGraphic::class.java) { PoseGraphic(binding.graphicOverlay) }
+                    .update(
+                        pose,
+                        false, // showInFrameLikelihood
+                        false, // visualizeZ
+                        false, // rescaleZForVisualization
+                        null // repResult
+                    )
             )
         }
 
         // Update the overlay's image source info
         val isImageFlipped = isUsingFrontCamera
-        binding.graphicOverlay.setImageSourceInfo(width, height, isImageFlipped)
-        binding.graphicOverlay.postInvalidate()
+        overlayFrame.setImageSourceInfo(width, height, isImageFlipped)
+        binding.graphicOverlay.publishFrame()
 
         // Process sit-up exercise
-        processSitUpPose(pose)
+        processSitUpPose(pose, detectStartNanos)
     }
 
-    private fun processSitUpPose(pose: Pose) {
+    private fun processSitUpPose(pose: Pose, detectStartNanos: Long) {
         val landmarks = pose.allPoseLandmarks
         if (landmarks.isEmpty()) {
             mainHandler.post {
@@ -382,7 +374,7 @@ class SitUpsActivity : AppCompatActivity() {
                 if (!lastCountedUp && currentTime - lastSitUpTime > MIN_SIT_UP_INTERVAL) {
                     // Count the sit-up
                     incrementSitUpCount()
-                    playBeep()
+                    playBeep(detectStartNanos)
                     lastSitUpTime = currentTime
                     lastCountedUp = true
                 }
@@ -414,7 +406,9 @@ class SitUpsActivity : AppCompatActivity() {
         }
 
         // Debug logging
-        Log.d(TAG, "Sit-up - Torso: ${smoothedTorsoAngle.toInt()}°, Down: $isDown, Up count: $upFrameCount")
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Sit-up - Torso: ${smoothedTorsoAngle.toInt()}°, Down: $isDown, Up count: $upFrameCount")
+        }
     }
 
     private fun incrementSitUpCount() {
@@ -436,13 +430,8 @@ class SitUpsActivity : AppCompatActivity() {
         Log.d(TAG, "Sit-up counter reset")
     }
 
-    private fun playBeep() {
-        try {
-            val toneGen = ToneGenerator(AudioManager.STREAM_MUSIC, 100)
-            toneGen.startTone(ToneGenerator.TONE_PROP_BEEP, 200)
-        } catch (e: Exception) {
-            Log.e(TAG, "Error playing beep", e)
-        }
+    private fun playBeep(detectStartNanos: Long) {
+        audioCues.play(AudioCueEngine.Cue.REP, detectStartNanos)
     }
 
     private fun allPermissionsGranted() = REQUIRED_PERMISSIONS.all {
@@ -486,16 +475,7 @@ class SitUpsActivity : AppCompatActivity() {
 
     private fun onSetComplete() {
         // Play completion sound
-        try {
-            val toneGenerator = ToneGenerator(AudioManager.STREAM_NOTIFICATION, 100)
-            toneGenerator.startTone(ToneGenerator.TONE_PROP_BEEP, 300)
-            backgroundExecutor.execute {
-                Thread.sleep(350)
-                toneGenerator.release()
-            }
-        } catch (e: Exception) {
-            Log.w(TAG, "Audio feedback failed: ${e.message}")
-        }
+        audioCues.play(AudioCueEngine.Cue.SET_COMPLETE)
 
         if (currentSet < totalSets) {
             // More sets remaining, start rest period
@@ -591,12 +571,13 @@ class SitUpsActivity : AppCompatActivity() {
         super.onDestroy()
         countDownTimer?.cancel()
         cameraExecutor.shutdown()
-        poseDetector.close()
+        adaptiveAnalysis.close()
     }
 
     override fun onPause() {
         super.onPause()
         pauseTimer()
+        FrameTraceDumper.dump(this, TAG)
     }
 
     override fun onResume() {
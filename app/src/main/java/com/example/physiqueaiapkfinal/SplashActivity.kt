@@ -48,6 +48,9 @@ class SplashActivity : AppCompatActivity() {
             initializeViews()
             setupInitialState()
             startSplashSequence()
+
+            // Load pose samples while the splash is shown so exercise screens count from the first frame
+            (application as PhysiqueAiApplication).poseClassifierRegistry.prewarmAsync()
             
             // Safety timeout - if something goes wrong, navigate after 6 seconds
             handler.postDelayed({
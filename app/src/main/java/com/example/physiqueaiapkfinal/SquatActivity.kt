@@ -5,13 +5,12 @@ package com.example.physiqueaiapkfinal
 import android.Manifest
 import android.content.Context
 import android.content.pm.PackageManager
-import android.media.AudioManager
-import android.media.ToneGenerator
 import android.os.Build
 import android.os.Bundle
 import android.os.CountDownTimer
 import android.os.Handler
 import android.os.Looper
+import android.os.SystemClock
 import android.util.Log
 import android.view.Surface
 import android.view.WindowManager
@@ -22,17 +21,22 @@ import androidx.camera.lifecycle.ProcessCameraProvider
 import androidx.core.app.ActivityCompat
 import androidx.core.content.ContextCompat
 import com.example.physiqueaiapkfinal.databinding.ActivitySquatBinding
+import com.example.physiqueaiapkfinal.visionutils.AdaptiveAnalysis
+import com.example.physiqueaiapkfinal.visionutils.AnalysisGovernor
+import com.example.physiqueaiapkfinal.visionutils.AudioCueEngine
+import com.example.physiqueaiapkfinal.visionutils.FrameTrace
+import com.example.physiqueaiapkfinal.visionutils.FrameTraceDumper
 import com.example.physiqueaiapkfinal.visionutils.GraphicOverlay
 import com.example.physiqueaiapkfinal.visionutils.PoseGraphic
+import com.example.physiqueaiapkfinal.visionutils.classification.PoseExercise
 import com.example.physiqueaiapkfinal.visionutils.classification.PoseClassifierProcessor
+import com.example.physiqueaiapkfinal.visionutils.classification.RepResult
 import com.google.mlkit.vision.common.InputImage
 import com.google.mlkit.vision.pose.Pose
-import com.google.mlkit.vision.pose.PoseDetection
 import com.google.mlkit.vision.pose.PoseLandmark
-import com.google.mlkit.vision.pose.defaults.PoseDetectorOptions
+import java.util.Locale
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
-import java.util.ArrayList as JavaArrayList
 import kotlin.math.pow
 import kotlin.math.atan2
 import kotlin.math.sqrt
@@ -43,12 +47,13 @@ class SquatActivity : AppCompatActivity() {
     private lateinit var binding: ActivitySquatBinding
     private lateinit var cameraExecutor: ExecutorService
     private lateinit var backgroundExecutor: ExecutorService
-    private lateinit var poseDetector: com.google.mlkit.vision.pose.PoseDetector
+    private lateinit var adaptiveAnalysis: AdaptiveAnalysis
     private var poseClassifierProcessor: PoseClassifierProcessor? = null
     private val TAG = "SquatActivity"
     private var squatCount = 0
     private var targetReps: Int = 0
     private val mainHandler = Handler(Looper.getMainLooper())
+    private val audioCues: AudioCueEngine by lazy { (application as PhysiqueAiApplication).audioCueEngine }
 
     // Ultra-accurate squat detection variables
     private var isDown = false
@@ -81,9 +86,8 @@ class SquatActivity : AppCompatActivity() {
     // Orientation tracking
     private var lastRotation = Surface.ROTATION_0
 
-    // Performance optimization variables
-    private var frameSkipCounter = 0
-    private val FRAME_SKIP_COUNT = 1 // Reduce skip for better accuracy
+    // Analyzed frames, for throttling UI updates
+    private var frameCounter = 0
 
     // Camera switching variables
     private var isUsingFrontCamera = true
@@ -145,11 +149,10 @@ class SquatActivity : AppCompatActivity() {
             )
         }
 
-        // Initialize pose detector with stream mode
-        val options = PoseDetectorOptions.Builder()
-            .setDetectorMode(PoseDetectorOptions.STREAM_MODE)
-            .build()
-        poseDetector = PoseDetection.getClient(options)
+        // Pose detector, analysis resolution and frame skipping follow how well the device keeps up
+        adaptiveAnalysis = AdaptiveAnalysis(this, AnalysisGovernor.builder().build()) {
+            mainHandler.post { bindCameraUseCases() }
+        }
 
         // Initialize executors
         cameraExecutor = Executors.newSingleThreadExecutor()
@@ -157,7 +160,9 @@ class SquatActivity : AppCompatActivity() {
 
         // Initialize pose classifier in a background thread
         backgroundExecutor.execute {
-            poseClassifierProcessor = PoseClassifierProcessor(this, true)
+            poseClassifierProcessor =
+                (application as PhysiqueAiApplication).poseClassifierRegistry.newProcessor(PoseExercise.SQUATS)
+                    .apply { setRepListener { result -> mainHandler.post { onRepEvent(result) } } }
         }
 
         // Update UI
@@ -202,7 +207,7 @@ class SquatActivity : AppCompatActivity() {
         }
 
         val imageAnalyzer = ImageAnalysis.Builder()
-            .setTargetResolution(android.util.Size(640, 480))
+            .setResolutionSelector(adaptiveAnalysis.resolutionSelector())
             .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
             .setImageQueueDepth(1)
             .build()
@@ -259,13 +264,16 @@ class SquatActivity : AppCompatActivity() {
         @androidx.camera.core.ExperimentalGetImage
         override fun analyze(imageProxy: ImageProxy) {
             val mediaImage = imageProxy.image
-            if (mediaImage != null) {
+            val timestampNanos = imageProxy.imageInfo.timestamp
+            if (mediaImage != null && adaptiveAnalysis.shouldAnalyze(timestampNanos)) {
                 val image = InputImage.fromMediaImage(mediaImage, imageProxy.imageInfo.rotationDegrees)
 
-                poseDetector.process(image)
+                val detectStartNanos = System.nanoTime()
+                adaptiveAnalysis.detector.process(image)
                     .addOnSuccessListener { pose ->
+                        adaptiveAnalysis.onFrameAnalyzed(timestampNanos, detectStartNanos)
                         // Process pose detection results
-                        processPose(pose, imageProxy.width, imageProxy.height)
+                        processPose(pose, imageProxy.width, imageProxy.height, detectStartNanos)
                     }
                     .addOnFailureListener { e ->
                         Log.e(TAG, "Pose detection failed: ${e.message}", e)
@@ -279,16 +287,11 @@ class SquatActivity : AppCompatActivity() {
         }
     }
 
-    private fun processPose(pose: Pose, width: Int, height: Int) {
-        // Frame skipping for better performance
-        frameSkipCounter++
-        if (frameSkipCounter <= FRAME_SKIP_COUNT) {
-            return
-        }
-        frameSkipCounter = 0
+    private fun processPose(pose: Pose, width: Int, height: Int, detectStartNanos: Long) {
+        frameCounter++
 
         // Clear the overlay
-        binding.graphicOverlay.clear()
+        val overlayFrame = binding.graphicOverlay.beginFrame()
 
         // Get all landmarks
         val allPoseLandmarks = listOfNotNull(
@@ -313,19 +316,20 @@ class SquatActivity : AppCompatActivity() {
 
         if (allPoseLandmarks.isEmpty()) {
             // No landmarks detected
+            binding.graphicOverlay.publishFrame()
             return
         }
 
         // Add the graphic to the overlay using Java-style parameters (not named params)
-        binding.graphicOverlay.add(
-            PoseGraphic(
-                binding.graphicOverlay,
-                pose,
-                false, // showInFrameLikelihood - disabled for performance
-                false, // visualizeZ - disabled for performance
-                false, // rescaleZForVisualization - disabled for performance
-                JavaArrayList<String>() // poseClassification
-            )
+        overlayFrame.add(
+            overlayFrame.retain(PoseGraphic::class.java) { PoseGraphic(binding.graphicOverlay) }
+                .update(
+                    pose,
+                    false, // showInFrameLikelihood - disabled for performance
+                    false, // visualizeZ - disabled for performance
+                    false, // rescaleZForVisualization - disabled for performance
+                    null // repResult
+                )
         )
 
         // Get display orientation for proper coordinate handling
@@ -339,68 +343,44 @@ class SquatActivity : AppCompatActivity() {
 
         // Update the overlay's image source info with correct orientation
         val isImageFlipped = isUsingFrontCamera // Mirror front camera
-        binding.graphicOverlay.setImageSourceInfo(width, height, isImageFlipped)
-        binding.graphicOverlay.postInvalidate()
+        overlayFrame.setImageSourceInfo(width, height, isImageFlipped)
+        binding.graphicOverlay.publishFrame()
 
         // Check for squats with orientation awareness
-        checkForSquatDirectly(pose, rotation)
+        checkForSquatDirectly(pose, rotation, detectStartNanos)
 
-        // Run ML classification for squat training
+        // Run ML classification for squat training; the UI is only updated through onRepEvent
         val processor = poseClassifierProcessor
         if (processor != null) {
             backgroundExecutor.execute {
                 try {
-                    Log.d(TAG, "Starting pose classification...")
-                    val classificationResult = processor.getPoseResult(pose)
-                    Log.d(TAG, "Classification result: $classificationResult")
-
-                    // Update UI on the main thread
-                    mainHandler.post {
-                        // Update the counter from classification results
-                        if (classificationResult.isNotEmpty()) {
-                            val counterText = classificationResult[0]
-                            Log.d(TAG, "Counter text: $counterText")
-
-                            // Check for any squat-related classification
-                            if (counterText.contains("squats_down") || counterText.contains("squat")) {
-                                // Extract number from classification result
-                                val regex = "\\d+".toRegex()
-                                val countStr = regex.find(counterText)?.value
-                                Log.d(TAG, "Found ML count: $countStr")
-                                countStr?.let {
-                                    val mlCount = it.toInt()
-                                    if (mlCount > squatCount) {
-                                        squatCount = mlCount
-                                        updateSquatCounter()
-                                        Log.d(TAG, "🎉 ML detected squat! Count updated to: $squatCount")
-                                    }
-                                }
-                            }
-
-                            // Display the pose name and confidence if available
-                            if (classificationResult.size > 1) {
-                                val confidenceText = classificationResult[1]
-                                Log.d(TAG, "Confidence text: $confidenceText")
-                                binding.tvPoseStatus.text = confidenceText
-                            } else {
-                                // Show the counter text as pose status
-                                binding.tvPoseStatus.text = counterText
-                            }
-                        } else {
-                            Log.d(TAG, "Empty classification result")
-                            binding.tvPoseStatus.text = "Detecting pose..."
-                        }
-                    }
+                    processor.getRepResult(pose, SystemClock.elapsedRealtime(), detectStartNanos)
                 } catch (e: Exception) {
                     Log.e(TAG, "Classification error: ${e.message}", e)
-                    e.printStackTrace()
                 }
             }
         }
     }
 
+    // Called on the main thread when a rep completes or the classified pose changes
+    private fun onRepEvent(result: RepResult) {
+        if (result.isRepCompleted && result.repCount > squatCount) {
+            squatCount = result.repCount
+            updateSquatCounter()
+            Log.d(TAG, "🎉 ML detected squat! Count updated to: $squatCount")
+        }
+
+        // Display the pose name and confidence if available
+        val className = result.className
+        binding.tvPoseStatus.text = if (className != null) {
+            String.format(Locale.US, "%s : %.2f confidence", className, result.confidence)
+        } else {
+            "Detecting pose..."
+        }
+    }
+
     // Ultra-accurate squat detection with multiple criteria
-    private fun checkForSquatDirectly(pose: Pose, rotation: Int) {
+    private fun checkForSquatDirectly(pose: Pose, rotation: Int, detectStartNanos: Long) {
         val leftHip = pose.getPoseLandmark(PoseLandmark.LEFT_HIP)
         val rightHip = pose.getPoseLandmark(PoseLandmark.RIGHT_HIP)
         val leftKnee = pose.getPoseLandmark(PoseLandmark.LEFT_KNEE)
@@ -416,7 +396,9 @@ class SquatActivity : AppCompatActivity() {
 
             // Reset detection state if orientation changed
             if (rotation != lastRotation) {
-                Log.d(TAG, "Orientation changed from $lastRotation to $rotation - resetting detection state")
+                if (FrameTrace.ENABLED) {
+                    FrameTrace.record(FrameTrace.ORIENTATION_CHANGED, lastRotation, rotation)
+                }
                 downFrameCount = 0
                 upFrameCount = 0
                 kneeAngleHistory.clear()
@@ -432,7 +414,9 @@ class SquatActivity : AppCompatActivity() {
             val avgConfidence = allLandmarks.map { it.inFrameLikelihood }.average().toFloat()
 
             if (avgConfidence < 0.7f) { // High confidence required
-                Log.d(TAG, "Low confidence: ${(avgConfidence*100).toInt()}%")
+                if (FrameTrace.ENABLED) {
+                    FrameTrace.record(FrameTrace.LOW_CONFIDENCE, 0, avgConfidence)
+                }
                 return
             }
 
@@ -468,11 +452,20 @@ class SquatActivity : AppCompatActivity() {
                     isSymmetric && // Both legs symmetric
                     avgConfidence > 0.6f // Lowered confidence requirement
 
-            Log.d(TAG, "Squat Detection - Knee Angle: ${smoothedKneeAngle.toInt()}°, Down: $isDownPosition, HasBeenDown: $hasBeenDown, Symmetric: $isSymmetric, Confidence: ${(avgConfidence*100).toInt()}%, Knee Range OK: ${smoothedKneeAngle < 140f && smoothedKneeAngle > 70f}")
-
-            // Additional detailed logging
-            Log.d(TAG, "Body Position - avgHipY: ${String.format("%.3f", avgHipY)}, avgKneeY: ${String.format("%.3f", avgKneeY)}, avgShoulderY: ${String.format("%.3f", avgShoulderY)}")
-            Log.d(TAG, "Leg Angles - Left: ${leftKneeAngle.toInt()}°, Right: ${rightKneeAngle.toInt()}°, Symmetry Diff: ${Math.abs(leftKneeAngle - rightKneeAngle).toInt()}°")
+            if (FrameTrace.ENABLED) {
+                val kneeRangeOk = smoothedKneeAngle < 140f && smoothedKneeAngle > 70f
+                FrameTrace.record(
+                    FrameTrace.SQUAT_FRAME,
+                    (if (isDownPosition) 1 else 0) or (if (hasBeenDown) 2 else 0) or
+                            (if (isSymmetric) 4 else 0) or (if (kneeRangeOk) 8 else 0),
+                    0,
+                    smoothedKneeAngle,
+                    leftKneeAngle,
+                    rightKneeAngle,
+                    avgConfidence
+                )
+                FrameTrace.record(FrameTrace.SQUAT_POSITION, 0, 0, avgHipY, avgKneeY, avgShoulderY)
+            }
 
             // State tracking with higher stability requirements
             if (isDownPosition) {
@@ -505,7 +498,9 @@ class SquatActivity : AppCompatActivity() {
                             lastCountedUp = true // Prevent double counting
                             stateChanged = true
 
-                            Log.d(TAG, "🎉 Squat #$squatCount completed! UP motion detected, Knee Angle: ${smoothedKneeAngle.toInt()}°")
+                            if (FrameTrace.ENABLED) {
+                                FrameTrace.record(FrameTrace.REP_COUNTED, PoseExercise.SQUATS.ordinal, squatCount)
+                            }
 
                             mainHandler.post {
                                 updateSquatCounter()
@@ -514,16 +509,7 @@ class SquatActivity : AppCompatActivity() {
                             }
 
                             // Audio feedback
-                            try {
-                                val toneGenerator = ToneGenerator(AudioManager.STREAM_NOTIFICATION, 80)
-                                toneGenerator.startTone(ToneGenerator.TONE_PROP_BEEP, 200)
-                                backgroundExecutor.execute {
-                                    Thread.sleep(250)
-                                    toneGenerator.release()
-                                }
-                            } catch (e: Exception) {
-                                // Ignore audio errors
-                            }
+                            audioCues.play(AudioCueEngine.Cue.REP, detectStartNanos)
                         }
 
                         // Reset cycle tracking for next squat
@@ -540,7 +526,7 @@ class SquatActivity : AppCompatActivity() {
             }
 
             // UI updates with clearer status messages
-            if (stateChanged || (frameSkipCounter % 30 == 0)) {
+            if (stateChanged || (frameCounter % 30 == 0)) {
                 mainHandler.post {
                     if (isDown) {
                         binding.tvPositionStatus.text = "Position: Down (${smoothedKneeAngle.toInt()}°) - Hold Position"
@@ -621,6 +607,7 @@ class SquatActivity : AppCompatActivity() {
     override fun onDestroy() {
         super.onDestroy()
         cameraExecutor.shutdown()
+        adaptiveAnalysis.close()
     }
 
     companion object {
@@ -672,16 +659,7 @@ class SquatActivity : AppCompatActivity() {
 
     private fun onSetComplete() {
         // Play completion sound
-        try {
-            val toneGenerator = ToneGenerator(AudioManager.STREAM_NOTIFICATION, 100)
-            toneGenerator.startTone(ToneGenerator.TONE_PROP_BEEP, 300)
-            backgroundExecutor.execute {
-                Thread.sleep(350)
-                toneGenerator.release()
-            }
-        } catch (e: Exception) {
-            Log.w(TAG, "Audio feedback failed: ${e.message}")
-        }
+        audioCues.play(AudioCueEngine.Cue.SET_COMPLETE)
 
         if (currentSet < totalSets) {
             // More sets remaining, start rest period
@@ -769,6 +747,7 @@ class SquatActivity : AppCompatActivity() {
     override fun onPause() {
         super.onPause()
         pauseTimer()
+        FrameTraceDumper.dump(this, TAG)
     }
 
     override fun onResume() {
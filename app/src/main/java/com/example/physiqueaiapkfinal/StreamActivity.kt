@@ -5,8 +5,6 @@ package com.example.physiqueaiapkfinal
 import android.Manifest
 import android.content.Context
 import android.content.pm.PackageManager
-import android.media.AudioManager
-import android.media.ToneGenerator
 import android.os.Build
 import android.os.Bundle
 import android.os.CountDownTimer
@@ -22,17 +20,19 @@ import androidx.camera.lifecycle.ProcessCameraProvider
 import androidx.core.app.ActivityCompat
 import androidx.core.content.ContextCompat
 import com.example.physiqueaiapkfinal.databinding.ActivityStreamBinding
+import com.example.physiqueaiapkfinal.visionutils.AdaptiveAnalysis
+import com.example.physiqueaiapkfinal.visionutils.AnalysisGovernor
+import com.example.physiqueaiapkfinal.visionutils.AudioCueEngine
+import com.example.physiqueaiapkfinal.visionutils.FrameTraceDumper
 import com.example.physiqueaiapkfinal.visionutils.GraphicOverlay
 import com.example.physiqueaiapkfinal.visionutils.PoseGraphic
+import com.example.physiqueaiapkfinal.visionutils.classification.PoseExercise
 import com.example.physiqueaiapkfinal.visionutils.classification.PoseClassifierProcessor
 import com.google.mlkit.vision.common.InputImage
 import com.google.mlkit.vision.pose.Pose
-import com.google.mlkit.vision.pose.PoseDetection
 import com.google.mlkit.vision.pose.PoseLandmark
-import com.google.mlkit.vision.pose.defaults.PoseDetectorOptions
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
-import java.util.ArrayList as JavaArrayList
 import kotlin.math.pow
 import kotlin.math.atan2
 import kotlin.math.sqrt
@@ -43,12 +43,15 @@ class StreamActivity : AppCompatActivity() {
     private lateinit var binding: ActivityStreamBinding
     private lateinit var cameraExecutor: ExecutorService
     private lateinit var backgroundExecutor: ExecutorService
-    private lateinit var poseDetector: com.google.mlkit.vision.pose.PoseDetector
+    private lateinit var adaptiveAnalysis: AdaptiveAnalysis
+    // Moves the skeleton drawn at display rate between detector results; drawing only.
+    private val landmarkPredictor = PoseGraphic.createPredictor()
     private var poseClassifierProcessor: PoseClassifierProcessor? = null
     private val TAG = "StreamActivity"
     private var pushupCount = 0
     private var targetReps: Int = 0
     private val mainHandler = Handler(Looper.getMainLooper())
+    private val audioCues: AudioCueEngine by lazy { (application as PhysiqueAiApplication).audioCueEngine }
 
     // Ultra-accurate push-up detection variables
     private var isDown = false
@@ -83,10 +86,6 @@ class StreamActivity : AppCompatActivity() {
     // Orientation tracking
     private var lastRotation = Surface.ROTATION_0
     
-    // Performance optimization variables
-    private var frameSkipCounter = 0
-    private val FRAME_SKIP_COUNT = 1 // Reduce skip for better accuracy
-    
     // Camera switching variables
     private var isUsingFrontCamera = false
     private var cameraProvider: ProcessCameraProvider? = null
@@ -146,11 +145,10 @@ class StreamActivity : AppCompatActivity() {
             )
         }
 
-        // Initialize pose detector with stream mode
-        val options = PoseDetectorOptions.Builder()
-            .setDetectorMode(PoseDetectorOptions.STREAM_MODE)
-            .build()
-        poseDetector = PoseDetection.getClient(options)
+        // Pose detector, analysis resolution and frame skipping follow how well the device keeps up
+        adaptiveAnalysis = AdaptiveAnalysis(this, AnalysisGovernor.builder().build()) {
+            mainHandler.post { bindCameraUseCases() }
+        }
 
         // Initialize executors
         cameraExecutor = Executors.newSingleThreadExecutor()
@@ -158,7 +156,8 @@ class StreamActivity : AppCompatActivity() {
 
         // Initialize pose classifier in a background thread
         backgroundExecutor.execute {
-            poseClassifierProcessor = PoseClassifierProcessor(this, true)
+            poseClassifierProcessor =
+                (application as PhysiqueAiApplication).poseClassifierRegistry.newProcessor(PoseExercise.PUSHUPS)
         }
 
         // Update UI
@@ -203,7 +202,7 @@ class StreamActivity : AppCompatActivity() {
         }
 
         val imageAnalyzer = ImageAnalysis.Builder()
-            .setTargetResolution(android.util.Size(640, 480))
+            .setResolutionSelector(adaptiveAnalysis.resolutionSelector())
             .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
             .setImageQueueDepth(1)
             .build()
@@ -247,6 +246,7 @@ class StreamActivity : AppCompatActivity() {
     private fun resetPoseDetectionState() {
         isDown = false
         lastPushupTime = 0L
+        landmarkPredictor.reset()
         
         Log.d(TAG, "Pose detection state reset for camera switch")
     }
@@ -255,13 +255,16 @@ class StreamActivity : AppCompatActivity() {
         @androidx.camera.core.ExperimentalGetImage
         override fun analyze(imageProxy: ImageProxy) {
             val mediaImage = imageProxy.image
-            if (mediaImage != null) {
+            val timestampNanos = imageProxy.imageInfo.timestamp
+            if (mediaImage != null && adaptiveAnalysis.shouldAnalyze(timestampNanos)) {
                 val image = InputImage.fromMediaImage(mediaImage, imageProxy.imageInfo.rotationDegrees)
 
-                poseDetector.process(image)
+                val detectStartNanos = System.nanoTime()
+                adaptiveAnalysis.detector.process(image)
                     .addOnSuccessListener { pose ->
+                        adaptiveAnalysis.onFrameAnalyzed(timestampNanos, detectStartNanos)
                         // Process pose detection results
-                        processPose(pose, imageProxy.width, imageProxy.height)
+                        processPose(pose, imageProxy.width, imageProxy.height, detectStartNanos)
                     }
                     .addOnFailureListener { e ->
                         Log.e(TAG, "Pose detection failed: ${e.message}", e)
@@ -275,16 +278,9 @@ class StreamActivity : AppCompatActivity() {
         }
     }
 
-    private fun processPose(pose: Pose, width: Int, height: Int) {
-        // Frame skipping for better performance
-        frameSkipCounter++
-        if (frameSkipCounter <= FRAME_SKIP_COUNT) {
-            return
-        }
-        frameSkipCounter = 0
-
+    private fun processPose(pose: Pose, width: Int, height: Int, frameTimeNanos: Long) {
         // Clear the overlay
-        binding.graphicOverlay.clear()
+        val overlayFrame = binding.graphicOverlay.beginFrame()
 
         // Get all landmarks
         val allPoseLandmarks = listOfNotNull(
@@ -309,19 +305,23 @@ class StreamActivity : AppCompatActivity() {
 
         if (allPoseLandmarks.isEmpty()) {
             // No landmarks detected
+            binding.graphicOverlay.publishFrame()
             return
         }
 
         // Add the graphic to the overlay using Java-style parameters (not named params)
-        binding.graphicOverlay.add(
-            PoseGraphic(
-                binding.graphicOverlay,
-                pose,
-                false, // showInFrameLikelihood - disabled for performance
-                false, // visualizeZ - disabled for performance
-                false, // rescaleZForVisualization - disabled for performance
-                JavaArrayList<String>() // poseClassification
-            )
+        overlayFrame.add(
+            overlayFrame.retain(PoseGraphic::class.java) { PoseGraphic(binding.graphicOverlay) }
+                .update(
+                    pose,
+                    false, // showInFrameLikelihood - disabled for performance
+                    false, // visualizeZ - disabled for performance
+                    false, // rescaleZForVisualization - disabled for performance
+                    null, // repResult
+                    null, // crop
+                    landmarkPredictor,
+                    frameTimeNanos
+                )
         )
 
         // Get display orientation for proper coordinate handling
@@ -335,54 +335,29 @@ class StreamActivity : AppCompatActivity() {
 
         // Update the overlay's image source info with correct orientation
         val isImageFlipped = isUsingFrontCamera // Mirror front camera
-        binding.graphicOverlay.setImageSourceInfo(width, height, isImageFlipped)
-        binding.graphicOverlay.postInvalidate()
+        overlayFrame.setImageSourceInfo(width, height, isImageFlipped)
+        binding.graphicOverlay.publishFrame()
 
         // Check for push-ups with orientation awareness
-        checkForPushupDirectly(pose, rotation)
+        checkForPushupDirectly(pose, rotation, frameTimeNanos)
 
         // Comment out classification for now to avoid conflicts
         /*
-        // Run classification on a worker thread (this is just for visual feedback)
+        // Run classification on a worker thread (this is just for visual feedback). Results reach
+        // the UI through the processor's RepListener, which only fires on reps and pose changes:
+        //   processor.setRepListener { result -> mainHandler.post {
+        //       if (result.isRepCompleted) {
+        //           pushupCount = result.repCount
+        //           binding.tvPushupCounter.text = getString(R.string.pushup_counter_text, pushupCount)
+        //       }
+        //   } }
         val processor = poseClassifierProcessor
         if (processor != null) {
             backgroundExecutor.execute {
                 try {
-                    Log.d(TAG, "Starting pose classification...")
-                    val classificationResult = processor.getPoseResult(pose)
-                    Log.d(TAG, "Classification result: $classificationResult")
-                    
-                    // Update UI on the main thread
-                    mainHandler.post {
-                        // Update the counter from classification results
-                        if (classificationResult.isNotEmpty()) {
-                            val counterText = classificationResult[0]
-                            Log.d(TAG, "Counter text: $counterText")
-                            
-                            if (counterText.contains("pushups_down")) {
-                                // Extract number from "pushups_down : X reps"
-                                val regex = "\\d+".toRegex()
-                                val countStr = regex.find(counterText)?.value
-                                Log.d(TAG, "Found count: $countStr")
-                                countStr?.let {
-                                    pushupCount = it.toInt()
-                                    binding.tvPushupCounter.text = getString(R.string.pushup_counter_text, pushupCount)
-                                }
-                            }
-                            
-                            // Display the pose name and confidence if available
-                            if (classificationResult.size > 1) {
-                                val confidenceText = classificationResult[1]
-                                Log.d(TAG, "Confidence text: $confidenceText")
-                                binding.tvPoseStatus.text = confidenceText
-                            }
-                        } else {
-                            Log.d(TAG, "Empty classification result")
-                        }
-                    }
+                    processor.getRepResult(pose)
                 } catch (e: Exception) {
                     Log.e(TAG, "Classification error: ${e.message}", e)
-                    e.printStackTrace()
                 }
             }
         }
@@ -390,7 +365,7 @@ class StreamActivity : AppCompatActivity() {
     }
 
     // Ultra-accurate push-up detection with multiple criteria
-    private fun checkForPushupDirectly(pose: Pose, rotation: Int) {
+    private fun checkForPushupDirectly(pose: Pose, rotation: Int, detectStartNanos: Long) {
         val leftShoulder = pose.getPoseLandmark(PoseLandmark.LEFT_SHOULDER)
         val rightShoulder = pose.getPoseLandmark(PoseLandmark.RIGHT_SHOULDER)
         val leftElbow = pose.getPoseLandmark(PoseLandmark.LEFT_ELBOW)
@@ -422,7 +397,9 @@ class StreamActivity : AppCompatActivity() {
             // Simple detection: if elbow is significantly below shoulder = down position
             val isInDownPosition = avgElbowY > avgShoulderY + 0.08f
             
-            Log.d(TAG, "CLEAN Detection - ElbowY: ${String.format("%.3f", avgElbowY)}, ShoulderY: ${String.format("%.3f", avgShoulderY)}, InDown: $isInDownPosition, CurrentState: $isDown, Count: $pushupCount")
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "CLEAN Detection - ElbowY: ${String.format("%.3f", avgElbowY)}, ShoulderY: ${String.format("%.3f", avgShoulderY)}, InDown: $isInDownPosition, CurrentState: $isDown, Count: $pushupCount")
+            }
             
             // STATE MACHINE: Only two states - UP or DOWN
             if (isInDownPosition && !isDown) {
@@ -434,7 +411,9 @@ class StreamActivity : AppCompatActivity() {
                     pushupCount++
                     lastPushupTime = currentTime
                     
-                    Log.d(TAG, "✅ COUNTED #$pushupCount - DOWN position detected")
+                    if (BuildConfig.DEBUG) {
+                        Log.d(TAG, "✅ COUNTED #$pushupCount - DOWN position detected")
+                    }
                     
                     mainHandler.post {
                         updatePushupCounter()
@@ -443,19 +422,14 @@ class StreamActivity : AppCompatActivity() {
                     }
                     
                     // Audio feedback
-                    try {
-                        val toneGenerator = ToneGenerator(AudioManager.STREAM_NOTIFICATION, 80)
-                        toneGenerator.startTone(ToneGenerator.TONE_PROP_BEEP, 200)
-                        backgroundExecutor.execute {
-                            Thread.sleep(250)
-                            toneGenerator.release()
-                        }
-                    } catch (e: Exception) { }
+                    audioCues.play(AudioCueEngine.Cue.REP, detectStartNanos)
                 }
             } else if (!isInDownPosition && isDown) {
                 // Transition from DOWN to UP - NO COUNTING, just state change
                 isDown = false
-                Log.d(TAG, "⬆️ UP position - No counting, ready for next")
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "⬆️ UP position - No counting, ready for next")
+                }
                 
                 mainHandler.post {
                     binding.tvPositionStatus.text = "Position: Up - Go down to count next"
@@ -548,16 +522,7 @@ class StreamActivity : AppCompatActivity() {
 
     private fun onSetComplete() {
         // Play completion sound
-        try {
-            val toneGenerator = ToneGenerator(AudioManager.STREAM_NOTIFICATION, 100)
-            toneGenerator.startTone(ToneGenerator.TONE_PROP_BEEP, 300)
-            backgroundExecutor.execute {
-                Thread.sleep(350)
-                toneGenerator.release()
-            }
-        } catch (e: Exception) {
-            Log.w(TAG, "Audio feedback failed: ${e.message}")
-        }
+        audioCues.play(AudioCueEngine.Cue.SET_COMPLETE)
 
         if (currentSet < totalSets) {
             // More sets remaining, start rest period
@@ -643,6 +608,7 @@ class StreamActivity : AppCompatActivity() {
     override fun onPause() {
         super.onPause()
         pauseTimer()
+        FrameTraceDumper.dump(this, TAG)
     }
 
     override fun onResume() {
@@ -656,6 +622,7 @@ class StreamActivity : AppCompatActivity() {
         super.onDestroy()
         countDownTimer?.cancel()
         cameraExecutor.shutdown()
+        adaptiveAnalysis.close()
     }
 
     private fun removeExerciseAndFinish() {
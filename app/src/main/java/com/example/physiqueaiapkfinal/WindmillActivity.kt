@@ -8,8 +8,6 @@ import android.Manifest
 import android.content.Context
 import android.content.pm.PackageManager
 import android.graphics.Color
-import android.media.AudioManager
-import android.media.ToneGenerator
 import android.os.Build
 import android.os.Bundle
 import android.os.CountDownTimer
@@ -25,17 +23,18 @@ import androidx.camera.lifecycle.ProcessCameraProvider
 import androidx.core.app.ActivityCompat
 import androidx.core.content.ContextCompat
 import com.example.physiqueaiapkfinal.databinding.ActivityWindmillBinding
+import com.example.physiqueaiapkfinal.visionutils.AdaptiveAnalysis
+import com.example.physiqueaiapkfinal.visionutils.AnalysisGovernor
+import com.example.physiqueaiapkfinal.visionutils.AudioCueEngine
+import com.example.physiqueaiapkfinal.visionutils.FrameTraceDumper
 import com.example.physiqueaiapkfinal.visionutils.GraphicOverlay
 import com.example.physiqueaiapkfinal.visionutils.PoseGraphic
 import com.example.physiqueaiapkfinal.visionutils.classification.PoseClassifierProcessor
 import com.google.mlkit.vision.common.InputImage
 import com.google.mlkit.vision.pose.Pose
-import com.google.mlkit.vision.pose.PoseDetection
 import com.google.mlkit.vision.pose.PoseLandmark
-import com.google.mlkit.vision.pose.defaults.PoseDetectorOptions
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
-import java.util.ArrayList as JavaArrayList
 import kotlin.math.abs
 import kotlin.math.sqrt
 import kotlin.math.pow
@@ -45,18 +44,17 @@ class WindmillActivity : AppCompatActivity() {
     private lateinit var binding: ActivityWindmillBinding
     private lateinit var cameraExecutor: ExecutorService
     private lateinit var backgroundExecutor: ExecutorService
-    private lateinit var poseDetector: com.google.mlkit.vision.pose.PoseDetector
+    private lateinit var adaptiveAnalysis: AdaptiveAnalysis
     private var poseClassifierProcessor: PoseClassifierProcessor? = null
     private val TAG = "WindmillActivity"
     private var windmillCount = 0
     private var targetReps: Int = 0
     private val mainHandler = Handler(Looper.getMainLooper())
+    private val audioCues: AudioCueEngine by lazy { (application as PhysiqueAiApplication).audioCueEngine }
 
     // Direct windmill detection variables (hybrid approach)
     private var lastWindmillTime = 0L
     private val MIN_WINDMILL_INTERVAL = 500L // Reduced from 1000L to 500L for better responsiveness
-    private var frameSkipCounter = 0
-    private val FRAME_SKIP_COUNT = 1 // Reduced for better responsiveness
 
     // Windmill state tracking - improved
     private var lastArmState = ""
@@ -131,11 +129,10 @@ class WindmillActivity : AppCompatActivity() {
         cameraExecutor = Executors.newSingleThreadExecutor()
         backgroundExecutor = Executors.newSingleThreadExecutor()
 
-        // Initialize pose detector
-        val options = PoseDetectorOptions.Builder()
-            .setDetectorMode(PoseDetectorOptions.STREAM_MODE)
-            .build()
-        poseDetector = PoseDetection.getClient(options)
+        // Pose detector, analysis resolution and frame skipping follow how well the device keeps up
+        adaptiveAnalysis = AdaptiveAnalysis(this, AnalysisGovernor.builder().build()) {
+            mainHandler.post { bindCameraUseCases() }
+        }
 
         // Set up UI controls
         setupControls()
@@ -185,6 +182,7 @@ class WindmillActivity : AppCompatActivity() {
         imageCapture = ImageCapture.Builder().build()
 
         val imageAnalyzer = ImageAnalysis.Builder()
+            .setResolutionSelector(adaptiveAnalysis.resolutionSelector())
             .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
             .build()
             .also {
@@ -205,26 +203,21 @@ class WindmillActivity : AppCompatActivity() {
 
     @OptIn(androidx.camera.core.ExperimentalGetImage::class)
     private fun processImageProxy(imageProxy: ImageProxy) {
-        // Frame skipping for better performance
-        frameSkipCounter++
-        if (frameSkipCounter <= FRAME_SKIP_COUNT) {
-            imageProxy.close()
-            return
-        }
-        frameSkipCounter = 0
-
         val mediaImage = imageProxy.image
-        if (mediaImage != null) {
+        val timestampNanos = imageProxy.imageInfo.timestamp
+        if (mediaImage != null && adaptiveAnalysis.shouldAnalyze(timestampNanos)) {
             val image = InputImage.fromMediaImage(mediaImage, imageProxy.imageInfo.rotationDegrees)
 
-            poseDetector.process(image)
+            val detectStartNanos = System.nanoTime()
+            adaptiveAnalysis.detector.process(image)
                 .addOnSuccessListener { pose ->
+                    adaptiveAnalysis.onFrameAnalyzed(timestampNanos, detectStartNanos)
                     // Fix overlay alignment by using imageProxy dimensions and rotation
                     val sourceInfo = when (imageProxy.imageInfo.rotationDegrees) {
                         90, 270 -> Pair(imageProxy.height, imageProxy.width)
                         else -> Pair(imageProxy.width, imageProxy.height)
                     }
-                    processPose(pose, sourceInfo.first, sourceInfo.second, imageProxy.imageInfo.rotationDegrees)
+                    processPose(pose, sourceInfo.first, sourceInfo.second, imageProxy.imageInfo.rotationDegrees, detectStartNanos)
                 }
                 .addOnFailureListener { e ->
                     Log.e(TAG, "Pose detection failed: ${e.message}", e)
@@ -237,14 +230,14 @@ class WindmillActivity : AppCompatActivity() {
         }
     }
 
-    private fun processPose(pose: Pose, width: Int, height: Int, rotation: Int) {
+    private fun processPose(pose: Pose, width: Int, height: Int, rotation: Int, detectStartNanos: Long) {
         // Clear overlay first
         runOnUiThread {
-            binding.graphicOverlay.clear()
+            val overlayFrame = binding.graphicOverlay.beginFrame()
 
             // Proper overlay alignment setup
             val isImageFlipped = lensFacing == CameraSelector.LENS_FACING_FRONT
-            binding.graphicOverlay.setImageSourceInfo(width, height, isImageFlipped)
+            overlayFrame.setImageSourceInfo(width, height, isImageFlipped)
 
             // Get all landmarks for pose visualization
             val allPoseLandmarks = pose.allPoseLandmarks
@@ -252,27 +245,29 @@ class WindmillActivity : AppCompatActivity() {
             if (allPoseLandmarks.isEmpty()) {
                 binding.statusText.text = "No pose detected"
                 binding.statusText.setTextColor(Color.WHITE) // Normal color for instructions
+                binding.graphicOverlay.publishFrame()
                 return@runOnUiThread
             }
 
             // Add the graphic to the overlay for pose visualization
-            binding.graphicOverlay.add(
-                PoseGraphic(
-                    binding.graphicOverlay,
-                    pose,
-                    false, // showInFrameLikelihood
-                    false, // visualizeZ
-                    false, // rescaleZForVisualization
-                    JavaArrayList<String>() // poseClassification
-                )
+            overlayFrame.add(
+                overlayFrame.retain(PoseGraphic::class.java) { PoseGraphic(binding.graphicOverlay) }
+                    .update(
+                        pose,
+                        false, // showInFrameLikelihood
+                        false, // visualizeZ
+                        false, // rescaleZForVisualization
+                        null // repResult
+                    )
             )
+            binding.graphicOverlay.publishFrame()
         }
 
         // Direct windmill detection (simplified and more responsive)
-        detectWindmill(pose)
+        detectWindmill(pose, detectStartNanos)
     }
 
-    private fun detectWindmill(pose: Pose) {
+    private fun detectWindmill(pose: Pose, detectStartNanos: Long) {
         // Get essential landmarks including legs for standing check
         val leftWrist = pose.getPoseLandmark(PoseLandmark.LEFT_WRIST)
         val rightWrist = pose.getPoseLandmark(PoseLandmark.RIGHT_WRIST)
@@ -396,7 +391,7 @@ class WindmillActivity : AppCompatActivity() {
                     binding.statusText.text = "EXCELLENT! Left arm up, right hand touching LEFT foot - COUNTED!"
                     binding.statusText.setTextColor(Color.BLUE) // Blue text for counting indication
                     if (lastArmState != "left_windmill" && currentTime - lastWindmillTime > MIN_WINDMILL_INTERVAL) {
-                        incrementCount()
+                        incrementCount(detectStartNanos)
                         lastWindmillTime = currentTime
                         lastArmState = "left_windmill"
                         lastDetectedSide = "left"
@@ -406,7 +401,7 @@ class WindmillActivity : AppCompatActivity() {
                     binding.statusText.text = "EXCELLENT! Right arm up, left hand touching RIGHT foot - COUNTED!"
                     binding.statusText.setTextColor(Color.BLUE) // Blue text for counting indication
                     if (lastArmState != "right_windmill" && currentTime - lastWindmillTime > MIN_WINDMILL_INTERVAL) {
-                        incrementCount()
+                        incrementCount(detectStartNanos)
                         lastWindmillTime = currentTime
                         lastArmState = "right_windmill"
                         lastDetectedSide = "right"
@@ -463,34 +458,31 @@ class WindmillActivity : AppCompatActivity() {
         }
 
         // Simple and clear debug logging
-        Log.d(TAG, "WINDMILL Detection (crossed pattern):")
-        Log.d(TAG, "Standing: $isStanding, T-pose: $isTpose")
-        Log.d(TAG, "Left arm up: $leftArmUp (Y: ${leftWristPos.y.toInt()}, shoulder: ${avgShoulderY.toInt()})")
-        Log.d(TAG, "Right arm up: $rightArmUp (Y: ${rightWristPos.y.toInt()}, shoulder: ${avgShoulderY.toInt()})")
-        Log.d(TAG, "Right hand reaching LEFT foot: $rightHandReachingLeftFoot")
-        Log.d(TAG, "Left hand reaching RIGHT foot: $leftHandReachingRightFoot")
-        Log.d(TAG, "Ground level: ${groundLevel.toInt()}, Touch zone H: ${touchZoneHorizontal.toInt()}px, V: ${touchZoneVertical.toInt()}px")
-        Log.d(TAG, "COUNTING - Left windmill: $isLeftWindmill, Right windmill: $isRightWindmill")
-        Log.d(TAG, "Distance to feet - Right hand to LEFT foot: ${rightHandToLeftFootDistance.toInt()}px, Left hand to RIGHT foot: ${leftHandToRightFootDistance.toInt()}px")
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "WINDMILL Detection (crossed pattern):")
+            Log.d(TAG, "Standing: $isStanding, T-pose: $isTpose")
+            Log.d(TAG, "Left arm up: $leftArmUp (Y: ${leftWristPos.y.toInt()}, shoulder: ${avgShoulderY.toInt()})")
+            Log.d(TAG, "Right arm up: $rightArmUp (Y: ${rightWristPos.y.toInt()}, shoulder: ${avgShoulderY.toInt()})")
+            Log.d(TAG, "Right hand reaching LEFT foot: $rightHandReachingLeftFoot")
+            Log.d(TAG, "Left hand reaching RIGHT foot: $leftHandReachingRightFoot")
+            Log.d(TAG, "Ground level: ${groundLevel.toInt()}, Touch zone H: ${touchZoneHorizontal.toInt()}px, V: ${touchZoneVertical.toInt()}px")
+            Log.d(TAG, "COUNTING - Left windmill: $isLeftWindmill, Right windmill: $isRightWindmill")
+            Log.d(TAG, "Distance to feet - Right hand to LEFT foot: ${rightHandToLeftFootDistance.toInt()}px, Left hand to RIGHT foot: ${leftHandToRightFootDistance.toInt()}px")
+        }
     }
 
-    private fun incrementCount() {
+    private fun incrementCount(detectStartNanos: Long) {
         // Don't count reps during rest period
         if (!isRestPeriod) {
             windmillCount++
             updateCountDisplay()
-            playBeep()
+            playBeep(detectStartNanos)
             Log.d(TAG, "Windmill count: $windmillCount")
         }
     }
 
-    private fun playBeep() {
-        try {
-            val toneGenerator = ToneGenerator(AudioManager.STREAM_NOTIFICATION, 100)
-            toneGenerator.startTone(ToneGenerator.TONE_PROP_BEEP, 200)
-        } catch (e: Exception) {
-            Log.e(TAG, "Error playing beep: ${e.message}")
-        }
+    private fun playBeep(detectStartNanos: Long) {
+        audioCues.play(AudioCueEngine.Cue.REP, detectStartNanos)
     }
 
     private fun resetCount() {
@@ -555,16 +547,7 @@ class WindmillActivity : AppCompatActivity() {
 
     private fun onSetComplete() {
         // Play completion sound
-        try {
-            val toneGenerator = ToneGenerator(AudioManager.STREAM_NOTIFICATION, 100)
-            toneGenerator.startTone(ToneGenerator.TONE_PROP_BEEP, 300)
-            backgroundExecutor.execute {
-                Thread.sleep(350)
-                toneGenerator.release()
-            }
-        } catch (e: Exception) {
-            Log.w(TAG, "Audio feedback failed: ${e.message}")
-        }
+        audioCues.play(AudioCueEngine.Cue.SET_COMPLETE)
 
         if (currentSet < totalSets) {
             // More sets remaining, start rest period
@@ -664,6 +647,7 @@ class WindmillActivity : AppCompatActivity() {
     override fun onPause() {
         super.onPause()
         pauseTimer()
+        FrameTraceDumper.dump(this, TAG)
     }
 
     override fun onResume() {
@@ -677,7 +661,7 @@ class WindmillActivity : AppCompatActivity() {
         super.onDestroy()
         countDownTimer?.cancel()
         cameraExecutor.shutdown()
-        poseDetector.close()
+        adaptiveAnalysis.close()
     }
 
     private fun removeExerciseAndFinish() {
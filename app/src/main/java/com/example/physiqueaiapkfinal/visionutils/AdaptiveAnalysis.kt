@@ -0,0 +1,147 @@
+package com.example.physiqueaiapkfinal.visionutils
+
+import android.content.Context
+import android.os.Build
+import android.os.PowerManager
+import android.util.Log
+import android.util.Size
+import androidx.camera.core.resolutionselector.ResolutionSelector
+import androidx.camera.core.resolutionselector.ResolutionStrategy
+import com.google.mlkit.vision.pose.PoseDetection
+import com.google.mlkit.vision.pose.PoseDetector
+import com.google.mlkit.vision.pose.accurate.AccuratePoseDetectorOptions
+import com.google.mlkit.vision.pose.defaults.PoseDetectorOptions
+
+/**
+ * Runs camera pose analysis at the level an [AnalysisGovernor] picks: analysis resolution, frame
+ * skipping and detector mode.
+ *
+ * The analyzer asks [shouldAnalyze] for every camera frame, runs [detector] on the ones it should
+ * and reports the detector latency through [onFrameAnalyzed]. When the governor picks a new
+ * resolution, [onResolutionChanged] is called so the activity can bind its use cases again with
+ * [resolutionSelector]; frame skipping and detector mode change in place.
+ */
+class AdaptiveAnalysis(
+  context: Context,
+  private val governor: AnalysisGovernor,
+  private val onResolutionChanged: () -> Unit
+) {
+
+  companion object {
+    private const val TAG = "AdaptiveAnalysis"
+  }
+
+  private val powerManager = context.getSystemService(Context.POWER_SERVICE) as PowerManager
+  private val thermalListener =
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+      PowerManager.OnThermalStatusChangedListener { status -> thermalStatus = status }
+    } else {
+      null
+    }
+  @Volatile private var thermalStatus = AnalysisGovernor.THERMAL_STATUS_NONE
+
+  // Both detectors are kept once created, since a frame may still be in the previous one.
+  private var baseDetector: PoseDetector? = null
+  private var accurateDetector: PoseDetector? = null
+  // Touched by the analyzer thread only.
+  private var skippedInRow = 0
+  // Level whose resolution the use cases were last bound with.
+  @Volatile private var resolutionLevel = governor.level
+
+  /** Detector for the current level. */
+  @Volatile
+  var detector: PoseDetector = detectorFor(governor.level)
+    private set
+
+  init {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+      thermalListener?.let { powerManager.addThermalStatusListener(it) }
+    }
+  }
+
+  val level: AnalysisGovernor.Level
+    get() = governor.level
+
+  /** Selects the analysis resolution of the current level, or the closest the camera has. */
+  fun resolutionSelector(): ResolutionSelector {
+    val level = governor.level
+    return ResolutionSelector.Builder()
+      .setResolutionStrategy(
+        ResolutionStrategy(
+          Size(level.width, level.height),
+          ResolutionStrategy.FALLBACK_RULE_CLOSEST_LOWER_THEN_HIGHER
+        )
+      )
+      .build()
+  }
+
+  /** Returns whether to run the detector on the camera frame taken at [timestampNanos]. */
+  fun shouldAnalyze(timestampNanos: Long): Boolean {
+    if (skippedInRow < governor.level.frameSkip) {
+      skippedInRow++
+      if (governor.onFrameSkipped(timestampNanos, thermalStatus)) {
+        onLevelChanged()
+      }
+      return false
+    }
+    skippedInRow = 0
+    return true
+  }
+
+  /** Reports that the detector started on the frame taken at [timestampNanos] is done. */
+  fun onFrameAnalyzed(timestampNanos: Long, detectStartNanos: Long) {
+    if (governor.onFrame(timestampNanos, System.nanoTime() - detectStartNanos, thermalStatus)) {
+      onLevelChanged()
+    }
+  }
+
+  fun close() {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+      thermalListener?.let { powerManager.removeThermalStatusListener(it) }
+    }
+    baseDetector?.close()
+    accurateDetector?.close()
+  }
+
+  private fun onLevelChanged() {
+    val level = governor.level
+    val previous = resolutionLevel
+    resolutionLevel = level
+    Log.i(
+      TAG,
+      "Analysis level ${governor.levelIndex} ($level), reason ${governor.lastReason}, " +
+        "p90 ${governor.lastP90Ms} ms, dropped ${governor.lastDropRate}, " +
+        "thermal ${governor.lastThermalStatus}"
+    )
+    if (FrameTrace.ENABLED) {
+      FrameTrace.record(
+        FrameTrace.ANALYSIS_LEVEL_CHANGED,
+        governor.levelIndex,
+        governor.lastReason,
+        governor.lastP90Ms,
+        governor.lastDropRate,
+        governor.lastThermalStatus.toFloat()
+      )
+    }
+    detector = detectorFor(level)
+    if (level.width != previous.width || level.height != previous.height) {
+      onResolutionChanged()
+    }
+  }
+
+  @Synchronized
+  private fun detectorFor(level: AnalysisGovernor.Level): PoseDetector {
+    if (level.isAccurateDetector) {
+      return accurateDetector
+        ?: PoseDetection.getClient(
+          AccuratePoseDetectorOptions.Builder()
+            .setDetectorMode(AccuratePoseDetectorOptions.STREAM_MODE)
+            .build()
+        ).also { accurateDetector = it }
+    }
+    return baseDetector
+      ?: PoseDetection.getClient(
+        PoseDetectorOptions.Builder().setDetectorMode(PoseDetectorOptions.STREAM_MODE).build()
+      ).also { baseDetector = it }
+  }
+}
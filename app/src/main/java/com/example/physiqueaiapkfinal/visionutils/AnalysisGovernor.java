@@ -0,0 +1,362 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Picks the camera analysis resolution, frame skipping and detector mode from how the device keeps
+ * up with pose detection.
+ *
+ * <p>Settings are a ladder of {@link Level}s, cheapest first, limited to the bounds a caller
+ * declares. Every window, by default a second, the governor looks at the p90 detector latency,
+ * the share of camera frames that never reached the analyzer and the thermal status. It steps
+ * down one level as soon as a window is over budget, and up one level only after several windows
+ * in a row with plenty of headroom. After every step it waits a few windows before the next, and
+ * a step up that has to be taken back makes the following attempt wait twice as long, so it
+ * settles instead of oscillating.
+ *
+ * <p>Free of Android dependencies, so it can be driven by synthetic traces. Methods may be called
+ * from any thread.
+ */
+public final class AnalysisGovernor {
+  /** One analysis setting. */
+  public static final class Level {
+    private final int width;
+    private final int height;
+    private final int frameSkip;
+    private final boolean accurateDetector;
+
+    /**
+     * @param frameSkip camera frames skipped after each analyzed one
+     * @param accurateDetector whether to run the accurate pose detector instead of the base one
+     */
+    public Level(int width, int height, int frameSkip, boolean accurateDetector) {
+      this.width = width;
+      this.height = height;
+      this.frameSkip = frameSkip;
+      this.accurateDetector = accurateDetector;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+
+    public int getFrameSkip() {
+      return frameSkip;
+    }
+
+    public boolean isAccurateDetector() {
+      return accurateDetector;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US,
+          "%dx%d skip %d %s",
+          width,
+          height,
+          frameSkip,
+          accurateDetector ? "accurate" : "base");
+    }
+  }
+
+  /** Default ladder, cheapest first. */
+  public static final List<Level> DEFAULT_LEVELS =
+      Collections.unmodifiableList(
+          Arrays.asList(
+              new Level(320, 240, 2, false),
+              new Level(480, 360, 1, false),
+              new Level(640, 480, 1, false),
+              new Level(640, 480, 0, false),
+              new Level(960, 720, 0, true)));
+
+  // Thermal statuses, as PowerManager.THERMAL_STATUS_*.
+  public static final int THERMAL_STATUS_NONE = 0;
+  public static final int THERMAL_STATUS_MODERATE = 2;
+  public static final int THERMAL_STATUS_SEVERE = 3;
+
+  // Why the level changed, as logged.
+  public static final int REASON_NONE = 0;
+  public static final int REASON_LATENCY = 1;
+  public static final int REASON_DROPPED_FRAMES = 2;
+  public static final int REASON_THERMAL = 3;
+  public static final int REASON_HEADROOM = 4;
+
+  public static final float DEFAULT_LATENCY_BUDGET_MS = 40;
+  public static final long DEFAULT_WINDOW_NANOS = 1_000_000_000L;
+  public static final int DEFAULT_STEP_UP_WINDOWS = 3;
+  public static final int DEFAULT_COOLDOWN_WINDOWS = 2;
+
+  // A window has headroom below this share of the latency budget.
+  private static final float HEADROOM_FRACTION = 0.6f;
+  // A window is over budget above this share of frames dropped, and has headroom below the other.
+  private static final float HIGH_DROP_RATE = 0.25f;
+  private static final float LOW_DROP_RATE = 0.05f;
+  // Windows needed at the most to step up after failed attempts.
+  private static final int MAX_STEP_UP_WINDOWS = 32;
+  // Windows with fewer analyzed frames are not judged.
+  private static final int MIN_WINDOW_FRAMES = 3;
+
+  private final List<Level> levels;
+  private final int minLevel;
+  private final int maxLevel;
+  private final float latencyBudgetMs;
+  private final long windowNanos;
+  private final int stepUpWindows;
+  private final int cooldownWindows;
+
+  private final LatencyHistogram windowLatency = new LatencyHistogram();
+  private int level;
+  // Camera frames that reached the analyzer this window, analyzed or skipped on purpose.
+  private int windowFrames;
+  private int windowAnalyzed;
+  private long windowStartNanos;
+  private long lastTimestampNanos;
+  private long minGapNanos;
+  private int thermalStatus;
+  private int calmWindows;
+  private int cooldown;
+  private int requiredCalmWindows;
+  private boolean lastStepWasUp;
+
+  private int lastReason = REASON_NONE;
+  private float lastP90Ms;
+  private float lastDropRate;
+  private int lastThermalStatus;
+  private long changes;
+
+  private AnalysisGovernor(Builder builder) {
+    levels = builder.levels;
+    minLevel = builder.minLevel;
+    maxLevel = builder.maxLevel;
+    latencyBudgetMs = builder.latencyBudgetMs;
+    windowNanos = builder.windowNanos;
+    stepUpWindows = builder.stepUpWindows;
+    cooldownWindows = builder.cooldownWindows;
+    level = Math.max(minLevel, Math.min(maxLevel, builder.initialLevel));
+    requiredCalmWindows = stepUpWindows;
+  }
+
+  public synchronized Level getLevel() {
+    return levels.get(level);
+  }
+
+  public synchronized int getLevelIndex() {
+    return level;
+  }
+
+  /**
+   * Records a frame the analyzer skipped because of {@link Level#getFrameSkip()}. Reporting these
+   * lets the governor tell frames skipped on purpose from frames the analyzer never received.
+   *
+   * @return whether this frame ended a window that changed the level
+   */
+  public synchronized boolean onFrameSkipped(long timestampNanos, int thermalStatus) {
+    onCameraFrame(timestampNanos, thermalStatus);
+    return endWindowIfDue(timestampNanos);
+  }
+
+  /**
+   * Records an analyzed frame.
+   *
+   * @param timestampNanos camera timestamp of the frame, used to tell how many frames never
+   *     reached the analyzer
+   * @param detectorNanos time the detector took on it
+   * @param thermalStatus current thermal status, one of the {@code THERMAL_STATUS_} values or the
+   *     PowerManager ones between them
+   * @return whether this frame ended a window that changed the level
+   */
+  public synchronized boolean onFrame(long timestampNanos, long detectorNanos, int thermalStatus) {
+    onCameraFrame(timestampNanos, thermalStatus);
+    windowAnalyzed++;
+    windowLatency.recordNanos(detectorNanos);
+    return endWindowIfDue(timestampNanos);
+  }
+
+  private void onCameraFrame(long timestampNanos, int thermalStatus) {
+    if (windowFrames == 0) {
+      windowStartNanos = timestampNanos;
+      minGapNanos = Long.MAX_VALUE;
+    } else {
+      long gap = timestampNanos - lastTimestampNanos;
+      if (gap > 0) {
+        minGapNanos = Math.min(minGapNanos, gap);
+      }
+    }
+    lastTimestampNanos = timestampNanos;
+    windowFrames++;
+    this.thermalStatus = Math.max(this.thermalStatus, thermalStatus);
+  }
+
+  private boolean endWindowIfDue(long timestampNanos) {
+    if (timestampNanos - windowStartNanos < windowNanos) {
+      return false;
+    }
+    boolean changed = windowAnalyzed >= MIN_WINDOW_FRAMES && evaluateWindow();
+    windowFrames = 0;
+    windowAnalyzed = 0;
+    windowLatency.reset();
+    this.thermalStatus = THERMAL_STATUS_NONE;
+    return changed;
+  }
+
+  private boolean evaluateWindow() {
+    float p90Ms = windowLatency.getPercentileMicros(90) / 1000f;
+    // The shortest gap between frames that reached the analyzer stands for one camera frame. With
+    // no frame skipping and a detector slower than the camera every gap may be two frames, which
+    // hides the drops, but then the latency is over budget anyway.
+    long span = lastTimestampNanos - windowStartNanos;
+    long cameraFrames = minGapNanos == Long.MAX_VALUE ? windowFrames : span / minGapNanos + 1;
+    float dropRate = Math.max(0, cameraFrames - windowFrames) / (float) cameraFrames;
+    lastP90Ms = p90Ms;
+    lastDropRate = dropRate;
+    lastThermalStatus = thermalStatus;
+    if (cooldown > 0) {
+      cooldown--;
+    }
+
+    int downReason = REASON_NONE;
+    if (thermalStatus >= THERMAL_STATUS_SEVERE) {
+      downReason = REASON_THERMAL;
+    } else if (p90Ms > latencyBudgetMs) {
+      downReason = REASON_LATENCY;
+    } else if (dropRate > HIGH_DROP_RATE) {
+      downReason = REASON_DROPPED_FRAMES;
+    }
+    if (downReason != REASON_NONE) {
+      calmWindows = 0;
+      if (cooldown > 0 || level == minLevel) {
+        return false;
+      }
+      if (lastStepWasUp) {
+        requiredCalmWindows = Math.min(MAX_STEP_UP_WINDOWS, requiredCalmWindows * 2);
+      }
+      return step(-1, downReason);
+    }
+
+    boolean headroom =
+        p90Ms < latencyBudgetMs * HEADROOM_FRACTION
+            && dropRate < LOW_DROP_RATE
+            && thermalStatus < THERMAL_STATUS_MODERATE;
+    calmWindows = headroom ? calmWindows + 1 : 0;
+    if (calmWindows < requiredCalmWindows || cooldown > 0 || level == maxLevel) {
+      return false;
+    }
+    calmWindows = 0;
+    return step(1, REASON_HEADROOM);
+  }
+
+  private boolean step(int direction, int reason) {
+    level += direction;
+    lastStepWasUp = direction > 0;
+    lastReason = reason;
+    cooldown = cooldownWindows;
+    changes++;
+    return true;
+  }
+
+  /** Returns why the level last changed, one of the {@code REASON_} constants. */
+  public synchronized int getLastReason() {
+    return lastReason;
+  }
+
+  /** Returns the p90 detector latency of the last window judged. */
+  public synchronized float getLastP90Ms() {
+    return lastP90Ms;
+  }
+
+  /** Returns the share of camera frames never analyzed in the last window judged. */
+  public synchronized float getLastDropRate() {
+    return lastDropRate;
+  }
+
+  /** Returns the worst thermal status seen in the last window judged. */
+  public synchronized int getLastThermalStatus() {
+    return lastThermalStatus;
+  }
+
+  /** Returns how many times the level changed. */
+  public synchronized long getChangeCount() {
+    return changes;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Builder for {@link AnalysisGovernor}. */
+  public static final class Builder {
+    private List<Level> levels = DEFAULT_LEVELS;
+    private int minLevel = 0;
+    private int maxLevel = DEFAULT_LEVELS.size() - 1;
+    private int initialLevel = 2;
+    private float latencyBudgetMs = DEFAULT_LATENCY_BUDGET_MS;
+    private long windowNanos = DEFAULT_WINDOW_NANOS;
+    private int stepUpWindows = DEFAULT_STEP_UP_WINDOWS;
+    private int cooldownWindows = DEFAULT_COOLDOWN_WINDOWS;
+
+    /** Sets the ladder of levels, cheapest first, and widens the bounds to all of it. */
+    public Builder setLevels(List<Level> levels) {
+      if (levels.isEmpty()) {
+        throw new IllegalArgumentException("No levels");
+      }
+      this.levels = Collections.unmodifiableList(new ArrayList<>(levels));
+      minLevel = 0;
+      maxLevel = levels.size() - 1;
+      initialLevel = Math.min(initialLevel, maxLevel);
+      return this;
+    }
+
+    /** Limits the governor to levels {@code minLevel} to {@code maxLevel}, both included. */
+    public Builder setBounds(int minLevel, int maxLevel) {
+      if (minLevel < 0 || maxLevel >= levels.size() || minLevel > maxLevel) {
+        throw new IllegalArgumentException(
+            "Bounds [" + minLevel + ", " + maxLevel + "] outside of " + levels.size() + " levels");
+      }
+      this.minLevel = minLevel;
+      this.maxLevel = maxLevel;
+      return this;
+    }
+
+    /** Sets the level to start at, moved into the bounds if outside of them. */
+    public Builder setInitialLevel(int initialLevel) {
+      this.initialLevel = initialLevel;
+      return this;
+    }
+
+    /** Sets the p90 detector latency above which the governor steps down. */
+    public Builder setLatencyBudgetMs(float latencyBudgetMs) {
+      this.latencyBudgetMs = latencyBudgetMs;
+      return this;
+    }
+
+    public Builder setWindowNanos(long windowNanos) {
+      this.windowNanos = windowNanos;
+      return this;
+    }
+
+    /** Sets the windows in a row with headroom needed to step up. */
+    public Builder setStepUpWindows(int stepUpWindows) {
+      this.stepUpWindows = stepUpWindows;
+      return this;
+    }
+
+    /** Sets the windows to wait after a step before taking another. */
+    public Builder setCooldownWindows(int cooldownWindows) {
+      this.cooldownWindows = cooldownWindows;
+      return this;
+    }
+
+    public AnalysisGovernor build() {
+      return new AnalysisGovernor(this);
+    }
+  }
+}
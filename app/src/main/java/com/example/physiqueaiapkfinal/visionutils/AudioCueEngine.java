@@ -0,0 +1,177 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.ToneGenerator;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.physiqueaiapkfinal.PhysiqueAiApplication;
+import com.google.common.base.Preconditions;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * App-scoped player of short audio cues for rep and set feedback, owned by {@link
+ * PhysiqueAiApplication}.
+ *
+ * <p>A single {@link ToneGenerator} is created once on a dedicated audio-priority thread and kept
+ * for the life of the process. {@link #play} only puts a request on a lock-free queue and wakes
+ * that thread, so the vision threads that count reps never wait for audio setup or playback. If
+ * requests pile up faster than they are played, new ones are dropped rather than queued.
+ *
+ * <p>The latency from the moment a rep was detected to the moment its tone was started is tracked
+ * in {@link #getLatencyStats()} and logged when a set completes. Callers pass the time detection of
+ * the frame started to {@link #play(Cue, long)}, so the latency covers detection, rep counting and
+ * the hand-off to this thread. It does not include the audio output latency of the device.
+ */
+public class AudioCueEngine {
+  private static final String TAG = "AudioCueEngine";
+  private static final int QUEUE_CAPACITY = 16;
+  private static final int VOLUME = 100;
+
+  /** The cues that can be played. */
+  public enum Cue {
+    /** A rep was counted. */
+    REP(ToneGenerator.TONE_PROP_BEEP, 200),
+    /** A set was completed. */
+    SET_COMPLETE(ToneGenerator.TONE_PROP_BEEP, 300),
+    /** The counter was reset. */
+    RESET(ToneGenerator.TONE_PROP_BEEP2, 150);
+
+    private final int toneType;
+    private final int durationMs;
+
+    Cue(int toneType, int durationMs) {
+      this.toneType = toneType;
+      this.durationMs = durationMs;
+    }
+  }
+
+  /** Snapshot of the cue latencies so far. */
+  public static final class LatencyStats {
+    public final long playedCount;
+    public final long droppedCount;
+    public final float lastMs;
+    public final float meanMs;
+    public final float maxMs;
+
+    LatencyStats(long playedCount, long droppedCount, float lastMs, float meanMs, float maxMs) {
+      this.playedCount = playedCount;
+      this.droppedCount = droppedCount;
+      this.lastMs = lastMs;
+      this.meanMs = meanMs;
+      this.maxMs = maxMs;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US,
+          "played %d, dropped %d, last %.1f ms, mean %.1f ms, max %.1f ms",
+          playedCount,
+          droppedCount,
+          lastMs,
+          meanMs,
+          maxMs);
+    }
+  }
+
+  private static final Cue[] CUES = Cue.values();
+
+  private final CueQueue queue = new CueQueue(QUEUE_CAPACITY);
+  private final Thread thread;
+  // Only touched by thread. Null if the device refused to create one.
+  @Nullable private ToneGenerator toneGenerator;
+
+  private final AtomicLong playedCount = new AtomicLong();
+  private final AtomicLong droppedCount = new AtomicLong();
+  private final AtomicLong totalLatencyNanos = new AtomicLong();
+  private final AtomicLong maxLatencyNanos = new AtomicLong();
+  private volatile long lastLatencyNanos;
+
+  public AudioCueEngine() {
+    thread = new Thread(this::run, "AudioCues");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** Returns the cue engine of the running app. */
+  public static AudioCueEngine get(Context context) {
+    Context application = context.getApplicationContext();
+    Preconditions.checkState(
+        application instanceof PhysiqueAiApplication,
+        "Audio cue engine requires PhysiqueAiApplication");
+    return ((PhysiqueAiApplication) application).getAudioCueEngine();
+  }
+
+  /** Requests {@code cue}, detected now, e.g. for cues driven by a timer. Never blocks. */
+  public void play(Cue cue) {
+    play(cue, System.nanoTime());
+  }
+
+  /**
+   * Requests {@code cue}. Never blocks.
+   *
+   * @param detectedAtNanos {@link System#nanoTime()} when the event behind the cue was detected,
+   *     the start of its latency.
+   */
+  public void play(Cue cue, long detectedAtNanos) {
+    if (queue.offer(cue.ordinal(), detectedAtNanos)) {
+      LockSupport.unpark(thread);
+    } else {
+      droppedCount.incrementAndGet();
+    }
+  }
+
+  public LatencyStats getLatencyStats() {
+    long played = playedCount.get();
+    return new LatencyStats(
+        played,
+        droppedCount.get(),
+        lastLatencyNanos / 1e6f,
+        played == 0 ? 0 : totalLatencyNanos.get() / (float) played / 1e6f,
+        maxLatencyNanos.get() / 1e6f);
+  }
+
+  private void run() {
+    Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+    try {
+      toneGenerator = new ToneGenerator(AudioManager.STREAM_NOTIFICATION, VOLUME);
+    } catch (RuntimeException e) {
+      Log.w(TAG, "Audio cues unavailable: " + e.getMessage());
+    }
+    while (true) {
+      int cue = queue.poll();
+      if (cue < 0) {
+        // A play() after the poll above leaves a permit, so this returns right away.
+        LockSupport.park(this);
+        continue;
+      }
+      playNow(CUES[cue], queue.polledTimestampNanos());
+    }
+  }
+
+  private void playNow(Cue cue, long detectedAtNanos) {
+    if (toneGenerator == null) {
+      droppedCount.incrementAndGet();
+      return;
+    }
+    // Cuts a still playing tone short, so a burst of reps stays in step with the counter.
+    toneGenerator.startTone(cue.toneType, cue.durationMs);
+    long latencyNanos = System.nanoTime() - detectedAtNanos;
+    lastLatencyNanos = latencyNanos;
+    totalLatencyNanos.addAndGet(latencyNanos);
+    if (latencyNanos > maxLatencyNanos.get()) {
+      maxLatencyNanos.set(latencyNanos);
+    }
+    playedCount.incrementAndGet();
+    if (cue == Cue.SET_COMPLETE) {
+      Log.i(TAG, "Cue latency: " + getLatencyStats());
+    }
+  }
+}
@@ -22,13 +22,24 @@ import android.graphics.Canvas;
 /** Draw camera image to background. */
 public class CameraImageGraphic extends GraphicOverlay.Graphic {
 
-  private final Bitmap bitmap;
+  private Bitmap bitmap;
 
   public CameraImageGraphic(GraphicOverlay overlay, Bitmap bitmap) {
     super(overlay);
     this.bitmap = bitmap;
   }
 
+  /** Creates a graphic to be given its bitmap with {@link #setBitmap} before it is drawn. */
+  public CameraImageGraphic(GraphicOverlay overlay) {
+    super(overlay);
+  }
+
+  /** Replaces the bitmap drawn, and returns this graphic. */
+  public CameraImageGraphic setBitmap(Bitmap bitmap) {
+    this.bitmap = bitmap;
+    return this;
+  }
+
   @Override
   public void draw(Canvas canvas) {
     canvas.drawBitmap(bitmap, getTransformationMatrix(), null);
@@ -0,0 +1,78 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue of (cue, timestamp) requests with any number of producers and a single
+ * consumer. Slots are preallocated and carry a sequence number telling whether they are free or
+ * filled for a given lap, so neither side ever blocks or allocates; a full queue rejects offers.
+ */
+final class CueQueue {
+  private final int mask;
+  private final AtomicLongArray sequences;
+  private final int[] cues;
+  private final long[] timestamps;
+  private final AtomicLong tail = new AtomicLong();
+  // Only touched by the consumer.
+  private long head;
+  private long polledTimestampNanos;
+
+  /** @param capacity a power of two. */
+  CueQueue(int capacity) {
+    if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+    }
+    mask = capacity - 1;
+    sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, i);
+    }
+    cues = new int[capacity];
+    timestamps = new long[capacity];
+  }
+
+  /** Adds a request, returning false without waiting if the queue is full. */
+  boolean offer(int cue, long timestampNanos) {
+    long position = tail.get();
+    while (true) {
+      int slot = (int) (position & mask);
+      long lag = sequences.get(slot) - position;
+      if (lag == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          cues[slot] = cue;
+          timestamps[slot] = timestampNanos;
+          // Publishes the slot to the consumer.
+          sequences.set(slot, position + 1);
+          return true;
+        }
+        position = tail.get();
+      } else if (lag < 0) {
+        return false;
+      } else {
+        position = tail.get();
+      }
+    }
+  }
+
+  /**
+   * Removes the oldest request and returns its cue, or -1 if the queue is empty. The request's
+   * timestamp is then available from {@link #polledTimestampNanos()}. Consumer thread only.
+   */
+  int poll() {
+    int slot = (int) (head & mask);
+    if (sequences.get(slot) != head + 1) {
+      return -1;
+    }
+    int cue = cues[slot];
+    polledTimestampNanos = timestamps[slot];
+    // Hands the slot back to producers for the next lap.
+    sequences.set(slot, head + mask + 1);
+    head++;
+    return cue;
+  }
+
+  long polledTimestampNanos() {
+    return polledTimestampNanos;
+  }
+}
@@ -0,0 +1,173 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size pool of direct {@link ByteBuffer}s holding NV21 camera frames, so that a steady
+ * stream of frames allocates nothing.
+ *
+ * <p>Buffers are keyed by frame size: one of a different size than the frame being acquired is
+ * dropped from the pool and replaced. At most {@code capacity} frames exist at a time; once they
+ * are all in use {@link #acquire} returns null and the camera frame has to be dropped. The free
+ * list is a small array of slots claimed with compare-and-set, so acquiring and releasing neither
+ * lock nor allocate and may happen on different threads.
+ */
+public final class FrameBufferPool {
+  /** A pooled buffer and the metadata of the frame it currently holds. */
+  public static final class Frame {
+    private final ByteBuffer buffer;
+    private final RoiTracker.Crop crop = new RoiTracker.Crop();
+    private final int[] cropRect = new int[4];
+    @Nullable private ByteBuffer cropBuffer;
+    private FrameMetadata metadata;
+    private long postedNanos;
+
+    private Frame(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    /** Returns the buffer, cleared when acquired, sized to hold exactly one NV21 frame. */
+    public ByteBuffer getBuffer() {
+      return buffer;
+    }
+
+    public FrameMetadata getMetadata() {
+      return metadata;
+    }
+
+    /** Returns when the frame was handed over for processing, in {@link System#nanoTime()}. */
+    public long getPostedNanos() {
+      return postedNanos;
+    }
+
+    public void setPostedNanos(long postedNanos) {
+      this.postedNanos = postedNanos;
+    }
+
+    /** Returns the region of the frame the detector runs on, reused with the buffer. */
+    public RoiTracker.Crop getCrop() {
+      return crop;
+    }
+
+    /**
+     * Returns room for the left, top, width and height of the crop in the camera buffer, see
+     * {@link RoiTracker.Crop#getBufferRect}, reused with the buffer.
+     */
+    public int[] getCropRect() {
+      return cropRect;
+    }
+
+    /**
+     * Returns a buffer for the cropped frame with exactly {@code size} bytes remaining, reused
+     * with the frame and only reallocated to grow.
+     */
+    public ByteBuffer getCropBuffer(int size) {
+      if (cropBuffer == null || cropBuffer.capacity() < size) {
+        cropBuffer = ByteBuffer.allocateDirect(size);
+      }
+      cropBuffer.clear();
+      cropBuffer.limit(size);
+      return cropBuffer;
+    }
+  }
+
+  private final int capacity;
+  private final AtomicReferenceArray<Frame> free;
+  // Frames in existence, free or in use.
+  private final AtomicInteger allocated = new AtomicInteger();
+
+  private final AtomicLong allocatedCount = new AtomicLong();
+  private final AtomicLong recycledCount = new AtomicLong();
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  public FrameBufferPool(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+    }
+    this.capacity = capacity;
+    this.free = new AtomicReferenceArray<>(capacity);
+  }
+
+  /** Returns the number of bytes of an NV21 frame. */
+  public static int getFrameSize(FrameMetadata metadata) {
+    return metadata.getWidth() * metadata.getHeight() * 3 / 2;
+  }
+
+  /**
+   * Returns a frame to copy camera data of {@code metadata} into, or null if all frames are in use,
+   * in which case the camera frame counts as dropped. Reusing one {@link FrameMetadata} for frames
+   * of the same size keeps the caller from allocating too.
+   */
+  @Nullable
+  public Frame acquire(FrameMetadata metadata) {
+    int size = getFrameSize(metadata);
+    for (int slot = 0; slot < capacity; slot++) {
+      Frame frame = free.get(slot);
+      if (frame == null || !free.compareAndSet(slot, frame, null)) {
+        continue;
+      }
+      if (frame.buffer.capacity() == size) {
+        recycledCount.incrementAndGet();
+        return prepare(frame, metadata);
+      }
+      // Left over from another frame size.
+      allocated.decrementAndGet();
+    }
+    while (true) {
+      int count = allocated.get();
+      if (count >= capacity) {
+        droppedCount.incrementAndGet();
+        return null;
+      }
+      if (allocated.compareAndSet(count, count + 1)) {
+        break;
+      }
+    }
+    allocatedCount.incrementAndGet();
+    return prepare(new Frame(ByteBuffer.allocateDirect(size)), metadata);
+  }
+
+  /** Returns a frame that was processed to the pool. */
+  public void release(Frame frame) {
+    frame.metadata = null;
+    for (int slot = 0; slot < capacity; slot++) {
+      if (free.get(slot) == null && free.compareAndSet(slot, null, frame)) {
+        return;
+      }
+    }
+    // Only reachable if a frame is released twice.
+    allocated.decrementAndGet();
+  }
+
+  /** Returns a frame that was never processed to the pool, counting it as dropped. */
+  public void drop(Frame frame) {
+    droppedCount.incrementAndGet();
+    release(frame);
+  }
+
+  /** Returns how many buffers were allocated, including ones replaced for a new frame size. */
+  public long getAllocatedCount() {
+    return allocatedCount.get();
+  }
+
+  /** Returns how many acquired frames reused a released buffer. */
+  public long getRecycledCount() {
+    return recycledCount.get();
+  }
+
+  /** Returns how many frames were dropped, for lack of a free buffer or by {@link #drop}. */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  private static Frame prepare(Frame frame, FrameMetadata metadata) {
+    frame.buffer.clear();
+    frame.metadata = metadata;
+    return frame;
+  }
+}
@@ -0,0 +1,29 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free single slot holding the latest camera frame until the processor is free. Posting a
+ * frame replaces the one waiting, which the poster gets back to drop.
+ */
+public final class FrameMailbox {
+  private final AtomicReference<FrameBufferPool.Frame> latest = new AtomicReference<>();
+
+  /** Posts {@code frame}, returning the frame it replaced, or null if none was waiting. */
+  @Nullable
+  public FrameBufferPool.Frame post(FrameBufferPool.Frame frame) {
+    return latest.getAndSet(frame);
+  }
+
+  /** Takes the waiting frame, or returns null if none is. */
+  @Nullable
+  public FrameBufferPool.Frame take() {
+    return latest.getAndSet(null);
+  }
+
+  public boolean isEmpty() {
+    return latest.get() == null;
+  }
+}
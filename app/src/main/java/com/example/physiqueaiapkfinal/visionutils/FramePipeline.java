@@ -0,0 +1,93 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admits camera frames into the ingest, detect, classify and render stages and keeps their
+ * results in frame order.
+ *
+ * <p>Up to {@link #getDepth()} frames are in flight at once, so the detector can work on a frame
+ * while the one before it is being classified and drawn; sustained frame rate then follows the
+ * slowest stage instead of the sum of all of them. Each stage runs one frame at a time and hands
+ * over in order, and frames are numbered when admitted: a result that arrives after a newer one
+ * was rendered is reported stale instead of being drawn. All methods are lock-free and may be
+ * called from any thread.
+ */
+public final class FramePipeline {
+  /** Frames in flight by default: one being detected while the previous one is finished. */
+  public static final int DEFAULT_DEPTH = 2;
+  /** Most frames in flight, which also bounds the pooled buffers and bitmaps frames need. */
+  public static final int MAX_DEPTH = 3;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicLong nextSequence = new AtomicLong();
+  private final AtomicLong lastRendered = new AtomicLong(-1);
+  private final AtomicLong staleCount = new AtomicLong();
+  private volatile int depth;
+
+  public FramePipeline(int depth) {
+    setDepth(depth);
+  }
+
+  /** Sets how many frames may be in flight; frames already admitted are not affected. */
+  public void setDepth(int depth) {
+    if (depth < 1 || depth > MAX_DEPTH) {
+      throw new IllegalArgumentException("Depth must be in [1, " + MAX_DEPTH + "]: " + depth);
+    }
+    this.depth = depth;
+  }
+
+  public int getDepth() {
+    return depth;
+  }
+
+  /** Admits a frame if fewer than the depth are in flight; returns its sequence number or -1. */
+  public long tryAdmit() {
+    while (true) {
+      int count = inFlight.get();
+      if (count >= depth) {
+        return -1;
+      }
+      if (inFlight.compareAndSet(count, count + 1)) {
+        return nextSequence.getAndIncrement();
+      }
+    }
+  }
+
+  /**
+   * Returns whether the result of frame {@code sequence} may be rendered, which is the case unless
+   * a newer frame was rendered already.
+   */
+  public boolean tryRender(long sequence) {
+    while (true) {
+      long last = lastRendered.get();
+      if (sequence <= last) {
+        staleCount.incrementAndGet();
+        return false;
+      }
+      if (lastRendered.compareAndSet(last, sequence)) {
+        return true;
+      }
+    }
+  }
+
+  /** Frees the slot of an admitted frame once it has left the last stage, rendered or not. */
+  public void finish() {
+    inFlight.decrementAndGet();
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  /** Returns how many frames were admitted so far. */
+  public long getAdmittedCount() {
+    return nextSequence.get();
+  }
+
+  /** Returns how many results were not rendered because a newer frame was rendered first. */
+  public long getStaleCount() {
+    return staleCount.get();
+  }
+}
@@ -0,0 +1,78 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+/**
+ * Hands camera frames to a processor as the {@link FramePipeline} has room for them.
+ *
+ * <p>A posted frame waits in a {@link FrameMailbox} until a slot is free, and a newer frame
+ * replaces it there, so the processor always starts on the latest one. The processor reports each
+ * frame back through {@link #onFrameProcessed} once it has left the last stage, which frees its
+ * slot and starts the frame waiting, if any. With a depth above one, detection of a frame thus
+ * overlaps classification and drawing of the previous ones.
+ *
+ * @param <C> what the processor needs besides the frame, passed along from {@link #post}
+ */
+public final class FrameScheduler<C> {
+
+  /** Starts processing an admitted frame. */
+  public interface FrameProcessor<C> {
+    void process(FrameBufferPool.Frame frame, long sequence, C context);
+  }
+
+  private final FrameBufferPool pool;
+  private final FramePipeline pipeline;
+  private final FrameProcessor<C> processor;
+  private final FrameMailbox latestFrame = new FrameMailbox();
+  private volatile boolean isShutdown;
+
+  public FrameScheduler(
+      FrameBufferPool pool, FramePipeline pipeline, FrameProcessor<C> processor) {
+    this.pool = pool;
+    this.pipeline = pipeline;
+    this.processor = processor;
+  }
+
+  /** Posts {@code frame}, dropping the one it replaces, and starts it if the pipeline has room. */
+  public void post(FrameBufferPool.Frame frame, C context) {
+    FrameBufferPool.Frame replaced = latestFrame.post(frame);
+    if (replaced != null) {
+      pool.drop(replaced);
+    }
+    processLatestFrame(context);
+  }
+
+  /** Returns {@code frame} to the pool once it has left the last stage and moves on to the next. */
+  public void onFrameProcessed(FrameBufferPool.Frame frame, C context) {
+    pool.release(frame);
+    pipeline.finish();
+    processLatestFrame(context);
+  }
+
+  /** Stops starting frames and returns the one waiting to the pool. */
+  public void shutdown() {
+    isShutdown = true;
+    FrameBufferPool.Frame frame = latestFrame.take();
+    if (frame != null) {
+      pool.release(frame);
+    }
+  }
+
+  /** Starts processing the latest frame, unless the pipeline is full. */
+  private void processLatestFrame(C context) {
+    // Checking the mailbox again after giving up the slot catches a frame posted in between.
+    while (!latestFrame.isEmpty()) {
+      long sequence = pipeline.tryAdmit();
+      if (sequence < 0) {
+        return;
+      }
+      FrameBufferPool.Frame frame = latestFrame.take();
+      if (frame != null && !isShutdown) {
+        processor.process(frame, sequence, context);
+        return;
+      }
+      if (frame != null) {
+        pool.release(frame);
+      }
+      pipeline.finish();
+    }
+  }
+}
@@ -0,0 +1,198 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import com.example.physiqueaiapkfinal.BuildConfig;
+import com.example.physiqueaiapkfinal.visionutils.classification.RepCountingPipeline;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Records per-frame diagnostics as typed events in a preallocated ring buffer, instead of building
+ * log strings in the camera loop.
+ *
+ * <p>An event is an id from the constants below, a timestamp and up to two int and four float
+ * payload slots, whose meaning is documented per event. Recording never allocates; once the buffer
+ * is full the oldest events are overwritten. Call sites are guarded with {@link #ENABLED}, so
+ * release builds neither record nor compute payloads:
+ *
+ * <pre>{@code
+ * if (FrameTrace.ENABLED) {
+ *   FrameTrace.record(FrameTrace.REP_COUNTED, classId, numRepeats);
+ * }
+ * }</pre>
+ *
+ * <p>{@link #dump} writes the buffer to a file: an int magic, an int version, the event names as
+ * an int count and modified UTF-8 strings indexed by event id, then an int event count and per
+ * event, oldest first, a long timestamp in nanoseconds, the int event id, two ints and four floats.
+ * Exercise activities dump through {@link FrameTraceDumper} when they pause.
+ */
+public final class FrameTrace {
+  /** Whether tracing is compiled in. Constant false in release builds, so guarded calls are dropped. */
+  public static final boolean ENABLED = BuildConfig.DEBUG;
+
+  /**
+   * Frame latency once per second. i0: frames so far; i1: camera frames dropped so far; f0, f1, f2:
+   * max, p50 and p99 ms.
+   */
+  public static final int FRAME_LATENCY = 0;
+  /** Detector latency once per second. i0: available system memory in MB; f0, f1, f2 as above. */
+  public static final int DETECTOR_LATENCY = 1;
+  /**
+   * A pose validation lacked landmarks. i0: validator, one of the {@code VALIDATOR_} constants. No
+   * longer recorded, since validation reads a landmark buffer with every landmark; the id is kept
+   * so older dumps still decode.
+   */
+  public static final int MISSING_LANDMARKS = 2;
+  /**
+   * A pose validation ran. i0: validator; i1: bit mask of its criteria, bit 0 being the outcome;
+   * f0: class confidence; f1: second class confidence, if the validator checks two classes.
+   */
+  public static final int POSE_VALIDATION = 3;
+  /** A rep counter saw a frame. i0: class id; i1: reps so far; f0: confidence; f1: 1 if entered. */
+  public static final int REP_COUNTER_FRAME = 4;
+  /** A rep counter's pose was entered. i0: class id; f0: confidence. */
+  public static final int REP_ENTERED = 5;
+  /** A rep was counted. i0: class id, or an exercise for activity side counting; i1: reps so far. */
+  public static final int REP_COUNTED = 6;
+  /** A rep was dropped for following the previous one too soon. i0: class id; f0: ms since it. */
+  public static final int REP_TOO_SOON = 7;
+  /** The display rotation changed. i0: previous rotation; i1: new rotation. */
+  public static final int ORIENTATION_CHANGED = 8;
+  /** Landmark confidence was too low to count. f0: average landmark in-frame likelihood. */
+  public static final int LOW_CONFIDENCE = 9;
+  /**
+   * Squat detection state of a frame. i0: bit mask of down, has been down, symmetric, knee range
+   * ok; f0: smoothed knee angle; f1, f2: left and right knee angle; f3: landmark confidence.
+   */
+  public static final int SQUAT_FRAME = 10;
+  /** Squat body position of a frame. f0, f1, f2: average hip, knee and shoulder y. */
+  public static final int SQUAT_POSITION = 11;
+  /**
+   * The motion gate let a frame reuse the previous classification. i0: frames reused in a row; f0:
+   * largest key landmark move since the last classified frame, in torso lengths.
+   */
+  public static final int CLASSIFICATION_REUSED = 12;
+  /**
+   * The analysis governor changed level. i0: new level; i1: reason, one of the {@code
+   * AnalysisGovernor.REASON_} constants; f0: p90 detector ms; f1: share of frames dropped; f2:
+   * thermal status.
+   */
+  public static final int ANALYSIS_LEVEL_CHANGED = 13;
+
+  private static final String[] EVENT_NAMES = {
+    "FRAME_LATENCY",
+    "DETECTOR_LATENCY",
+    "MISSING_LANDMARKS",
+    "POSE_VALIDATION",
+    "REP_COUNTER_FRAME",
+    "REP_ENTERED",
+    "REP_COUNTED",
+    "REP_TOO_SOON",
+    "ORIENTATION_CHANGED",
+    "LOW_CONFIDENCE",
+    "SQUAT_FRAME",
+    "SQUAT_POSITION",
+    "CLASSIFICATION_REUSED",
+    "ANALYSIS_LEVEL_CHANGED",
+  };
+
+  public static final int VALIDATOR_PUSHUP = RepCountingPipeline.VALIDATOR_PUSHUP;
+  public static final int VALIDATOR_SQUAT = RepCountingPipeline.VALIDATOR_SQUAT;
+  public static final int VALIDATOR_FRONT_RAISE = RepCountingPipeline.VALIDATOR_FRONT_RAISE;
+  public static final int VALIDATOR_HIP_THRUST = RepCountingPipeline.VALIDATOR_HIP_THRUST;
+  public static final int VALIDATOR_WINDMILL = RepCountingPipeline.VALIDATOR_WINDMILL;
+
+  static final int MAGIC = 0x46545243; // "FTRC"
+  static final int VERSION = 1;
+  static final int CAPACITY = 8192;
+  private static final int INTS = 2;
+  private static final int FLOATS = 4;
+
+  private static final long[] timestamps = new long[CAPACITY];
+  private static final int[] events = new int[CAPACITY];
+  private static final int[] ints = new int[CAPACITY * INTS];
+  private static final float[] floats = new float[CAPACITY * FLOATS];
+  // Total number of events recorded since the last clear; the next one goes to next % CAPACITY.
+  private static long next;
+
+  private FrameTrace() {}
+
+  public static void record(int event) {
+    record(event, 0, 0, 0, 0, 0, 0);
+  }
+
+  public static void record(int event, int i0) {
+    record(event, i0, 0, 0, 0, 0, 0);
+  }
+
+  public static void record(int event, int i0, int i1) {
+    record(event, i0, i1, 0, 0, 0, 0);
+  }
+
+  public static void record(int event, int i0, float f0) {
+    record(event, i0, 0, f0, 0, 0, 0);
+  }
+
+  public static void record(int event, int i0, int i1, float f0, float f1) {
+    record(event, i0, i1, f0, f1, 0, 0);
+  }
+
+  public static void record(int event, int i0, int i1, float f0, float f1, float f2) {
+    record(event, i0, i1, f0, f1, f2, 0);
+  }
+
+  /** Records an event, overwriting the oldest one if the buffer is full. */
+  public static synchronized void record(
+      int event, int i0, int i1, float f0, float f1, float f2, float f3) {
+    int slot = (int) (next++ % CAPACITY);
+    timestamps[slot] = System.nanoTime();
+    events[slot] = event;
+    ints[slot * INTS] = i0;
+    ints[slot * INTS + 1] = i1;
+    floats[slot * FLOATS] = f0;
+    floats[slot * FLOATS + 1] = f1;
+    floats[slot * FLOATS + 2] = f2;
+    floats[slot * FLOATS + 3] = f3;
+  }
+
+  /** Returns the number of events currently in the buffer. */
+  public static synchronized int size() {
+    return (int) Math.min(next, CAPACITY);
+  }
+
+  public static synchronized void clear() {
+    next = 0;
+  }
+
+  /**
+   * Writes the buffered events to {@code file} in the format described above. Events recorded
+   * meanwhile wait for the dump; call it off the camera thread.
+   */
+  public static synchronized void dump(File file) throws IOException {
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(EVENT_NAMES.length);
+      for (String name : EVENT_NAMES) {
+        out.writeUTF(name);
+      }
+      int size = size();
+      out.writeInt(size);
+      for (long i = next - size; i < next; i++) {
+        int slot = (int) (i % CAPACITY);
+        out.writeLong(timestamps[slot]);
+        out.writeInt(events[slot]);
+        for (int k = 0; k < INTS; k++) {
+          out.writeInt(ints[slot * INTS + k]);
+        }
+        for (int k = 0; k < FLOATS; k++) {
+          out.writeFloat(floats[slot * FLOATS + k]);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package com.example.physiqueaiapkfinal.visionutils
+
+import android.content.Context
+import android.util.Log
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * Writes the [FrameTrace] buffer to app specific storage in debug builds, so that a session can be
+ * pulled off the device with `adb pull /sdcard/Android/data/<package>/files/frametrace` and
+ * decoded. Exercise activities call [dump] when they pause.
+ */
+object FrameTraceDumper {
+  private const val TAG = "FrameTraceDumper"
+  private const val DIRECTORY = "frametrace"
+
+  // Dumps wait for recording to pause, so they run off the main thread, one at a time.
+  private val executor: ExecutorService by lazy { Executors.newSingleThreadExecutor() }
+
+  /** Writes the buffered events to `frametrace/<name>-<time>.bin`. Does nothing in release. */
+  fun dump(context: Context, name: String) {
+    if (!FrameTrace.ENABLED || FrameTrace.size() == 0) {
+      return
+    }
+    val directory = File(context.getExternalFilesDir(null) ?: context.filesDir, DIRECTORY)
+    val file = File(directory, "$name-${System.currentTimeMillis()}.bin")
+    executor.execute {
+      try {
+        if (!directory.isDirectory && !directory.mkdirs()) {
+          throw IOException("Cannot create $directory")
+        }
+        FrameTrace.dump(file)
+        Log.d(TAG, "Wrote ${FrameTrace.size()} events to $file")
+      } catch (e: IOException) {
+        Log.w(TAG, "Frame trace dump failed", e)
+      }
+    }
+  }
+}
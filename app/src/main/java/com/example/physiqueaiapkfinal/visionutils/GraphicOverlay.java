@@ -26,11 +26,15 @@ import android.graphics.Paint;
 import android.util.AttributeSet;
 import android.view.View;
 
+import androidx.annotation.Nullable;
+
 import com.google.common.base.Preconditions;
 import com.google.common.primitives.Ints;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * A view which renders a series of custom graphics to be overlayed on top of an associated preview
@@ -41,6 +45,12 @@ import java.util.List;
  * idea is that detection items are expressed in terms of an image size, but need to be scaled up to
  * the full view size, and also mirrored in the case of the front-facing camera.
  *
+ * <p>Producers publish whole frames: {@link #beginFrame()} hands out a preallocated {@link Frame}
+ * to fill and {@link #publishFrame()} swaps it in atomically, so drawing never sees a half built
+ * frame and neither side takes a lock. Graphics {@link Frame#retain retained} by a frame are
+ * reused the next time the same slot comes around instead of being allocated for every frame.
+ * The older {@link #clear()} and {@link #add(Graphic)} still work and are drawn on top.
+ *
  * <p>Associated {@link Graphic} items should use the following methods to convert to view
  * coordinates for the graphics that are drawn:
  *
@@ -53,12 +63,16 @@ import java.util.List;
  */
 public class GraphicOverlay extends View {
   private final Object lock = new Object();
+  // Graphics added through add(), drawn under the lock after the published frame.
   private final List<Graphic> graphics = new ArrayList<>();
+  private volatile boolean hasGraphics;
+  private final TripleBuffer<Frame> frames =
+      new TripleBuffer<>(new Frame(), new Frame(), new Frame());
   // Matrix for transforming from image coordinates to overlay view coordinates.
   private final Matrix transformationMatrix = new Matrix();
 
-  private int imageWidth;
-  private int imageHeight;
+  private volatile int imageWidth;
+  private volatile int imageHeight;
   // The factor of overlay View size to image size. Anything in the image coordinates need to be
   // scaled by this amount to fit with the area of overlay View.
   private float scaleFactor = 1.0f;
@@ -68,8 +82,12 @@ public class GraphicOverlay extends View {
   // The number of vertical pixels needed to be cropped on each side to fit the image with the
   // area of overlay View after scaling.
   private float postScaleHeightOffset;
-  private boolean isImageFlipped;
-  private boolean needUpdateTransformation = true;
+  private volatile boolean isImageFlipped;
+  private volatile boolean needUpdateTransformation = true;
+  // Receives the time taken by every draw, or null.
+  @Nullable private volatile PipelineStats pipelineStats;
+  // When the current draw started, in System.nanoTime(). Only touched by the UI thread.
+  private long drawTimeNanos;
 
   /**
    * Base class for a custom graphics object to be rendered within the graphic overlay. Subclass
@@ -150,6 +168,16 @@ public class GraphicOverlay extends View {
       overlay.postInvalidate();
     }
 
+    /** Redraws the overlay on the next display frame, for graphics that move between results. */
+    public void postInvalidateOnAnimation() {
+      overlay.postInvalidateOnAnimation();
+    }
+
+    /** Returns when the current draw started, in {@link System#nanoTime()}. */
+    public long getDrawTimeNanos() {
+      return overlay.drawTimeNanos;
+    }
+
     /**
      * Given the {@code zInImagePixel}, update the color for the passed in {@code paint}. The color will be
      * more red if the {@code zInImagePixel} is smaller, or more blue ish vice versa. This is
@@ -211,6 +239,49 @@ public class GraphicOverlay extends View {
     }
   }
 
+  /**
+   * The graphics of one frame and the source image they were detected in. Filled by the producer
+   * between {@link #beginFrame()} and {@link #publishFrame()}, then only read by the drawing.
+   */
+  public static final class Frame {
+    private final ArrayList<Graphic> graphics = new ArrayList<>();
+    private final HashMap<Object, Graphic> retained = new HashMap<>();
+    private int imageWidth;
+    private int imageHeight;
+    private boolean isImageFlipped;
+
+    private Frame() {}
+
+    public void add(Graphic graphic) {
+      graphics.add(graphic);
+    }
+
+    /**
+     * Returns the graphic kept with this frame slot under {@code key}, created by {@code factory}
+     * the first time. Graphics retained this way can be updated in place each frame instead of
+     * being allocated, since the slot is not drawn while it is being filled. The graphic still has
+     * to be {@link #add added} to be drawn.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Graphic> T retain(Object key, Supplier<T> factory) {
+      Graphic graphic = retained.get(key);
+      if (graphic == null) {
+        graphic = factory.get();
+        retained.put(key, graphic);
+      }
+      return (T) graphic;
+    }
+
+    /** Like {@link GraphicOverlay#setImageSourceInfo}, applied when this frame is drawn. */
+    public void setImageSourceInfo(int imageWidth, int imageHeight, boolean isFlipped) {
+      Preconditions.checkState(imageWidth > 0, "image width must be positive");
+      Preconditions.checkState(imageHeight > 0, "image height must be positive");
+      this.imageWidth = imageWidth;
+      this.imageHeight = imageHeight;
+      this.isImageFlipped = isFlipped;
+    }
+  }
+
   public GraphicOverlay(Context context, AttributeSet attrs) {
     super(context, attrs);
     addOnLayoutChangeListener(
@@ -218,18 +289,37 @@ public class GraphicOverlay extends View {
                     needUpdateTransformation = true);
   }
 
-  /** Removes all graphics from the overlay. */
+  /**
+   * Returns the cleared frame to fill next. Must be followed by {@link #publishFrame()}, and only
+   * one thread at a time may be building frames.
+   */
+  public Frame beginFrame() {
+    Frame frame = frames.getBack();
+    frame.graphics.clear();
+    frame.imageWidth = 0;
+    return frame;
+  }
+
+  /** Replaces the frame being shown by the one from {@link #beginFrame()} and redraws. */
+  public void publishFrame() {
+    frames.publish();
+    postInvalidate();
+  }
+
+  /** Removes all graphics added with {@link #add(Graphic)} from the overlay. */
   public void clear() {
     synchronized (lock) {
       graphics.clear();
+      hasGraphics = false;
     }
     postInvalidate();
   }
 
-  /** Adds a graphic to the overlay. */
+  /** Adds a graphic to the overlay, on top of the published frame until {@link #clear()}. */
   public void add(Graphic graphic) {
     synchronized (lock) {
       graphics.add(graphic);
+      hasGraphics = true;
     }
   }
 
@@ -237,10 +327,16 @@ public class GraphicOverlay extends View {
   public void remove(Graphic graphic) {
     synchronized (lock) {
       graphics.remove(graphic);
+      hasGraphics = !graphics.isEmpty();
     }
     postInvalidate();
   }
 
+  /** Records the time of every following draw as {@link PipelineStats#DRAW}, or stops if null. */
+  public void setPipelineStats(@Nullable PipelineStats pipelineStats) {
+    this.pipelineStats = pipelineStats;
+  }
+
   /**
    * Sets the source information of the image being processed by detectors, including size and
    * whether it is flipped, which informs how to transform image coordinates later.
@@ -253,15 +349,22 @@ public class GraphicOverlay extends View {
   public void setImageSourceInfo(int imageWidth, int imageHeight, boolean isFlipped) {
     Preconditions.checkState(imageWidth > 0, "image width must be positive");
     Preconditions.checkState(imageHeight > 0, "image height must be positive");
-    synchronized (lock) {
-      this.imageWidth = imageWidth;
-      this.imageHeight = imageHeight;
-      this.isImageFlipped = isFlipped;
-      needUpdateTransformation = true;
-    }
+    updateImageSourceInfo(imageWidth, imageHeight, isFlipped);
     postInvalidate();
   }
 
+  private void updateImageSourceInfo(int imageWidth, int imageHeight, boolean isFlipped) {
+    if (imageWidth == this.imageWidth
+        && imageHeight == this.imageHeight
+        && isFlipped == isImageFlipped) {
+      return;
+    }
+    this.imageWidth = imageWidth;
+    this.imageHeight = imageHeight;
+    this.isImageFlipped = isFlipped;
+    needUpdateTransformation = true;
+  }
+
   public int getImageWidth() {
     return imageWidth;
   }
@@ -274,6 +377,8 @@ public class GraphicOverlay extends View {
     if (!needUpdateTransformation || imageWidth <= 0 || imageHeight <= 0) {
       return;
     }
+    // Cleared first, so that source info set while this runs triggers another update.
+    needUpdateTransformation = false;
     float viewAspectRatio = (float) getWidth() / getHeight();
     float imageAspectRatio = (float) imageWidth / imageHeight;
     postScaleWidthOffset = 0;
@@ -295,21 +400,36 @@ public class GraphicOverlay extends View {
     if (isImageFlipped) {
       transformationMatrix.postScale(-1f, 1f, getWidth() / 2f, getHeight() / 2f);
     }
-
-    needUpdateTransformation = false;
   }
 
   /** Draws the overlay with its associated graphic objects. */
   @Override
   protected void onDraw(Canvas canvas) {
     super.onDraw(canvas);
+    long startNanos = System.nanoTime();
+    drawTimeNanos = startNanos;
 
-    synchronized (lock) {
-      updateTransformationIfNeeded();
+    frames.acquireLatest();
+    Frame frame = frames.getFront();
+    if (frame.imageWidth > 0) {
+      updateImageSourceInfo(frame.imageWidth, frame.imageHeight, frame.isImageFlipped);
+    }
+    updateTransformationIfNeeded();
+    for (int i = 0; i < frame.graphics.size(); i++) {
+      frame.graphics.get(i).draw(canvas);
+    }
 
-      for (Graphic graphic : graphics) {
-        graphic.draw(canvas);
+    if (hasGraphics) {
+      synchronized (lock) {
+        for (Graphic graphic : graphics) {
+          graphic.draw(canvas);
+        }
       }
     }
+
+    PipelineStats stats = pipelineStats;
+    if (stats != null) {
+      stats.record(PipelineStats.DRAW, System.nanoTime() - startNanos);
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+/** Graphic instance for rendering the pipeline's frame rate and per-stage latency percentiles. */
+public class InferenceInfoGraphic extends GraphicOverlay.Graphic {
+
+  private static final int TEXT_COLOR = Color.WHITE;
+  private static final float TEXT_SIZE = 50.0f;
+
+  private final Paint textPaint;
+  private final GraphicOverlay overlay;
+  private final PipelineStats.Snapshot stats;
+  private final boolean showFramesPerSecond;
+
+  /**
+   * @param stats statistics to show, read when drawn. May be refilled between frames, as long as
+   *     that happens on the thread drawing the overlay.
+   * @param showFramesPerSecond whether to show the frame rate, which means nothing for still images.
+   */
+  public InferenceInfoGraphic(
+      GraphicOverlay overlay, PipelineStats.Snapshot stats, boolean showFramesPerSecond) {
+    super(overlay);
+    this.overlay = overlay;
+    this.stats = stats;
+    this.showFramesPerSecond = showFramesPerSecond;
+    textPaint = new Paint();
+    textPaint.setColor(TEXT_COLOR);
+    textPaint.setTextSize(TEXT_SIZE);
+    textPaint.setShadowLayer(5.0f, 0f, 0f, Color.BLACK);
+    postInvalidate();
+  }
+
+  @Override
+  public synchronized void draw(Canvas canvas) {
+    float x = TEXT_SIZE * 0.5f;
+    float y = TEXT_SIZE * 1.5f;
+
+    canvas.drawText(
+        "InputImage size: " + overlay.getImageHeight() + "x" + overlay.getImageWidth(),
+        x,
+        y,
+        textPaint);
+    if (showFramesPerSecond) {
+      y += TEXT_SIZE;
+      canvas.drawText(
+          "FPS: " + stats.getFramesPerSecond() + ", dropped: " + stats.getDroppedFrames(),
+          x,
+          y,
+          textPaint);
+    }
+    for (int stage = 0; stage < PipelineStats.NUM_STAGES; stage++) {
+      if (stats.getCount(stage) == 0) {
+        continue;
+      }
+      y += TEXT_SIZE;
+      canvas.drawText(stats.formatStage(stage), x, y, textPaint);
+    }
+  }
+}
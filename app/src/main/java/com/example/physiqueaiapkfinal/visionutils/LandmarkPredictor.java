@@ -0,0 +1,203 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import java.util.Arrays;
+
+/**
+ * Predicts where pose landmarks are between detector results, so that the skeleton can be drawn at
+ * display rate while the detector runs at a fraction of it.
+ *
+ * <p>Every landmark coordinate goes through a One Euro filter: a low-pass filter whose cutoff
+ * rises with the filtered speed, which steadies a landmark holding still without making a moving
+ * one lag. The filtered position is then extrapolated at the filtered velocity to the time asked
+ * for, at most {@code maxHorizonNanos} past the last result, so a stalled detector leaves the
+ * skeleton where it was instead of flying off. Timestamps are those of the camera frames results
+ * were detected in and of the display frames drawn, on the same clock, so the detector latency is
+ * bridged too.
+ *
+ * <p>Predictions are for drawing only: rep counting and classification use what the detector
+ * reported. Free of Android dependencies. Results arrive on one thread while another draws, so
+ * methods are synchronized.
+ */
+public final class LandmarkPredictor {
+  public static final float DEFAULT_MIN_CUTOFF_HZ = 1f;
+  /** Default cutoff increase per pixel per second of speed. */
+  public static final float DEFAULT_BETA = 0.05f;
+  public static final float DEFAULT_DERIVATIVE_CUTOFF_HZ = 2f;
+  public static final long DEFAULT_MAX_HORIZON_NANOS = 150_000_000L;
+  /** Default gap between results after which a landmark starts over instead of being filtered. */
+  public static final long DEFAULT_MAX_GAP_NANOS = 500_000_000L;
+
+  // Coordinates filtered per landmark: x, y and z.
+  private static final int DIMS = 3;
+
+  private final int numLandmarks;
+  private final float minCutoffHz;
+  private final float beta;
+  private final float derivativeCutoffHz;
+  private final long maxHorizonNanos;
+  private final long maxGapNanos;
+
+  // Filtered position and velocity per coordinate, in pixels and pixels per second.
+  private final float[] position;
+  private final float[] velocity;
+  private final boolean[] tracked;
+  private long lastTimestampNanos;
+  private boolean hasResult;
+
+  private LandmarkPredictor(Builder builder) {
+    numLandmarks = builder.numLandmarks;
+    minCutoffHz = builder.minCutoffHz;
+    beta = builder.beta;
+    derivativeCutoffHz = builder.derivativeCutoffHz;
+    maxHorizonNanos = builder.maxHorizonNanos;
+    maxGapNanos = builder.maxGapNanos;
+    position = new float[numLandmarks * DIMS];
+    velocity = new float[numLandmarks * DIMS];
+    tracked = new boolean[numLandmarks];
+  }
+
+  /**
+   * Adds a detector result.
+   *
+   * @param timestampNanos when the camera frame the result was detected in was taken. Results not
+   *     newer than the last one are ignored.
+   * @param landmarks x, y and z of every landmark, {@code stride} floats apart.
+   * @param present which landmarks the result has; the others start over when seen again.
+   */
+  public synchronized void observe(
+      long timestampNanos, float[] landmarks, int stride, boolean[] present) {
+    if (hasResult && timestampNanos <= lastTimestampNanos) {
+      return;
+    }
+    boolean continued = hasResult && timestampNanos - lastTimestampNanos <= maxGapNanos;
+    float dt = continued ? (timestampNanos - lastTimestampNanos) / 1e9f : 0;
+    for (int i = 0; i < numLandmarks; i++) {
+      if (!present[i]) {
+        tracked[i] = false;
+        continue;
+      }
+      int offset = i * DIMS;
+      if (!continued || !tracked[i]) {
+        for (int d = 0; d < DIMS; d++) {
+          position[offset + d] = landmarks[i * stride + d];
+          velocity[offset + d] = 0;
+        }
+        tracked[i] = true;
+        continue;
+      }
+      for (int d = 0; d < DIMS; d++) {
+        float value = landmarks[i * stride + d];
+        float rawVelocity = (value - position[offset + d]) / dt;
+        float filteredVelocity =
+            lerp(velocity[offset + d], rawVelocity, alpha(dt, derivativeCutoffHz));
+        float cutoffHz = minCutoffHz + beta * Math.abs(filteredVelocity);
+        velocity[offset + d] = filteredVelocity;
+        position[offset + d] = lerp(position[offset + d], value, alpha(dt, cutoffHz));
+      }
+    }
+    lastTimestampNanos = timestampNanos;
+    hasResult = true;
+  }
+
+  /**
+   * Writes the predicted x, y and z of every tracked landmark at {@code timestampNanos} into
+   * {@code landmarks}, {@code stride} floats apart, leaving the others untouched.
+   *
+   * @return whether the prediction still moves, that is whether a later time would give another
+   *     one; false once the horizon is reached or if there is no result.
+   */
+  public synchronized boolean predict(long timestampNanos, float[] landmarks, int stride) {
+    if (!hasResult) {
+      return false;
+    }
+    long aheadNanos = Math.max(0, Math.min(timestampNanos - lastTimestampNanos, maxHorizonNanos));
+    float ahead = aheadNanos / 1e9f;
+    for (int i = 0; i < numLandmarks; i++) {
+      if (!tracked[i]) {
+        continue;
+      }
+      int offset = i * DIMS;
+      for (int d = 0; d < DIMS; d++) {
+        landmarks[i * stride + d] = position[offset + d] + velocity[offset + d] * ahead;
+      }
+    }
+    return timestampNanos - lastTimestampNanos < maxHorizonNanos;
+  }
+
+  /** Forgets all results, e.g. when the camera changes. */
+  public synchronized void reset() {
+    hasResult = false;
+    Arrays.fill(tracked, false);
+  }
+
+  public static Builder builder(int numLandmarks) {
+    return new Builder(numLandmarks);
+  }
+
+  /** Smoothing factor of a low-pass filter with cutoff {@code cutoffHz} for a step of dt s. */
+  private static float alpha(float dt, float cutoffHz) {
+    float tau = (float) (1 / (2 * Math.PI * cutoffHz));
+    return 1 / (1 + tau / dt);
+  }
+
+  private static float lerp(float from, float to, float alpha) {
+    return from + alpha * (to - from);
+  }
+
+  /** Builder for {@link LandmarkPredictor}. */
+  public static final class Builder {
+    private final int numLandmarks;
+    private float minCutoffHz = DEFAULT_MIN_CUTOFF_HZ;
+    private float beta = DEFAULT_BETA;
+    private float derivativeCutoffHz = DEFAULT_DERIVATIVE_CUTOFF_HZ;
+    private long maxHorizonNanos = DEFAULT_MAX_HORIZON_NANOS;
+    private long maxGapNanos = DEFAULT_MAX_GAP_NANOS;
+
+    private Builder(int numLandmarks) {
+      if (numLandmarks < 1) {
+        throw new IllegalArgumentException("Invalid number of landmarks: " + numLandmarks);
+      }
+      this.numLandmarks = numLandmarks;
+    }
+
+    /** Sets the cutoff of a landmark holding still; lower steadies it more. */
+    public Builder setMinCutoffHz(float minCutoffHz) {
+      if (minCutoffHz <= 0) {
+        throw new IllegalArgumentException("Invalid cutoff: " + minCutoffHz);
+      }
+      this.minCutoffHz = minCutoffHz;
+      return this;
+    }
+
+    /** Sets the cutoff increase per pixel per second of speed; higher lags less. */
+    public Builder setBeta(float beta) {
+      this.beta = beta;
+      return this;
+    }
+
+    /** Sets the cutoff of the velocity filter. */
+    public Builder setDerivativeCutoffHz(float derivativeCutoffHz) {
+      if (derivativeCutoffHz <= 0) {
+        throw new IllegalArgumentException("Invalid cutoff: " + derivativeCutoffHz);
+      }
+      this.derivativeCutoffHz = derivativeCutoffHz;
+      return this;
+    }
+
+    /** Sets how far past the last result to extrapolate at the most; 0 only smooths. */
+    public Builder setMaxHorizonNanos(long maxHorizonNanos) {
+      this.maxHorizonNanos = maxHorizonNanos;
+      return this;
+    }
+
+    /** Sets the gap between results after which landmarks start over. */
+    public Builder setMaxGapNanos(long maxGapNanos) {
+      this.maxGapNanos = maxGapNanos;
+      return this;
+    }
+
+    public LandmarkPredictor build() {
+      return new LandmarkPredictor(this);
+    }
+  }
+}
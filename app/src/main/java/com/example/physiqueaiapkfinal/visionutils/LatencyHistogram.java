@@ -0,0 +1,90 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-memory log-linear histogram of latencies, in microseconds.
+ *
+ * <p>Values below {@link #SUB_BUCKETS} microseconds get a bucket each; above that every power of
+ * two is split into {@code SUB_BUCKETS / 2} equal buckets, so a percentile is off by at most
+ * 1/{@code SUB_BUCKETS / 2} of its value. Values above {@link #MAX_MICROS} are counted as {@code
+ * MAX_MICROS}. Recording takes a lock but never allocates.
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  /** Number of linear buckets below the first power of two that is split. */
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+  /** Largest latency told apart, about 67 s. */
+  public static final long MAX_MICROS = (1L << 26) - 1;
+  private static final int NUM_BUCKETS = bucketIndex(MAX_MICROS) + 1;
+
+  private final long[] counts = new long[NUM_BUCKETS];
+  private long totalCount;
+  private long maxMicros;
+
+  /** Records one latency given in nanoseconds; negative values count as 0. */
+  public void recordNanos(long nanos) {
+    recordMicros(nanos / 1000);
+  }
+
+  public synchronized void recordMicros(long micros) {
+    long value = Math.max(0, Math.min(MAX_MICROS, micros));
+    counts[bucketIndex(value)]++;
+    totalCount++;
+    maxMicros = Math.max(maxMicros, value);
+  }
+
+  public synchronized long getTotalCount() {
+    return totalCount;
+  }
+
+  public synchronized long getMaxMicros() {
+    return maxMicros;
+  }
+
+  /**
+   * Returns the latency {@code percentile} percent of the recorded values are at or below: the
+   * upper end of the bucket holding it, capped by the largest value recorded. 0 if empty.
+   */
+  public synchronized long getPercentileMicros(double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+    long seen = 0;
+    for (int index = 0; index < NUM_BUCKETS; index++) {
+      seen += counts[index];
+      if (seen >= rank) {
+        return Math.min(maxMicros, bucketUpperBound(index));
+      }
+    }
+    return maxMicros;
+  }
+
+  public synchronized void reset() {
+    Arrays.fill(counts, 0);
+    totalCount = 0;
+    maxMicros = 0;
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int highestBit = 63 - Long.numberOfLeadingZeros(value);
+    // Shifted right this far the value falls in [HALF_SUB_BUCKETS, SUB_BUCKETS).
+    int shift = highestBit - SUB_BUCKET_BITS + 1;
+    return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int) (value >> shift) - HALF_SUB_BUCKETS;
+  }
+
+  /** Returns the largest value that falls in bucket {@code index}. */
+  static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+    long lowerBound = (long) ((index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS) << shift;
+    return lowerBound + (1L << shift) - 1;
+  }
+}
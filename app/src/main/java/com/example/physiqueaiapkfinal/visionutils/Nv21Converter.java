@@ -0,0 +1,165 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts NV21 camera frames straight to ARGB pixels, optionally rotating and downscaling in the
+ * same pass, without the JPEG round trip of {@code YuvImage}.
+ *
+ * <p>Colors follow the full range BT.601 (JFIF) equations {@code YuvImage} and the JPEG decoder
+ * use, in 16 bit fixed point. Downscaling keeps the top left pixel of every {@code downscale} by
+ * {@code downscale} block, which is enough for a preview. Frames must have an even width and
+ * height, as camera frames do.
+ *
+ * <p>Also crops and scales NV21 frames into smaller NV21 frames, for the detector.
+ */
+public final class Nv21Converter {
+  // Full range BT.601 coefficients times 2^16.
+  private static final int V_TO_R = 91881; // 1.402
+  private static final int U_TO_G = 22554; // 0.344136
+  private static final int V_TO_G = 46802; // 0.714136
+  private static final int U_TO_B = 116130; // 1.772
+
+  private Nv21Converter() {}
+
+  /** Returns the width of a converted frame. */
+  public static int getOutputWidth(int width, int height, int rotation, int downscale) {
+    return isSideways(rotation) ? height / downscale : width / downscale;
+  }
+
+  /** Returns the height of a converted frame. */
+  public static int getOutputHeight(int width, int height, int rotation, int downscale) {
+    return isSideways(rotation) ? width / downscale : height / downscale;
+  }
+
+  /**
+   * Converts an NV21 frame to ARGB pixels, row by row.
+   *
+   * @param nv21 frame data, {@code width * height} luma bytes followed by interleaved V and U
+   *     bytes at half resolution.
+   * @param offset index of the frame's first byte in {@code nv21}.
+   * @param rotation clockwise rotation in degrees, one of 0, 90, 180 and 270.
+   * @param downscale integer factor to shrink both sides by, at least 1.
+   * @param argb receives the pixels; must hold {@link #getOutputWidth} times {@link
+   *     #getOutputHeight} entries.
+   */
+  public static void convert(
+      byte[] nv21, int offset, int width, int height, int rotation, int downscale, int[] argb) {
+    if (downscale < 1) {
+      throw new IllegalArgumentException("Invalid downscale: " + downscale);
+    }
+    int scaledWidth = width / downscale;
+    int scaledHeight = height / downscale;
+    if (argb.length < scaledWidth * scaledHeight) {
+      throw new IllegalArgumentException(
+          "Pixel buffer too small: " + argb.length + " < " + scaledWidth * scaledHeight);
+    }
+    int chromaOffset = offset + width * height;
+    for (int row = 0; row < scaledHeight; row++) {
+      // Where the row's first pixel lands in the output and how far apart its pixels land.
+      int target;
+      int step;
+      switch (rotation) {
+        case 0:
+          target = row * scaledWidth;
+          step = 1;
+          break;
+        case 90:
+          target = scaledHeight - 1 - row;
+          step = scaledHeight;
+          break;
+        case 180:
+          target = (scaledHeight - row) * scaledWidth - 1;
+          step = -1;
+          break;
+        case 270:
+          target = (scaledWidth - 1) * scaledHeight + row;
+          step = -scaledHeight;
+          break;
+        default:
+          throw new IllegalArgumentException("Invalid rotation: " + rotation);
+      }
+      int y = row * downscale;
+      int lumaRow = offset + y * width;
+      int chromaRow = chromaOffset + (y >> 1) * width;
+      for (int column = 0, x = 0; column < scaledWidth; column++, x += downscale) {
+        int luma = nv21[lumaRow + x] & 0xff;
+        int chroma = chromaRow + (x & ~1);
+        int v = (nv21[chroma] & 0xff) - 128;
+        int u = (nv21[chroma + 1] & 0xff) - 128;
+        int r = clamp(luma + ((V_TO_R * v) >> 16));
+        int g = clamp(luma - ((U_TO_G * u + V_TO_G * v) >> 16));
+        int b = clamp(luma + ((U_TO_B * u) >> 16));
+        argb[target] = 0xff000000 | (r << 16) | (g << 8) | b;
+        target += step;
+      }
+    }
+  }
+
+  /**
+   * Copies a region of an NV21 frame into a smaller NV21 frame, scaled by nearest neighbor. The
+   * region's corner and all sizes must be even, so that it starts and ends on chroma samples.
+   *
+   * @param nv21 frame data, starting at index 0; the buffer's position is ignored.
+   * @param output receives {@code outputWidth * outputHeight * 3 / 2} bytes from index 0.
+   */
+  public static void cropAndScale(
+      ByteBuffer nv21,
+      int width,
+      int height,
+      int left,
+      int top,
+      int cropWidth,
+      int cropHeight,
+      ByteBuffer output,
+      int outputWidth,
+      int outputHeight) {
+    if (((left | top | cropWidth | cropHeight | outputWidth | outputHeight) & 1) != 0
+        || left < 0
+        || top < 0
+        || cropWidth <= 0
+        || cropHeight <= 0
+        || left + cropWidth > width
+        || top + cropHeight > height
+        || outputWidth <= 0
+        || outputHeight <= 0) {
+      throw new IllegalArgumentException(
+          "Invalid crop " + cropWidth + "x" + cropHeight + "+" + left + "+" + top + " of "
+              + width + "x" + height + " to " + outputWidth + "x" + outputHeight);
+    }
+    if (output.capacity() < outputWidth * outputHeight * 3 / 2) {
+      throw new IllegalArgumentException("Output buffer too small: " + output.capacity());
+    }
+    // Source pixels per output pixel, in 16 bit fixed point.
+    long stepX = ((long) cropWidth << 16) / outputWidth;
+    long stepY = ((long) cropHeight << 16) / outputHeight;
+    for (int row = 0; row < outputHeight; row++) {
+      int source = (top + (int) ((row * stepY) >> 16)) * width + left;
+      int target = row * outputWidth;
+      for (int column = 0; column < outputWidth; column++) {
+        output.put(target + column, nv21.get(source + (int) ((column * stepX) >> 16)));
+      }
+    }
+    // Every V and U pair covers two by two luma pixels; take the pair under the top left one.
+    int chromaOffset = width * height;
+    int outputChromaOffset = outputWidth * outputHeight;
+    for (int row = 0; row < outputHeight / 2; row++) {
+      int y = (top + (int) ((2 * row * stepY) >> 16)) >> 1;
+      int source = chromaOffset + y * width;
+      int target = outputChromaOffset + row * outputWidth;
+      for (int column = 0; column < outputWidth; column += 2) {
+        int x = (left + (int) ((column * stepX) >> 16)) & ~1;
+        output.put(target + column, nv21.get(source + x));
+        output.put(target + column + 1, nv21.get(source + x + 1));
+      }
+    }
+  }
+
+  private static boolean isSideways(int rotation) {
+    return rotation == 90 || rotation == 270;
+  }
+
+  private static int clamp(int value) {
+    return value < 0 ? 0 : value > 255 ? 255 : value;
+  }
+}
@@ -0,0 +1,198 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import java.util.Locale;
+
+/**
+ * Per-stage latency histograms and frame rate of a vision pipeline, read through {@link Snapshot}s.
+ *
+ * <p>Stages are timed by whoever runs them, from {@link System#nanoTime()} stamps, and may be
+ * recorded from any thread. Memory is fixed: one {@link LatencyHistogram} per stage and a ring of
+ * recent frame end times for the frame rate, so no timer thread is needed.
+ */
+public final class PipelineStats {
+  /** From a camera frame being handed over to its processing starting. */
+  public static final int QUEUE_WAIT = 0;
+  /** Cropping and scaling a frame down to the region the detector runs on. */
+  public static final int CROP = 1;
+  /** Running the detector on a frame. */
+  public static final int DETECTION = 2;
+  /** Classifying the detected pose and counting reps. */
+  public static final int CLASSIFICATION = 3;
+  /** Building the overlay graphics of a result. */
+  public static final int OVERLAY_BUILD = 4;
+  /** Drawing the overlay. */
+  public static final int DRAW = 5;
+  /** From processing starting to the result being on the overlay. */
+  public static final int FRAME = 6;
+  public static final int NUM_STAGES = 7;
+
+  private static final String[] STAGE_NAMES = {
+    "queue", "crop", "detect", "classify", "overlay", "draw", "frame",
+  };
+
+  // Frame rate is averaged over the frames of the last second, up to this many.
+  private static final int FRAME_RING_SIZE = 128;
+  private static final long SECOND_NANOS = 1_000_000_000L;
+
+  private final LatencyHistogram[] histograms = new LatencyHistogram[NUM_STAGES];
+  private final long[] frameEndNanos = new long[FRAME_RING_SIZE];
+  private long frames;
+  private long secondStartNanos;
+
+  public PipelineStats() {
+    for (int stage = 0; stage < NUM_STAGES; stage++) {
+      histograms[stage] = new LatencyHistogram();
+    }
+  }
+
+  public static String getStageName(int stage) {
+    return STAGE_NAMES[stage];
+  }
+
+  /** Records that {@code stage} took {@code nanos} on one frame. */
+  public void record(int stage, long nanos) {
+    histograms[stage].recordNanos(nanos);
+  }
+
+  public LatencyHistogram getHistogram(int stage) {
+    return histograms[stage];
+  }
+
+  /**
+   * Records that a frame's result reached the overlay at {@code nowNanos}.
+   *
+   * @return whether it is the first frame of a new second, for work done once per second.
+   */
+  public synchronized boolean recordFrameEnd(long nowNanos) {
+    frameEndNanos[(int) (frames++ % FRAME_RING_SIZE)] = nowNanos;
+    if (frames == 1 || nowNanos - secondStartNanos >= SECOND_NANOS) {
+      secondStartNanos = nowNanos;
+      return true;
+    }
+    return false;
+  }
+
+  public synchronized long getFrames() {
+    return frames;
+  }
+
+  /** Returns the frames that reached the overlay in the second before {@code nowNanos}. */
+  public synchronized int getFramesPerSecond(long nowNanos) {
+    int recent = 0;
+    long stored = Math.min(frames, FRAME_RING_SIZE);
+    for (long i = frames - 1; i >= frames - stored; i--) {
+      if (nowNanos - frameEndNanos[(int) (i % FRAME_RING_SIZE)] >= SECOND_NANOS) {
+        break;
+      }
+      recent++;
+    }
+    return recent;
+  }
+
+  /** Fills {@code snapshot} with the current statistics and returns it. */
+  public Snapshot snapshot(Snapshot snapshot, long droppedFrames) {
+    return snapshot(snapshot, droppedFrames, System.nanoTime());
+  }
+
+  Snapshot snapshot(Snapshot snapshot, long droppedFrames, long nowNanos) {
+    for (int stage = 0; stage < NUM_STAGES; stage++) {
+      LatencyHistogram histogram = histograms[stage];
+      snapshot.counts[stage] = histogram.getTotalCount();
+      snapshot.p50Micros[stage] = histogram.getPercentileMicros(50);
+      snapshot.p90Micros[stage] = histogram.getPercentileMicros(90);
+      snapshot.p99Micros[stage] = histogram.getPercentileMicros(99);
+      snapshot.maxMicros[stage] = histogram.getMaxMicros();
+    }
+    snapshot.frames = getFrames();
+    snapshot.framesPerSecond = getFramesPerSecond(nowNanos);
+    snapshot.droppedFrames = droppedFrames;
+    return snapshot;
+  }
+
+  /** Clears the histograms, keeping the frame rate. */
+  public void reset() {
+    for (LatencyHistogram histogram : histograms) {
+      histogram.reset();
+    }
+  }
+
+  /**
+   * Point in time copy of the statistics. Reusable: {@link PipelineStats#snapshot} overwrites it
+   * without allocating.
+   */
+  public static final class Snapshot {
+    private final long[] counts = new long[NUM_STAGES];
+    private final long[] p50Micros = new long[NUM_STAGES];
+    private final long[] p90Micros = new long[NUM_STAGES];
+    private final long[] p99Micros = new long[NUM_STAGES];
+    private final long[] maxMicros = new long[NUM_STAGES];
+    private long frames;
+    private int framesPerSecond;
+    private long droppedFrames;
+
+    /** Returns how many times {@code stage} was recorded. */
+    public long getCount(int stage) {
+      return counts[stage];
+    }
+
+    public float getP50Ms(int stage) {
+      return p50Micros[stage] / 1000f;
+    }
+
+    public float getP90Ms(int stage) {
+      return p90Micros[stage] / 1000f;
+    }
+
+    public float getP99Ms(int stage) {
+      return p99Micros[stage] / 1000f;
+    }
+
+    public float getMaxMs(int stage) {
+      return maxMicros[stage] / 1000f;
+    }
+
+    /** Returns the frames whose result reached the overlay. */
+    public long getFrames() {
+      return frames;
+    }
+
+    public int getFramesPerSecond() {
+      return framesPerSecond;
+    }
+
+    /** Returns the camera frames dropped before being processed. */
+    public long getDroppedFrames() {
+      return droppedFrames;
+    }
+
+    /** Formats one stage as its name, p50, p90, p99 and max in milliseconds. */
+    public String formatStage(int stage) {
+      return String.format(
+          Locale.US,
+          "%s p50 %.1f p90 %.1f p99 %.1f max %.1f ms",
+          STAGE_NAMES[stage],
+          getP50Ms(stage),
+          getP90Ms(stage),
+          getP99Ms(stage),
+          getMaxMs(stage));
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder text =
+          new StringBuilder()
+              .append(frames)
+              .append(" frames, ")
+              .append(framesPerSecond)
+              .append(" fps, ")
+              .append(droppedFrames)
+              .append(" dropped");
+      for (int stage = 0; stage < NUM_STAGES; stage++) {
+        if (counts[stage] > 0) {
+          text.append('\n').append(formatStage(stage));
+        }
+      }
+      return text.toString();
+    }
+  }
+}
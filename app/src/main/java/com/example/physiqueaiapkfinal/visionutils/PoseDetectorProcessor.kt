@@ -17,8 +17,10 @@
 package com.example.physiqueaiapkfinal.visionutils
 
 import android.content.Context
+import android.os.SystemClock
 import android.util.Log
 import com.example.physiqueaiapkfinal.visionutils.classification.PoseClassifierProcessor
+import com.example.physiqueaiapkfinal.visionutils.classification.RepResult
 import com.google.android.gms.tasks.Task
 import com.google.android.odml.image.MlImage
 import com.google.mlkit.vision.common.InputImage
@@ -26,11 +28,15 @@ import com.google.mlkit.vision.pose.Pose
 import com.google.mlkit.vision.pose.PoseDetection
 import com.google.mlkit.vision.pose.PoseDetector
 import com.google.mlkit.vision.pose.PoseDetectorOptionsBase
-import java.util.ArrayList
 import java.util.concurrent.Executor
 import java.util.concurrent.Executors
 
-/** A processor to run pose detector. */
+/**
+ * A processor to run pose detector. With [trackRegionOfInterest], camera frames are detected in a
+ * crop around the user once found, see [RoiTracker]. With [predictLandmarks], the skeleton drawn
+ * for camera frames moves at display rate between results, see [LandmarkPredictor]; rep counting
+ * still only sees detected poses.
+ */
 class PoseDetectorProcessor(
   private val context: Context,
   options: PoseDetectorOptionsBase,
@@ -38,16 +44,37 @@ class PoseDetectorProcessor(
   private val visualizeZ: Boolean,
   private val rescaleZForVisualization: Boolean,
   private val runClassification: Boolean,
-  private val isStreamMode: Boolean
+  private val isStreamMode: Boolean,
+  trackRegionOfInterest: Boolean = false,
+  predictLandmarks: Boolean = false
 ) : VisionProcessorBase<PoseDetectorProcessor.PoseWithClassification>(context) {
 
   private val detector: PoseDetector
+  // Classify stage. A single thread, so frames are classified one at a time and in the order the
+  // detector finished them, while the detector moves on to the next frame in flight.
   private val classificationExecutor: Executor
 
   private var poseClassifierProcessor: PoseClassifierProcessor? = null
 
-  /** Internal class to hold Pose and classification results. */
-  class PoseWithClassification(val pose: Pose, val classificationResult: List<String>)
+  private val roiTracker: RoiTracker? =
+    if (trackRegionOfInterest) RoiTracker.builder().build() else null
+  // Full frame landmark positions and likelihoods handed to the tracker, on classificationExecutor.
+  private val trackedLandmarks = FloatArray(NUM_LANDMARKS * 2)
+  private val trackedLikelihoods = FloatArray(NUM_LANDMARKS)
+  private val landmarkPredictor: LandmarkPredictor? =
+    if (predictLandmarks) PoseGraphic.createPredictor() else null
+
+  /**
+   * Internal class to hold Pose and classification results. The pose is in the coordinates of
+   * [crop], if it was detected in one; classification does not depend on its offset and scale.
+   * [frameTimeNanos] is when detection of the camera frame started, null for still images.
+   */
+  class PoseWithClassification(
+    val pose: Pose,
+    val repResult: RepResult?,
+    val crop: RoiTracker.Crop? = null,
+    val frameTimeNanos: Long? = null
+  )
 
   init {
     detector = PoseDetection.getClient(options)
@@ -57,57 +84,127 @@ class PoseDetectorProcessor(
   override fun stop() {
     super.stop()
     detector.close()
+    roiTracker?.reset()
+    landmarkPredictor?.reset()
   }
 
   override fun detectInImage(image: InputImage): Task<PoseWithClassification> {
+    val detectStartNanos = System.nanoTime()
     return detector
       .process(image)
       .continueWith(
         classificationExecutor
-      ) { task ->
-        val pose = task.getResult()
-        var classificationResult: List<String> = ArrayList()
-        if (runClassification) {
-          if (poseClassifierProcessor == null) {
-            poseClassifierProcessor = PoseClassifierProcessor(context, isStreamMode)
-          }
-          classificationResult = poseClassifierProcessor!!.getPoseResult(pose)
-        }
-        PoseWithClassification(pose, classificationResult)
-      }
+      ) { task -> classify(task.getResult(), detectStartNanos, null) }
   }
 
   override fun detectInImage(image: MlImage): Task<PoseWithClassification> {
+    val detectStartNanos = System.nanoTime()
+    return detector
+      .process(image)
+      .continueWith(
+        classificationExecutor
+      ) { task -> classify(task.getResult(), detectStartNanos, null) }
+  }
+
+  override fun detectInImage(
+    image: InputImage,
+    crop: RoiTracker.Crop
+  ): Task<PoseWithClassification> {
+    val detectStartNanos = System.nanoTime()
+    return detector
+      .process(image)
+      .continueWith(
+        classificationExecutor
+      ) { task -> classify(task.getResult(), detectStartNanos, crop) }
+  }
+
+  override fun detectInImage(image: MlImage, crop: RoiTracker.Crop): Task<PoseWithClassification> {
+    val detectStartNanos = System.nanoTime()
     return detector
       .process(image)
       .continueWith(
         classificationExecutor
-      ) { task ->
-        val pose = task.getResult()
-        var classificationResult: List<String> = ArrayList()
-        if (runClassification) {
-          if (poseClassifierProcessor == null) {
-            poseClassifierProcessor = PoseClassifierProcessor(context, isStreamMode)
-          }
-          classificationResult = poseClassifierProcessor!!.getPoseResult(pose)
-        }
-        PoseWithClassification(pose, classificationResult)
+      ) { task -> classify(task.getResult(), detectStartNanos, crop) }
+  }
+
+  override fun selectCrop(imageWidth: Int, imageHeight: Int, crop: RoiTracker.Crop) {
+    if (roiTracker != null) {
+      roiTracker.nextCrop(imageWidth, imageHeight, crop)
+    } else {
+      crop.setFullFrame(imageWidth, imageHeight)
+    }
+  }
+
+  /**
+   * Runs on [classificationExecutor] once the detector is done with a frame, detected in [crop] of
+   * a camera frame or in a still image if null.
+   */
+  private fun classify(
+    pose: Pose,
+    detectStartNanos: Long,
+    crop: RoiTracker.Crop?
+  ): PoseWithClassification {
+    val classifyStartNanos = System.nanoTime()
+    pipelineStats.record(PipelineStats.DETECTION, classifyStartNanos - detectStartNanos)
+    if (crop != null) {
+      updateTrackedRegion(pose, crop)
+    }
+    var repResult: RepResult? = null
+    if (runClassification) {
+      if (poseClassifierProcessor == null) {
+        poseClassifierProcessor = PoseClassifierProcessor(context, isStreamMode)
       }
+      repResult =
+        poseClassifierProcessor!!.getRepResult(
+          pose,
+          SystemClock.elapsedRealtime(),
+          detectStartNanos
+        )
+      pipelineStats.record(PipelineStats.CLASSIFICATION, System.nanoTime() - classifyStartNanos)
+    }
+    // The frame's crop is reused once it is processed, so keep a copy for drawing.
+    val resultCrop = if (crop == null || crop.isFullFrame) null else RoiTracker.Crop(crop)
+    return PoseWithClassification(
+      pose,
+      repResult,
+      resultCrop,
+      if (crop == null) null else detectStartNanos
+    )
+  }
+
+  /** Moves the region tracked to where [pose], detected in [crop], is in the camera frame. */
+  private fun updateTrackedRegion(pose: Pose, crop: RoiTracker.Crop) {
+    val tracker = roiTracker ?: return
+    val landmarks = pose.allPoseLandmarks
+    val count = minOf(landmarks.size, NUM_LANDMARKS)
+    for (i in 0 until count) {
+      val landmark = landmarks[i]
+      trackedLandmarks[i * 2] = crop.toImageX(landmark.position.x)
+      trackedLandmarks[i * 2 + 1] = crop.toImageY(landmark.position.y)
+      trackedLikelihoods[i] = landmark.inFrameLikelihood
+    }
+    tracker.onLandmarks(crop, trackedLandmarks, trackedLikelihoods, count)
   }
 
   override fun onSuccess(
     poseWithClassification: PoseWithClassification,
+    frame: GraphicOverlay.Frame,
     graphicOverlay: GraphicOverlay
   ) {
-    graphicOverlay.add(
-      PoseGraphic(
-        graphicOverlay,
-        poseWithClassification.pose,
-        showInFrameLikelihood,
-        visualizeZ,
-        rescaleZForVisualization,
-        poseWithClassification.classificationResult
-      )
+    val frameTimeNanos = poseWithClassification.frameTimeNanos
+    frame.add(
+      frame
+        .retain(PoseGraphic::class.java) { PoseGraphic(graphicOverlay) }
+        .update(
+          poseWithClassification.pose,
+          showInFrameLikelihood,
+          visualizeZ,
+          rescaleZForVisualization,
+          poseWithClassification.repResult,
+          poseWithClassification.crop,
+          if (frameTimeNanos != null) landmarkPredictor else null,
+          frameTimeNanos ?: 0
+        )
     )
   }
 
@@ -122,5 +219,7 @@ class PoseDetectorProcessor(
 
   companion object {
     private val TAG = "PoseDetectorProcessor"
+    // Landmarks ML Kit reports per pose.
+    private const val NUM_LANDMARKS = 33
   }
 }
\ No newline at end of file
@@ -19,28 +19,46 @@ package com.example.physiqueaiapkfinal.visionutils
 import android.graphics.Canvas
 import android.graphics.Color
 import android.graphics.Paint
+import com.example.physiqueaiapkfinal.visionutils.classification.RepResult
 import com.google.mlkit.vision.pose.Pose
 import com.google.mlkit.vision.pose.PoseLandmark
 import java.lang.Math.max
 import java.lang.Math.min
 import java.util.Locale
 
-/** Draw the detected pose in preview. */
-class PoseGraphic
-internal constructor(
-  overlay: GraphicOverlay,
-  private val pose: Pose,
-  private val showInFrameLikelihood: Boolean,
-  private val visualizeZ: Boolean,
-  private val rescaleZForVisualization: Boolean,
-  private val poseClassification: List<String>
-) : GraphicOverlay.Graphic(overlay) {
+/**
+ * Draw the detected pose in preview.
+ *
+ * Reusable: [update] copies the landmarks of a new pose into preallocated arrays, and [draw]
+ * renders the skeleton with one batched [Canvas.drawLines] call per color and one
+ * [Canvas.drawPoints] call, except when visualizing z, which colors every line on its own. Keep one
+ * instance per overlay frame slot, see [GraphicOverlay.Frame.retain].
+ */
+class PoseGraphic internal constructor(overlay: GraphicOverlay) : GraphicOverlay.Graphic(overlay) {
+  private var showInFrameLikelihood = false
+  private var visualizeZ = false
+  private var rescaleZForVisualization = false
   private var zMin = java.lang.Float.MAX_VALUE
   private var zMax = java.lang.Float.MIN_VALUE
   private val classificationTextPaint: Paint
   private val leftPaint: Paint
   private val rightPaint: Paint
   private val whitePaint: Paint
+  private val pointPaint: Paint
+
+  // Image coordinates of the landmarks, LANDMARK_STRIDE floats each, indexed by landmark type.
+  private val landmarks = FloatArray(NUM_LANDMARKS * LANDMARK_STRIDE)
+  private val present = BooleanArray(NUM_LANDMARKS)
+  private var landmarkCount = 0
+  private val classificationLines = ArrayList<String>(2)
+  // Moves the landmarks drawn between results if set, see update.
+  private var predictor: LandmarkPredictor? = null
+  private val predicted = FloatArray(NUM_LANDMARKS * LANDMARK_STRIDE)
+  // View coordinates, refilled on every draw. Lines take four floats per landmark pair, and also
+  // hold the points when some are missing.
+  private val viewPoints = FloatArray(NUM_LANDMARKS * 2)
+  private val viewLines =
+    FloatArray(2 * maxOf(NUM_LANDMARKS, WHITE_LINES.size, LEFT_LINES.size, RIGHT_LINES.size))
 
   init {
     classificationTextPaint = Paint()
@@ -58,176 +76,300 @@ internal constructor(
     rightPaint = Paint()
     rightPaint.strokeWidth = STROKE_WIDTH
     rightPaint.color = Color.YELLOW
+    // Round points as wide as the dots drawn one by one.
+    pointPaint = Paint()
+    pointPaint.strokeWidth = DOT_RADIUS * 2
+    pointPaint.strokeCap = Paint.Cap.ROUND
+    pointPaint.color = Color.WHITE
+  }
+
+  internal constructor(
+    overlay: GraphicOverlay,
+    pose: Pose,
+    showInFrameLikelihood: Boolean,
+    visualizeZ: Boolean,
+    rescaleZForVisualization: Boolean,
+    repResult: RepResult?
+  ) : this(overlay) {
+    update(pose, showInFrameLikelihood, visualizeZ, rescaleZForVisualization, repResult)
+  }
+
+  /**
+   * Replaces the pose drawn, and returns this graphic. A pose detected in [crop] of the camera
+   * frame is mapped back to the full frame the overlay shows.
+   *
+   * With a [predictor], made by [createPredictor] and shared by the graphics of all overlay frames,
+   * the pose is fed to it as detected in the camera frame of [timestampNanos], in
+   * [System.nanoTime]. Every draw then shows the landmarks predicted for the time of the draw, and
+   * requests the next display frame while they move, so the skeleton moves at display rate.
+   */
+  fun update(
+    pose: Pose,
+    showInFrameLikelihood: Boolean,
+    visualizeZ: Boolean,
+    rescaleZForVisualization: Boolean,
+    repResult: RepResult?,
+    crop: RoiTracker.Crop? = null,
+    predictor: LandmarkPredictor? = null,
+    timestampNanos: Long = 0
+  ): PoseGraphic {
+    this.showInFrameLikelihood = showInFrameLikelihood
+    this.visualizeZ = visualizeZ
+    this.rescaleZForVisualization = rescaleZForVisualization
+    zMin = java.lang.Float.MAX_VALUE
+    zMax = java.lang.Float.MIN_VALUE
+    present.fill(false)
+    landmarkCount = 0
+    for (landmark in pose.allPoseLandmarks) {
+      val type = landmark.landmarkType
+      if (type < 0 || type >= NUM_LANDMARKS) {
+        continue
+      }
+      val point = landmark.position3D
+      val offset = type * LANDMARK_STRIDE
+      val z = crop?.toImageZ(point.z) ?: point.z
+      landmarks[offset] = crop?.toImageX(point.x) ?: point.x
+      landmarks[offset + 1] = crop?.toImageY(point.y) ?: point.y
+      landmarks[offset + 2] = z
+      landmarks[offset + 3] = landmark.inFrameLikelihood
+      present[type] = true
+      landmarkCount++
+      if (visualizeZ && rescaleZForVisualization) {
+        zMin = min(zMin, z)
+        zMax = max(zMax, z)
+      }
+    }
+    updateClassificationLines(repResult)
+    this.predictor = predictor
+    predictor?.observe(timestampNanos, landmarks, LANDMARK_STRIDE, present)
+    return this
   }
 
   override fun draw(canvas: Canvas) {
-    val landmarks = pose.allPoseLandmarks
-    if (landmarks.isEmpty()) {
+    if (landmarkCount == 0) {
       return
     }
 
     // Draw pose classification text.
     val classificationX = POSE_CLASSIFICATION_TEXT_SIZE * 0.5f
-    for (i in poseClassification.indices) {
+    for (i in classificationLines.indices) {
       val classificationY =
         canvas.height -
-                (POSE_CLASSIFICATION_TEXT_SIZE * 1.5f * (poseClassification.size - i).toFloat())
+                (POSE_CLASSIFICATION_TEXT_SIZE * 1.5f * (classificationLines.size - i).toFloat())
       canvas.drawText(
-        poseClassification[i],
+        classificationLines[i],
         classificationX,
         classificationY,
         classificationTextPaint
       )
     }
 
-    // Draw all the points
-    for (landmark in landmarks) {
-      drawPoint(canvas, landmark, whitePaint)
-      if (visualizeZ && rescaleZForVisualization) {
-        zMin = min(zMin, landmark.position3D.z)
-        zMax = max(zMax, landmark.position3D.z)
+    // Only positions are predicted; z colors and likelihoods stay as detected.
+    var points = landmarks
+    val predictor = predictor
+    if (predictor != null) {
+      landmarks.copyInto(predicted)
+      if (predictor.predict(drawTimeNanos, predicted, LANDMARK_STRIDE)) {
+        postInvalidateOnAnimation()
+      }
+      points = predicted
+    }
+    for (type in 0 until NUM_LANDMARKS) {
+      if (present[type]) {
+        viewPoints[type * 2] = translateX(points[type * LANDMARK_STRIDE])
+        viewPoints[type * 2 + 1] = translateY(points[type * LANDMARK_STRIDE + 1])
       }
     }
 
-    val nose = pose.getPoseLandmark(PoseLandmark.NOSE)
-    val lefyEyeInner = pose.getPoseLandmark(PoseLandmark.LEFT_EYE_INNER)
-    val lefyEye = pose.getPoseLandmark(PoseLandmark.LEFT_EYE)
-    val leftEyeOuter = pose.getPoseLandmark(PoseLandmark.LEFT_EYE_OUTER)
-    val rightEyeInner = pose.getPoseLandmark(PoseLandmark.RIGHT_EYE_INNER)
-    val rightEye = pose.getPoseLandmark(PoseLandmark.RIGHT_EYE)
-    val rightEyeOuter = pose.getPoseLandmark(PoseLandmark.RIGHT_EYE_OUTER)
-    val leftEar = pose.getPoseLandmark(PoseLandmark.LEFT_EAR)
-    val rightEar = pose.getPoseLandmark(PoseLandmark.RIGHT_EAR)
-    val leftMouth = pose.getPoseLandmark(PoseLandmark.LEFT_MOUTH)
-    val rightMouth = pose.getPoseLandmark(PoseLandmark.RIGHT_MOUTH)
-
-    val leftShoulder = pose.getPoseLandmark(PoseLandmark.LEFT_SHOULDER)
-    val rightShoulder = pose.getPoseLandmark(PoseLandmark.RIGHT_SHOULDER)
-    val leftElbow = pose.getPoseLandmark(PoseLandmark.LEFT_ELBOW)
-    val rightElbow = pose.getPoseLandmark(PoseLandmark.RIGHT_ELBOW)
-    val leftWrist = pose.getPoseLandmark(PoseLandmark.LEFT_WRIST)
-    val rightWrist = pose.getPoseLandmark(PoseLandmark.RIGHT_WRIST)
-    val leftHip = pose.getPoseLandmark(PoseLandmark.LEFT_HIP)
-    val rightHip = pose.getPoseLandmark(PoseLandmark.RIGHT_HIP)
-    val leftKnee = pose.getPoseLandmark(PoseLandmark.LEFT_KNEE)
-    val rightKnee = pose.getPoseLandmark(PoseLandmark.RIGHT_KNEE)
-    val leftAnkle = pose.getPoseLandmark(PoseLandmark.LEFT_ANKLE)
-    val rightAnkle = pose.getPoseLandmark(PoseLandmark.RIGHT_ANKLE)
-
-    val leftPinky = pose.getPoseLandmark(PoseLandmark.LEFT_PINKY)
-    val rightPinky = pose.getPoseLandmark(PoseLandmark.RIGHT_PINKY)
-    val leftIndex = pose.getPoseLandmark(PoseLandmark.LEFT_INDEX)
-    val rightIndex = pose.getPoseLandmark(PoseLandmark.RIGHT_INDEX)
-    val leftThumb = pose.getPoseLandmark(PoseLandmark.LEFT_THUMB)
-    val rightThumb = pose.getPoseLandmark(PoseLandmark.RIGHT_THUMB)
-    val leftHeel = pose.getPoseLandmark(PoseLandmark.LEFT_HEEL)
-    val rightHeel = pose.getPoseLandmark(PoseLandmark.RIGHT_HEEL)
-    val leftFootIndex = pose.getPoseLandmark(PoseLandmark.LEFT_FOOT_INDEX)
-    val rightFootIndex = pose.getPoseLandmark(PoseLandmark.RIGHT_FOOT_INDEX)
-
-    // Face
-    drawLine(canvas, nose, lefyEyeInner, whitePaint)
-    drawLine(canvas, lefyEyeInner, lefyEye, whitePaint)
-    drawLine(canvas, lefyEye, leftEyeOuter, whitePaint)
-    drawLine(canvas, leftEyeOuter, leftEar, whitePaint)
-    drawLine(canvas, nose, rightEyeInner, whitePaint)
-    drawLine(canvas, rightEyeInner, rightEye, whitePaint)
-    drawLine(canvas, rightEye, rightEyeOuter, whitePaint)
-    drawLine(canvas, rightEyeOuter, rightEar, whitePaint)
-    drawLine(canvas, leftMouth, rightMouth, whitePaint)
-
-    drawLine(canvas, leftShoulder, rightShoulder, whitePaint)
-    drawLine(canvas, leftHip, rightHip, whitePaint)
-
-    // Left body
-    drawLine(canvas, leftShoulder, leftElbow, leftPaint)
-    drawLine(canvas, leftElbow, leftWrist, leftPaint)
-    drawLine(canvas, leftShoulder, leftHip, leftPaint)
-    drawLine(canvas, leftHip, leftKnee, leftPaint)
-    drawLine(canvas, leftKnee, leftAnkle, leftPaint)
-    drawLine(canvas, leftWrist, leftThumb, leftPaint)
-    drawLine(canvas, leftWrist, leftPinky, leftPaint)
-    drawLine(canvas, leftWrist, leftIndex, leftPaint)
-    drawLine(canvas, leftIndex, leftPinky, leftPaint)
-    drawLine(canvas, leftAnkle, leftHeel, leftPaint)
-    drawLine(canvas, leftHeel, leftFootIndex, leftPaint)
-
-    // Right body
-    drawLine(canvas, rightShoulder, rightElbow, rightPaint)
-    drawLine(canvas, rightElbow, rightWrist, rightPaint)
-    drawLine(canvas, rightShoulder, rightHip, rightPaint)
-    drawLine(canvas, rightHip, rightKnee, rightPaint)
-    drawLine(canvas, rightKnee, rightAnkle, rightPaint)
-    drawLine(canvas, rightWrist, rightThumb, rightPaint)
-    drawLine(canvas, rightWrist, rightPinky, rightPaint)
-    drawLine(canvas, rightWrist, rightIndex, rightPaint)
-    drawLine(canvas, rightIndex, rightPinky, rightPaint)
-    drawLine(canvas, rightAnkle, rightHeel, rightPaint)
-    drawLine(canvas, rightHeel, rightFootIndex, rightPaint)
+    if (visualizeZ) {
+      drawColoredByZ(canvas)
+    } else {
+      whitePaint.color = Color.WHITE
+      leftPaint.color = Color.GREEN
+      rightPaint.color = Color.YELLOW
+      drawPoints(canvas)
+      drawLines(canvas, WHITE_LINES, whitePaint)
+      drawLines(canvas, LEFT_LINES, leftPaint)
+      drawLines(canvas, RIGHT_LINES, rightPaint)
+    }
 
     // Draw inFrameLikelihood for all points
     if (showInFrameLikelihood) {
-      for (landmark in landmarks) {
-        canvas.drawText(
-          String.format(Locale.US, "%.2f", landmark.inFrameLikelihood),
-          translateX(landmark.position.x),
-          translateY(landmark.position.y),
-          whitePaint
-        )
+      for (type in 0 until NUM_LANDMARKS) {
+        if (present[type]) {
+          canvas.drawText(
+            String.format(Locale.US, "%.2f", landmarks[type * LANDMARK_STRIDE + 3]),
+            viewPoints[type * 2],
+            viewPoints[type * 2 + 1],
+            whitePaint
+          )
+        }
+      }
+    }
+  }
+
+  /** Formats the rep count, if counted, and the most likely class of [repResult]. */
+  private fun updateClassificationLines(repResult: RepResult?) {
+    classificationLines.clear()
+    val result = repResult ?: return
+    if (result.isCountingReps) {
+      val repClassName = result.repClassName
+      classificationLines.add(
+        if (repClassName == null) "Exercise: 0 reps"
+        else String.format(Locale.US, "%s : %d reps", repClassName, result.repCount)
+      )
+    }
+    result.className?.let {
+      classificationLines.add(
+        String.format(Locale.US, "%s : %.2f confidence", it, result.confidence)
+      )
+    }
+  }
+
+  private fun drawPoints(canvas: Canvas) {
+    if (landmarkCount == NUM_LANDMARKS) {
+      canvas.drawPoints(viewPoints, pointPaint)
+      return
+    }
+    // Some landmarks are missing: pack the others into viewLines, which is large enough.
+    var count = 0
+    for (type in 0 until NUM_LANDMARKS) {
+      if (present[type]) {
+        viewLines[count++] = viewPoints[type * 2]
+        viewLines[count++] = viewPoints[type * 2 + 1]
       }
     }
+    canvas.drawPoints(viewLines, 0, count, pointPaint)
   }
 
-  internal fun drawPoint(canvas: Canvas, landmark: PoseLandmark, paint: Paint) {
-    val point = landmark.position3D
-    updatePaintColorByZValue(
-      paint,
-      canvas,
-      visualizeZ,
-      rescaleZForVisualization,
-      point.z,
-      zMin,
-      zMax
-    )
-    canvas.drawCircle(translateX(point.x), translateY(point.y), DOT_RADIUS, paint)
+  /** Draws the lines between the landmark pairs of [lines] whose ends were both detected. */
+  private fun drawLines(canvas: Canvas, lines: IntArray, paint: Paint) {
+    var count = 0
+    var i = 0
+    while (i < lines.size) {
+      val start = lines[i]
+      val end = lines[i + 1]
+      i += 2
+      if (!present[start] || !present[end]) {
+        continue
+      }
+      viewLines[count++] = viewPoints[start * 2]
+      viewLines[count++] = viewPoints[start * 2 + 1]
+      viewLines[count++] = viewPoints[end * 2]
+      viewLines[count++] = viewPoints[end * 2 + 1]
+    }
+    canvas.drawLines(viewLines, 0, count, paint)
   }
 
-  internal fun drawLine(
-    canvas: Canvas,
-    startLandmark: PoseLandmark?,
-    endLandmark: PoseLandmark?,
-    paint: Paint
-  ) {
-    val start = startLandmark!!.position3D
-    val end = endLandmark!!.position3D
-
-    // Gets average z for the current body line
-    val avgZInImagePixel = (start.z + end.z) / 2
-    updatePaintColorByZValue(
-      paint,
-      canvas,
-      visualizeZ,
-      rescaleZForVisualization,
-      avgZInImagePixel,
-      zMin,
-      zMax
-    )
-
-    canvas.drawLine(
-      translateX(start.x),
-      translateY(start.y),
-      translateX(end.x),
-      translateY(end.y),
-      paint
-    )
+  /** Draws every point and line on its own, colored by its z value. */
+  private fun drawColoredByZ(canvas: Canvas) {
+    for (type in 0 until NUM_LANDMARKS) {
+      if (present[type]) {
+        updatePaintColorByZValue(
+          whitePaint,
+          canvas,
+          visualizeZ,
+          rescaleZForVisualization,
+          landmarks[type * LANDMARK_STRIDE + 2],
+          zMin,
+          zMax
+        )
+        canvas.drawCircle(viewPoints[type * 2], viewPoints[type * 2 + 1], DOT_RADIUS, whitePaint)
+      }
+    }
+    drawLinesColoredByZ(canvas, WHITE_LINES, whitePaint)
+    drawLinesColoredByZ(canvas, LEFT_LINES, leftPaint)
+    drawLinesColoredByZ(canvas, RIGHT_LINES, rightPaint)
+  }
+
+  private fun drawLinesColoredByZ(canvas: Canvas, lines: IntArray, paint: Paint) {
+    var i = 0
+    while (i < lines.size) {
+      val start = lines[i]
+      val end = lines[i + 1]
+      i += 2
+      if (!present[start] || !present[end]) {
+        continue
+      }
+      // Gets average z for the current body line
+      val avgZInImagePixel =
+        (landmarks[start * LANDMARK_STRIDE + 2] + landmarks[end * LANDMARK_STRIDE + 2]) / 2
+      updatePaintColorByZValue(
+        paint,
+        canvas,
+        visualizeZ,
+        rescaleZForVisualization,
+        avgZInImagePixel,
+        zMin,
+        zMax
+      )
+      canvas.drawLine(
+        viewPoints[start * 2],
+        viewPoints[start * 2 + 1],
+        viewPoints[end * 2],
+        viewPoints[end * 2 + 1],
+        paint
+      )
+    }
   }
 
   companion object {
 
+    /** Returns a predictor for [update], to share between the graphics of one overlay. */
+    fun createPredictor(): LandmarkPredictor = LandmarkPredictor.builder(NUM_LANDMARKS).build()
+
     private val DOT_RADIUS = 8.0f
     private val IN_FRAME_LIKELIHOOD_TEXT_SIZE = 30.0f
     private val STROKE_WIDTH = 10.0f
     private val POSE_CLASSIFICATION_TEXT_SIZE = 60.0f
+
+    private const val NUM_LANDMARKS = PoseLandmark.RIGHT_FOOT_INDEX + 1
+    // x, y, z and in frame likelihood.
+    private const val LANDMARK_STRIDE = 4
+
+    // Lines as pairs of landmark types.
+    private val WHITE_LINES =
+      intArrayOf(
+        // Face
+        PoseLandmark.NOSE, PoseLandmark.LEFT_EYE_INNER,
+        PoseLandmark.LEFT_EYE_INNER, PoseLandmark.LEFT_EYE,
+        PoseLandmark.LEFT_EYE, PoseLandmark.LEFT_EYE_OUTER,
+        PoseLandmark.LEFT_EYE_OUTER, PoseLandmark.LEFT_EAR,
+        PoseLandmark.NOSE, PoseLandmark.RIGHT_EYE_INNER,
+        PoseLandmark.RIGHT_EYE_INNER, PoseLandmark.RIGHT_EYE,
+        PoseLandmark.RIGHT_EYE, PoseLandmark.RIGHT_EYE_OUTER,
+        PoseLandmark.RIGHT_EYE_OUTER, PoseLandmark.RIGHT_EAR,
+        PoseLandmark.LEFT_MOUTH, PoseLandmark.RIGHT_MOUTH,
+        PoseLandmark.LEFT_SHOULDER, PoseLandmark.RIGHT_SHOULDER,
+        PoseLandmark.LEFT_HIP, PoseLandmark.RIGHT_HIP
+      )
+    private val LEFT_LINES =
+      intArrayOf(
+        PoseLandmark.LEFT_SHOULDER, PoseLandmark.LEFT_ELBOW,
+        PoseLandmark.LEFT_ELBOW, PoseLandmark.LEFT_WRIST,
+        PoseLandmark.LEFT_SHOULDER, PoseLandmark.LEFT_HIP,
+        PoseLandmark.LEFT_HIP, PoseLandmark.LEFT_KNEE,
+        PoseLandmark.LEFT_KNEE, PoseLandmark.LEFT_ANKLE,
+        PoseLandmark.LEFT_WRIST, PoseLandmark.LEFT_THUMB,
+        PoseLandmark.LEFT_WRIST, PoseLandmark.LEFT_PINKY,
+        PoseLandmark.LEFT_WRIST, PoseLandmark.LEFT_INDEX,
+        PoseLandmark.LEFT_INDEX, PoseLandmark.LEFT_PINKY,
+        PoseLandmark.LEFT_ANKLE, PoseLandmark.LEFT_HEEL,
+        PoseLandmark.LEFT_HEEL, PoseLandmark.LEFT_FOOT_INDEX
+      )
+    private val RIGHT_LINES =
+      intArrayOf(
+        PoseLandmark.RIGHT_SHOULDER, PoseLandmark.RIGHT_ELBOW,
+        PoseLandmark.RIGHT_ELBOW, PoseLandmark.RIGHT_WRIST,
+        PoseLandmark.RIGHT_SHOULDER, PoseLandmark.RIGHT_HIP,
+        PoseLandmark.RIGHT_HIP, PoseLandmark.RIGHT_KNEE,
+        PoseLandmark.RIGHT_KNEE, PoseLandmark.RIGHT_ANKLE,
+        PoseLandmark.RIGHT_WRIST, PoseLandmark.RIGHT_THUMB,
+        PoseLandmark.RIGHT_WRIST, PoseLandmark.RIGHT_PINKY,
+        PoseLandmark.RIGHT_WRIST, PoseLandmark.RIGHT_INDEX,
+        PoseLandmark.RIGHT_INDEX, PoseLandmark.RIGHT_PINKY,
+        PoseLandmark.RIGHT_ANKLE, PoseLandmark.RIGHT_HEEL,
+        PoseLandmark.RIGHT_HEEL, PoseLandmark.RIGHT_FOOT_INDEX
+      )
   }
 }
-
@@ -0,0 +1,398 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+/**
+ * Tracks the region of the camera frame the user occupies, so that the detector can run on a
+ * padded crop of it, scaled to a target size, instead of on the whole frame.
+ *
+ * <p>The crop for a frame comes from the landmarks of the last frame detected: the bounding box of
+ * the landmarks seen with enough likelihood, padded on every side. Detection falls back to the
+ * full frame when too few landmarks were seen, when one of them came within a margin of a crop
+ * edge, past which the body may go on, and when the crop would cover most of the frame anyway.
+ *
+ * <p>Crops are in upright image coordinates, the ones landmarks are reported in; {@link Crop} maps
+ * between those, the coordinates of the scaled crop the detector sees and the unrotated camera
+ * buffer. Free of Android dependencies. Methods may be called from any thread, since crops are
+ * picked for new frames while landmarks of earlier ones arrive.
+ */
+public final class RoiTracker {
+  /** A region of a frame and the size it is scaled to for the detector. */
+  public static final class Crop {
+    private int imageWidth;
+    private int imageHeight;
+    private int left;
+    private int top;
+    private int width;
+    private int height;
+    private int outputWidth;
+    private int outputHeight;
+
+    public Crop() {}
+
+    public Crop(Crop other) {
+      set(other);
+    }
+
+    public void set(Crop other) {
+      set(
+          other.imageWidth,
+          other.imageHeight,
+          other.left,
+          other.top,
+          other.width,
+          other.height,
+          other.outputWidth,
+          other.outputHeight);
+    }
+
+    /** Makes this the whole image, unscaled. */
+    public void setFullFrame(int imageWidth, int imageHeight) {
+      set(imageWidth, imageHeight, 0, 0, imageWidth, imageHeight, imageWidth, imageHeight);
+    }
+
+    void set(
+        int imageWidth,
+        int imageHeight,
+        int left,
+        int top,
+        int width,
+        int height,
+        int outputWidth,
+        int outputHeight) {
+      this.imageWidth = imageWidth;
+      this.imageHeight = imageHeight;
+      this.left = left;
+      this.top = top;
+      this.width = width;
+      this.height = height;
+      this.outputWidth = outputWidth;
+      this.outputHeight = outputHeight;
+    }
+
+    public boolean isFullFrame() {
+      return left == 0
+          && top == 0
+          && width == imageWidth
+          && height == imageHeight
+          && outputWidth == imageWidth
+          && outputHeight == imageHeight;
+    }
+
+    public int getImageWidth() {
+      return imageWidth;
+    }
+
+    public int getImageHeight() {
+      return imageHeight;
+    }
+
+    public int getLeft() {
+      return left;
+    }
+
+    public int getTop() {
+      return top;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+
+    /** Returns the upright width of the scaled crop the detector sees. */
+    public int getOutputWidth() {
+      return outputWidth;
+    }
+
+    /** Returns the upright height of the scaled crop the detector sees. */
+    public int getOutputHeight() {
+      return outputHeight;
+    }
+
+    /** Maps x from the scaled crop to the full image. */
+    public float toImageX(float x) {
+      return left + x * width / outputWidth;
+    }
+
+    /** Maps y from the scaled crop to the full image. */
+    public float toImageY(float y) {
+      return top + y * height / outputHeight;
+    }
+
+    /** Maps a depth from the scaled crop to the full image, where it is scaled like x. */
+    public float toImageZ(float z) {
+      return z * width / outputWidth;
+    }
+
+    /** Maps x from the full image to the scaled crop. */
+    public float toCropX(float x) {
+      return (x - left) * outputWidth / width;
+    }
+
+    /** Maps y from the full image to the scaled crop. */
+    public float toCropY(float y) {
+      return (y - top) * outputHeight / height;
+    }
+
+    /**
+     * Fills {@code rect} with the left, top, width and height of the crop in the camera buffer,
+     * which has to be rotated clockwise by {@code rotation} degrees to be upright.
+     */
+    public void getBufferRect(int rotation, int[] rect) {
+      switch (rotation) {
+        case 0:
+          setRect(rect, left, top, width, height);
+          break;
+        case 90:
+          setRect(rect, top, imageWidth - left - width, height, width);
+          break;
+        case 180:
+          setRect(rect, imageWidth - left - width, imageHeight - top - height, width, height);
+          break;
+        case 270:
+          setRect(rect, imageHeight - top - height, left, height, width);
+          break;
+        default:
+          throw new IllegalArgumentException("Invalid rotation: " + rotation);
+      }
+    }
+
+    /** Returns the width of the scaled crop in buffer orientation. */
+    public int getBufferOutputWidth(int rotation) {
+      return isSideways(rotation) ? outputHeight : outputWidth;
+    }
+
+    /** Returns the height of the scaled crop in buffer orientation. */
+    public int getBufferOutputHeight(int rotation) {
+      return isSideways(rotation) ? outputWidth : outputHeight;
+    }
+
+    @Override
+    public String toString() {
+      return width + "x" + height + "+" + left + "+" + top + " -> " + outputWidth + "x"
+          + outputHeight;
+    }
+
+    private static void setRect(int[] rect, int left, int top, int width, int height) {
+      rect[0] = left;
+      rect[1] = top;
+      rect[2] = width;
+      rect[3] = height;
+    }
+  }
+
+  /** Default longer side of the scaled crop; smaller crops are not scaled up. */
+  public static final int DEFAULT_TARGET_SIZE = 480;
+  /** Default padding on every side of the landmarks, as a share of their longer extent. */
+  public static final float DEFAULT_PADDING = 0.25f;
+  public static final float DEFAULT_MIN_LIKELIHOOD = 0.5f;
+  public static final int DEFAULT_MIN_LANDMARKS = 8;
+  /** Default distance from a crop edge, as a share of the crop's longer side, that loses track. */
+  public static final float DEFAULT_EDGE_MARGIN = 0.03f;
+  /** Default share of the frame area above which the full frame is detected instead. */
+  public static final float DEFAULT_MAX_AREA = 0.6f;
+
+  private final int targetSize;
+  private final float padding;
+  private final float minLikelihood;
+  private final int minLandmarks;
+  private final float edgeMargin;
+  private final float maxArea;
+
+  private final Crop tracked = new Crop();
+  private boolean tracking;
+  private long croppedCount;
+  private long lostCount;
+
+  private RoiTracker(Builder builder) {
+    targetSize = builder.targetSize;
+    padding = builder.padding;
+    minLikelihood = builder.minLikelihood;
+    minLandmarks = builder.minLandmarks;
+    edgeMargin = builder.edgeMargin;
+    maxArea = builder.maxArea;
+  }
+
+  /**
+   * Fills {@code crop} with the region to detect the next upright image of the given size in: the
+   * tracked one, or the full frame if nothing is tracked in an image of that size.
+   */
+  public synchronized void nextCrop(int imageWidth, int imageHeight, Crop crop) {
+    if (tracking && tracked.imageWidth == imageWidth && tracked.imageHeight == imageHeight) {
+      crop.set(tracked);
+      croppedCount++;
+    } else {
+      crop.setFullFrame(imageWidth, imageHeight);
+    }
+  }
+
+  /**
+   * Updates the tracked region from the landmarks detected in a frame.
+   *
+   * @param crop region the frame was detected in.
+   * @param landmarks x and y of every landmark in full image coordinates, see {@link
+   *     Crop#toImageX}.
+   * @param likelihoods in-frame likelihood of every landmark.
+   * @param count number of landmarks.
+   * @return whether the next frames are cropped.
+   */
+  public synchronized boolean onLandmarks(
+      Crop crop, float[] landmarks, float[] likelihoods, int count) {
+    float minX = Float.MAX_VALUE;
+    float minY = Float.MAX_VALUE;
+    float maxX = -Float.MAX_VALUE;
+    float maxY = -Float.MAX_VALUE;
+    int seen = 0;
+    boolean atEdge = false;
+    float margin = edgeMargin * Math.max(crop.width, crop.height);
+    // Only crop edges inside the image cut the body off.
+    float edgeLeft = crop.left > 0 ? crop.left + margin : -Float.MAX_VALUE;
+    float edgeTop = crop.top > 0 ? crop.top + margin : -Float.MAX_VALUE;
+    float edgeRight =
+        crop.left + crop.width < crop.imageWidth
+            ? crop.left + crop.width - margin
+            : Float.MAX_VALUE;
+    float edgeBottom =
+        crop.top + crop.height < crop.imageHeight
+            ? crop.top + crop.height - margin
+            : Float.MAX_VALUE;
+    for (int i = 0; i < count; i++) {
+      if (likelihoods[i] < minLikelihood) {
+        continue;
+      }
+      float x = landmarks[i * 2];
+      float y = landmarks[i * 2 + 1];
+      seen++;
+      minX = Math.min(minX, x);
+      minY = Math.min(minY, y);
+      maxX = Math.max(maxX, x);
+      maxY = Math.max(maxY, y);
+      if (x < edgeLeft || x > edgeRight || y < edgeTop || y > edgeBottom) {
+        atEdge = true;
+      }
+    }
+    if (seen < minLandmarks || atEdge) {
+      if (tracking) {
+        lostCount++;
+      }
+      tracking = false;
+      return false;
+    }
+
+    int imageWidth = crop.imageWidth;
+    int imageHeight = crop.imageHeight;
+    float pad = padding * Math.max(maxX - minX, maxY - minY);
+    // Even bounds, so that the crop starts on a chroma sample in every rotation.
+    int left = Math.max(0, (int) Math.floor(minX - pad)) & ~1;
+    int top = Math.max(0, (int) Math.floor(minY - pad)) & ~1;
+    int right = Math.min(imageWidth, evenCeil(maxX + pad));
+    int bottom = Math.min(imageHeight, evenCeil(maxY + pad));
+    int width = right - left;
+    int height = bottom - top;
+    if (width <= 0
+        || height <= 0
+        || (long) width * height > maxArea * imageWidth * imageHeight) {
+      tracking = false;
+      return false;
+    }
+
+    float scale = Math.min(1f, (float) targetSize / Math.max(width, height));
+    tracked.set(
+        imageWidth,
+        imageHeight,
+        left,
+        top,
+        width,
+        height,
+        Math.max(2, Math.round(width * scale) & ~1),
+        Math.max(2, Math.round(height * scale) & ~1));
+    tracking = true;
+    return true;
+  }
+
+  /** Goes back to the full frame, e.g. when the camera changes. */
+  public synchronized void reset() {
+    tracking = false;
+  }
+
+  public synchronized boolean isTracking() {
+    return tracking;
+  }
+
+  /** Returns how many frames were given a crop. */
+  public synchronized long getCroppedCount() {
+    return croppedCount;
+  }
+
+  /** Returns how many times tracking fell back to the full frame for lack of confidence. */
+  public synchronized long getLostCount() {
+    return lostCount;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private static boolean isSideways(int rotation) {
+    return rotation == 90 || rotation == 270;
+  }
+
+  private static int evenCeil(float value) {
+    return ((int) Math.ceil(value) + 1) & ~1;
+  }
+
+  /** Builder for {@link RoiTracker}. */
+  public static final class Builder {
+    private int targetSize = DEFAULT_TARGET_SIZE;
+    private float padding = DEFAULT_PADDING;
+    private float minLikelihood = DEFAULT_MIN_LIKELIHOOD;
+    private int minLandmarks = DEFAULT_MIN_LANDMARKS;
+    private float edgeMargin = DEFAULT_EDGE_MARGIN;
+    private float maxArea = DEFAULT_MAX_AREA;
+
+    /** Sets the longer side crops are scaled down to. */
+    public Builder setTargetSize(int targetSize) {
+      if (targetSize < 2) {
+        throw new IllegalArgumentException("Invalid target size: " + targetSize);
+      }
+      this.targetSize = targetSize;
+      return this;
+    }
+
+    /** Sets the padding on every side of the landmarks, as a share of their longer extent. */
+    public Builder setPadding(float padding) {
+      this.padding = padding;
+      return this;
+    }
+
+    /** Sets the in-frame likelihood a landmark needs to count as seen. */
+    public Builder setMinLikelihood(float minLikelihood) {
+      this.minLikelihood = minLikelihood;
+      return this;
+    }
+
+    /** Sets how many landmarks have to be seen to keep tracking. */
+    public Builder setMinLandmarks(int minLandmarks) {
+      this.minLandmarks = minLandmarks;
+      return this;
+    }
+
+    /** Sets how close to a crop edge, as a share of its longer side, a landmark loses track. */
+    public Builder setEdgeMargin(float edgeMargin) {
+      this.edgeMargin = edgeMargin;
+      return this;
+    }
+
+    /** Sets the share of the frame area above which the full frame is detected instead. */
+    public Builder setMaxArea(float maxArea) {
+      this.maxArea = maxArea;
+      return this;
+    }
+
+    public RoiTracker build() {
+      return new RoiTracker(this);
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Three preallocated slots shared by one producer thread and one consumer thread without locks.
+ *
+ * <p>The producer fills {@link #getBack()} and {@link #publish()}es it; the consumer calls {@link
+ * #acquireLatest()} and reads {@link #getFront()}. The back and front slots are each owned by one
+ * side, and the third slot holds the latest published one, swapped atomically with either. So the
+ * producer never waits for the consumer, the consumer always gets the newest complete slot, and a
+ * slot is never written while it is being read. Slots the consumer never got to are overwritten.
+ */
+public final class TripleBuffer<T> {
+  // Set in middle while it holds a slot published after the consumer last acquired one.
+  private static final int FRESH = 4;
+  private static final int SLOT_MASK = 3;
+
+  private final Object[] slots;
+  private final AtomicInteger middle = new AtomicInteger(1);
+  // Only touched by the producer.
+  private int back = 0;
+  // Only touched by the consumer.
+  private int front = 2;
+
+  public TripleBuffer(T first, T second, T third) {
+    slots = new Object[] {first, second, third};
+  }
+
+  /** Returns the slot the producer fills next. Producer thread only. */
+  @SuppressWarnings("unchecked")
+  public T getBack() {
+    return (T) slots[back];
+  }
+
+  /** Hands the back slot to the consumer and takes another one as the back. Producer only. */
+  public void publish() {
+    back = middle.getAndSet(back | FRESH) & SLOT_MASK;
+  }
+
+  /**
+   * Makes the latest published slot the front, if one was published since the last call.
+   * Consumer thread only.
+   *
+   * @return whether the front changed
+   */
+  public boolean acquireLatest() {
+    if ((middle.get() & FRESH) == 0) {
+      return false;
+    }
+    front = middle.getAndSet(front) & SLOT_MASK;
+    return true;
+  }
+
+  /** Returns the slot the consumer reads. Consumer thread only. */
+  @SuppressWarnings("unchecked")
+  public T getFront() {
+    return (T) slots[front];
+  }
+}
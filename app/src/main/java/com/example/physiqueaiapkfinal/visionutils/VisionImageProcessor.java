@@ -18,12 +18,28 @@ package com.example.physiqueaiapkfinal.visionutils;
 
 import android.graphics.Bitmap;
 
+import androidx.annotation.Nullable;
+
 /** An interface to process the images with different vision detectors and custom image models. */
 public interface VisionImageProcessor {
 
   /** Processes a bitmap image. */
   void processBitmap(Bitmap bitmap, GraphicOverlay graphicOverlay);
 
+  /**
+   * Returns a pooled buffer to copy an NV21 camera frame of {@code frameMetadata} into before
+   * passing it to {@link #processFrame}, or null if all buffers are in use and the camera frame
+   * should be dropped.
+   */
+  @Nullable
+  FrameBufferPool.Frame acquireFrame(FrameMetadata frameMetadata);
+
+  /**
+   * Processes a frame from {@link #acquireFrame} as soon as the previous one is done. A frame still
+   * waiting is replaced and dropped, so only the latest one is processed.
+   */
+  void processFrame(FrameBufferPool.Frame frame, GraphicOverlay graphicOverlay);
+
   /** Stops the underlying machine learning model and release resources. */
   void stop();
 }
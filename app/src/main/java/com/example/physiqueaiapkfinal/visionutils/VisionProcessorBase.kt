@@ -19,10 +19,8 @@ package com.example.physiqueaiapkfinal.visionutils
 import android.app.ActivityManager
 import android.content.Context
 import android.graphics.Bitmap
-import android.os.SystemClock
 import android.util.Log
 import android.widget.Toast
-import androidx.annotation.GuardedBy
 import com.example.physiqueaiapkfinal.BitmapUtils
 import com.google.android.gms.tasks.OnFailureListener
 import com.google.android.gms.tasks.OnSuccessListener
@@ -34,16 +32,14 @@ import com.google.android.odml.image.ByteBufferMlImageBuilder
 import com.google.android.odml.image.MlImage
 import com.google.mlkit.common.MlKitException
 import com.google.mlkit.vision.common.InputImage
-import java.lang.Math.max
-import java.lang.Math.min
 import java.nio.ByteBuffer
-import java.util.Timer
-import java.util.TimerTask
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
 
 /**
  * Abstract base class for ML Kit frame processors. Subclasses need to implement {@link
- * #onSuccess(T, FrameMetadata, GraphicOverlay)} to define what they want to with the detection
- * results and {@link #detectInImage(VisionImage)} to specify the detector object.
+ * #onSuccess(T, GraphicOverlay.Frame, GraphicOverlay)} to define what they want to with the
+ * detection results and {@link #detectInImage(VisionImage)} to specify the detector object.
  *
  * @param <T> The type of the detected feature.
  */
@@ -52,52 +48,53 @@ abstract class VisionProcessorBase<T>(context: Context) : VisionImageProcessor {
   companion object {
     const val MANUAL_TESTING_LOG = "LogTagForTest"
     private const val TAG = "VisionProcessorBase"
+    // Sequence number of images that are not camera frames, which are always rendered.
+    private const val STILL_IMAGE = -1L
+    // Keys of the inference info graphics retained by overlay frames.
+    private val INFERENCE_INFO = Any()
+    private val INFERENCE_INFO_WITH_FPS = Any()
+    // Frames in flight, one waiting and one being filled by the camera.
+    private const val FRAME_POOL_CAPACITY = FramePipeline.MAX_DEPTH + 2
   }
 
   private var activityManager: ActivityManager =
     context.getSystemService(Context.ACTIVITY_SERVICE) as ActivityManager
-  private val fpsTimer = Timer()
   private val executor = ScopedExecutor(TaskExecutors.MAIN_THREAD)
+  // Traces detector latency with the available memory, whose getMemoryInfo is a binder call kept
+  // off the main thread. Debug builds only.
+  private val traceExecutor: ExecutorService? =
+    if (FrameTrace.ENABLED) Executors.newSingleThreadExecutor() else null
 
-  // Whether this processor is already shut down
-  private var isShutdown = false
-
-  // Used to calculate latency, running in the same thread, no sync needed.
-  private var numRuns = 0
-  private var totalFrameMs = 0L
-  private var maxFrameMs = 0L
-  private var minFrameMs = Long.MAX_VALUE
-  private var totalDetectorMs = 0L
-  private var maxDetectorMs = 0L
-  private var minDetectorMs = Long.MAX_VALUE
-
-  // Frame count that have been processed so far in an one second interval to calculate FPS.
-  private var frameProcessedInOneSecondInterval = 0
-  private var framesPerSecond = 0
-
-  // To keep the latest images and its metadata.
-  @GuardedBy("this") private var latestImage: ByteBuffer? = null
-  @GuardedBy("this") private var latestImageMetaData: FrameMetadata? = null
-  // To keep the images and metadata in process.
-  @GuardedBy("this") private var processingImage: ByteBuffer? = null
-  @GuardedBy("this") private var processingMetaData: FrameMetadata? = null
-
-  init {
-    fpsTimer.scheduleAtFixedRate(
-      object : TimerTask() {
-        override fun run() {
-          framesPerSecond = frameProcessedInOneSecondInterval
-          frameProcessedInOneSecondInterval = 0
-        }
-      },
-      0,
-      1000
-    )
-  }
+  // Per-stage latency percentiles and frame rate. Subclasses record the stages they run.
+  protected val pipelineStats = PipelineStats()
+  // Refilled for every frame shown with inference info, on the main thread.
+  private val inferenceInfo = PipelineStats.Snapshot()
+
+  /** Whether to draw frame rate and latency percentiles over the results. */
+  var showInferenceInfo = false
+
+  // Pooled camera frames. The latest one waits in the scheduler until the pipeline has room for
+  // it; a frame it replaces before then is dropped.
+  private val framePool = FrameBufferPool(FRAME_POOL_CAPACITY)
+  private val framePipeline = FramePipeline(FramePipeline.DEFAULT_DEPTH)
+  private val frameScheduler =
+    FrameScheduler<GraphicOverlay>(framePool, framePipeline) { frame, sequence, graphicOverlay ->
+      processImage(frame, sequence, graphicOverlay)
+    }
+
+  /**
+   * How many camera frames may be in process at once, up to [FramePipeline.MAX_DEPTH]. With more
+   * than one, detection of a frame overlaps classification and drawing of the previous ones.
+   */
+  var maxFramesInFlight: Int
+    get() = framePipeline.depth
+    set(value) {
+      framePipeline.depth = value
+    }
 
   // -----------------Code for processing single still image----------------------------------------
   override fun processBitmap(bitmap: Bitmap?, graphicOverlay: GraphicOverlay) {
-    val frameStartMs = SystemClock.elapsedRealtime()
+    val frameStartNanos = System.nanoTime()
 
     if (isMlImageEnabled(graphicOverlay.context)) {
       val mlImage = BitmapMlImageBuilder(bitmap!!).build()
@@ -106,7 +103,7 @@ abstract class VisionProcessorBase<T>(context: Context) : VisionImageProcessor {
         graphicOverlay,
         /* originalCameraImage= */ null,
         /* shouldShowFps= */ false,
-        frameStartMs
+        frameStartNanos
       )
       mlImage.close()
       return
@@ -117,27 +114,40 @@ abstract class VisionProcessorBase<T>(context: Context) : VisionImageProcessor {
       graphicOverlay,
       /* originalCameraImage= */ null,
       /* shouldShowFps= */ false,
-      frameStartMs
+      frameStartNanos
     )
   }
 
-  @Synchronized
-  private fun processLatestImage(graphicOverlay: GraphicOverlay) {
-    processingImage = latestImage
-    processingMetaData = latestImageMetaData
-    latestImage = null
-    latestImageMetaData = null
-    if (processingImage != null && processingMetaData != null && !isShutdown) {
-      processImage(processingImage!!, processingMetaData!!, graphicOverlay)
-    }
+  // -----------------Code for processing live preview frame from camera----------------------------
+  override fun acquireFrame(frameMetadata: FrameMetadata): FrameBufferPool.Frame? =
+    framePool.acquire(frameMetadata)
+
+  override fun processFrame(frame: FrameBufferPool.Frame, graphicOverlay: GraphicOverlay) {
+    frame.postedNanos = System.nanoTime()
+    frameScheduler.post(frame, graphicOverlay)
   }
 
+  /** Frames dropped so far, because a newer frame replaced them or no buffer was free. */
+  val droppedFrameCount: Long
+    get() = framePool.droppedCount
+
+  /** Frames so far that reused a pooled buffer. */
+  val recycledFrameCount: Long
+    get() = framePool.recycledCount
+
+  /** Fills [snapshot] with the current latency percentiles and frame rate and returns it. */
+  fun snapshotStats(snapshot: PipelineStats.Snapshot = PipelineStats.Snapshot()) =
+    pipelineStats.snapshot(snapshot, framePool.droppedCount)
+
   private fun processImage(
-    data: ByteBuffer,
-    frameMetadata: FrameMetadata,
+    frame: FrameBufferPool.Frame,
+    sequence: Long,
     graphicOverlay: GraphicOverlay
   ) {
-    val frameStartMs = SystemClock.elapsedRealtime()
+    val data = frame.buffer
+    val frameMetadata = frame.metadata
+    val frameStartNanos = System.nanoTime()
+    pipelineStats.record(PipelineStats.QUEUE_WAIT, frameStartNanos - frame.postedNanos)
     // If live viewport is on (that is the underneath surface view takes care of the camera preview
     // drawing), skip the unnecessary bitmap creation that used for the manual preview drawing.
     val isLiveCam = false
@@ -145,38 +155,87 @@ abstract class VisionProcessorBase<T>(context: Context) : VisionImageProcessor {
       if (isLiveCam) null
       else BitmapUtils.getBitmap(data, frameMetadata)
 
+    // The detector sees the region selectCrop picks, scaled down, or the frame as it is.
+    val rotation = frameMetadata.rotation
+    val crop = frame.crop
+    if (rotation == 90 || rotation == 270) {
+      selectCrop(frameMetadata.height, frameMetadata.width, crop)
+    } else {
+      selectCrop(frameMetadata.width, frameMetadata.height, crop)
+    }
+    val detectorData: ByteBuffer
+    val detectorWidth: Int
+    val detectorHeight: Int
+    if (crop.isFullFrame) {
+      detectorData = data
+      detectorWidth = frameMetadata.width
+      detectorHeight = frameMetadata.height
+    } else {
+      val cropStartNanos = System.nanoTime()
+      // Per frame, since the camera and main threads may each be starting one.
+      val cropRect = frame.cropRect
+      crop.getBufferRect(rotation, cropRect)
+      detectorWidth = crop.getBufferOutputWidth(rotation)
+      detectorHeight = crop.getBufferOutputHeight(rotation)
+      detectorData = frame.getCropBuffer(detectorWidth * detectorHeight * 3 / 2)
+      Nv21Converter.cropAndScale(
+        data,
+        frameMetadata.width,
+        frameMetadata.height,
+        cropRect[0],
+        cropRect[1],
+        cropRect[2],
+        cropRect[3],
+        detectorData,
+        detectorWidth,
+        detectorHeight
+      )
+      pipelineStats.record(PipelineStats.CROP, System.nanoTime() - cropStartNanos)
+    }
+
     if (isMlImageEnabled(graphicOverlay.context)) {
       val mlImage =
         ByteBufferMlImageBuilder(
-          data,
-          frameMetadata.width,
-          frameMetadata.height,
+          detectorData,
+          detectorWidth,
+          detectorHeight,
           MlImage.IMAGE_FORMAT_NV21
         )
-          .setRotation(frameMetadata.rotation)
+          .setRotation(rotation)
           .build()
-      requestDetectInImage(mlImage, graphicOverlay, bitmap, /* shouldShowFps= */ true, frameStartMs)
-        .addOnSuccessListener(executor) { processLatestImage(graphicOverlay) }
+      setUpListener(
+        detectInImage(mlImage, crop),
+        graphicOverlay,
+        bitmap,
+        /* shouldShowFps= */ true,
+        frameStartNanos,
+        sequence
+      )
+        .addOnCompleteListener(executor) { frameScheduler.onFrameProcessed(frame, graphicOverlay) }
 
       // This is optional. Java Garbage collection can also close it eventually.
       mlImage.close()
       return
     }
 
-    requestDetectInImage(
-      InputImage.fromByteBuffer(
-        data,
-        frameMetadata.width,
-        frameMetadata.height,
-        frameMetadata.rotation,
-        InputImage.IMAGE_FORMAT_NV21
+    setUpListener(
+      detectInImage(
+        InputImage.fromByteBuffer(
+          detectorData,
+          detectorWidth,
+          detectorHeight,
+          rotation,
+          InputImage.IMAGE_FORMAT_NV21
+        ),
+        crop
       ),
       graphicOverlay,
       bitmap,
       /* shouldShowFps= */ true,
-      frameStartMs
+      frameStartNanos,
+      sequence
     )
-      .addOnSuccessListener(executor) { processLatestImage(graphicOverlay) }
+      .addOnCompleteListener(executor) { frameScheduler.onFrameProcessed(frame, graphicOverlay) }
   }
 
   // -----------------Common processing logic-------------------------------------------------------
@@ -185,14 +244,15 @@ abstract class VisionProcessorBase<T>(context: Context) : VisionImageProcessor {
     graphicOverlay: GraphicOverlay,
     originalCameraImage: Bitmap?,
     shouldShowFps: Boolean,
-    frameStartMs: Long
+    frameStartNanos: Long
   ): Task<T> {
     return setUpListener(
       detectInImage(image),
       graphicOverlay,
       originalCameraImage,
       shouldShowFps,
-      frameStartMs
+      frameStartNanos,
+      STILL_IMAGE
     )
   }
 
@@ -201,14 +261,15 @@ abstract class VisionProcessorBase<T>(context: Context) : VisionImageProcessor {
     graphicOverlay: GraphicOverlay,
     originalCameraImage: Bitmap?,
     shouldShowFps: Boolean,
-    frameStartMs: Long
+    frameStartNanos: Long
   ): Task<T> {
     return setUpListener(
       detectInImage(image),
       graphicOverlay,
       originalCameraImage,
       shouldShowFps,
-      frameStartMs
+      frameStartNanos,
+      STILL_IMAGE
     )
   }
 
@@ -217,78 +278,65 @@ abstract class VisionProcessorBase<T>(context: Context) : VisionImageProcessor {
     graphicOverlay: GraphicOverlay,
     originalCameraImage: Bitmap?,
     shouldShowFps: Boolean,
-    frameStartMs: Long
+    frameStartNanos: Long,
+    sequence: Long
   ): Task<T> {
-    val detectorStartMs = SystemClock.elapsedRealtime()
     return task
       .addOnSuccessListener(
         executor,
         OnSuccessListener { results: T ->
-          val endMs = SystemClock.elapsedRealtime()
-          val currentFrameLatencyMs = endMs - frameStartMs
-          val currentDetectorLatencyMs = endMs - detectorStartMs
-          if (numRuns >= 500) {
-            resetLatencyStats()
+          // Never draw a frame over a newer one that overtook it.
+          if (sequence != STILL_IMAGE && !framePipeline.tryRender(sequence)) {
+            return@OnSuccessListener
           }
-          numRuns++
-          frameProcessedInOneSecondInterval++
-          totalFrameMs += currentFrameLatencyMs
-          maxFrameMs = max(currentFrameLatencyMs, maxFrameMs)
-          minFrameMs = min(currentFrameLatencyMs, minFrameMs)
-          totalDetectorMs += currentDetectorLatencyMs
-          maxDetectorMs = max(currentDetectorLatencyMs, maxDetectorMs)
-          minDetectorMs = min(currentDetectorLatencyMs, minDetectorMs)
-
-          // Only log inference info once per second. When frameProcessedInOneSecondInterval is
-          // equal to 1, it means this is the first frame processed during the current second.
-          if (frameProcessedInOneSecondInterval == 1) {
-            Log.d(TAG, "Num of Runs: $numRuns")
-            Log.d(
-              TAG,
-              "Frame latency: max=" +
-                      maxFrameMs +
-                      ", min=" +
-                      minFrameMs +
-                      ", avg=" +
-                      totalFrameMs / numRuns
-            )
-            Log.d(
-              TAG,
-              "Detector latency: max=" +
-                      maxDetectorMs +
-                      ", min=" +
-                      minDetectorMs +
-                      ", avg=" +
-                      totalDetectorMs / numRuns
+          val overlayStartNanos = System.nanoTime()
+          graphicOverlay.setPipelineStats(pipelineStats)
+          val frame = graphicOverlay.beginFrame()
+          if (originalCameraImage != null) {
+            frame.add(
+              frame
+                .retain(CameraImageGraphic::class.java) { CameraImageGraphic(graphicOverlay) }
+                .setBitmap(originalCameraImage)
             )
-            val mi = ActivityManager.MemoryInfo()
-            activityManager.getMemoryInfo(mi)
-            val availableMegs: Long = mi.availMem / 0x100000L
-            Log.d(TAG, "Memory available in system: $availableMegs MB")
           }
-          graphicOverlay.clear()
-          if (originalCameraImage != null) {
-            graphicOverlay.add(CameraImageGraphic(graphicOverlay, originalCameraImage))
+          this@VisionProcessorBase.onSuccess(results, frame, graphicOverlay)
+          if (showInferenceInfo) {
+            snapshotStats(inferenceInfo)
+            frame.add(
+              frame.retain(if (shouldShowFps) INFERENCE_INFO_WITH_FPS else INFERENCE_INFO) {
+                InferenceInfoGraphic(graphicOverlay, inferenceInfo, shouldShowFps)
+              }
+            )
           }
-          this@VisionProcessorBase.onSuccess(results, graphicOverlay)
-          /*if (!PreferenceUtils.shouldHideDetectionInfo(graphicOverlay.context)) {
-            graphicOverlay.add(
-              InferenceInfoGraphic(
-                graphicOverlay,
-                currentFrameLatencyMs,
-                currentDetectorLatencyMs,
-                if (shouldShowFps) framesPerSecond else null
-              )
+          graphicOverlay.publishFrame()
+          val endNanos = System.nanoTime()
+          pipelineStats.record(PipelineStats.OVERLAY_BUILD, endNanos - overlayStartNanos)
+          pipelineStats.record(PipelineStats.FRAME, endNanos - frameStartNanos)
+
+          // Only trace inference info once per second, on the first frame of each second.
+          if (pipelineStats.recordFrameEnd(endNanos) && FrameTrace.ENABLED) {
+            val frameLatency = pipelineStats.getHistogram(PipelineStats.FRAME)
+            FrameTrace.record(
+              FrameTrace.FRAME_LATENCY,
+              pipelineStats.frames.toInt(),
+              framePool.droppedCount.toInt(),
+              frameLatency.maxMicros / 1000f,
+              frameLatency.getPercentileMicros(50.0) / 1000f,
+              frameLatency.getPercentileMicros(99.0) / 1000f
             )
-          }*/
-          graphicOverlay.postInvalidate()
+            val detection = pipelineStats.getHistogram(PipelineStats.DETECTION)
+            val maxMs = detection.maxMicros / 1000f
+            val p50Ms = detection.getPercentileMicros(50.0) / 1000f
+            val p99Ms = detection.getPercentileMicros(99.0) / 1000f
+            traceExecutor?.execute { traceDetectorLatency(maxMs, p50Ms, p99Ms) }
+          }
         }
       )
       .addOnFailureListener(
         executor,
         OnFailureListener { e: Exception ->
-          graphicOverlay.clear()
-          graphicOverlay.postInvalidate()
+          graphicOverlay.beginFrame()
+          graphicOverlay.publishFrame()
           val error = "Failed to process. Error: " + e.localizedMessage
           Toast.makeText(
             graphicOverlay.context,
@@ -306,21 +354,18 @@ abstract class VisionProcessorBase<T>(context: Context) : VisionImageProcessor {
       )
   }
 
-  override fun stop() {
-    executor.shutdown()
-    isShutdown = true
-    resetLatencyStats()
-    fpsTimer.cancel()
+  private fun traceDetectorLatency(maxMs: Float, p50Ms: Float, p99Ms: Float) {
+    val mi = ActivityManager.MemoryInfo()
+    activityManager.getMemoryInfo(mi)
+    val availableMegs: Long = mi.availMem / 0x100000L
+    FrameTrace.record(FrameTrace.DETECTOR_LATENCY, availableMegs.toInt(), 0, maxMs, p50Ms, p99Ms)
   }
 
-  private fun resetLatencyStats() {
-    numRuns = 0
-    totalFrameMs = 0
-    maxFrameMs = 0
-    minFrameMs = Long.MAX_VALUE
-    totalDetectorMs = 0
-    maxDetectorMs = 0
-    minDetectorMs = Long.MAX_VALUE
+  override fun stop() {
+    executor.shutdown()
+    traceExecutor?.shutdown()
+    frameScheduler.shutdown()
+    pipelineStats.reset()
   }
 
   protected abstract fun detectInImage(image: InputImage): Task<T>
@@ -334,7 +379,31 @@ abstract class VisionProcessorBase<T>(context: Context) : VisionImageProcessor {
     )
   }
 
-  protected abstract fun onSuccess(results: T, graphicOverlay: GraphicOverlay)
+  /**
+   * Runs the detector on a camera frame, of which [image] shows [crop]. The crop is reused for
+   * later frames once the task completes, so results that refer to it must copy it.
+   */
+  protected open fun detectInImage(image: InputImage, crop: RoiTracker.Crop): Task<T> =
+    detectInImage(image)
+
+  /** Same as the [InputImage] variant, for [MlImage]s. */
+  protected open fun detectInImage(image: MlImage, crop: RoiTracker.Crop): Task<T> =
+    detectInImage(image)
+
+  /**
+   * Fills [crop] with the region of the next upright camera frame of the given size to run the
+   * detector on, and the size to scale it to. The full frame unless overridden.
+   */
+  protected open fun selectCrop(imageWidth: Int, imageHeight: Int, crop: RoiTracker.Crop) {
+    crop.setFullFrame(imageWidth, imageHeight)
+  }
+
+  /** Adds the graphics for [results] to [frame], which is published to [graphicOverlay] after. */
+  protected abstract fun onSuccess(
+    results: T,
+    frame: GraphicOverlay.Frame,
+    graphicOverlay: GraphicOverlay
+  )
 
   protected abstract fun onFailure(e: Exception)
 
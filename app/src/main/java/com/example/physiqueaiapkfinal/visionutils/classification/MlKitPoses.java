@@ -0,0 +1,65 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbedding.NUM_LANDMARKS;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.NUM_DIMS;
+
+import androidx.annotation.Nullable;
+
+import com.google.mlkit.vision.common.PointF3D;
+import com.google.mlkit.vision.pose.Pose;
+import com.google.mlkit.vision.pose.PoseLandmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adapts ML Kit poses to the landmark types of pose-core, which know nothing of ML Kit. ML Kit's
+ * landmark types are the indices of {@link LandmarkType}.
+ */
+public final class MlKitPoses {
+  private MlKitPoses() {}
+
+  /**
+   * Copies the landmark positions of {@code pose} into a landmark buffer, see {@link
+   * PoseEmbedding#LANDMARK_BUFFER_SIZE}.
+   *
+   * @return false if the pose has no landmarks, in which case the buffer is left untouched.
+   */
+  public static boolean copyLandmarks(Pose pose, float[] landmarks) {
+    return copyLandmarks(pose, landmarks, null);
+  }
+
+  /**
+   * Like {@link #copyLandmarks(Pose, float[])}, also copying the in-frame likelihood of every
+   * landmark type into {@code likelihoods}, if not null.
+   */
+  public static boolean copyLandmarks(
+      Pose pose, float[] landmarks, @Nullable float[] likelihoods) {
+    List<PoseLandmark> poseLandmarks = pose.getAllPoseLandmarks();
+    if (poseLandmarks.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < NUM_LANDMARKS; i++) {
+      PoseLandmark landmark = poseLandmarks.get(i);
+      PointF3D position = landmark.getPosition3D();
+      landmarks[i * NUM_DIMS] = position.getX();
+      landmarks[i * NUM_DIMS + 1] = position.getY();
+      landmarks[i * NUM_DIMS + 2] = position.getZ();
+      if (likelihoods != null) {
+        likelihoods[i] = landmark.getInFrameLikelihood();
+      }
+    }
+    return true;
+  }
+
+  /** Returns the landmark positions of {@code pose} indexed by landmark type, empty if none. */
+  public static List<Point3D> getLandmarks(Pose pose) {
+    List<PoseLandmark> poseLandmarks = pose.getAllPoseLandmarks();
+    List<Point3D> landmarks = new ArrayList<>(poseLandmarks.size());
+    for (PoseLandmark landmark : poseLandmarks) {
+      PointF3D position = landmark.getPosition3D();
+      landmarks.add(Point3D.from(position.getX(), position.getY(), position.getZ()));
+    }
+    return landmarks;
+  }
+}
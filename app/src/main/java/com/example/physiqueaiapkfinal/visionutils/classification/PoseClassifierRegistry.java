@@ -0,0 +1,153 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.example.physiqueaiapkfinal.PhysiqueAiApplication;
+import com.example.physiqueaiapkfinal.visionutils.AudioCueEngine;
+import com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.Precision;
+import com.google.common.base.Preconditions;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process-wide cache of the immutable pose sample stores, owned by {@link PhysiqueAiApplication}.
+ *
+ * <p>The sample index is mapped once and every distinct class selection is read from it once, so
+ * moving between exercises only costs a new {@link PoseClassifierProcessor} holding per-session
+ * state. {@link #prewarmAsync()} loads the stores of every {@link PoseExercise} in the background,
+ * e.g. while the splash screen is shown, so the first frames of a set are already counted.
+ *
+ * <p>On low RAM devices the stores are kept in {@link Precision#FP16}, halving their sample memory;
+ * run {@link QuantizationReport} on the index to check how closely that classifies.
+ */
+public class PoseClassifierRegistry {
+  private static final String TAG = "PoseClassifierRegistry";
+  // Compiled from pose/fitness_pose_samples.csv at build time, see {@link PoseSampleIndex}.
+  private static final String POSE_SAMPLE_INDEX_FILE = "pose/fitness_pose_samples.bin";
+
+  private final Context context;
+  private final Precision samplePrecision;
+
+  // Guarded by this. A null key stands for every class.
+  private final Map<Set<String>, PoseEmbeddingStore> stores = new HashMap<>();
+  @Nullable private ByteBuffer index;
+  private boolean indexUnreadable;
+
+  public PoseClassifierRegistry(Context context) {
+    this.context = context.getApplicationContext();
+    ActivityManager activityManager = context.getSystemService(ActivityManager.class);
+    samplePrecision = activityManager != null && activityManager.isLowRamDevice()
+            ? Precision.FP16
+            : Precision.FLOAT32;
+  }
+
+  /** Returns the registry of the running app. */
+  public static PoseClassifierRegistry get(Context context) {
+    Context application = context.getApplicationContext();
+    Preconditions.checkState(
+            application instanceof PhysiqueAiApplication,
+            "Pose classifier registry requires PhysiqueAiApplication");
+    return ((PhysiqueAiApplication) application).getPoseClassifierRegistry();
+  }
+
+  /** Loads the stores used by every exercise on a background thread. */
+  public void prewarmAsync() {
+    Thread thread = new Thread(this::prewarm, "PoseClassifierPrewarm");
+    thread.setPriority(Thread.MIN_PRIORITY);
+    thread.start();
+  }
+
+  @WorkerThread
+  public void prewarm() {
+    long start = System.nanoTime();
+    for (PoseExercise exercise : PoseExercise.values()) {
+      getStore(exercise, PoseClassifierProcessor.DEFAULT_NEGATIVE_CLASSES);
+    }
+    Log.d(TAG, "Prewarmed pose sample stores in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+  }
+
+  /** Returns a new processor for {@code exercise} over the shared store. */
+  @WorkerThread
+  public PoseClassifierProcessor newProcessor(PoseExercise exercise) {
+    return new PoseClassifierProcessor(
+            getStore(exercise, PoseClassifierProcessor.DEFAULT_NEGATIVE_CLASSES),
+            true,
+            exercise,
+            AudioCueEngine.get(context));
+  }
+
+  /**
+   * Returns the store with the samples of {@code exercise} and {@code negativeClasses}, or with
+   * every sample if {@code exercise} is null. Loads it on first use.
+   */
+  @WorkerThread
+  public synchronized PoseEmbeddingStore getStore(
+          @Nullable PoseExercise exercise, Collection<String> negativeClasses) {
+    Preconditions.checkState(Looper.myLooper() != Looper.getMainLooper());
+    Set<String> classNames = null;
+    if (exercise != null) {
+      Set<String> selection = new HashSet<>(exercise.getSampleClasses());
+      selection.addAll(negativeClasses);
+      classNames = Collections.unmodifiableSet(selection);
+    }
+    PoseEmbeddingStore store = stores.get(classNames);
+    if (store == null) {
+      store = load(classNames);
+      stores.put(classNames, store);
+    }
+    return store;
+  }
+
+  private PoseEmbeddingStore load(@Nullable Set<String> classNames) {
+    // Samples are validated and embedded at build time, so this is only a page-in of the shards.
+    try {
+      if (index == null && !indexUnreadable) {
+        index = mapAsset(context, POSE_SAMPLE_INDEX_FILE);
+      }
+      if (index != null) {
+        PoseEmbeddingStore store =
+                PoseSampleIndex.read(index, PoseClassifier.defaultAxesWeights(), classNames)
+                        .quantize(samplePrecision);
+        Log.d(TAG, "Loaded " + store.getNumSamples() + " pose samples in "
+                + store.getNumClasses() + " classes from " + POSE_SAMPLE_INDEX_FILE
+                + " as " + samplePrecision);
+        if (classNames != null && store.getNumClasses() < classNames.size()) {
+          Log.w(TAG, "Pose sample index lacks some classes of " + classNames);
+        }
+        return store;
+      }
+    } catch (IOException e) {
+      Log.e(TAG, "Error when loading pose samples: " + e.getMessage());
+      indexUnreadable = true;
+    }
+    return new PoseEmbeddingStore(
+            new float[0], new int[0], new String[0], PoseClassifier.defaultAxesWeights());
+  }
+
+  /**
+   * Maps an uncompressed asset into memory. The mapping stays valid after the descriptor is closed.
+   */
+  private static ByteBuffer mapAsset(Context context, String assetPath) throws IOException {
+    try (AssetFileDescriptor fd = context.getAssets().openFd(assetPath);
+         FileInputStream inputStream = fd.createInputStream()) {
+      return inputStream.getChannel().map(
+              FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getDeclaredLength());
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exercises with pose samples, and the sample classes that make up each of them.
+ *
+ * <p>A {@link PoseClassifierProcessor} created for one exercise only loads and searches the shards
+ * of its classes, see {@link PoseSampleIndex}.
+ */
+public enum PoseExercise {
+  PUSHUPS(new String[] {"pushups_down"}, "pushups_up"),
+  SQUATS(new String[] {"squats_down"}, "squats_up"),
+  FRONT_RAISE(new String[] {"front_raise_down"}, "front_raise_up"),
+  HIP_THRUST(new String[] {"hip_thrust_down"}, "hip_thrust_up"),
+  WINDMILL(new String[] {"windmill_left", "windmill_right"}),
+  HAMMER_CURL(new String[] {"hammer_curl_down"}, "hammer_curl_up"),
+  MILITARY_PRESS(new String[] {"military_press_down"}, "military_press_up"),
+  SIT_UPS(new String[] {"sit_ups_down"}, "sit_ups_up");
+
+  private final List<String> repClasses;
+  private final List<String> sampleClasses;
+
+  PoseExercise(String[] repClasses, String... otherClasses) {
+    String[] sampleClasses = Arrays.copyOf(repClasses, repClasses.length + otherClasses.length);
+    System.arraycopy(otherClasses, 0, sampleClasses, repClasses.length, otherClasses.length);
+    this.repClasses = Collections.unmodifiableList(Arrays.asList(repClasses));
+    this.sampleClasses = Collections.unmodifiableList(Arrays.asList(sampleClasses));
+  }
+
+  /** Returns the classes whose entry and exit count a repetition. */
+  public List<String> getRepClasses() {
+    return repClasses;
+  }
+
+  /** Returns every sample class of this exercise, rep classes first. */
+  public List<String> getSampleClasses() {
+    return sampleClasses;
+  }
+}
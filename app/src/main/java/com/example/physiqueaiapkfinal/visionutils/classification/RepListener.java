@@ -0,0 +1,11 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+/**
+ * Notified by {@link PoseClassifierProcessor} when something changes: a rep is completed or the
+ * most likely class of the frame changes. Frames without a change are not reported.
+ *
+ * <p>Called on the thread that classifies the frames.
+ */
+public interface RepListener {
+  void onRepEvent(RepResult result);
+}
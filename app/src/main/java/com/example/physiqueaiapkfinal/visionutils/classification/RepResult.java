@@ -0,0 +1,92 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Outcome of classifying one frame in {@link PoseClassifierProcessor}: the most likely class, the
+ * rep count and whether this frame completed a rep. Immutable, so it can be handed to the UI thread
+ * as is.
+ */
+public final class RepResult {
+  /** Class id used when there is no class, e.g. no pose was found in the frame. */
+  public static final int NO_CLASS = -1;
+
+  private final ClassDictionary classes;
+  private final int classId;
+  private final float confidence;
+  private final int repClassId;
+  private final int repCount;
+  private final boolean repCompleted;
+  private final boolean countingReps;
+  private final long timestampMs;
+
+  RepResult(
+      ClassDictionary classes,
+      int classId,
+      float confidence,
+      int repClassId,
+      int repCount,
+      boolean repCompleted,
+      boolean countingReps,
+      long timestampMs) {
+    this.classes = classes;
+    this.classId = classId;
+    this.confidence = confidence;
+    this.repClassId = repClassId;
+    this.repCount = repCount;
+    this.repCompleted = repCompleted;
+    this.countingReps = countingReps;
+    this.timestampMs = timestampMs;
+  }
+
+  /** Returns the id of the most likely class of the frame, or {@link #NO_CLASS}. */
+  public int getClassId() {
+    return classId;
+  }
+
+  /** Returns the name of the most likely class of the frame, or null if there is none. */
+  @Nullable
+  public String getClassName() {
+    return classId == NO_CLASS ? null : classes.getName(classId);
+  }
+
+  /** Returns the confidence of {@link #getClassId()}, in range [0, 1]. */
+  public float getConfidence() {
+    return confidence;
+  }
+
+  /** Returns the id of the class whose reps were counted last, or {@link #NO_CLASS}. */
+  public int getRepClassId() {
+    return repClassId;
+  }
+
+  /** Returns the name of the class whose reps were counted last, or null if there is none. */
+  @Nullable
+  public String getRepClassName() {
+    return repClassId == NO_CLASS ? null : classes.getName(repClassId);
+  }
+
+  /** Returns the reps counted so far for {@link #getRepClassId()}. */
+  public int getRepCount() {
+    return repCount;
+  }
+
+  /** Returns whether this frame completed a rep. */
+  public boolean isRepCompleted() {
+    return repCompleted;
+  }
+
+  /** Returns whether the processor counts reps at all, i.e. runs in stream mode. */
+  public boolean isCountingReps() {
+    return countingReps;
+  }
+
+  /** Returns the timestamp of the frame, in milliseconds. */
+  public long getTimestampMs() {
+    return timestampMs;
+  }
+
+  public ClassDictionary getClassDictionary() {
+    return classes;
+  }
+}
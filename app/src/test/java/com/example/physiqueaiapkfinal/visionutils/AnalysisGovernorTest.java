@@ -0,0 +1,137 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AnalysisGovernorTest {
+  private static final long CAMERA_FRAME_NANOS = 33_333_333L;
+  private static final long MILLI = 1_000_000L;
+
+  private long timestamp;
+
+  @Test
+  public void slowDetector_stepsDownToLowestBound() {
+    AnalysisGovernor governor = AnalysisGovernor.builder().setBounds(1, 4).build();
+
+    run(governor, 20, new float[] {60, 60, 60, 60, 60}, AnalysisGovernor.THERMAL_STATUS_NONE);
+
+    assertEquals(1, governor.getLevelIndex());
+    assertEquals(AnalysisGovernor.REASON_LATENCY, governor.getLastReason());
+    assertEquals(1, governor.getChangeCount());
+  }
+
+  @Test
+  public void fastDetector_stepsUpToHighestBoundAfterSustainedHeadroom() {
+    AnalysisGovernor governor = AnalysisGovernor.builder().setBounds(0, 3).build();
+
+    // Three calm windows are needed before the first step.
+    run(governor, 2, new float[] {10, 10, 10, 10, 10}, AnalysisGovernor.THERMAL_STATUS_NONE);
+    assertEquals(2, governor.getLevelIndex());
+
+    run(governor, 20, new float[] {10, 10, 10, 10, 10}, AnalysisGovernor.THERMAL_STATUS_NONE);
+    assertEquals(3, governor.getLevelIndex());
+    assertEquals(AnalysisGovernor.REASON_HEADROOM, governor.getLastReason());
+    assertEquals(1, governor.getChangeCount());
+  }
+
+  @Test
+  public void levelJustOverBudget_settlesBelowIt() {
+    AnalysisGovernor governor = AnalysisGovernor.builder().setInitialLevel(3).build();
+    // The top level is over budget and the one below has plenty of headroom, the worst case for
+    // oscillation.
+    float[] latencyMs = {8, 10, 12, 15, 55};
+
+    run(governor, 300, latencyMs, AnalysisGovernor.THERMAL_STATUS_NONE);
+
+    assertEquals(3, governor.getLevelIndex());
+    // Each failed attempt doubles the wait before the next: 3, 6, 12, 24, 32, 32, ... windows.
+    assertTrue("changes " + governor.getChangeCount(), governor.getChangeCount() <= 20);
+    long changes = governor.getChangeCount();
+    run(governor, 30, latencyMs, AnalysisGovernor.THERMAL_STATUS_NONE);
+    assertTrue(governor.getChangeCount() - changes <= 2);
+  }
+
+  @Test
+  public void severeThermalStatus_stepsDownDespiteHeadroom() {
+    AnalysisGovernor governor = AnalysisGovernor.builder().build();
+
+    run(governor, 2, new float[] {10, 10, 10, 10, 10}, AnalysisGovernor.THERMAL_STATUS_SEVERE);
+
+    assertEquals(1, governor.getLevelIndex());
+    assertEquals(AnalysisGovernor.REASON_THERMAL, governor.getLastReason());
+    assertEquals(AnalysisGovernor.THERMAL_STATUS_SEVERE, governor.getLastThermalStatus());
+  }
+
+  @Test
+  public void moderateThermalStatus_blocksSteppingUp() {
+    AnalysisGovernor governor = AnalysisGovernor.builder().build();
+
+    run(governor, 20, new float[] {10, 10, 10, 10, 10}, AnalysisGovernor.THERMAL_STATUS_MODERATE);
+
+    assertEquals(2, governor.getLevelIndex());
+    assertEquals(0, governor.getChangeCount());
+  }
+
+  @Test
+  public void droppedFrames_stepDown() {
+    AnalysisGovernor governor = AnalysisGovernor.builder().setInitialLevel(3).build();
+    // Every analyzed frame is followed by one that arrives a frame later and then two frames that
+    // never reach the analyzer.
+    boolean changed = false;
+    for (int frame = 0; frame < 40 && !changed; frame++) {
+      changed = governor.onFrame(timestamp, 10 * MILLI, AnalysisGovernor.THERMAL_STATUS_NONE);
+      timestamp += (frame % 2 == 0 ? 1 : 3) * CAMERA_FRAME_NANOS;
+    }
+
+    assertTrue(changed);
+    assertEquals(2, governor.getLevelIndex());
+    assertEquals(AnalysisGovernor.REASON_DROPPED_FRAMES, governor.getLastReason());
+    assertEquals(0.5f, governor.getLastDropRate(), 0.05f);
+  }
+
+  @Test
+  public void skippedFrames_areNotCountedAsDropped() {
+    AnalysisGovernor governor = AnalysisGovernor.builder().setInitialLevel(0).build();
+
+    run(governor, 5, new float[] {20, 20, 20, 20, 20}, AnalysisGovernor.THERMAL_STATUS_NONE);
+
+    assertEquals(0, governor.getLastDropRate(), 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void builder_boundsOutsideLevels_throws() {
+    AnalysisGovernor.builder().setBounds(0, AnalysisGovernor.DEFAULT_LEVELS.size());
+  }
+
+  @Test
+  public void builder_initialLevelMovedIntoBounds() {
+    AnalysisGovernor governor = AnalysisGovernor.builder().setBounds(0, 1).build();
+
+    assertEquals(1, governor.getLevelIndex());
+    assertFalse(governor.getLevel().isAccurateDetector());
+  }
+
+  /**
+   * Feeds {@code windows} seconds of 30 fps camera frames, skipping them as the current level
+   * says and analyzing the rest in {@code latencyMs[level]}.
+   */
+  private void run(AnalysisGovernor governor, int windows, float[] latencyMs, int thermalStatus) {
+    long end = timestamp + windows * AnalysisGovernor.DEFAULT_WINDOW_NANOS;
+    int skipped = 0;
+    while (timestamp < end) {
+      AnalysisGovernor.Level level = governor.getLevel();
+      if (skipped < level.getFrameSkip()) {
+        skipped++;
+        governor.onFrameSkipped(timestamp, thermalStatus);
+      } else {
+        skipped = 0;
+        long detectorNanos = (long) (latencyMs[governor.getLevelIndex()] * MILLI);
+        governor.onFrame(timestamp, detectorNanos, thermalStatus);
+      }
+      timestamp += CAMERA_FRAME_NANOS;
+    }
+  }
+}
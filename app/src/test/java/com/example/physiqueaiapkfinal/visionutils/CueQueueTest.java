@@ -0,0 +1,74 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CueQueueTest {
+  @Test
+  public void poll_returnsOffersInOrderAcrossLaps() {
+    CueQueue queue = new CueQueue(4);
+    for (int i = 0; i < 10; i++) {
+      assertTrue(queue.offer(i % 3, 100 + i));
+      assertEquals(i % 3, queue.poll());
+      assertEquals(100 + i, queue.polledTimestampNanos());
+    }
+    assertEquals(-1, queue.poll());
+  }
+
+  @Test
+  public void offer_rejectsWhenFull() {
+    CueQueue queue = new CueQueue(2);
+    assertTrue(queue.offer(1, 0));
+    assertTrue(queue.offer(2, 0));
+    assertFalse(queue.offer(3, 0));
+    assertEquals(1, queue.poll());
+    assertTrue(queue.offer(3, 0));
+    assertEquals(2, queue.poll());
+    assertEquals(3, queue.poll());
+  }
+
+  @Test
+  public void offer_concurrentProducersLoseNothing() throws InterruptedException {
+    int producers = 4;
+    int perProducer = 10_000;
+    CueQueue queue = new CueQueue(64);
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      int producer = p;
+      Thread thread =
+          new Thread(
+              () -> {
+                for (int i = 0; i < perProducer; i++) {
+                  while (!queue.offer(producer, i)) {
+                    Thread.yield();
+                  }
+                }
+              });
+      threads.add(thread);
+      thread.start();
+    }
+
+    // Each producer's requests arrive in the order it made them.
+    long[] nextTimestamp = new long[producers];
+    int received = 0;
+    while (received < producers * perProducer) {
+      int cue = queue.poll();
+      if (cue < 0) {
+        Thread.yield();
+        continue;
+      }
+      assertEquals(nextTimestamp[cue]++, queue.polledTimestampNanos());
+      received++;
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(-1, queue.poll());
+  }
+}
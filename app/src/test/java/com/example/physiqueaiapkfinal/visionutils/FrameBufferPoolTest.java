@@ -0,0 +1,114 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class FrameBufferPoolTest {
+  private static final FrameMetadata VGA =
+      new FrameMetadata.Builder().setWidth(640).setHeight(480).build();
+  private static final FrameMetadata HD =
+      new FrameMetadata.Builder().setWidth(1280).setHeight(720).build();
+
+  @Test
+  public void acquire_reusesReleasedFrames() {
+    FrameBufferPool pool = new FrameBufferPool(2);
+
+    FrameBufferPool.Frame first = pool.acquire(VGA);
+    pool.release(first);
+    FrameBufferPool.Frame second = pool.acquire(VGA);
+
+    assertSame(first, second);
+    assertSame(VGA, second.getMetadata());
+    assertTrue(second.getBuffer().isDirect());
+    assertEquals(640 * 480 * 3 / 2, second.getBuffer().remaining());
+    assertEquals(1, pool.getAllocatedCount());
+    assertEquals(1, pool.getRecycledCount());
+  }
+
+  @Test
+  public void acquire_allInUse_dropsFrame() {
+    FrameBufferPool pool = new FrameBufferPool(2);
+    FrameBufferPool.Frame first = pool.acquire(VGA);
+    assertNotNull(pool.acquire(VGA));
+
+    assertNull(pool.acquire(VGA));
+    assertEquals(1, pool.getDroppedCount());
+
+    pool.release(first);
+    assertSame(first, pool.acquire(VGA));
+  }
+
+  @Test
+  public void acquire_newFrameSize_replacesBuffers() {
+    FrameBufferPool pool = new FrameBufferPool(1);
+    FrameBufferPool.Frame vga = pool.acquire(VGA);
+    pool.release(vga);
+
+    FrameBufferPool.Frame hd = pool.acquire(HD);
+
+    assertNotSame(vga, hd);
+    assertEquals(1280 * 720 * 3 / 2, hd.getBuffer().capacity());
+    assertEquals(2, pool.getAllocatedCount());
+  }
+
+  @Test
+  public void mailbox_keepsOnlyLatestFrame() {
+    FrameBufferPool pool = new FrameBufferPool(3);
+    FrameMailbox mailbox = new FrameMailbox();
+    FrameBufferPool.Frame older = pool.acquire(VGA);
+    FrameBufferPool.Frame newer = pool.acquire(VGA);
+
+    assertNull(mailbox.post(older));
+    assertSame(older, mailbox.post(newer));
+    assertSame(newer, mailbox.take());
+    assertTrue(mailbox.isEmpty());
+    assertNull(mailbox.take());
+  }
+
+  @Test
+  public void cameraAndProcessorThreads_accountForEveryFrame() throws InterruptedException {
+    int frames = 20_000;
+    FrameBufferPool pool = new FrameBufferPool(3);
+    FrameMailbox mailbox = new FrameMailbox();
+    AtomicLong processed = new AtomicLong();
+    Thread processor =
+        new Thread(
+            () -> {
+              while (!Thread.currentThread().isInterrupted() || !mailbox.isEmpty()) {
+                FrameBufferPool.Frame frame = mailbox.take();
+                if (frame != null) {
+                  processed.incrementAndGet();
+                  pool.release(frame);
+                }
+              }
+            });
+    processor.start();
+
+    int refused = 0;
+    for (int i = 0; i < frames; i++) {
+      FrameBufferPool.Frame frame = pool.acquire(VGA);
+      if (frame == null) {
+        refused++;
+        continue;
+      }
+      FrameBufferPool.Frame replaced = mailbox.post(frame);
+      if (replaced != null) {
+        pool.drop(replaced);
+      }
+    }
+    processor.interrupt();
+    processor.join();
+
+    assertEquals(frames, processed.get() + pool.getDroppedCount());
+    assertTrue(pool.getAllocatedCount() <= 3);
+    assertEquals(frames, pool.getAllocatedCount() + pool.getRecycledCount() + refused);
+  }
+}
@@ -0,0 +1,54 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FramePipelineTest {
+
+  @Test
+  public void tryAdmit_upToDepthFramesInFlight() {
+    FramePipeline pipeline = new FramePipeline(2);
+
+    assertEquals(0, pipeline.tryAdmit());
+    assertEquals(1, pipeline.tryAdmit());
+    assertEquals(-1, pipeline.tryAdmit());
+    assertEquals(2, pipeline.getInFlight());
+
+    pipeline.finish();
+    assertEquals(2, pipeline.tryAdmit());
+    assertEquals(3, pipeline.getAdmittedCount());
+  }
+
+  @Test
+  public void setDepth_appliesToLaterFrames() {
+    FramePipeline pipeline = new FramePipeline(1);
+    pipeline.tryAdmit();
+    assertEquals(-1, pipeline.tryAdmit());
+
+    pipeline.setDepth(3);
+    assertEquals(1, pipeline.tryAdmit());
+    assertEquals(2, pipeline.tryAdmit());
+    assertEquals(-1, pipeline.tryAdmit());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void setDepth_aboveMax_throws() {
+    new FramePipeline(FramePipeline.MAX_DEPTH + 1);
+  }
+
+  @Test
+  public void tryRender_dropsResultsOvertakenByNewerFrame() {
+    FramePipeline pipeline = new FramePipeline(3);
+    long first = pipeline.tryAdmit();
+    long second = pipeline.tryAdmit();
+    long third = pipeline.tryAdmit();
+
+    assertTrue(pipeline.tryRender(first));
+    assertTrue(pipeline.tryRender(third));
+    assertFalse(pipeline.tryRender(second));
+    assertEquals(1, pipeline.getStaleCount());
+  }
+}
@@ -0,0 +1,209 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.junit.Test;
+
+public class FrameSchedulerTest {
+  private static final FrameMetadata VGA =
+      new FrameMetadata.Builder().setWidth(640).setHeight(480).build();
+  private static final int POOL_CAPACITY = FramePipeline.MAX_DEPTH + 2;
+
+  @Test
+  public void post_whilePipelineFull_keepsOnlyLatestFrame() {
+    FrameBufferPool pool = new FrameBufferPool(POOL_CAPACITY);
+    FramePipeline pipeline = new FramePipeline(1);
+    List<FrameBufferPool.Frame> started = new ArrayList<>();
+    FrameScheduler<Void> scheduler =
+        new FrameScheduler<>(pool, pipeline, (frame, sequence, context) -> started.add(frame));
+
+    FrameBufferPool.Frame first = pool.acquire(VGA);
+    scheduler.post(first, null);
+    scheduler.post(pool.acquire(VGA), null);
+    FrameBufferPool.Frame latest = pool.acquire(VGA);
+    scheduler.post(latest, null);
+
+    assertEquals(Arrays.asList(first), started);
+    assertEquals(1, pool.getDroppedCount());
+
+    scheduler.onFrameProcessed(first, null);
+
+    assertEquals(Arrays.asList(first, latest), started);
+    assertEquals(1, pipeline.getInFlight());
+  }
+
+  @Test
+  public void shutdown_releasesWaitingFrameAndStartsNoMore() {
+    FrameBufferPool pool = new FrameBufferPool(POOL_CAPACITY);
+    FramePipeline pipeline = new FramePipeline(1);
+    List<FrameBufferPool.Frame> started = new ArrayList<>();
+    FrameScheduler<Void> scheduler =
+        new FrameScheduler<>(pool, pipeline, (frame, sequence, context) -> started.add(frame));
+    FrameBufferPool.Frame first = pool.acquire(VGA);
+    scheduler.post(first, null);
+    scheduler.post(pool.acquire(VGA), null);
+
+    scheduler.shutdown();
+    scheduler.onFrameProcessed(first, null);
+    scheduler.post(pool.acquire(VGA), null);
+
+    assertEquals(1, started.size());
+    assertEquals(0, pipeline.getInFlight());
+  }
+
+  @Test
+  public void tryRender_keepsFrameOrderWhileEveryFrameIsClassified() {
+    FrameBufferPool pool = new FrameBufferPool(POOL_CAPACITY);
+    FramePipeline pipeline = new FramePipeline(3);
+    // Detection results are completed by hand, in an order the detector may deliver them.
+    List<FrameBufferPool.Frame> detecting = Arrays.asList(new FrameBufferPool.Frame[4]);
+    FrameScheduler<Void> scheduler =
+        new FrameScheduler<>(
+            pool, pipeline, (frame, sequence, context) -> detecting.set((int) sequence, frame));
+    List<Long> classified = new ArrayList<>();
+    List<Long> rendered = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      scheduler.post(pool.acquire(VGA), null);
+    }
+
+    for (long sequence : new long[] {2, 0, 3, 1}) {
+      FrameBufferPool.Frame frame = detecting.get((int) sequence);
+      assertNotNull("frame " + sequence + " was not started", frame);
+      // As in the processors: classify every detected frame, then render it unless overtaken.
+      classified.add(sequence);
+      if (pipeline.tryRender(sequence)) {
+        rendered.add(sequence);
+      }
+      scheduler.onFrameProcessed(frame, null);
+    }
+
+    assertEquals(Arrays.asList(2L, 0L, 3L, 1L), classified);
+    assertEquals(Arrays.asList(2L, 3L), rendered);
+    assertEquals(2, pipeline.getStaleCount());
+    assertEquals(0, pipeline.getInFlight());
+  }
+
+  @Test
+  public void overlappingStages_renderAtSlowestStageRate() {
+    // Detect takes 30 ms and classify plus render 20 ms, with a camera frame every 10 ms.
+    assertEquals(50, renderIntervalMs(1, 30, 20));
+    assertEquals(30, renderIntervalMs(2, 30, 20));
+    assertEquals(30, renderIntervalMs(3, 30, 20));
+  }
+
+  /**
+   * Runs camera frames through a scheduler whose detect and finish stages are single threaded fake
+   * executors on a simulated clock, and returns the steady state interval between rendered frames.
+   */
+  private static long renderIntervalMs(int depth, long detectMs, long finishMs) {
+    StagedProcessor processor = new StagedProcessor(depth, detectMs, finishMs);
+    for (long time = 0; time < 2000; time += 10) {
+      processor.clock.runUntil(time);
+      FrameBufferPool.Frame frame = processor.pool.acquire(VGA);
+      assertNotNull("pool ran out of frames", frame);
+      processor.scheduler.post(frame, null);
+    }
+
+    List<Long> renderedAt = processor.renderedAt;
+    int count = renderedAt.size();
+    assertTrue(count > 10);
+    assertEquals(0, processor.pipeline.getStaleCount());
+    return renderedAt.get(count - 1) - renderedAt.get(count - 2);
+  }
+
+  /** Detects a frame, then classifies and renders it, each stage on its own fake executor. */
+  private static final class StagedProcessor implements FrameScheduler.FrameProcessor<Void> {
+    final SimulatedClock clock = new SimulatedClock();
+    final FrameBufferPool pool = new FrameBufferPool(POOL_CAPACITY);
+    final FramePipeline pipeline;
+    final FrameScheduler<Void> scheduler;
+    final List<Long> renderedAt = new ArrayList<>();
+    private final FakeExecutor detector;
+    private final FakeExecutor finisher;
+
+    StagedProcessor(int depth, long detectMs, long finishMs) {
+      pipeline = new FramePipeline(depth);
+      scheduler = new FrameScheduler<>(pool, pipeline, this);
+      detector = new FakeExecutor(clock, detectMs);
+      finisher = new FakeExecutor(clock, finishMs);
+    }
+
+    @Override
+    public void process(FrameBufferPool.Frame frame, long sequence, Void context) {
+      assertTrue(pipeline.getInFlight() <= pipeline.getDepth());
+      detector.execute(() -> finisher.execute(() -> finish(frame, sequence)));
+    }
+
+    private void finish(FrameBufferPool.Frame frame, long sequence) {
+      if (pipeline.tryRender(sequence)) {
+        renderedAt.add(clock.now);
+      }
+      scheduler.onFrameProcessed(frame, null);
+    }
+  }
+
+  /** Runs callbacks in order of their due time, as time is advanced by hand. */
+  private static final class SimulatedClock {
+    // Due time and index into callbacks, which breaks ties in the order callbacks were added.
+    private final PriorityQueue<long[]> due =
+        new PriorityQueue<>(
+            (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+    private final List<Runnable> callbacks = new ArrayList<>();
+    long now;
+
+    void at(long time, Runnable callback) {
+      due.add(new long[] {time, callbacks.size()});
+      callbacks.add(callback);
+    }
+
+    void runUntil(long time) {
+      while (!due.isEmpty() && due.peek()[0] <= time) {
+        long[] next = due.poll();
+        now = next[0];
+        callbacks.get((int) next[1]).run();
+      }
+      now = time;
+    }
+  }
+
+  /** Single thread executor on a {@link SimulatedClock}, each task taking a fixed time. */
+  private static final class FakeExecutor {
+    private final SimulatedClock clock;
+    private final long taskMs;
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+    private boolean busy;
+
+    FakeExecutor(SimulatedClock clock, long taskMs) {
+      this.clock = clock;
+      this.taskMs = taskMs;
+    }
+
+    void execute(Runnable task) {
+      queue.add(task);
+      if (!busy) {
+        runNext();
+      }
+    }
+
+    private void runNext() {
+      Runnable task = queue.poll();
+      busy = task != null;
+      if (busy) {
+        clock.at(
+            clock.now + taskMs,
+            () -> {
+              task.run();
+              runNext();
+            });
+      }
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class FrameTraceTest {
+  @Test
+  public void dump_writesNewestEventsOldestFirst() throws IOException {
+    FrameTrace.clear();
+    int total = FrameTrace.CAPACITY + 10;
+    for (int i = 0; i < total; i++) {
+      FrameTrace.record(FrameTrace.REP_COUNTER_FRAME, i, -i, i * 0.5f, 1, 2, 3);
+    }
+    assertEquals(FrameTrace.CAPACITY, FrameTrace.size());
+
+    File file = File.createTempFile("frame_trace", ".bin");
+    try {
+      FrameTrace.dump(file);
+      try (DataInputStream in =
+          new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        assertEquals(FrameTrace.MAGIC, in.readInt());
+        assertEquals(FrameTrace.VERSION, in.readInt());
+        int names = in.readInt();
+        for (int i = 0; i < names; i++) {
+          String name = in.readUTF();
+          if (i == FrameTrace.REP_COUNTER_FRAME) {
+            assertEquals("REP_COUNTER_FRAME", name);
+          }
+        }
+        assertEquals(FrameTrace.CAPACITY, in.readInt());
+
+        long previousTimestamp = Long.MIN_VALUE;
+        for (int i = total - FrameTrace.CAPACITY; i < total; i++) {
+          long timestamp = in.readLong();
+          assertTrue(timestamp >= previousTimestamp);
+          previousTimestamp = timestamp;
+          assertEquals(FrameTrace.REP_COUNTER_FRAME, in.readInt());
+          assertEquals(i, in.readInt());
+          assertEquals(-i, in.readInt());
+          assertEquals(i * 0.5f, in.readFloat(), 0);
+          assertEquals(1f, in.readFloat(), 0);
+          assertEquals(2f, in.readFloat(), 0);
+          assertEquals(3f, in.readFloat(), 0);
+        }
+        assertEquals(-1, in.read());
+      }
+    } finally {
+      file.delete();
+      FrameTrace.clear();
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class LandmarkPredictorTest {
+  // x, y, z and likelihood per landmark, as PoseGraphic keeps them.
+  private static final int STRIDE = 4;
+  private static final long FRAME_NANOS = 1_000_000_000L / 15;
+  private static final long MS = 1_000_000L;
+  private static final boolean[] PRESENT = {true};
+
+  private static float[] landmark(float x, float y, float z) {
+    return new float[] {x, y, z, 1f};
+  }
+
+  @Test
+  public void predict_noResult_leavesLandmarks() {
+    LandmarkPredictor predictor = LandmarkPredictor.builder(1).build();
+    float[] out = landmark(1, 2, 3);
+
+    assertFalse(predictor.predict(0, out, STRIDE));
+    assertEquals(1, out[0], 0);
+  }
+
+  @Test
+  public void predict_constantVelocity_extrapolatesBetweenResults() {
+    // 300 px/s to the right, detected at 15 fps.
+    LandmarkPredictor predictor = LandmarkPredictor.builder(1).build();
+    long t = 0;
+    for (int i = 0; i < 30; i++) {
+      t = i * FRAME_NANOS;
+      predictor.observe(t, landmark(300f * t / 1e9f, 50, 0), STRIDE, PRESENT);
+    }
+    float[] out = new float[STRIDE];
+
+    // Display frames at 60 Hz until the next result.
+    for (long ahead = 16 * MS; ahead < FRAME_NANOS; ahead += 16 * MS) {
+      assertTrue(predictor.predict(t + ahead, out, STRIDE));
+      float truth = 300f * (t + ahead) / 1e9f;
+      assertEquals("ahead " + ahead / MS + " ms", truth, out[0], 3f);
+      assertEquals(50, out[1], 0.01f);
+    }
+  }
+
+  @Test
+  public void observe_jitterHoldingStill_isSmoothed() {
+    LandmarkPredictor predictor = LandmarkPredictor.builder(1).build();
+    float[] out = new float[STRIDE];
+    float maxError = 0;
+    for (int i = 0; i < 60; i++) {
+      long t = i * FRAME_NANOS;
+      // +-2 px of noise around 100.
+      predictor.observe(t, landmark(i % 2 == 0 ? 102 : 98, 100, 0), STRIDE, PRESENT);
+      predictor.predict(t, out, STRIDE);
+      if (i >= 30) {
+        maxError = Math.max(maxError, Math.abs(out[0] - 100));
+      }
+    }
+
+    assertTrue("max error " + maxError, maxError < 1f);
+  }
+
+  @Test
+  public void predict_pastHorizon_stopsMoving() {
+    LandmarkPredictor predictor =
+        LandmarkPredictor.builder(1).setMaxHorizonNanos(100 * MS).build();
+    predictor.observe(0, landmark(0, 0, 0), STRIDE, PRESENT);
+    predictor.observe(FRAME_NANOS, landmark(20, 0, 0), STRIDE, PRESENT);
+    float[] atHorizon = new float[STRIDE];
+    float[] later = new float[STRIDE];
+
+    assertTrue(predictor.predict(FRAME_NANOS + 99 * MS, atHorizon, STRIDE));
+    predictor.predict(FRAME_NANOS + 100 * MS, atHorizon, STRIDE);
+    assertFalse(predictor.predict(FRAME_NANOS + 1000 * MS, later, STRIDE));
+
+    assertEquals(atHorizon[0], later[0], 0);
+    assertTrue(later[0] > 20);
+  }
+
+  @Test
+  public void observe_afterGap_startsOver() {
+    LandmarkPredictor predictor = LandmarkPredictor.builder(1).setMaxGapNanos(500 * MS).build();
+    predictor.observe(0, landmark(0, 0, 0), STRIDE, PRESENT);
+    predictor.observe(FRAME_NANOS, landmark(20, 0, 0), STRIDE, PRESENT);
+    long t = FRAME_NANOS + 600 * MS;
+    predictor.observe(t, landmark(500, 0, 0), STRIDE, PRESENT);
+    float[] out = new float[STRIDE];
+
+    predictor.predict(t + 50 * MS, out, STRIDE);
+
+    assertEquals(500, out[0], 0);
+  }
+
+  @Test
+  public void observe_missingLandmark_startsOverWhenSeenAgain() {
+    LandmarkPredictor predictor = LandmarkPredictor.builder(2).build();
+    float[] landmarks = new float[2 * STRIDE];
+    boolean[] present = {true, true};
+    predictor.observe(0, landmarks, STRIDE, present);
+    landmarks[0] = 20;
+    landmarks[STRIDE] = 20;
+    predictor.observe(FRAME_NANOS, landmarks, STRIDE, present);
+    present[1] = false;
+    predictor.observe(2 * FRAME_NANOS, landmarks, STRIDE, present);
+    present[1] = true;
+    landmarks[STRIDE] = 80;
+    predictor.observe(3 * FRAME_NANOS, landmarks, STRIDE, present);
+    float[] out = new float[2 * STRIDE];
+    Arrays.fill(out, -1);
+
+    predictor.predict(3 * FRAME_NANOS + 30 * MS, out, STRIDE);
+
+    assertEquals(80, out[STRIDE], 0);
+  }
+
+  @Test
+  public void observe_olderResult_isIgnored() {
+    LandmarkPredictor predictor = LandmarkPredictor.builder(1).setMaxHorizonNanos(0).build();
+    predictor.observe(FRAME_NANOS, landmark(10, 10, 0), STRIDE, PRESENT);
+    predictor.observe(0, landmark(90, 90, 0), STRIDE, PRESENT);
+    float[] out = new float[STRIDE];
+
+    predictor.predict(FRAME_NANOS, out, STRIDE);
+
+    assertEquals(10, out[0], 0);
+  }
+}
@@ -0,0 +1,158 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class Nv21ConverterTest {
+  /** A frame whose luma is its pixel index and whose chroma is neutral, so pixels are gray. */
+  private static byte[] grayFrame(int width, int height) {
+    byte[] nv21 = new byte[width * height * 3 / 2];
+    for (int i = 0; i < width * height; i++) {
+      nv21[i] = (byte) i;
+    }
+    Arrays.fill(nv21, width * height, nv21.length, (byte) 128);
+    return nv21;
+  }
+
+  private static int gray(int luma) {
+    return 0xff000000 | luma << 16 | luma << 8 | luma;
+  }
+
+  @Test
+  public void convert_neutralChroma_givesGray() {
+    byte[] nv21 = grayFrame(4, 2);
+    int[] argb = new int[8];
+
+    Nv21Converter.convert(nv21, 0, 4, 2, 0, 1, argb);
+
+    for (int i = 0; i < 8; i++) {
+      assertEquals(gray(i), argb[i]);
+    }
+  }
+
+  @Test
+  public void convert_primaryColors() {
+    // Y, U and V of pure red, green and blue in full range BT.601.
+    int[][] yuv = {{76, 85, 255}, {150, 44, 21}, {29, 255, 107}};
+    int[] expected = {0xff0000, 0x00ff00, 0x0000ff};
+    for (int color = 0; color < yuv.length; color++) {
+      byte[] nv21 = {
+        (byte) yuv[color][0], (byte) yuv[color][0], (byte) yuv[color][0], (byte) yuv[color][0],
+        (byte) yuv[color][2], (byte) yuv[color][1]
+      };
+      int[] argb = new int[4];
+
+      Nv21Converter.convert(nv21, 0, 2, 2, 0, 1, argb);
+
+      for (int shift = 0; shift < 24; shift += 8) {
+        int actual = (argb[0] >> shift) & 0xff;
+        int wanted = (expected[color] >> shift) & 0xff;
+        assertTrue(color + ": " + Integer.toHexString(argb[0]), Math.abs(actual - wanted) <= 2);
+      }
+      assertEquals(0xff, argb[0] >>> 24);
+    }
+  }
+
+  @Test
+  public void convert_rotatesClockwise() {
+    // Luma 0 1 2 3 / 4 5 6 7.
+    byte[] nv21 = grayFrame(4, 2);
+    int[] argb = new int[8];
+
+    Nv21Converter.convert(nv21, 0, 4, 2, 90, 1, argb);
+    assertArrayEquals(
+        new int[] {gray(4), gray(0), gray(5), gray(1), gray(6), gray(2), gray(7), gray(3)}, argb);
+
+    Nv21Converter.convert(nv21, 0, 4, 2, 180, 1, argb);
+    assertArrayEquals(
+        new int[] {gray(7), gray(6), gray(5), gray(4), gray(3), gray(2), gray(1), gray(0)}, argb);
+
+    Nv21Converter.convert(nv21, 0, 4, 2, 270, 1, argb);
+    assertArrayEquals(
+        new int[] {gray(3), gray(7), gray(2), gray(6), gray(1), gray(5), gray(0), gray(4)}, argb);
+
+    assertEquals(2, Nv21Converter.getOutputWidth(4, 2, 90, 1));
+    assertEquals(4, Nv21Converter.getOutputHeight(4, 2, 270, 1));
+  }
+
+  @Test
+  public void convert_downscalesWhileRotating() {
+    // Luma 0..15 row by row; halving keeps 0, 2, 8 and 10.
+    byte[] nv21 = new byte[4 + grayFrame(4, 4).length];
+    System.arraycopy(grayFrame(4, 4), 0, nv21, 4, nv21.length - 4);
+    int[] argb = new int[4];
+
+    Nv21Converter.convert(nv21, 4, 4, 4, 90, 2, argb);
+
+    assertArrayEquals(new int[] {gray(8), gray(0), gray(10), gray(2)}, argb);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void convert_invalidRotation_throws() {
+    Nv21Converter.convert(grayFrame(2, 2), 0, 2, 2, 45, 1, new int[4]);
+  }
+
+  /** A frame whose luma is 16 * y + x and whose V and U are 16 * y + x of their 2x2 block. */
+  private static ByteBuffer patternFrame(int width, int height) {
+    byte[] nv21 = new byte[width * height * 3 / 2];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        nv21[y * width + x] = (byte) (16 * y + x);
+      }
+    }
+    for (int y = 0; y < height / 2; y++) {
+      for (int x = 0; x < width; x += 2) {
+        nv21[width * height + y * width + x] = (byte) (16 * y + x);
+        nv21[width * height + y * width + x + 1] = (byte) (16 * y + x + 1);
+      }
+    }
+    return ByteBuffer.wrap(nv21);
+  }
+
+  @Test
+  public void cropAndScale_unscaled_copiesRegion() {
+    ByteBuffer frame = patternFrame(8, 6);
+    ByteBuffer output = ByteBuffer.allocate(4 * 2 * 3 / 2);
+
+    Nv21Converter.cropAndScale(frame, 8, 6, 2, 4, 4, 2, output, 4, 2);
+
+    assertArrayEquals(
+        new byte[] {
+          // Luma of rows 4 and 5, columns 2 to 5.
+          66, 67, 68, 69, 82, 83, 84, 85,
+          // Chroma row 2, columns 2 to 5.
+          34, 35, 36, 37
+        },
+        output.array());
+  }
+
+  @Test
+  public void cropAndScale_halfSize_takesTopLeftOfEveryBlock() {
+    ByteBuffer frame = patternFrame(8, 8);
+    ByteBuffer output = ByteBuffer.allocate(4 * 4 * 3 / 2);
+
+    Nv21Converter.cropAndScale(frame, 8, 8, 0, 0, 8, 8, output, 4, 4);
+
+    byte[] bytes = output.array();
+    for (int y = 0; y < 4; y++) {
+      for (int x = 0; x < 4; x++) {
+        assertEquals(16 * 2 * y + 2 * x, bytes[y * 4 + x]);
+      }
+    }
+    // Output chroma rows 0 and 1 come from source chroma rows 0 and 2, columns 0 and 4.
+    assertArrayEquals(
+        new byte[] {0, 1, 4, 5, 32, 33, 36, 37}, Arrays.copyOfRange(bytes, 16, 24));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void cropAndScale_oddCorner_throws() {
+    Nv21Converter.cropAndScale(
+        patternFrame(8, 8), 8, 8, 1, 0, 4, 4, ByteBuffer.allocate(24), 4, 4);
+  }
+}
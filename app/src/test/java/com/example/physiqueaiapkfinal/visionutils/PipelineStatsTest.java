@@ -0,0 +1,110 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PipelineStatsTest {
+  private static final long MILLI = 1_000_000L;
+
+  @Test
+  public void histogram_bucketsCoverEveryValueInOrder() {
+    int previous = -1;
+    for (long value = 0; value < 1 << 20; value++) {
+      int index = LatencyHistogram.bucketIndex(value);
+      assertTrue(index == previous || index == previous + 1);
+      assertTrue(value <= LatencyHistogram.bucketUpperBound(index));
+      if (index != previous && index > 0) {
+        assertEquals(value - 1, LatencyHistogram.bucketUpperBound(index - 1));
+      }
+      previous = index;
+    }
+  }
+
+  @Test
+  public void histogram_percentilesWithinBucketError() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long micros = 1; micros <= 100_000; micros++) {
+      histogram.recordMicros(micros);
+    }
+
+    assertEquals(100_000, histogram.getTotalCount());
+    assertEquals(100_000, histogram.getMaxMicros());
+    assertWithin(50_000, histogram.getPercentileMicros(50));
+    assertWithin(90_000, histogram.getPercentileMicros(90));
+    assertWithin(99_000, histogram.getPercentileMicros(99));
+    assertEquals(100_000, histogram.getPercentileMicros(100));
+  }
+
+  @Test
+  public void histogram_clampsOutOfRangeValues() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.recordNanos(-5);
+    histogram.recordMicros(Long.MAX_VALUE);
+
+    assertEquals(0, histogram.getPercentileMicros(50));
+    assertEquals(LatencyHistogram.MAX_MICROS, histogram.getPercentileMicros(99));
+
+    histogram.reset();
+    assertEquals(0, histogram.getTotalCount());
+    assertEquals(0, histogram.getPercentileMicros(50));
+  }
+
+  @Test
+  public void recordFrameEnd_firstFrameOfEachSecond() {
+    PipelineStats stats = new PipelineStats();
+    long start = 5_000 * MILLI;
+
+    assertTrue(stats.recordFrameEnd(start));
+    assertFalse(stats.recordFrameEnd(start + 400 * MILLI));
+    assertFalse(stats.recordFrameEnd(start + 999 * MILLI));
+    assertTrue(stats.recordFrameEnd(start + 1_000 * MILLI));
+    assertFalse(stats.recordFrameEnd(start + 1_500 * MILLI));
+  }
+
+  @Test
+  public void framesPerSecond_countsFramesOfLastSecond() {
+    PipelineStats stats = new PipelineStats();
+    long start = 5_000 * MILLI;
+    // 30 fps for three seconds.
+    for (int frame = 0; frame < 90; frame++) {
+      stats.recordFrameEnd(start + frame * 1_000 * MILLI / 30);
+    }
+    long end = start + 89 * 1_000 * MILLI / 30;
+
+    assertEquals(90, stats.getFrames());
+    assertEquals(30, stats.getFramesPerSecond(end));
+    assertEquals(0, stats.getFramesPerSecond(end + 2_000 * MILLI));
+  }
+
+  @Test
+  public void snapshot_reusesAndOverwritesSnapshot() {
+    PipelineStats stats = new PipelineStats();
+    for (int frame = 1; frame <= 100; frame++) {
+      stats.record(PipelineStats.DETECTION, frame * MILLI);
+    }
+    PipelineStats.Snapshot snapshot = new PipelineStats.Snapshot();
+
+    assertSame(snapshot, stats.snapshot(snapshot, 7, 0));
+    assertEquals(100, snapshot.getCount(PipelineStats.DETECTION));
+    assertEquals(0, snapshot.getCount(PipelineStats.DRAW));
+    assertEquals(50, snapshot.getP50Ms(PipelineStats.DETECTION), 50 / 16f);
+    assertEquals(99, snapshot.getP99Ms(PipelineStats.DETECTION), 99 / 16f);
+    assertEquals(100, snapshot.getMaxMs(PipelineStats.DETECTION), 0);
+    assertEquals(7, snapshot.getDroppedFrames());
+
+    stats.reset();
+    stats.snapshot(snapshot, 8, 0);
+    assertEquals(0, snapshot.getCount(PipelineStats.DETECTION));
+    assertEquals(0, snapshot.getMaxMs(PipelineStats.DETECTION), 0);
+    assertEquals(8, snapshot.getDroppedFrames());
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(actual + " vs " + expected, actual >= expected);
+    assertTrue(actual + " vs " + expected, actual - expected <= expected / 16);
+  }
+}
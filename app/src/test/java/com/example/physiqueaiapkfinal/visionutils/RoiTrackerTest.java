@@ -0,0 +1,210 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class RoiTrackerTest {
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+  private static final float EPSILON = 1e-3f;
+
+  /** Landmarks spread evenly over the box from (left, top) to (right, bottom). */
+  private static float[] landmarksIn(float left, float top, float right, float bottom, int count) {
+    float[] landmarks = new float[count * 2];
+    for (int i = 0; i < count; i++) {
+      float t = i / (float) (count - 1);
+      landmarks[i * 2] = left + t * (right - left);
+      landmarks[i * 2 + 1] = top + t * (bottom - top);
+    }
+    return landmarks;
+  }
+
+  private static float[] likelihoods(int count, float likelihood) {
+    float[] likelihoods = new float[count];
+    Arrays.fill(likelihoods, likelihood);
+    return likelihoods;
+  }
+
+  private static RoiTracker.Crop fullFrame() {
+    RoiTracker.Crop crop = new RoiTracker.Crop();
+    crop.setFullFrame(WIDTH, HEIGHT);
+    return crop;
+  }
+
+  @Test
+  public void nextCrop_untracked_isFullFrame() {
+    RoiTracker tracker = RoiTracker.builder().build();
+    RoiTracker.Crop crop = new RoiTracker.Crop();
+
+    tracker.nextCrop(WIDTH, HEIGHT, crop);
+
+    assertTrue(crop.isFullFrame());
+    assertEquals(0, tracker.getCroppedCount());
+  }
+
+  @Test
+  public void onLandmarks_cropsPaddedBoundingBox() {
+    RoiTracker tracker = RoiTracker.builder().setPadding(0.25f).setTargetSize(100).build();
+
+    assertTrue(
+        tracker.onLandmarks(
+            fullFrame(), landmarksIn(200, 100, 400, 300, 12), likelihoods(12, 0.9f), 12));
+    RoiTracker.Crop crop = new RoiTracker.Crop();
+    tracker.nextCrop(WIDTH, HEIGHT, crop);
+
+    // 200 by 200 landmarks padded by 50 on every side.
+    assertEquals(150, crop.getLeft());
+    assertEquals(50, crop.getTop());
+    assertEquals(300, crop.getWidth());
+    assertEquals(300, crop.getHeight());
+    assertEquals(100, crop.getOutputWidth());
+    assertEquals(100, crop.getOutputHeight());
+    assertFalse(crop.isFullFrame());
+    assertEquals(1, tracker.getCroppedCount());
+  }
+
+  @Test
+  public void crop_mapsBetweenCropAndImage() {
+    RoiTracker.Crop crop = new RoiTracker.Crop();
+    crop.set(WIDTH, HEIGHT, 150, 50, 300, 200, 150, 100);
+
+    assertEquals(150, crop.toImageX(0), EPSILON);
+    assertEquals(450, crop.toImageX(150), EPSILON);
+    assertEquals(150, crop.toImageY(50), EPSILON);
+    assertEquals(20, crop.toImageZ(10), EPSILON);
+    assertEquals(37.5f, crop.toCropX(crop.toImageX(37.5f)), EPSILON);
+    assertEquals(81.25f, crop.toCropY(crop.toImageY(81.25f)), EPSILON);
+  }
+
+  @Test
+  public void crop_bufferRect_followsRotation() {
+    // Upright 480x640 image, whose buffer is 640x480 in the 90 and 270 degree cases.
+    RoiTracker.Crop crop = new RoiTracker.Crop();
+    crop.set(480, 640, 100, 200, 60, 80, 30, 40);
+    int[] rect = new int[4];
+
+    crop.getBufferRect(0, rect);
+    assertArrayEquals(new int[] {100, 200, 60, 80}, rect);
+    crop.getBufferRect(90, rect);
+    assertArrayEquals(new int[] {200, 320, 80, 60}, rect);
+    crop.getBufferRect(180, rect);
+    assertArrayEquals(new int[] {320, 360, 60, 80}, rect);
+    crop.getBufferRect(270, rect);
+    assertArrayEquals(new int[] {360, 100, 80, 60}, rect);
+    assertEquals(40, crop.getBufferOutputWidth(90));
+    assertEquals(30, crop.getBufferOutputHeight(270));
+  }
+
+  @Test
+  public void crop_bufferRect_coversSamePixelsAsUprightImage() {
+    // A pixel inside the upright crop, rotated back into the buffer, lands inside the buffer rect.
+    RoiTracker.Crop crop = new RoiTracker.Crop();
+    crop.set(480, 640, 100, 200, 60, 80, 30, 40);
+    int[] rect = new int[4];
+    // Upright pixel (101, 201) near the crop's top left corner.
+    int u = 101;
+    int v = 201;
+    // Rotating the buffer clockwise by 90 moves buffer pixel (bx, by) to (H - 1 - by, bx).
+    int bufferHeight = 480;
+    int bx = v;
+    int by = bufferHeight - 1 - u;
+
+    crop.getBufferRect(90, rect);
+
+    assertTrue(bx >= rect[0] && bx < rect[0] + rect[2]);
+    assertTrue(by >= rect[1] && by < rect[1] + rect[3]);
+  }
+
+  @Test
+  public void onLandmarks_tooFewSeen_fallsBackToFullFrame() {
+    RoiTracker tracker = RoiTracker.builder().setMinLandmarks(8).build();
+    float[] landmarks = landmarksIn(200, 100, 400, 300, 12);
+    tracker.onLandmarks(fullFrame(), landmarks, likelihoods(12, 0.9f), 12);
+    RoiTracker.Crop crop = new RoiTracker.Crop();
+    tracker.nextCrop(WIDTH, HEIGHT, crop);
+
+    float[] likelihoods = likelihoods(12, 0.1f);
+    Arrays.fill(likelihoods, 0, 7, 0.9f);
+    assertFalse(tracker.onLandmarks(crop, landmarks, likelihoods, 12));
+    tracker.nextCrop(WIDTH, HEIGHT, crop);
+
+    assertTrue(crop.isFullFrame());
+    assertEquals(1, tracker.getLostCount());
+  }
+
+  @Test
+  public void onLandmarks_atCropEdge_fallsBackToFullFrame() {
+    RoiTracker tracker = RoiTracker.builder().build();
+    tracker.onLandmarks(
+        fullFrame(), landmarksIn(200, 100, 400, 300, 12), likelihoods(12, 0.9f), 12);
+    RoiTracker.Crop crop = new RoiTracker.Crop();
+    tracker.nextCrop(WIDTH, HEIGHT, crop);
+
+    // The user moved right, up to the crop's right edge.
+    float right = crop.getLeft() + crop.getWidth() - 1;
+    assertFalse(
+        tracker.onLandmarks(
+            crop, landmarksIn(300, 100, right, 300, 12), likelihoods(12, 0.9f), 12));
+    tracker.nextCrop(WIDTH, HEIGHT, crop);
+
+    assertTrue(crop.isFullFrame());
+  }
+
+  @Test
+  public void onLandmarks_atImageEdge_keepsTracking() {
+    RoiTracker tracker = RoiTracker.builder().setPadding(0.1f).build();
+
+    // Left of the body at the image edge, which the crop shares.
+    tracker.onLandmarks(fullFrame(), landmarksIn(0, 100, 200, 300, 12), likelihoods(12, 0.9f), 12);
+    RoiTracker.Crop crop = new RoiTracker.Crop();
+    tracker.nextCrop(WIDTH, HEIGHT, crop);
+    assertEquals(0, crop.getLeft());
+
+    assertTrue(
+        tracker.onLandmarks(crop, landmarksIn(0, 100, 200, 300, 12), likelihoods(12, 0.9f), 12));
+  }
+
+  @Test
+  public void onLandmarks_largeCrop_usesFullFrame() {
+    RoiTracker tracker = RoiTracker.builder().setMaxArea(0.6f).build();
+
+    assertFalse(
+        tracker.onLandmarks(
+            fullFrame(), landmarksIn(50, 20, 590, 460, 12), likelihoods(12, 0.9f), 12));
+    assertEquals(0, tracker.getLostCount());
+  }
+
+  @Test
+  public void nextCrop_otherImageSize_isFullFrame() {
+    RoiTracker tracker = RoiTracker.builder().build();
+    tracker.onLandmarks(
+        fullFrame(), landmarksIn(200, 100, 400, 300, 12), likelihoods(12, 0.9f), 12);
+    RoiTracker.Crop crop = new RoiTracker.Crop();
+
+    tracker.nextCrop(1280, 960, crop);
+
+    assertTrue(crop.isFullFrame());
+    assertEquals(1280, crop.getWidth());
+  }
+
+  @Test
+  public void tracked_cropBoundsAreEven() {
+    RoiTracker tracker = RoiTracker.builder().setTargetSize(97).build();
+    tracker.onLandmarks(
+        fullFrame(), landmarksIn(201.3f, 99.7f, 377.9f, 301.1f, 12), likelihoods(12, 0.9f), 12);
+    RoiTracker.Crop crop = new RoiTracker.Crop();
+    tracker.nextCrop(WIDTH, HEIGHT, crop);
+
+    assertEquals(0, crop.getLeft() & 1);
+    assertEquals(0, crop.getTop() & 1);
+    assertEquals(0, crop.getWidth() & 1);
+    assertEquals(0, crop.getHeight() & 1);
+    assertEquals(0, crop.getOutputWidth() & 1);
+    assertEquals(0, crop.getOutputHeight() & 1);
+  }
+}
@@ -0,0 +1,94 @@
+package com.example.physiqueaiapkfinal.visionutils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class TripleBufferTest {
+
+  @Test
+  public void acquireLatest_nothingPublished_keepsFront() {
+    TripleBuffer<int[]> buffer = new TripleBuffer<>(new int[1], new int[1], new int[1]);
+    int[] front = buffer.getFront();
+
+    assertFalse(buffer.acquireLatest());
+    assertSame(front, buffer.getFront());
+  }
+
+  @Test
+  public void publish_handsBackSlotToConsumer() {
+    TripleBuffer<int[]> buffer = new TripleBuffer<>(new int[1], new int[1], new int[1]);
+    int[] back = buffer.getBack();
+    back[0] = 7;
+
+    buffer.publish();
+    assertNotSame(back, buffer.getBack());
+    assertTrue(buffer.acquireLatest());
+    assertSame(back, buffer.getFront());
+    assertFalse(buffer.acquireLatest());
+  }
+
+  @Test
+  public void acquireLatest_skipsSlotsOverwrittenBeforeAcquired() {
+    TripleBuffer<int[]> buffer = new TripleBuffer<>(new int[1], new int[1], new int[1]);
+    for (int i = 1; i <= 5; i++) {
+      buffer.getBack()[0] = i;
+      buffer.publish();
+    }
+
+    assertTrue(buffer.acquireLatest());
+    assertEquals(5, buffer.getFront()[0]);
+  }
+
+  @Test
+  public void concurrentProducer_consumerNeverSeesPartialSlot() throws Exception {
+    int length = 64;
+    int frames = 200_000;
+    TripleBuffer<int[]> buffer =
+        new TripleBuffer<>(new int[length], new int[length], new int[length]);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread producer =
+        new Thread(
+            () -> {
+              for (int frame = 1; frame <= frames; frame++) {
+                int[] slot = buffer.getBack();
+                for (int i = 0; i < length; i++) {
+                  slot[i] = frame;
+                }
+                buffer.publish();
+              }
+            });
+    producer.setUncaughtExceptionHandler((thread, e) -> failure.set(e));
+
+    producer.start();
+    int last = 0;
+    int[] expected = new int[length];
+    while (true) {
+      // Read before acquiring, so a slot published just before the producer ends is still seen.
+      boolean producerDone = !producer.isAlive();
+      if (!buffer.acquireLatest()) {
+        if (producerDone) {
+          break;
+        }
+        continue;
+      }
+      int[] front = buffer.getFront();
+      Arrays.fill(expected, front[0]);
+      assertArrayEquals(expected, front);
+      assertTrue("Frames went backwards", front[0] > last);
+      last = front[0];
+    }
+    producer.join();
+
+    assertNull(failure.get());
+    assertEquals(frames, last);
+  }
+}
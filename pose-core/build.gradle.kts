@@ -0,0 +1,25 @@
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+// Pose classification without Android or ML Kit types, so it runs and is measured on a plain JVM.
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
+
+// ./gradlew :pose-core:jmh runs the benchmarks in src/jmh; results go to build/results/jmh.
+// The gc profiler reports the allocation rate per operation next to the timings.
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    profilers.add("gc")
+    fork.set(2)
+    warmupIterations.set(5)
+    iterations.set(5)
+    resultFormat.set("JSON")
+}
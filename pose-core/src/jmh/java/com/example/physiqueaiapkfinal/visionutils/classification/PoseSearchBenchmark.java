@@ -0,0 +1,91 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import com.example.physiqueaiapkfinal.visionutils.classification.PoseClassifierEngine.SearchMode;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares the max distance stage backends of {@link PoseClassifierEngine} at 1k, 10k and 100k
+ * samples to find where {@link SearchMode#VP_TREE} starts to pay off. Measures the search alone,
+ * on precomputed query embeddings.
+ *
+ * <p>Samples lie close to a few low dimensional curves per class, like recorded repetitions of an
+ * exercise do, since a metric tree cannot prune uniformly scattered 69 dimensional points. The
+ * number of fully evaluated samples per query is printed after every trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.SampleTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PoseSearchBenchmark {
+  private static final int NUM_CLASSES = 12;
+  // A power of two, so the next query is picked with a mask.
+  private static final int NUM_QUERIES = 2048;
+
+  @Param({"1000", "10000", "100000"})
+  public int numSamples;
+
+  @Param
+  public SearchMode searchMode;
+
+  private PoseClassifierEngine engine;
+  private float[][] queries;
+  private float[][] flippedQueries;
+  private int[] votes;
+  private int next;
+  private long queryCount;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(numSamples);
+    SyntheticPoses.Clusters clusters = new SyntheticPoses.Clusters(random, NUM_CLASSES);
+    PoseEmbeddingStore store = clusters.store(random, numSamples);
+    engine = new PoseClassifierEngine(store, 30, 10, searchMode);
+    queries = new float[NUM_QUERIES][];
+    flippedQueries = new float[NUM_QUERIES][];
+    for (int q = 0; q < NUM_QUERIES; q++) {
+      queries[q] = clusters.embedding(random);
+      flippedQueries[q] = SyntheticPoses.flip(queries[q]);
+    }
+    votes = new int[store.getNumClasses()];
+  }
+
+  @Setup(Level.Iteration)
+  public void resetStats() {
+    engine.resetSearchStats();
+    queryCount = 0;
+  }
+
+  @Benchmark
+  public int search() {
+    int q = next;
+    next = (q + 1) & (NUM_QUERIES - 1);
+    queryCount++;
+    return engine.classify(queries[q], flippedQueries[q], votes);
+  }
+
+  @TearDown(Level.Iteration)
+  public void printStats() {
+    if (queryCount > 0) {
+      System.out.println(
+          String.format(
+              Locale.US,
+              "%d samples, %s: %d fully evaluated per query",
+              numSamples,
+              searchMode,
+              engine.getFullyEvaluatedCount() / queryCount));
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.STRIDE;
+
+import com.example.physiqueaiapkfinal.visionutils.classification.PoseClassifierEngine.SearchMode;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the per-frame cost of stream mode on a synthetic camera stream: embedding a landmark
+ * buffer, classifying it, then smoothing and rep counting, as {@code
+ * PoseClassifierProcessor} does for every frame minus the ML Kit adaptation.
+ *
+ * <p>The stream repeats a movement between two key poses with detector jitter, against stores of
+ * jittered samples around one key pose per class. Run with the gc profiler, as configured in the
+ * build, the allocation rate per frame is reported next to latency percentiles and throughput; it
+ * should be zero.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.SampleTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PoseStreamBenchmark {
+  private static final int NUM_CLASSES = 8;
+  // A power of two, so the next frame is picked with a mask.
+  private static final int NUM_FRAMES = 4096;
+
+  @Param({"1000", "10000", "100000"})
+  public int numSamples;
+
+  @Param({"PRUNED", "VP_TREE"})
+  public SearchMode searchMode;
+
+  private float[][] frames;
+  private PoseClassifier classifier;
+  private ClassificationResult classification;
+  private EMASmoothing smoothing;
+  private ClassificationResult smoothed;
+  private RepetitionCounter repCounter;
+  private final float[] embedding = new float[STRIDE];
+  private final float[] flippedEmbedding = new float[STRIDE];
+  private int next;
+  private long timestampMs;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(numSamples);
+    float[][] keyPoses = SyntheticPoses.keyPoses(random, NUM_CLASSES);
+    PoseEmbeddingStore store = SyntheticPoses.landmarkStore(random, numSamples, keyPoses);
+    frames = SyntheticPoses.repStream(random, NUM_FRAMES, keyPoses[0], keyPoses[1]);
+    classifier = new PoseClassifier(store, searchMode);
+    classification = new ClassificationResult(store.getClassDictionary());
+    smoothing = new EMASmoothing(store.getClassDictionary());
+    smoothed = new ClassificationResult(store.getClassDictionary());
+    repCounter = new RepetitionCounter(store.getClassDictionary().getName(1));
+  }
+
+  /** Embeds one frame, the first step of classifying it. */
+  @Benchmark
+  public float[] embed() {
+    PoseEmbedding.getPoseEmbedding(nextFrame(), embedding, flippedEmbedding);
+    return embedding;
+  }
+
+  /** Embeds and classifies one frame. */
+  @Benchmark
+  public int classify() {
+    classifier.classify(nextFrame(), classification);
+    return classification.getMaxConfidenceClassId();
+  }
+
+  /** Runs one frame through classification, smoothing and rep counting. */
+  @Benchmark
+  public int frame() {
+    classifier.classify(nextFrame(), classification);
+    timestampMs += SyntheticPoses.FRAME_INTERVAL_MS;
+    smoothing.getSmoothedResult(classification, timestampMs, smoothed);
+    return repCounter.addClassificationResult(smoothed);
+  }
+
+  private float[] nextFrame() {
+    float[] frame = frames[next];
+    next = (next + 1) & (NUM_FRAMES - 1);
+    return frame;
+  }
+}
@@ -0,0 +1,64 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.Precision;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the pruned search over float, half-precision and 8 bit stores of the same samples. The
+ * quantized kernels read a half or a quarter of the memory per sample but decode and scale every
+ * value, so they pay off once the store no longer fits in cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.SampleTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QuantizedSearchBenchmark {
+  private static final int NUM_CLASSES = 12;
+  // A power of two, so the next query is picked with a mask.
+  private static final int NUM_QUERIES = 2048;
+
+  @Param({"1000", "10000", "100000"})
+  public int numSamples;
+
+  @Param
+  public Precision precision;
+
+  private PoseClassifierEngine engine;
+  private float[][] queries;
+  private float[][] flippedQueries;
+  private int[] votes;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(numSamples);
+    SyntheticPoses.Clusters clusters = new SyntheticPoses.Clusters(random, NUM_CLASSES);
+    PoseEmbeddingStore store = clusters.store(random, numSamples).quantize(precision);
+    engine = new PoseClassifierEngine(store, 30, 10);
+    queries = new float[NUM_QUERIES][];
+    flippedQueries = new float[NUM_QUERIES][];
+    for (int q = 0; q < NUM_QUERIES; q++) {
+      queries[q] = clusters.embedding(random);
+      flippedQueries[q] = SyntheticPoses.flip(queries[q]);
+    }
+    votes = new int[store.getNumClasses()];
+  }
+
+  @Benchmark
+  public int search() {
+    int q = next;
+    next = (q + 1) & (NUM_QUERIES - 1);
+    return engine.classify(queries[q], flippedQueries[q], votes);
+  }
+}
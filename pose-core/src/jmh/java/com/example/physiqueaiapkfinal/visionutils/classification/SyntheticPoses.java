@@ -0,0 +1,160 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbedding.LANDMARK_BUFFER_SIZE;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.NUM_DIMS;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.STRIDE;
+
+import java.util.Random;
+
+/**
+ * Seeded synthetic data for the benchmarks: embedding stores whose samples cluster along a few low
+ * dimensional curves per class, like recorded repetitions of an exercise do, and landmark streams
+ * of a person repeating a movement between two key poses. The same seed gives the same data, so
+ * numbers are comparable between runs.
+ */
+final class SyntheticPoses {
+  static final float[] AXES_WEIGHTS = {1, 1, 0.2f};
+  // Camera frame interval at 30 fps.
+  static final long FRAME_INTERVAL_MS = 33;
+
+  private static final int NUM_FACTORS = 3;
+  private static final int FRAMES_PER_REP = 45;
+
+  private SyntheticPoses() {}
+
+  /** Classes of embeddings, each a center moved along a few random factors. */
+  static final class Clusters {
+    private final float[][] centers;
+    private final float[][][] factors;
+
+    Clusters(Random random, int numClasses) {
+      centers = new float[numClasses][];
+      factors = new float[numClasses][NUM_FACTORS][];
+      for (int c = 0; c < numClasses; c++) {
+        centers[c] = randomVector(random, STRIDE, 60);
+        for (int f = 0; f < NUM_FACTORS; f++) {
+          factors[c][f] = randomVector(random, STRIDE, 30);
+        }
+      }
+    }
+
+    /** Returns a store of {@code numSamples} embeddings of random classes. */
+    PoseEmbeddingStore store(Random random, int numSamples) {
+      float[] embeddings = new float[numSamples * STRIDE];
+      int[] classIds = new int[numSamples];
+      for (int sample = 0; sample < numSamples; sample++) {
+        classIds[sample] = random.nextInt(centers.length);
+        System.arraycopy(
+            embedding(random, classIds[sample]), 0, embeddings, sample * STRIDE, STRIDE);
+      }
+      return new PoseEmbeddingStore(
+          embeddings, classIds, classNames(centers.length), AXES_WEIGHTS);
+    }
+
+    /** Returns an embedding of a random class. */
+    float[] embedding(Random random) {
+      return embedding(random, random.nextInt(centers.length));
+    }
+
+    private float[] embedding(Random random, int classId) {
+      float[] embedding = centers[classId].clone();
+      for (float[] factor : factors[classId]) {
+        float amount = random.nextFloat() * 2 - 1;
+        for (int i = 0; i < STRIDE; i++) {
+          embedding[i] += amount * factor[i];
+        }
+      }
+      for (int i = 0; i < STRIDE; i++) {
+        embedding[i] += (float) random.nextGaussian() * 0.5f;
+      }
+      return embedding;
+    }
+  }
+
+  /**
+   * Returns a store of {@code numSamples} embedded landmark samples around one random key pose per
+   * class, each moved, scaled and jittered so normalization has work to do.
+   */
+  static PoseEmbeddingStore landmarkStore(Random random, int numSamples, float[][] keyPoses) {
+    float[] embeddings = new float[numSamples * STRIDE];
+    int[] classIds = new int[numSamples];
+    float[] landmarks = new float[LANDMARK_BUFFER_SIZE];
+    float[] embedding = new float[STRIDE];
+    float[] flippedEmbedding = new float[STRIDE];
+    for (int sample = 0; sample < numSamples; sample++) {
+      int classId = sample % keyPoses.length;
+      classIds[sample] = classId;
+      jitter(random, keyPoses[classId], 8, landmarks);
+      PoseEmbedding.getPoseEmbedding(landmarks, embedding, flippedEmbedding);
+      System.arraycopy(embedding, 0, embeddings, sample * STRIDE, STRIDE);
+    }
+    return new PoseEmbeddingStore(embeddings, classIds, classNames(keyPoses.length), AXES_WEIGHTS);
+  }
+
+  /** Returns {@code count} random key poses, landmark buffers in a 480x640 frame. */
+  static float[][] keyPoses(Random random, int count) {
+    float[][] keyPoses = new float[count][LANDMARK_BUFFER_SIZE];
+    for (float[] keyPose : keyPoses) {
+      for (int i = 0; i < LANDMARK_BUFFER_SIZE; i += NUM_DIMS) {
+        keyPose[i] = 120 + random.nextFloat() * 240;
+        keyPose[i + 1] = 80 + random.nextFloat() * 480;
+        keyPose[i + 2] = random.nextFloat() * 200 - 100;
+      }
+    }
+    return keyPoses;
+  }
+
+  /**
+   * Returns {@code numFrames} landmark buffers of reps going smoothly from key pose {@code from} to
+   * {@code to} and back, with per-frame detector jitter.
+   */
+  static float[][] repStream(Random random, int numFrames, float[] from, float[] to) {
+    float[][] frames = new float[numFrames][LANDMARK_BUFFER_SIZE];
+    float[] pose = new float[LANDMARK_BUFFER_SIZE];
+    for (int frame = 0; frame < numFrames; frame++) {
+      float phase = (float) (1 - Math.cos(2 * Math.PI * frame / FRAMES_PER_REP)) / 2;
+      for (int i = 0; i < LANDMARK_BUFFER_SIZE; i++) {
+        pose[i] = from[i] + (to[i] - from[i]) * phase;
+      }
+      jitter(random, pose, 2, frames[frame]);
+    }
+    return frames;
+  }
+
+  static String[] classNames(int numClasses) {
+    String[] classNames = new String[numClasses];
+    for (int c = 0; c < numClasses; c++) {
+      classNames[c] = "class_" + c;
+    }
+    return classNames;
+  }
+
+  /** Returns a copy of {@code embedding} mirrored horizontally. */
+  static float[] flip(float[] embedding) {
+    float[] flipped = embedding.clone();
+    for (int i = 0; i < STRIDE; i += NUM_DIMS) {
+      flipped[i] = -flipped[i];
+    }
+    return flipped;
+  }
+
+  // Writes pose moved by up to 40 pixels, scaled by up to 10% and with gaussian noise of sigma.
+  private static void jitter(Random random, float[] pose, float sigma, float[] out) {
+    float scale = 0.9f + random.nextFloat() * 0.2f;
+    float dx = random.nextFloat() * 80 - 40;
+    float dy = random.nextFloat() * 80 - 40;
+    for (int i = 0; i < LANDMARK_BUFFER_SIZE; i += NUM_DIMS) {
+      out[i] = pose[i] * scale + dx + (float) random.nextGaussian() * sigma;
+      out[i + 1] = pose[i + 1] * scale + dy + (float) random.nextGaussian() * sigma;
+      out[i + 2] = pose[i + 2] * scale + (float) random.nextGaussian() * sigma;
+    }
+  }
+
+  private static float[] randomVector(Random random, int size, float scale) {
+    float[] vector = new float[size];
+    for (int i = 0; i < size; i++) {
+      vector[i] = (random.nextFloat() - 0.5f) * scale;
+    }
+    return vector;
+  }
+}
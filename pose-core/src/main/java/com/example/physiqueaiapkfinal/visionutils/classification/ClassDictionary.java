@@ -0,0 +1,61 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps pose class names to dense int ids, so per-frame results can be indexed arrays instead of
+ * maps keyed by name.
+ *
+ * <p>A dictionary is built once when samples load, see {@link PoseEmbeddingStore}, and shared by
+ * everything classified against those samples. Shared dictionaries are never modified. Only a
+ * dictionary private to one owner, such as the one of a {@link ClassificationResult} created
+ * without a dictionary, grows through {@link #intern}.
+ */
+public class ClassDictionary {
+  private final Map<String, Integer> ids = new HashMap<>();
+  private String[] names;
+  private int size;
+
+  public ClassDictionary(String... classNames) {
+    names = new String[Math.max(classNames.length, 4)];
+    for (String className : classNames) {
+      if (ids.containsKey(className)) {
+        throw new IllegalArgumentException("Duplicate class " + className);
+      }
+      intern(className);
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public String getName(int classId) {
+    if (classId < 0 || classId >= size) {
+      throw new IndexOutOfBoundsException("Invalid class id " + classId);
+    }
+    return names[classId];
+  }
+
+  /** Returns the id of {@code className}, or -1 if it is not in this dictionary. */
+  public int getId(String className) {
+    Integer classId = ids.get(className);
+    return classId == null ? -1 : classId;
+  }
+
+  /** Returns the id of {@code className}, adding it if needed. Only for unshared dictionaries. */
+  int intern(String className) {
+    Integer classId = ids.get(className);
+    if (classId != null) {
+      return classId;
+    }
+    if (size == names.length) {
+      names = Arrays.copyOf(names, size * 2);
+    }
+    names[size] = className;
+    ids.put(className, size);
+    return size++;
+  }
+}
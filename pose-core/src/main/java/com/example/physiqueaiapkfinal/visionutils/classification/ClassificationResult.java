@@ -0,0 +1,145 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Represents Pose classification result as outputted by {@link PoseClassifier}. Can be manipulated.
+ *
+ * <p>Confidences live in a {@code float[]} indexed by the class ids of a {@link ClassDictionary}.
+ * The int accessors neither hash nor box; the accessors taking class names are adapters for
+ * callers that still work with names. A result can be {@link #clear() cleared} and refilled, so
+ * per-frame stages can reuse instances instead of allocating new ones.
+ */
+public class ClassificationResult {
+  private final ClassDictionary dictionary;
+  // Whether the dictionary is private to this result and may grow with new class names.
+  private final boolean ownsDictionary;
+
+  // For a class id, confidence is how many times the class appears in the top K nearest
+  // neighbors. The value is in range [0, K] and could be a float after EMA smoothing. We use this
+  // number to represent the confidence of a pose being in this class.
+  private float[] confidences;
+  // Whether a confidence was set for the class id, even if it is 0.
+  private boolean[] present;
+
+  /** Creates a result with its own dictionary that grows with every class name put into it. */
+  public ClassificationResult() {
+    this(new ClassDictionary(), true);
+  }
+
+  /** Creates a result over a shared dictionary. Class names outside of it are rejected. */
+  public ClassificationResult(ClassDictionary dictionary) {
+    this(dictionary, false);
+  }
+
+  private ClassificationResult(ClassDictionary dictionary, boolean ownsDictionary) {
+    this.dictionary = dictionary;
+    this.ownsDictionary = ownsDictionary;
+    confidences = new float[Math.max(dictionary.size(), 1)];
+    present = new boolean[confidences.length];
+  }
+
+  public ClassDictionary getDictionary() {
+    return dictionary;
+  }
+
+  /** Removes every class, keeping the dictionary. */
+  public void clear() {
+    Arrays.fill(confidences, 0);
+    Arrays.fill(present, false);
+  }
+
+  public boolean hasClass(int classId) {
+    return classId >= 0 && classId < present.length && present[classId];
+  }
+
+  public float getClassConfidence(int classId) {
+    return hasClass(classId) ? confidences[classId] : 0;
+  }
+
+  public void putClassConfidence(int classId, float confidence) {
+    ensureCapacity(classId);
+    confidences[classId] = confidence;
+    present[classId] = true;
+  }
+
+  public void incrementClassConfidence(int classId) {
+    putClassConfidence(classId, getClassConfidence(classId) + 1);
+  }
+
+  /** Returns the id of the class with the highest confidence, or -1 if there is none. */
+  public int getMaxConfidenceClassId() {
+    int maxClassId = -1;
+    for (int classId = 0; classId < present.length; classId++) {
+      if (present[classId] && (maxClassId < 0 || confidences[classId] > confidences[maxClassId])) {
+        maxClassId = classId;
+      }
+    }
+    return maxClassId;
+  }
+
+  public Set<String> getAllClasses() {
+    Set<String> classes = new HashSet<>();
+    for (int classId = 0; classId < present.length; classId++) {
+      if (present[classId]) {
+        classes.add(dictionary.getName(classId));
+      }
+    }
+    return classes;
+  }
+
+  public float getClassConfidence(String className) {
+    return getClassConfidence(dictionary.getId(className));
+  }
+
+  /** Returns the class with the highest confidence, or null if there is none. */
+  public String getMaxConfidenceClass() {
+    int classId = getMaxConfidenceClassId();
+    return classId < 0 ? null : dictionary.getName(classId);
+  }
+
+  public void incrementClassConfidence(String className) {
+    incrementClassConfidence(classIdOf(className));
+  }
+
+  public void putClassConfidence(String className, float confidence) {
+    putClassConfidence(classIdOf(className), confidence);
+  }
+
+  private int classIdOf(String className) {
+    if (ownsDictionary) {
+      return dictionary.intern(className);
+    }
+    int classId = dictionary.getId(className);
+    if (classId < 0) {
+      throw new IllegalArgumentException("Unknown class " + className);
+    }
+    return classId;
+  }
+
+  private void ensureCapacity(int classId) {
+    if (classId >= confidences.length) {
+      int capacity = Math.max(classId + 1, confidences.length * 2);
+      confidences = Arrays.copyOf(confidences, capacity);
+      present = Arrays.copyOf(present, capacity);
+    }
+  }
+}
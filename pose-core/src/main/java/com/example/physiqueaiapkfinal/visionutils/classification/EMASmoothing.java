@@ -0,0 +1,257 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import java.util.Arrays;
+
+/**
+ * Runs EMA smoothing over a window with given stream of pose classification results.
+ *
+ * <p>The most recent result has weight 1 and every older one {@code 1 - alpha} times the weight of
+ * the next, over the last {@code windowSize} results. Instead of re-walking the window per class,
+ * a running weighted sum is kept per class id and the results are kept in a fixed ring buffer, so a
+ * frame costs O(number of classes) regardless of the window size. The running sums are recomputed
+ * from the ring buffer once per window to keep float drift bounded.
+ *
+ * <p>Given the {@link ClassDictionary} of the classifier, results over it are used by class id
+ * without any name lookups. Otherwise classes are interned by name into a dictionary of its own.
+ *
+ * <p>Time only comes from the timestamps passed in, so replaying the same frames gives the same
+ * output. Not thread-safe.
+ */
+public class EMASmoothing {
+  private static final int DEFAULT_WINDOW_SIZE = 10;
+  private static final float DEFAULT_ALPHA = 0.2f;
+
+  private static final long RESET_THRESHOLD_MS = 100;
+
+  private final int windowSize;
+  // weights[k] is the weight of the k-th most recent result; denominators[n] the sum of the first n.
+  private final float[] weights;
+  private final float[] denominators;
+
+  private final ClassDictionary classes;
+  // Whether classes is private to this instance and may grow with new class names.
+  private final boolean ownsDictionary;
+  private int classCapacity;
+
+  // Ring buffer of the window, windowSize rows of classCapacity columns. A row holds the
+  // confidences of one result and whether each class was present in it.
+  private float[] ringValues;
+  private boolean[] ringPresent;
+  // Row of the most recent result, and number of results in the window.
+  private int head = -1;
+  private int size;
+
+  // Per class id: running weighted sum of its confidences, and number of window rows with it.
+  private float[] numerators;
+  private int[] presentCounts;
+  private int framesSinceRecompute;
+
+  private long lastInputMs;
+
+  public EMASmoothing() {
+    this(DEFAULT_WINDOW_SIZE, DEFAULT_ALPHA);
+  }
+
+  public EMASmoothing(int windowSize, float alpha) {
+    this(new ClassDictionary(), true, windowSize, alpha);
+  }
+
+  public EMASmoothing(ClassDictionary classes) {
+    this(classes, DEFAULT_WINDOW_SIZE, DEFAULT_ALPHA);
+  }
+
+  public EMASmoothing(ClassDictionary classes, int windowSize, float alpha) {
+    this(classes, false, windowSize, alpha);
+  }
+
+  private EMASmoothing(
+      ClassDictionary classes, boolean ownsDictionary, int windowSize, float alpha) {
+    this.classes = classes;
+    this.ownsDictionary = ownsDictionary;
+    this.windowSize = windowSize;
+    weights = new float[windowSize];
+    denominators = new float[windowSize + 1];
+    float factor = 1;
+    for (int k = 0; k < windowSize; k++) {
+      weights[k] = factor;
+      denominators[k + 1] = denominators[k] + factor;
+      factor = (float) (factor * (1.0 - alpha));
+    }
+    classCapacity = Math.max(classes.size(), 8);
+    ringValues = new float[windowSize * classCapacity];
+    ringPresent = new boolean[windowSize * classCapacity];
+    numerators = new float[classCapacity];
+    presentCounts = new int[classCapacity];
+  }
+
+  /** Returns the dictionary of the class ids in the smoothed results. */
+  public ClassDictionary getClassDictionary() {
+    return classes;
+  }
+
+  /** Smooths using the current time as the frame timestamp. */
+  public ClassificationResult getSmoothedResult(ClassificationResult classificationResult) {
+    return getSmoothedResult(classificationResult, System.nanoTime() / 1_000_000);
+  }
+
+  /**
+   * Adds a frame's result to the window and returns the smoothed confidences of every class seen in
+   * the window.
+   *
+   * @param timestampMs frame timestamp in milliseconds, on any monotonic clock.
+   */
+  public ClassificationResult getSmoothedResult(
+      ClassificationResult classificationResult, long timestampMs) {
+    ClassificationResult smoothedResult = new ClassificationResult(classes);
+    getSmoothedResult(classificationResult, timestampMs, smoothedResult);
+    return smoothedResult;
+  }
+
+  /**
+   * Like {@link #getSmoothedResult(ClassificationResult, long)}, but writes into a caller owned
+   * result over {@link #getClassDictionary()}, so it can be reused from frame to frame.
+   */
+  public void getSmoothedResult(
+      ClassificationResult classificationResult,
+      long timestampMs,
+      ClassificationResult smoothedResult) {
+    if (smoothedResult.getDictionary() != classes) {
+      throw new IllegalArgumentException("Result is not over the smoothing's class dictionary");
+    }
+    // Resets memory if the input is too far away from the previous one in time.
+    if (timestampMs - lastInputMs > RESET_THRESHOLD_MS) {
+      clear();
+    }
+    lastInputMs = timestampMs;
+
+    ClassDictionary resultClasses = classificationResult.getDictionary();
+    boolean sameClasses = resultClasses == classes;
+    if (!sameClasses) {
+      for (int resultId = 0; resultId < resultClasses.size(); resultId++) {
+        if (classificationResult.hasClass(resultId)) {
+          addClass(resultClasses.getName(resultId));
+        }
+      }
+    }
+    if (classes.size() > classCapacity) {
+      growClassCapacity(Math.max(classes.size(), classCapacity * 2));
+    }
+    int numClasses = classes.size();
+    int capacity = classCapacity;
+
+    // If we are at window size, remove the last (oldest) result.
+    if (size == windowSize) {
+      int oldest = (head + 1) % windowSize;
+      float weight = weights[windowSize - 1];
+      for (int classId = 0; classId < numClasses; classId++) {
+        int cell = oldest * capacity + classId;
+        if (ringPresent[cell]) {
+          ringPresent[cell] = false;
+          if (--presentCounts[classId] == 0) {
+            numerators[classId] = 0;
+          } else {
+            numerators[classId] -= weight * ringValues[cell];
+          }
+        }
+      }
+      size--;
+    }
+
+    // Every result already in the window gets one step older.
+    float decay = windowSize > 1 ? weights[1] : 0;
+    for (int classId = 0; classId < numClasses; classId++) {
+      numerators[classId] *= decay;
+    }
+
+    // Insert at the beginning of the window.
+    head = (head + 1) % windowSize;
+    int row = head * capacity;
+    Arrays.fill(ringPresent, row, row + capacity, false);
+    for (int resultId = 0; resultId < resultClasses.size(); resultId++) {
+      if (!classificationResult.hasClass(resultId)) {
+        continue;
+      }
+      int classId = sameClasses ? resultId : classes.getId(resultClasses.getName(resultId));
+      float value = classificationResult.getClassConfidence(resultId);
+      ringValues[row + classId] = value;
+      ringPresent[row + classId] = true;
+      numerators[classId] += value;
+      presentCounts[classId]++;
+    }
+    size++;
+
+    if (++framesSinceRecompute >= windowSize) {
+      recomputeNumerators(numClasses);
+    }
+
+    smoothedResult.clear();
+    float denominator = denominators[size];
+    for (int classId = 0; classId < numClasses; classId++) {
+      if (presentCounts[classId] > 0) {
+        smoothedResult.putClassConfidence(classId, numerators[classId] / denominator);
+      }
+    }
+  }
+
+  private void clear() {
+    size = 0;
+    framesSinceRecompute = 0;
+    Arrays.fill(ringPresent, false);
+    Arrays.fill(numerators, 0);
+    Arrays.fill(presentCounts, 0);
+  }
+
+  /** Recomputes the running sums from the ring buffer, newest result first. */
+  private void recomputeNumerators(int numClasses) {
+    int capacity = classCapacity;
+    Arrays.fill(numerators, 0);
+    for (int k = 0; k < size; k++) {
+      int row = ((head - k + windowSize) % windowSize) * capacity;
+      for (int classId = 0; classId < numClasses; classId++) {
+        if (ringPresent[row + classId]) {
+          numerators[classId] += weights[k] * ringValues[row + classId];
+        }
+      }
+    }
+    framesSinceRecompute = 0;
+  }
+
+  private void addClass(String className) {
+    if (ownsDictionary) {
+      classes.intern(className);
+    } else if (classes.getId(className) < 0) {
+      throw new IllegalArgumentException("Unknown class " + className);
+    }
+  }
+
+  private void growClassCapacity(int capacity) {
+    int oldCapacity = classCapacity;
+    float[] values = new float[windowSize * capacity];
+    boolean[] present = new boolean[windowSize * capacity];
+    for (int row = 0; row < windowSize; row++) {
+      System.arraycopy(ringValues, row * oldCapacity, values, row * capacity, oldCapacity);
+      System.arraycopy(ringPresent, row * oldCapacity, present, row * capacity, oldCapacity);
+    }
+    ringValues = values;
+    ringPresent = present;
+    classCapacity = capacity;
+    numerators = Arrays.copyOf(numerators, capacity);
+    presentCounts = Arrays.copyOf(presentCounts, capacity);
+  }
+}
@@ -0,0 +1,213 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbedding.LANDMARK_BUFFER_SIZE;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.NUM_DIMS;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Recorded landmark stream of a session, replayed by {@link TraceReplay} to reproduce rep counting
+ * off the device.
+ *
+ * <p>Binary layout, big-endian, frames until the end of the stream so a recording can be cut off
+ * at any frame:
+ *
+ * <pre>
+ *   int    magic            'LMTR'
+ *   int    version          {@link #VERSION}
+ *   int    landmark count   33
+ *   per frame {
+ *     long   timestamp        milliseconds, on any monotonic clock
+ *     byte   flags            bit 0: a pose was found
+ *     33 x { float x, y, z, in-frame likelihood }   only if a pose was found
+ *   }
+ * </pre>
+ */
+public final class LandmarkTrace {
+  public static final int MAGIC = 0x4C4D5452;
+  public static final int VERSION = 1;
+
+  private static final int FLAG_POSE_FOUND = 1;
+
+  private int size;
+  private long[] timestampsMs;
+  private boolean[] posesFound;
+  private float[] landmarks;
+  private float[] likelihoods;
+
+  public LandmarkTrace() {
+    this(256);
+  }
+
+  private LandmarkTrace(int capacity) {
+    timestampsMs = new long[capacity];
+    posesFound = new boolean[capacity];
+    landmarks = new float[capacity * LANDMARK_BUFFER_SIZE];
+    likelihoods = new float[capacity * LandmarkType.COUNT];
+  }
+
+  /**
+   * Appends a frame.
+   *
+   * @param landmarks landmark buffer, see {@link PoseEmbedding#LANDMARK_BUFFER_SIZE}, or null if no
+   *     pose was found.
+   * @param likelihoods in-frame likelihood per landmark type, ignored if {@code landmarks} is null.
+   */
+  public void add(long timestampMs, float[] landmarks, float[] likelihoods) {
+    if (size == timestampsMs.length) {
+      int capacity = size * 2;
+      timestampsMs = Arrays.copyOf(timestampsMs, capacity);
+      posesFound = Arrays.copyOf(posesFound, capacity);
+      this.landmarks = Arrays.copyOf(this.landmarks, capacity * LANDMARK_BUFFER_SIZE);
+      this.likelihoods = Arrays.copyOf(this.likelihoods, capacity * LandmarkType.COUNT);
+    }
+    timestampsMs[size] = timestampMs;
+    posesFound[size] = landmarks != null;
+    if (landmarks != null) {
+      System.arraycopy(
+          landmarks, 0, this.landmarks, size * LANDMARK_BUFFER_SIZE, LANDMARK_BUFFER_SIZE);
+      System.arraycopy(
+          likelihoods, 0, this.likelihoods, size * LandmarkType.COUNT, LandmarkType.COUNT);
+    }
+    size++;
+  }
+
+  /** Returns the number of frames. */
+  public int size() {
+    return size;
+  }
+
+  public long getTimestampMs(int frame) {
+    return timestampsMs[frame];
+  }
+
+  public boolean isPoseFound(int frame) {
+    return posesFound[frame];
+  }
+
+  /** Copies the landmarks of a frame with a pose into a landmark buffer. */
+  public void copyLandmarks(int frame, float[] landmarks) {
+    System.arraycopy(
+        this.landmarks, frame * LANDMARK_BUFFER_SIZE, landmarks, 0, LANDMARK_BUFFER_SIZE);
+  }
+
+  public float getLikelihood(int frame, int landmarkType) {
+    return likelihoods[frame * LandmarkType.COUNT + landmarkType];
+  }
+
+  /**
+   * Reads a whole trace.
+   *
+   * @throws IOException if the stream is not a compatible trace or ends within a frame.
+   */
+  public static LandmarkTrace read(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+    if (data.readInt() != MAGIC) {
+      throw new IOException("Not a landmark trace");
+    }
+    int version = data.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported landmark trace version " + version);
+    }
+    int landmarkCount = data.readInt();
+    if (landmarkCount != LandmarkType.COUNT) {
+      throw new IOException("Unexpected landmark count " + landmarkCount + " in landmark trace");
+    }
+
+    LandmarkTrace trace = new LandmarkTrace();
+    float[] landmarks = new float[LANDMARK_BUFFER_SIZE];
+    float[] likelihoods = new float[LandmarkType.COUNT];
+    while (true) {
+      long timestampMs;
+      try {
+        timestampMs = data.readLong();
+      } catch (EOFException e) {
+        return trace;
+      }
+      try {
+        if ((data.readByte() & FLAG_POSE_FOUND) == 0) {
+          trace.add(timestampMs, null, null);
+          continue;
+        }
+        for (int i = 0; i < LandmarkType.COUNT; i++) {
+          landmarks[i * NUM_DIMS] = data.readFloat();
+          landmarks[i * NUM_DIMS + 1] = data.readFloat();
+          landmarks[i * NUM_DIMS + 2] = data.readFloat();
+          likelihoods[i] = data.readFloat();
+        }
+      } catch (EOFException e) {
+        throw new IOException("Truncated landmark trace at frame " + trace.size(), e);
+      }
+      trace.add(timestampMs, landmarks, likelihoods);
+    }
+  }
+
+  /** Writes the whole trace. Does not close {@code out}. */
+  public void write(OutputStream out) throws IOException {
+    Writer writer = new Writer(out);
+    float[] frameLandmarks = new float[LANDMARK_BUFFER_SIZE];
+    float[] frameLikelihoods = new float[LandmarkType.COUNT];
+    for (int frame = 0; frame < size; frame++) {
+      if (posesFound[frame]) {
+        copyLandmarks(frame, frameLandmarks);
+        System.arraycopy(
+            likelihoods, frame * LandmarkType.COUNT, frameLikelihoods, 0, LandmarkType.COUNT);
+        writer.write(timestampsMs[frame], frameLandmarks, frameLikelihoods);
+      } else {
+        writer.write(timestampsMs[frame], null, null);
+      }
+    }
+    writer.flush();
+  }
+
+  /**
+   * Streams frames to a trace as they are detected, without keeping them in memory. Buffered, so
+   * writing a frame does not block on storage. Not thread-safe.
+   */
+  public static final class Writer implements Closeable {
+    private final DataOutputStream out;
+
+    /** Writes the header to {@code out}, which is closed with this writer. */
+    public Writer(OutputStream out) throws IOException {
+      this.out = new DataOutputStream(new BufferedOutputStream(out));
+      this.out.writeInt(MAGIC);
+      this.out.writeInt(VERSION);
+      this.out.writeInt(LandmarkType.COUNT);
+    }
+
+    /** Writes a frame, see {@link LandmarkTrace#add}. */
+    public void write(long timestampMs, float[] landmarks, float[] likelihoods)
+        throws IOException {
+      out.writeLong(timestampMs);
+      if (landmarks == null) {
+        out.writeByte(0);
+        return;
+      }
+      out.writeByte(FLAG_POSE_FOUND);
+      for (int i = 0; i < LandmarkType.COUNT; i++) {
+        out.writeFloat(landmarks[i * NUM_DIMS]);
+        out.writeFloat(landmarks[i * NUM_DIMS + 1]);
+        out.writeFloat(landmarks[i * NUM_DIMS + 2]);
+        out.writeFloat(likelihoods[i]);
+      }
+    }
+
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.NUM_DIMS;
+
+/**
+ * Decides per frame whether a pose moved enough since the last classified frame to be classified
+ * again, so that holding still, e.g. resting between sets, skips the K-Nearest Neighbors search.
+ *
+ * <p>Motion is the largest 2D displacement of the landmarks the pose embedding is built from,
+ * measured relative to the hips center and in torso lengths. Like the embedding, it therefore
+ * ignores the whole body moving in the frame or towards the camera, which would not change the
+ * classification either. Comparing to the last classified frame rather than the previous one keeps
+ * slow drift from going unnoticed, and after {@code maxSkippedFrames} skipped frames in a row the
+ * next frame is classified regardless.
+ *
+ * <p>Not thread-safe.
+ */
+public class MotionGate {
+  /** Default largest landmark move, in torso lengths, that still counts as holding still. */
+  public static final float DEFAULT_THRESHOLD = 0.05f;
+  /** Default number of frames in a row that may reuse one classification, 1 s at 30 fps. */
+  public static final int DEFAULT_MAX_SKIPPED_FRAMES = 30;
+
+  // Landmarks the pose embedding is built from.
+  private static final int[] KEY_LANDMARKS = {
+    LandmarkType.LEFT_SHOULDER, LandmarkType.RIGHT_SHOULDER,
+    LandmarkType.LEFT_ELBOW, LandmarkType.RIGHT_ELBOW,
+    LandmarkType.LEFT_WRIST, LandmarkType.RIGHT_WRIST,
+    LandmarkType.LEFT_HIP, LandmarkType.RIGHT_HIP,
+    LandmarkType.LEFT_KNEE, LandmarkType.RIGHT_KNEE,
+    LandmarkType.LEFT_ANKLE, LandmarkType.RIGHT_ANKLE
+  };
+
+  private final float threshold;
+  private final int maxSkippedFrames;
+
+  // Normalized x and y of the key landmarks of the last classified frame, and the current one.
+  private final float[] reference = new float[KEY_LANDMARKS.length * 2];
+  private final float[] current = new float[KEY_LANDMARKS.length * 2];
+  private boolean hasReference;
+  private int skippedInRow;
+  private float lastMotion;
+
+  private long framesSeen;
+  private long framesSkipped;
+
+  public MotionGate() {
+    this(DEFAULT_THRESHOLD, DEFAULT_MAX_SKIPPED_FRAMES);
+  }
+
+  /**
+   * @param threshold largest landmark move, in torso lengths, that still counts as holding still.
+   *     0 only skips frames whose key landmarks did not move at all.
+   * @param maxSkippedFrames number of frames in a row that may reuse one classification.
+   */
+  public MotionGate(float threshold, int maxSkippedFrames) {
+    if (threshold < 0 || maxSkippedFrames < 0) {
+      throw new IllegalArgumentException(
+          "Invalid motion gate: threshold " + threshold + ", max skipped " + maxSkippedFrames);
+    }
+    this.threshold = threshold;
+    this.maxSkippedFrames = maxSkippedFrames;
+  }
+
+  /**
+   * Returns whether the pose in {@code landmarks} has to be classified, or whether the last
+   * classification still holds. A frame that is classified becomes the new reference.
+   *
+   * @param landmarks landmark buffer, see {@link PoseEmbedding#LANDMARK_BUFFER_SIZE}.
+   */
+  public boolean shouldClassify(float[] landmarks) {
+    framesSeen++;
+    boolean normalized = normalize(landmarks, current);
+    lastMotion = normalized && hasReference ? maxMove() : Float.POSITIVE_INFINITY;
+    if (lastMotion > threshold || skippedInRow >= maxSkippedFrames) {
+      System.arraycopy(current, 0, reference, 0, current.length);
+      hasReference = normalized;
+      skippedInRow = 0;
+      return true;
+    }
+    skippedInRow++;
+    framesSkipped++;
+    return false;
+  }
+
+  /** Forgets the reference frame, so the next frame is classified. Call when a pose is lost. */
+  public void reset() {
+    hasReference = false;
+    skippedInRow = 0;
+  }
+
+  public float getThreshold() {
+    return threshold;
+  }
+
+  public int getMaxSkippedFrames() {
+    return maxSkippedFrames;
+  }
+
+  /**
+   * Returns the largest landmark move of the last frame since the reference frame, in torso
+   * lengths; infinite if there was no reference or the torso could not be measured.
+   */
+  public float getLastMotion() {
+    return lastMotion;
+  }
+
+  /** Returns how many frames in a row, up to the last one, reused a classification. */
+  public int getSkippedInRow() {
+    return skippedInRow;
+  }
+
+  /** Returns how many frames were passed to {@link #shouldClassify} since the last stats reset. */
+  public long getFramesSeen() {
+    return framesSeen;
+  }
+
+  /** Returns how many of {@link #getFramesSeen()} reused the last classification. */
+  public long getFramesSkipped() {
+    return framesSkipped;
+  }
+
+  /** Returns the fraction of frames that reused the last classification, 0 before any frame. */
+  public double getSkipRate() {
+    return framesSeen == 0 ? 0 : (double) framesSkipped / framesSeen;
+  }
+
+  public void resetStats() {
+    framesSeen = 0;
+    framesSkipped = 0;
+  }
+
+  private float maxMove() {
+    float max = 0;
+    for (int i = 0; i < current.length; i++) {
+      max = Math.max(max, Math.abs(current[i] - reference[i]));
+    }
+    return max;
+  }
+
+  /** Writes the key landmarks relative to the hips center, in torso lengths. */
+  private static boolean normalize(float[] landmarks, float[] target) {
+    float hipsX = average(landmarks, LandmarkType.LEFT_HIP, LandmarkType.RIGHT_HIP, 0);
+    float hipsY = average(landmarks, LandmarkType.LEFT_HIP, LandmarkType.RIGHT_HIP, 1);
+    float shouldersX =
+        average(landmarks, LandmarkType.LEFT_SHOULDER, LandmarkType.RIGHT_SHOULDER, 0);
+    float shouldersY =
+        average(landmarks, LandmarkType.LEFT_SHOULDER, LandmarkType.RIGHT_SHOULDER, 1);
+    float torsoSize = (float) Math.hypot(shouldersX - hipsX, shouldersY - hipsY);
+    // Also false for NaN.
+    if (!(torsoSize > 0)) {
+      return false;
+    }
+    float scale = 1 / torsoSize;
+    for (int i = 0; i < KEY_LANDMARKS.length; i++) {
+      target[i * 2] = (landmarks[KEY_LANDMARKS[i] * NUM_DIMS] - hipsX) * scale;
+      target[i * 2 + 1] = (landmarks[KEY_LANDMARKS[i] * NUM_DIMS + 1] - hipsY) * scale;
+    }
+    return true;
+  }
+
+  private static float average(float[] landmarks, int a, int b, int dim) {
+    return (landmarks[a * NUM_DIMS + dim] + landmarks[b * NUM_DIMS + dim]) * 0.5f;
+  }
+}
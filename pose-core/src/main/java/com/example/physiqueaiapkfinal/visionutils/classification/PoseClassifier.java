@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbedding.getPoseEmbedding;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.NUM_DIMS;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.STRIDE;
+import static java.lang.Math.min;
+
+import com.example.physiqueaiapkfinal.visionutils.classification.PoseClassifierEngine.SearchMode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classifies poses based on given {@link PoseSample}s.
+ *
+ * <p>Inspired by K-Nearest Neighbors Algorithm with outlier filtering.
+ * https://en.wikipedia.org/wiki/K-nearest_neighbors_algorithm
+ *
+ * <p>The search itself runs on a {@link PoseClassifierEngine} over a flat
+ * {@link PoseEmbeddingStore}; this class adapts landmark lists and buffers to it. Not thread-safe.
+ */
+public class PoseClassifier {
+  static final int MAX_DISTANCE_TOP_K = 30;
+  static final int MEAN_DISTANCE_TOP_K = 10;
+  // Note Z has a lower weight as it is generally less accurate than X & Y.
+  private static final Point3D AXES_WEIGHTS = Point3D.from(1, 1, 0.2f);
+
+  private final int maxDistanceTopK;
+  private final int meanDistanceTopK;
+  private final PoseClassifierEngine engine;
+
+  // Per-frame scratch buffers.
+  private final float[] landmarks = new float[PoseEmbedding.LANDMARK_BUFFER_SIZE];
+  private final float[] embedding = new float[STRIDE];
+  private final float[] flippedEmbedding = new float[STRIDE];
+  private final int[] classVotes;
+
+  public PoseClassifier(List<PoseSample> poseSamples) {
+    this(poseSamples, MAX_DISTANCE_TOP_K, MEAN_DISTANCE_TOP_K, AXES_WEIGHTS);
+  }
+
+  public PoseClassifier(List<PoseSample> poseSamples, int maxDistanceTopK,
+                        int meanDistanceTopK, Point3D axesWeights) {
+    this.maxDistanceTopK = maxDistanceTopK;
+    this.meanDistanceTopK = meanDistanceTopK;
+    this.engine = new PoseClassifierEngine(
+        buildStore(poseSamples, axesWeights), maxDistanceTopK, meanDistanceTopK);
+    this.classVotes = new int[engine.getStore().getNumClasses()];
+  }
+
+  /** Creates a classifier over an already built store, e.g. one read by {@link PoseSampleIndex}. */
+  public PoseClassifier(PoseEmbeddingStore store) {
+    this(store, SearchMode.PRUNED);
+  }
+
+  /**
+   * Creates a classifier over an already built store with the given search backend. {@link
+   * SearchMode#VP_TREE} pays for a tree build here and pays off with large sample sets.
+   */
+  public PoseClassifier(PoseEmbeddingStore store, SearchMode searchMode) {
+    this.maxDistanceTopK = MAX_DISTANCE_TOP_K;
+    this.meanDistanceTopK = MEAN_DISTANCE_TOP_K;
+    this.engine = new PoseClassifierEngine(store, maxDistanceTopK, meanDistanceTopK, searchMode);
+    this.classVotes = new int[store.getNumClasses()];
+  }
+
+  /** Returns the x, y and z weights used by the default constructors. */
+  static float[] defaultAxesWeights() {
+    return new float[] {AXES_WEIGHTS.getX(), AXES_WEIGHTS.getY(), AXES_WEIGHTS.getZ()};
+  }
+
+  private static PoseEmbeddingStore buildStore(List<PoseSample> poseSamples, Point3D axesWeights) {
+    float[] embeddings = new float[poseSamples.size() * STRIDE];
+    int[] classIds = new int[poseSamples.size()];
+    Map<String, Integer> classIdsByName = new HashMap<>();
+    List<String> classNames = new ArrayList<>();
+    for (int i = 0; i < poseSamples.size(); i++) {
+      PoseSample poseSample = poseSamples.get(i);
+      Integer classId = classIdsByName.get(poseSample.getClassName());
+      if (classId == null) {
+        classId = classNames.size();
+        classIdsByName.put(poseSample.getClassName(), classId);
+        classNames.add(poseSample.getClassName());
+      }
+      classIds[i] = classId;
+      copyEmbedding(poseSample.getEmbedding(), embeddings, i * STRIDE);
+    }
+    return new PoseEmbeddingStore(
+        embeddings,
+        classIds,
+        classNames.toArray(new String[0]),
+        new float[] {axesWeights.getX(), axesWeights.getY(), axesWeights.getZ()});
+  }
+
+  private static void copyEmbedding(List<Point3D> embedding, float[] target, int offset) {
+    for (int i = 0; i < embedding.size(); i++) {
+      Point3D point = embedding.get(i);
+      target[offset + i * NUM_DIMS] = point.getX();
+      target[offset + i * NUM_DIMS + 1] = point.getY();
+      target[offset + i * NUM_DIMS + 2] = point.getZ();
+    }
+  }
+
+  /**
+   * Returns the max range of confidence values.
+   *
+   * <p><Since we calculate confidence by counting {@link PoseSample}s that survived
+   * outlier-filtering by maxDistanceTopK and meanDistanceTopK, this range is the minimum of two.
+   */
+  public int confidenceRange() {
+    return min(maxDistanceTopK, meanDistanceTopK);
+  }
+
+  public ClassificationResult classify(List<Point3D> landmarks) {
+    ClassificationResult result = new ClassificationResult(getClassDictionary());
+    // Return early if no landmarks detected.
+    if (!landmarks.isEmpty()) {
+      PoseEmbedding.copyLandmarks(landmarks, this.landmarks);
+      classifyLandmarks(this.landmarks, result);
+    }
+    return result;
+  }
+
+  /**
+   * Classifies a landmark buffer into a caller owned result, so it can be reused from frame to
+   * frame. The result has to be over {@link #getClassDictionary()}; it is cleared first.
+   *
+   * @param landmarks landmark buffer, see {@link PoseEmbedding#LANDMARK_BUFFER_SIZE}.
+   */
+  public void classify(float[] landmarks, ClassificationResult result) {
+    if (result.getDictionary() != getClassDictionary()) {
+      throw new IllegalArgumentException("Result is not over the classifier's class dictionary");
+    }
+    result.clear();
+    classifyLandmarks(landmarks, result);
+  }
+
+  /** Returns the dictionary of the class ids in the results of this classifier. */
+  public ClassDictionary getClassDictionary() {
+    return engine.getStore().getClassDictionary();
+  }
+
+  private void classifyLandmarks(float[] landmarks, ClassificationResult result) {
+    // The mirrored embedding makes the classification horizontal (mirror) invariant.
+    getPoseEmbedding(landmarks, embedding, flippedEmbedding);
+    engine.classify(embedding, flippedEmbedding, classVotes);
+
+    for (int classId = 0; classId < classVotes.length; classId++) {
+      if (classVotes[classId] > 0) {
+        result.putClassConfidence(classId, classVotes[classId]);
+      }
+    }
+  }
+}
@@ -0,0 +1,277 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.EMBEDDING_SIZE;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.NUM_DIMS;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.STRIDE;
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Allocation-free K-Nearest Neighbors search over a {@link PoseEmbeddingStore}.
+ *
+ * <p>Implements the same two stage search as {@link PoseClassifier}: top-K samples by max distance
+ * to filter outliers, then top-K of those by mean distance. All working memory is allocated in the
+ * constructor, so {@link #classify(float[], float[], int[])} does not allocate. An instance is
+ * therefore not thread-safe; use one engine per classification thread.
+ *
+ * <p>Over a quantized store the same search runs on the quantized values, see {@link
+ * QuantizedEmbeddings}. Distances then carry the quantization error, so results may differ from the
+ * float store's where samples are nearly tied.
+ */
+public class PoseClassifierEngine {
+  /** How the max distance stage visits the samples. */
+  public enum SearchMode {
+    /** Computes the full max distance of every sample. */
+    EXHAUSTIVE,
+    /**
+     * Stops evaluating a sample once both its original and flipped partial max distances reach the
+     * current worst of the top-K. Gives bit-identical results to {@link #EXHAUSTIVE}.
+     */
+    PRUNED,
+    /**
+     * Searches a {@link VantagePointTree} built once at construction, skipping whole groups of
+     * samples. Gives bit-identical results to {@link #EXHAUSTIVE} and scales sublinearly with the
+     * number of samples, at the cost of a tree build and some per-node overhead. Needs a {@link
+     * PoseEmbeddingStore.Precision#FLOAT32} store.
+     */
+    VP_TREE
+  }
+
+  private final PoseEmbeddingStore store;
+  private final SearchMode searchMode;
+  // Exactly one of samples and quantized is set.
+  private final float[] samples;
+  private final QuantizedEmbeddings quantized;
+  // Axis weight for every stored coordinate position, following the store's coordinate order.
+  private final float[] coordinateWeights = new float[STRIDE];
+  private final int[] coordinateOrder;
+  // Only built in {@link SearchMode#VP_TREE}.
+  private final VantagePointTree tree;
+
+  // Weighted query embeddings, reused across frames.
+  private final float[] query = new float[STRIDE];
+  private final float[] flippedQuery = new float[STRIDE];
+  // The queries moved into the stored space of a quantized store.
+  private final float[] encodedQuery = new float[STRIDE];
+  private final float[] encodedFlippedQuery = new float[STRIDE];
+
+  private final TopKSelector maxDistanceTopK;
+  private final TopKSelector meanDistanceTopK;
+
+  // Max distance stage statistics, see {@link #getFullyEvaluatedCount()}.
+  private long fullyEvaluatedCount;
+  private long prunedCount;
+
+  public PoseClassifierEngine(
+      PoseEmbeddingStore store, int maxDistanceTopK, int meanDistanceTopK) {
+    this(store, maxDistanceTopK, meanDistanceTopK, SearchMode.PRUNED);
+  }
+
+  /** @throws IllegalArgumentException if {@code searchMode} does not support the store. */
+  public PoseClassifierEngine(
+      PoseEmbeddingStore store, int maxDistanceTopK, int meanDistanceTopK, SearchMode searchMode) {
+    this.store = store;
+    this.searchMode = searchMode;
+    this.samples = store.getWeightedEmbeddings();
+    this.quantized = store.getQuantizedEmbeddings();
+    this.coordinateOrder = store.getCoordinateOrder();
+    float[] axesWeights = store.getAxesWeights();
+    for (int i = 0; i < STRIDE; i++) {
+      coordinateWeights[i] = axesWeights[coordinateOrder[i] % NUM_DIMS];
+    }
+    this.maxDistanceTopK = new TopKSelector(maxDistanceTopK);
+    this.meanDistanceTopK = new TopKSelector(meanDistanceTopK);
+    tree = searchMode == SearchMode.VP_TREE ? new VantagePointTree(store) : null;
+  }
+
+  public PoseEmbeddingStore getStore() {
+    return store;
+  }
+
+  public SearchMode getSearchMode() {
+    return searchMode;
+  }
+
+  /**
+   * Returns how many samples had their max distance computed over every coordinate. In {@link
+   * SearchMode#VP_TREE} a sample compared to the original and the flipped query counts once.
+   */
+  public long getFullyEvaluatedCount() {
+    return fullyEvaluatedCount;
+  }
+
+  /**
+   * Returns how many samples were abandoned early or skipped by the tree. Always 0 in {@link
+   * SearchMode#EXHAUSTIVE}.
+   */
+  public long getPrunedCount() {
+    return prunedCount;
+  }
+
+  public void resetSearchStats() {
+    fullyEvaluatedCount = 0;
+    prunedCount = 0;
+  }
+
+  /**
+   * Classifies a pose given its embedding and the embedding of its horizontal mirror.
+   *
+   * @param embedding unweighted pose embedding, {@link PoseEmbeddingStore#STRIDE} floats.
+   * @param flippedEmbedding unweighted embedding of the mirrored pose.
+   * @param classVotes receives, per class id, how many of the final top-K samples belong to that
+   *     class. Must hold at least {@link PoseEmbeddingStore#getNumClasses()} entries.
+   * @return number of samples that survived both stages.
+   */
+  public int classify(float[] embedding, float[] flippedEmbedding, int[] classVotes) {
+    for (int i = 0; i < store.getNumClasses(); i++) {
+      classVotes[i] = 0;
+    }
+    loadWeighted(embedding, query);
+    loadWeighted(flippedEmbedding, flippedQuery);
+    if (quantized != null) {
+      quantized.encodeQuery(query, encodedQuery);
+      quantized.encodeQuery(flippedQuery, encodedFlippedQuery);
+    }
+
+    // Classification is done in two stages:
+    //  * First we pick top-K samples by MAX distance. It allows to remove samples that are almost
+    //    the same as given pose, but maybe has few joints bent in the other direction.
+    //  * Then we pick top-K samples by MEAN distance. After outliers are removed, we pick samples
+    //    that are closest by average.
+    maxDistanceTopK.clear();
+    switch (searchMode) {
+      case PRUNED:
+        if (quantized != null) {
+          searchQuantized(true);
+          break;
+        }
+        searchPruned();
+        break;
+      case VP_TREE:
+        searchTree();
+        break;
+      default:
+        if (quantized != null) {
+          searchQuantized(false);
+          break;
+        }
+        searchExhaustive();
+        break;
+    }
+
+    meanDistanceTopK.clear();
+    for (int k = 0; k < maxDistanceTopK.size(); k++) {
+      int sample = maxDistanceTopK.getId(k);
+      float sum;
+      if (quantized != null) {
+        sum = quantized.sumDistance(sample, encodedQuery, encodedFlippedQuery);
+      } else {
+        int offset = sample * STRIDE;
+        float originalSum = 0;
+        float flippedSum = 0;
+        for (int i = 0; i < STRIDE; i++) {
+          float value = samples[offset + i];
+          originalSum += abs(value - query[i]);
+          flippedSum += abs(value - flippedQuery[i]);
+        }
+        sum = min(originalSum, flippedSum);
+      }
+      meanDistanceTopK.offer(sample, sum / (EMBEDDING_SIZE * 2));
+    }
+    meanDistanceTopK.sort();
+
+    int meanCount = meanDistanceTopK.size();
+    for (int k = 0; k < meanCount; k++) {
+      classVotes[store.getClassId(meanDistanceTopK.getId(k))]++;
+    }
+    return meanCount;
+  }
+
+  private void searchExhaustive() {
+    int numSamples = store.getNumSamples();
+    for (int sample = 0; sample < numSamples; sample++) {
+      int offset = sample * STRIDE;
+      float originalMax = 0;
+      float flippedMax = 0;
+      for (int i = 0; i < STRIDE; i++) {
+        float value = samples[offset + i];
+        originalMax = max(originalMax, abs(value - query[i]));
+        flippedMax = max(flippedMax, abs(value - flippedQuery[i]));
+      }
+      maxDistanceTopK.offer(sample, min(originalMax, flippedMax));
+    }
+    fullyEvaluatedCount += numSamples;
+  }
+
+  private void searchPruned() {
+    int numSamples = store.getNumSamples();
+    for (int sample = 0; sample < numSamples; sample++) {
+      // Samples are visited by ascending id, so a sample is only kept if strictly closer than the
+      // threshold and once both partial maxima reach it the sample can be skipped.
+      float threshold = maxDistanceTopK.threshold();
+      int offset = sample * STRIDE;
+      float originalMax = 0;
+      float flippedMax = 0;
+      int i = 0;
+      // Coordinates are sorted by decreasing variance, so the bound is usually hit early.
+      for (; i < STRIDE; i += NUM_DIMS) {
+        for (int j = i; j < i + NUM_DIMS; j++) {
+          float value = samples[offset + j];
+          originalMax = max(originalMax, abs(value - query[j]));
+          flippedMax = max(flippedMax, abs(value - flippedQuery[j]));
+        }
+        if (originalMax >= threshold && flippedMax >= threshold) {
+          break;
+        }
+      }
+      if (i < STRIDE) {
+        prunedCount++;
+        continue;
+      }
+      fullyEvaluatedCount++;
+      maxDistanceTopK.offer(sample, min(originalMax, flippedMax));
+    }
+  }
+
+  /** Scans a quantized store, giving up on samples early if {@code pruned}. */
+  private void searchQuantized(boolean pruned) {
+    int numSamples = store.getNumSamples();
+    for (int sample = 0; sample < numSamples; sample++) {
+      float threshold = pruned ? maxDistanceTopK.threshold() : Float.POSITIVE_INFINITY;
+      float distance =
+          quantized.maxDistance(sample, encodedQuery, encodedFlippedQuery, threshold);
+      if (distance == Float.POSITIVE_INFINITY) {
+        prunedCount++;
+        continue;
+      }
+      fullyEvaluatedCount++;
+      maxDistanceTopK.offer(sample, distance);
+    }
+  }
+
+  private void searchTree() {
+    long evaluatedBefore = tree.getEvaluatedCount();
+    tree.search(query, flippedQuery, maxDistanceTopK);
+    long evaluated = (tree.getEvaluatedCount() - evaluatedBefore) / 2;
+    fullyEvaluatedCount += evaluated;
+    prunedCount += store.getNumSamples() - evaluated;
+  }
+
+  /** Weights {@code embedding} and rearranges it into the store's coordinate order. */
+  private void loadWeighted(float[] embedding, float[] target) {
+    for (int i = 0; i < STRIDE; i++) {
+      target[i] = embedding[coordinateOrder[i]] * coordinateWeights[i];
+    }
+  }
+
+  /** Returns the sample index of the {@code k}-th closest result of the last classification. */
+  int getNeighborId(int k) {
+    return meanDistanceTopK.getId(k);
+  }
+
+  /** Returns the mean distance of the {@code k}-th closest result of the last classification. */
+  float getNeighborDistance(int k) {
+    return meanDistanceTopK.getDistance(k);
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.EMBEDDING_SIZE;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.NUM_DIMS;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.STRIDE;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates embedding for given list of Pose landmarks.
+ *
+ * <p>The embedding is computed in one pass over a flat landmark buffer and written to caller
+ * supplied {@code float[]}s, {@link PoseEmbeddingStore#STRIDE} floats each, without allocating.
+ * Only the landmarks the embedding uses are normalized; the others only contribute their 2D extent
+ * to the pose size.
+ */
+public class PoseEmbedding {
+  // Multiplier to apply to the torso to get minimal body size. Picked this by experimentation.
+  private static final float TORSO_MULTIPLIER = 2.5f;
+
+  /** Number of landmarks per pose. */
+  public static final int NUM_LANDMARKS = LandmarkType.COUNT;
+  /** Size of a landmark buffer: x, y and z of every landmark, indexed by landmark type. */
+  public static final int LANDMARK_BUFFER_SIZE = NUM_LANDMARKS * NUM_DIMS;
+
+  // We use several pairwise 3D distances to form pose embedding. These were selected
+  // based on experimentation for best results with our default pose classes as captued in the
+  // pose samples csv. Feel free to play with this and add or remove for your use-cases.
+  // Every pair is (from, to) and yields to - from. The first embedding point, hips center to
+  // shoulders center, is not listed here.
+  private static final int[] EMBEDDING_PAIRS = {
+    // One joint.
+    LandmarkType.LEFT_SHOULDER, LandmarkType.LEFT_ELBOW,
+    LandmarkType.RIGHT_SHOULDER, LandmarkType.RIGHT_ELBOW,
+    LandmarkType.LEFT_ELBOW, LandmarkType.LEFT_WRIST,
+    LandmarkType.RIGHT_ELBOW, LandmarkType.RIGHT_WRIST,
+    LandmarkType.LEFT_HIP, LandmarkType.LEFT_KNEE,
+    LandmarkType.RIGHT_HIP, LandmarkType.RIGHT_KNEE,
+    LandmarkType.LEFT_KNEE, LandmarkType.LEFT_ANKLE,
+    LandmarkType.RIGHT_KNEE, LandmarkType.RIGHT_ANKLE,
+    // Two joints.
+    LandmarkType.LEFT_SHOULDER, LandmarkType.LEFT_WRIST,
+    LandmarkType.RIGHT_SHOULDER, LandmarkType.RIGHT_WRIST,
+    LandmarkType.LEFT_HIP, LandmarkType.LEFT_ANKLE,
+    LandmarkType.RIGHT_HIP, LandmarkType.RIGHT_ANKLE,
+    // Four joints.
+    LandmarkType.LEFT_HIP, LandmarkType.LEFT_WRIST,
+    LandmarkType.RIGHT_HIP, LandmarkType.RIGHT_WRIST,
+    // Five joints.
+    LandmarkType.LEFT_SHOULDER, LandmarkType.LEFT_ANKLE,
+    LandmarkType.RIGHT_SHOULDER, LandmarkType.RIGHT_ANKLE,
+    LandmarkType.LEFT_HIP, LandmarkType.LEFT_WRIST,
+    LandmarkType.RIGHT_HIP, LandmarkType.RIGHT_WRIST,
+    // Cross body.
+    LandmarkType.LEFT_ELBOW, LandmarkType.RIGHT_ELBOW,
+    LandmarkType.LEFT_KNEE, LandmarkType.RIGHT_KNEE,
+    LandmarkType.LEFT_WRIST, LandmarkType.RIGHT_WRIST,
+    LandmarkType.LEFT_ANKLE, LandmarkType.RIGHT_ANKLE
+  };
+
+  public static List<Point3D> getPoseEmbedding(List<Point3D> landmarks) {
+    float[] buffer = new float[LANDMARK_BUFFER_SIZE];
+    copyLandmarks(landmarks, buffer);
+    float[] embedding = new float[STRIDE];
+    getPoseEmbedding(buffer, embedding, new float[STRIDE]);
+    List<Point3D> points = new ArrayList<>(EMBEDDING_SIZE);
+    for (int i = 0; i < STRIDE; i += NUM_DIMS) {
+      points.add(Point3D.from(embedding[i], embedding[i + 1], embedding[i + 2]));
+    }
+    return points;
+  }
+
+  /** Copies landmark positions, indexed by landmark type, into a landmark buffer. */
+  public static void copyLandmarks(List<Point3D> positions, float[] landmarks) {
+    for (int i = 0; i < NUM_LANDMARKS; i++) {
+      Point3D position = positions.get(i);
+      landmarks[i * NUM_DIMS] = position.getX();
+      landmarks[i * NUM_DIMS + 1] = position.getY();
+      landmarks[i * NUM_DIMS + 2] = position.getZ();
+    }
+  }
+
+  /**
+   * Writes the embedding of a pose and of its horizontal mirror without allocating.
+   *
+   * <p>Mirroring negates every x coordinate. Normalization commutes with that negation, so the
+   * mirrored embedding is the original one with its x coordinates negated, and both are filled in
+   * the same pass.
+   *
+   * @param landmarks landmark buffer, see {@link #LANDMARK_BUFFER_SIZE}.
+   * @param embedding receives the embedding, {@link PoseEmbeddingStore#STRIDE} floats.
+   * @param flippedEmbedding receives the embedding of the mirrored pose.
+   */
+  public static void getPoseEmbedding(
+      float[] landmarks, float[] embedding, float[] flippedEmbedding) {
+    // Normalize translation.
+    float centerX = average(landmarks, LandmarkType.LEFT_HIP, LandmarkType.RIGHT_HIP, 0);
+    float centerY = average(landmarks, LandmarkType.LEFT_HIP, LandmarkType.RIGHT_HIP, 1);
+    float centerZ = average(landmarks, LandmarkType.LEFT_HIP, LandmarkType.RIGHT_HIP, 2);
+
+    // Normalize scale. Multiplication by 100 is not required, but makes it easier to debug.
+    float scale = 1 / getPoseSize(landmarks, centerX, centerY);
+
+    // One joint, hips center to shoulders center.
+    for (int dim = 0; dim < NUM_DIMS; dim++) {
+      float center = dim == 0 ? centerX : dim == 1 ? centerY : centerZ;
+      float hips = (normalized(landmarks, LandmarkType.LEFT_HIP, dim, center, scale)
+          + normalized(landmarks, LandmarkType.RIGHT_HIP, dim, center, scale)) * 0.5f;
+      float shoulders = (normalized(landmarks, LandmarkType.LEFT_SHOULDER, dim, center, scale)
+          + normalized(landmarks, LandmarkType.RIGHT_SHOULDER, dim, center, scale)) * 0.5f;
+      embedding[dim] = shoulders - hips;
+    }
+    int offset = NUM_DIMS;
+    for (int pair = 0; pair < EMBEDDING_PAIRS.length; pair += 2, offset += NUM_DIMS) {
+      int from = EMBEDDING_PAIRS[pair];
+      int to = EMBEDDING_PAIRS[pair + 1];
+      embedding[offset] = normalized(landmarks, to, 0, centerX, scale)
+          - normalized(landmarks, from, 0, centerX, scale);
+      embedding[offset + 1] = normalized(landmarks, to, 1, centerY, scale)
+          - normalized(landmarks, from, 1, centerY, scale);
+      embedding[offset + 2] = normalized(landmarks, to, 2, centerZ, scale)
+          - normalized(landmarks, from, 2, centerZ, scale);
+    }
+
+    // We do flipping on X-axis so we are horizontal (mirror) invariant.
+    for (int i = 0; i < STRIDE; i += NUM_DIMS) {
+      flippedEmbedding[i] = -embedding[i];
+      flippedEmbedding[i + 1] = embedding[i + 1];
+      flippedEmbedding[i + 2] = embedding[i + 2];
+    }
+  }
+
+  // Note: This approach uses only 2D landmarks to compute pose size as using Z wasn't helpful
+  // in our experimentation but you're welcome to tweak.
+  private static float getPoseSize(float[] landmarks, float centerX, float centerY) {
+    float hipsX = (translated(landmarks, LandmarkType.LEFT_HIP, 0, centerX)
+        + translated(landmarks, LandmarkType.RIGHT_HIP, 0, centerX)) * 0.5f;
+    float hipsY = (translated(landmarks, LandmarkType.LEFT_HIP, 1, centerY)
+        + translated(landmarks, LandmarkType.RIGHT_HIP, 1, centerY)) * 0.5f;
+    float shouldersX = (translated(landmarks, LandmarkType.LEFT_SHOULDER, 0, centerX)
+        + translated(landmarks, LandmarkType.RIGHT_SHOULDER, 0, centerX)) * 0.5f;
+    float shouldersY = (translated(landmarks, LandmarkType.LEFT_SHOULDER, 1, centerY)
+        + translated(landmarks, LandmarkType.RIGHT_SHOULDER, 1, centerY)) * 0.5f;
+
+    float torsoSize = (float) Math.hypot(shouldersX - hipsX, shouldersY - hipsY);
+
+    float maxDistance = torsoSize * TORSO_MULTIPLIER;
+    // torsoSize * TORSO_MULTIPLIER is the floor we want based on experimentation but actual size
+    // can be bigger for a given pose depending on extension of limbs etc so we calculate that.
+    for (int i = 0; i < NUM_LANDMARKS; i++) {
+      float distance = (float) Math.hypot(
+          translated(landmarks, i, 0, centerX) - hipsX,
+          translated(landmarks, i, 1, centerY) - hipsY);
+      if (distance > maxDistance) {
+        maxDistance = distance;
+      }
+    }
+    return maxDistance;
+  }
+
+  private static float average(float[] landmarks, int a, int b, int dim) {
+    return (landmarks[a * NUM_DIMS + dim] + landmarks[b * NUM_DIMS + dim]) * 0.5f;
+  }
+
+  private static float translated(float[] landmarks, int landmark, int dim, float center) {
+    return landmarks[landmark * NUM_DIMS + dim] - center;
+  }
+
+  // Rounds exactly like translating, scaling and multiplying by 100 as separate passes did.
+  private static float normalized(
+      float[] landmarks, int landmark, int dim, float center, float scale) {
+    return translated(landmarks, landmark, dim, center) * scale * 100;
+  }
+
+  private PoseEmbedding() {}
+}
@@ -0,0 +1,219 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import java.util.Arrays;
+
+/**
+ * Immutable, flat store of pose sample embeddings.
+ *
+ * <p>All sample embeddings live in one contiguous {@code float[]}, {@link #STRIDE} floats per
+ * sample. Axis weights are multiplied in once at construction so the classifier can compare
+ * against them without any per-frame scaling of the samples.
+ *
+ * <p>Within a sample the coordinates are not kept in embedding order ({@code x0, y0, z0, x1, ...})
+ * but sorted by decreasing variance across all samples, see {@link #getCoordinateOrder()}. The
+ * coordinates that tell samples apart the most come first, which lets a bounded search give up on
+ * a sample after looking at only a few of them.
+ *
+ * <p>{@link #quantize} derives a store keeping the values in 16 or 8 bits instead, for large sample
+ * sets on low memory devices. Searching it scans a half or a quarter of the memory, at the cost of
+ * a small quantization error in distances.
+ */
+public class PoseEmbeddingStore {
+  /** Number of 3D points in a pose embedding, see {@link PoseEmbedding}. */
+  public static final int EMBEDDING_SIZE = 23;
+  public static final int NUM_DIMS = 3;
+  /** Number of floats used by a single sample embedding. */
+  public static final int STRIDE = EMBEDDING_SIZE * NUM_DIMS;
+
+  /** How sample values are stored. */
+  public enum Precision {
+    /** 32 bit floats, exact. */
+    FLOAT32,
+    /** Half-precision floats, normalized per coordinate. */
+    FP16,
+    /** Bytes, linear per coordinate between its smallest and largest value. */
+    INT8
+  }
+
+  // Exactly one of embeddings and quantized is set.
+  private final float[] embeddings;
+  private final QuantizedEmbeddings quantized;
+  private final int[] classIds;
+  private final ClassDictionary classes;
+  private final float[] axesWeights;
+  private final int[] coordinateOrder;
+  private final int numSamples;
+
+  /**
+   * @param embeddings unweighted sample embeddings, {@link #STRIDE} floats per sample. Not copied,
+   *     it is weighted in place and owned by the store afterwards.
+   * @param classIds class id of every sample, an index into {@code classNames}.
+   * @param classNames class names indexed by class id, without duplicates.
+   * @param axesWeights x, y and z weights applied to every embedding point.
+   */
+  public PoseEmbeddingStore(
+      float[] embeddings, int[] classIds, String[] classNames, float[] axesWeights) {
+    if (embeddings.length != classIds.length * STRIDE) {
+      throw new IllegalArgumentException(
+          "Expected " + classIds.length * STRIDE + " embedding values, got " + embeddings.length);
+    }
+    if (axesWeights.length != NUM_DIMS) {
+      throw new IllegalArgumentException("Expected " + NUM_DIMS + " axes weights");
+    }
+    for (int classId : classIds) {
+      if (classId < 0 || classId >= classNames.length) {
+        throw new IllegalArgumentException("Invalid class id " + classId);
+      }
+    }
+    this.embeddings = embeddings;
+    this.quantized = null;
+    this.classIds = classIds;
+    this.classes = new ClassDictionary(classNames);
+    this.axesWeights = axesWeights.clone();
+    this.numSamples = classIds.length;
+    applyWeights(embeddings, this.axesWeights);
+    this.coordinateOrder = sortCoordinatesByVariance(embeddings, numSamples);
+    reorder(embeddings, numSamples, coordinateOrder);
+  }
+
+  private PoseEmbeddingStore(PoseEmbeddingStore store, QuantizedEmbeddings quantized) {
+    this.embeddings = null;
+    this.quantized = quantized;
+    this.classIds = store.classIds;
+    this.classes = store.classes;
+    this.axesWeights = store.axesWeights;
+    this.coordinateOrder = store.coordinateOrder;
+    this.numSamples = store.numSamples;
+  }
+
+  /**
+   * Returns a store with the samples of this one stored at {@code precision}. It shares the class
+   * dictionary, so results of both are interchangeable, but not the sample values: once it is
+   * built, this store can be dropped to free them.
+   *
+   * @throws IllegalStateException if this store is already quantized.
+   */
+  public PoseEmbeddingStore quantize(Precision precision) {
+    if (quantized != null) {
+      throw new IllegalStateException("Store is already quantized");
+    }
+    if (precision == Precision.FLOAT32) {
+      return this;
+    }
+    return new PoseEmbeddingStore(this, new QuantizedEmbeddings(embeddings, numSamples, precision));
+  }
+
+  /** Returns coordinate indexes sorted by decreasing variance across all samples. */
+  private static int[] sortCoordinatesByVariance(float[] embeddings, int numSamples) {
+    double[] variances = new double[STRIDE];
+    for (int i = 0; i < STRIDE; i++) {
+      double sum = 0;
+      double sumOfSquares = 0;
+      for (int sample = 0; sample < numSamples; sample++) {
+        double value = embeddings[sample * STRIDE + i];
+        sum += value;
+        sumOfSquares += value * value;
+      }
+      if (numSamples > 0) {
+        double mean = sum / numSamples;
+        variances[i] = sumOfSquares / numSamples - mean * mean;
+      }
+    }
+    Integer[] order = new Integer[STRIDE];
+    for (int i = 0; i < STRIDE; i++) {
+      order[i] = i;
+    }
+    // Stable, so coordinates with equal variance keep their embedding order.
+    Arrays.sort(order, (a, b) -> Double.compare(variances[b], variances[a]));
+    int[] result = new int[STRIDE];
+    for (int i = 0; i < STRIDE; i++) {
+      result[i] = order[i];
+    }
+    return result;
+  }
+
+  private static void reorder(float[] embeddings, int numSamples, int[] coordinateOrder) {
+    float[] scratch = new float[STRIDE];
+    for (int sample = 0; sample < numSamples; sample++) {
+      int offset = sample * STRIDE;
+      for (int i = 0; i < STRIDE; i++) {
+        scratch[i] = embeddings[offset + coordinateOrder[i]];
+      }
+      System.arraycopy(scratch, 0, embeddings, offset, STRIDE);
+    }
+  }
+
+  /** Multiplies every point of the given flat embeddings by {@code axesWeights} in place. */
+  static void applyWeights(float[] embeddings, float[] axesWeights) {
+    for (int i = 0; i < embeddings.length; i += NUM_DIMS) {
+      embeddings[i] *= axesWeights[0];
+      embeddings[i + 1] *= axesWeights[1];
+      embeddings[i + 2] *= axesWeights[2];
+    }
+  }
+
+  public int getNumSamples() {
+    return numSamples;
+  }
+
+  public int getNumClasses() {
+    return classes.size();
+  }
+
+  public String getClassName(int classId) {
+    return classes.getName(classId);
+  }
+
+  /** Returns the dictionary of the class ids used by this store, shared by its results. */
+  public ClassDictionary getClassDictionary() {
+    return classes;
+  }
+
+  public int getClassId(int sampleIndex) {
+    return classIds[sampleIndex];
+  }
+
+  public float[] getAxesWeights() {
+    return axesWeights.clone();
+  }
+
+  /**
+   * Returns, for every position of a stored sample, the index of the embedding coordinate
+   * ({@code point * NUM_DIMS + axis}) it holds.
+   */
+  public int[] getCoordinateOrder() {
+    return coordinateOrder.clone();
+  }
+
+  public Precision getPrecision() {
+    return quantized != null ? quantized.getPrecision() : Precision.FLOAT32;
+  }
+
+  /** Returns the bytes taken by the sample values, the bulk of the store's memory. */
+  public long getSampleSizeBytes() {
+    return quantized != null ? quantized.getSizeBytes() : (long) numSamples * STRIDE * Float.BYTES;
+  }
+
+  /**
+   * Copies the weighted embedding of {@code sample}, in store coordinate order, into {@code
+   * target}. Dequantizes if the store is quantized.
+   */
+  public void copyWeightedEmbedding(int sample, float[] target) {
+    for (int i = 0; i < STRIDE; i++) {
+      target[i] = quantized != null ? quantized.get(sample, i) : embeddings[sample * STRIDE + i];
+    }
+  }
+
+  /**
+   * Returns the weighted embeddings backing a {@link Precision#FLOAT32} store, null if quantized.
+   * Callers must treat the array as read-only.
+   */
+  float[] getWeightedEmbeddings() {
+    return embeddings;
+  }
+
+  /** Returns the values backing a quantized store, null for {@link Precision#FLOAT32}. */
+  QuantizedEmbeddings getQuantizedEmbeddings() {
+    return quantized;
+  }
+}
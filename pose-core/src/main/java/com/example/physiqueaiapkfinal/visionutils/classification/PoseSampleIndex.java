@@ -0,0 +1,142 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.EMBEDDING_SIZE;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.NUM_DIMS;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.STRIDE;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reads the binary pose sample index produced at build time by the {@code compilePoseSampleIndex}
+ * Gradle task from {@code pose/fitness_pose_samples.csv}.
+ *
+ * <p>The index holds precomputed, unweighted {@link PoseEmbedding}s so nothing has to be parsed or
+ * embedded at runtime. Samples are grouped by class into contiguous shards, so a caller that only
+ * needs a few classes copies only their embeddings out of the mapped file. All values are
+ * big-endian:
+ *
+ * <pre>
+ *   int    magic            'PSIX'
+ *   int    version          {@link #VERSION}
+ *   int    embedding size   23
+ *   int    dims             3
+ *   int    class count      C
+ *   C x {  short length, UTF-8 bytes  }   class names, index is the class id
+ *   0-3    zero bytes       padding to a multiple of 4
+ *   C x {  int first sample, int sample count  }   shard of every class, in class id order
+ *   int    sample count     N
+ *   N x 69 float            embedding per sample
+ * </pre>
+ *
+ * <p>The layout and {@link #VERSION} must be kept in sync with the task in {@code
+ * app/build.gradle.kts}. Bump the version whenever the file layout or {@link PoseEmbedding}
+ * changes so stale indexes are rejected instead of silently misclassifying.
+ */
+public class PoseSampleIndex {
+  public static final int MAGIC = 0x50534958;
+  public static final int VERSION = 2;
+
+  private PoseSampleIndex() {}
+
+  /**
+   * Builds a {@link PoseEmbeddingStore} with every class of an index, typically a memory-mapped
+   * asset.
+   *
+   * @throws IOException if the buffer is not a compatible index.
+   */
+  public static PoseEmbeddingStore read(ByteBuffer buffer, float[] axesWeights)
+      throws IOException {
+    return read(buffer, axesWeights, null);
+  }
+
+  /**
+   * Builds a {@link PoseEmbeddingStore} with only the shards of the given classes. Classes that are
+   * not in the index are ignored, so the store may have fewer classes than requested. Class ids of
+   * the store follow the order of the index.
+   *
+   * @param classNames classes to load, or null to load all of them.
+   * @throws IOException if the buffer is not a compatible index.
+   */
+  public static PoseEmbeddingStore read(
+      ByteBuffer buffer, float[] axesWeights, Collection<String> classNames) throws IOException {
+    ByteBuffer index = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    try {
+      if (index.getInt() != MAGIC) {
+        throw new IOException("Not a pose sample index");
+      }
+      int version = index.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported pose sample index version " + version);
+      }
+      int embeddingSize = index.getInt();
+      int dims = index.getInt();
+      if (embeddingSize != EMBEDDING_SIZE || dims != NUM_DIMS) {
+        throw new IOException(
+            "Unexpected embedding shape " + embeddingSize + "x" + dims + " in pose sample index");
+      }
+
+      String[] indexClassNames = new String[index.getInt()];
+      for (int i = 0; i < indexClassNames.length; i++) {
+        byte[] name = new byte[index.getShort() & 0xFFFF];
+        index.get(name);
+        indexClassNames[i] = new String(name, StandardCharsets.UTF_8);
+      }
+      index.position((index.position() + 3) & ~3);
+
+      int[] shardStarts = new int[indexClassNames.length];
+      int[] shardSizes = new int[indexClassNames.length];
+      int shardEnd = 0;
+      for (int i = 0; i < indexClassNames.length; i++) {
+        shardStarts[i] = index.getInt();
+        shardSizes[i] = index.getInt();
+        if (shardStarts[i] != shardEnd || shardSizes[i] < 0) {
+          throw new IOException("Invalid shard of class " + indexClassNames[i]);
+        }
+        shardEnd += shardSizes[i];
+      }
+
+      int numSamples = index.getInt();
+      if (numSamples != shardEnd || (long) numSamples * STRIDE * 4 > index.remaining()) {
+        throw new IOException("Truncated pose sample index");
+      }
+
+      List<String> selectedNames = new ArrayList<>();
+      int numSelectedSamples = 0;
+      for (int i = 0; i < indexClassNames.length; i++) {
+        if (classNames == null || classNames.contains(indexClassNames[i])) {
+          selectedNames.add(indexClassNames[i]);
+          numSelectedSamples += shardSizes[i];
+        }
+      }
+
+      int[] classIds = new int[numSelectedSamples];
+      float[] embeddings = new float[numSelectedSamples * STRIDE];
+      FloatBuffer samples = index.asFloatBuffer();
+      int sample = 0;
+      for (int i = 0; i < indexClassNames.length; i++) {
+        int classId = selectedNames.indexOf(indexClassNames[i]);
+        if (classId < 0) {
+          continue;
+        }
+        samples.position(shardStarts[i] * STRIDE);
+        samples.get(embeddings, sample * STRIDE, shardSizes[i] * STRIDE);
+        Arrays.fill(classIds, sample, sample + shardSizes[i], classId);
+        sample += shardSizes[i];
+      }
+
+      return new PoseEmbeddingStore(
+          embeddings, classIds, selectedNames.toArray(new String[0]), axesWeights);
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      throw new IOException("Corrupt pose sample index", e);
+    }
+  }
+}
@@ -0,0 +1,218 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.NUM_DIMS;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.STRIDE;
+
+import com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.Precision;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures how a quantized store classifies compared to the float store it was built from.
+ *
+ * <p>Queries are made of the store's own samples, each moved part of the way towards another random
+ * sample so that some land between classes where quantization error can flip a vote. Every query
+ * is classified against both stores and the votes compared.
+ *
+ * <p>Runnable from the command line on the index the app ships: {@code QuantizationReport <index>
+ * [queries]}.
+ */
+public final class QuantizationReport {
+  private final Precision precision;
+  private final long floatBytes;
+  private final long quantizedBytes;
+  private final float maxError;
+  private final double meanError;
+  private final int queries;
+  private final int sameTopClass;
+  private final int sameVotes;
+
+  private QuantizationReport(
+      Precision precision,
+      long floatBytes,
+      long quantizedBytes,
+      float maxError,
+      double meanError,
+      int queries,
+      int sameTopClass,
+      int sameVotes) {
+    this.precision = precision;
+    this.floatBytes = floatBytes;
+    this.quantizedBytes = quantizedBytes;
+    this.maxError = maxError;
+    this.meanError = meanError;
+    this.queries = queries;
+    this.sameTopClass = sameTopClass;
+    this.sameVotes = sameVotes;
+  }
+
+  /** Compares {@code store}, a {@link Precision#FLOAT32} store, to its quantized copy. */
+  public static QuantizationReport compare(
+      PoseEmbeddingStore store, Precision precision, int numQueries, Random random) {
+    PoseEmbeddingStore quantized = store.quantize(precision);
+    int numSamples = store.getNumSamples();
+
+    float[] exact = new float[STRIDE];
+    float[] approximate = new float[STRIDE];
+    float maxError = 0;
+    double errorSum = 0;
+    for (int sample = 0; sample < numSamples; sample++) {
+      store.copyWeightedEmbedding(sample, exact);
+      quantized.copyWeightedEmbedding(sample, approximate);
+      for (int i = 0; i < STRIDE; i++) {
+        float error = Math.abs(exact[i] - approximate[i]);
+        maxError = Math.max(maxError, error);
+        errorSum += error;
+      }
+    }
+
+    PoseClassifierEngine floatEngine =
+        new PoseClassifierEngine(
+            store, PoseClassifier.MAX_DISTANCE_TOP_K, PoseClassifier.MEAN_DISTANCE_TOP_K);
+    PoseClassifierEngine quantizedEngine =
+        new PoseClassifierEngine(
+            quantized, PoseClassifier.MAX_DISTANCE_TOP_K, PoseClassifier.MEAN_DISTANCE_TOP_K);
+    float[] other = new float[STRIDE];
+    float[] embedding = new float[STRIDE];
+    float[] flippedEmbedding = new float[STRIDE];
+    int[] floatVotes = new int[store.getNumClasses()];
+    int[] quantizedVotes = new int[store.getNumClasses()];
+    int sameTopClass = 0;
+    int sameVotes = 0;
+    int queries = numSamples == 0 ? 0 : numQueries;
+    for (int q = 0; q < queries; q++) {
+      store.copyWeightedEmbedding(random.nextInt(numSamples), exact);
+      store.copyWeightedEmbedding(random.nextInt(numSamples), other);
+      float amount = random.nextFloat() * 0.5f;
+      for (int i = 0; i < STRIDE; i++) {
+        exact[i] += (other[i] - exact[i]) * amount;
+      }
+      toQuery(store, exact, embedding, flippedEmbedding);
+      floatEngine.classify(embedding, flippedEmbedding, floatVotes);
+      quantizedEngine.classify(embedding, flippedEmbedding, quantizedVotes);
+      if (topClass(floatVotes) == topClass(quantizedVotes)) {
+        sameTopClass++;
+      }
+      if (Arrays.equals(floatVotes, quantizedVotes)) {
+        sameVotes++;
+      }
+    }
+
+    return new QuantizationReport(
+        precision,
+        store.getSampleSizeBytes(),
+        quantized.getSampleSizeBytes(),
+        maxError,
+        numSamples == 0 ? 0 : errorSum / ((double) numSamples * STRIDE),
+        queries,
+        sameTopClass,
+        sameVotes);
+  }
+
+  /** Undoes the weighting and coordinate order of a stored sample, giving a query embedding. */
+  private static void toQuery(
+      PoseEmbeddingStore store, float[] stored, float[] embedding, float[] flippedEmbedding) {
+    int[] coordinateOrder = store.getCoordinateOrder();
+    float[] axesWeights = store.getAxesWeights();
+    for (int i = 0; i < STRIDE; i++) {
+      int coordinate = coordinateOrder[i];
+      float weight = axesWeights[coordinate % NUM_DIMS];
+      embedding[coordinate] = weight == 0 ? 0 : stored[i] / weight;
+    }
+    for (int i = 0; i < STRIDE; i += NUM_DIMS) {
+      flippedEmbedding[i] = -embedding[i];
+      flippedEmbedding[i + 1] = embedding[i + 1];
+      flippedEmbedding[i + 2] = embedding[i + 2];
+    }
+  }
+
+  // Same tie breaking as ClassificationResult#getMaxConfidenceClassId: the lowest class id wins.
+  private static int topClass(int[] votes) {
+    int best = -1;
+    for (int classId = 0; classId < votes.length; classId++) {
+      if (votes[classId] > 0 && (best < 0 || votes[classId] > votes[best])) {
+        best = classId;
+      }
+    }
+    return best;
+  }
+
+  public Precision getPrecision() {
+    return precision;
+  }
+
+  /** Returns the sample bytes of the float store. */
+  public long getFloatBytes() {
+    return floatBytes;
+  }
+
+  /** Returns the sample bytes of the quantized store. */
+  public long getQuantizedBytes() {
+    return quantizedBytes;
+  }
+
+  /** Returns the largest difference of a dequantized value to its weighted float value. */
+  public float getMaxError() {
+    return maxError;
+  }
+
+  /** Returns the mean difference of a dequantized value to its weighted float value. */
+  public double getMeanError() {
+    return meanError;
+  }
+
+  public int getQueries() {
+    return queries;
+  }
+
+  /** Returns the fraction of queries whose most voted class is the same on both stores. */
+  public double getTopClassAgreement() {
+    return queries == 0 ? 1 : (double) sameTopClass / queries;
+  }
+
+  /** Returns the fraction of queries whose votes for every class are the same on both stores. */
+  public double getVoteAgreement() {
+    return queries == 0 ? 1 : (double) sameVotes / queries;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.US,
+        "%s: %d -> %d sample bytes, max error %.5f, mean error %.6f, "
+            + "%d queries: %.2f%% same top class, %.2f%% same votes",
+        precision,
+        floatBytes,
+        quantizedBytes,
+        maxError,
+        meanError,
+        queries,
+        getTopClassAgreement() * 100,
+        getVoteAgreement() * 100);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("Usage: QuantizationReport <pose sample index> [queries]");
+      System.exit(2);
+    }
+    PoseEmbeddingStore store;
+    try (RandomAccessFile file = new RandomAccessFile(args[0], "r")) {
+      store =
+          PoseSampleIndex.read(
+              file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length()),
+              PoseClassifier.defaultAxesWeights());
+    }
+    int queries = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+    System.out.println(
+        store.getNumSamples() + " samples in " + store.getNumClasses() + " classes");
+    for (Precision precision : new Precision[] {Precision.FP16, Precision.INT8}) {
+      System.out.println(compare(store, precision, queries, new Random(0)));
+    }
+  }
+}
@@ -0,0 +1,195 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.NUM_DIMS;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.STRIDE;
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.Precision;
+
+/**
+ * Weighted sample embeddings of a {@link PoseEmbeddingStore} in 16 or 8 bits per value, with the
+ * distance kernels of {@link PoseClassifierEngine} working directly on them.
+ *
+ * <p>Every stored coordinate position has its own offset and scale, mapping the range of that
+ * coordinate across all samples onto the range of the stored type: a value reads as {@code offset
+ * + scale * stored}. {@link Precision#FP16} stores half-precision floats in [-1, 1], {@link
+ * Precision#INT8} integers in [-127, 127].
+ *
+ * <p>Instead of dequantizing every sample, the kernels take a query already moved into the stored
+ * space by {@link #encodeQuery}, so a coordinate's distance is {@code scale * |stored - query|}.
+ * Immutable and thread-safe.
+ */
+final class QuantizedEmbeddings {
+  private static final int INT8_MAX = 127;
+
+  private final Precision precision;
+  private final int numSamples;
+  // Only the array of the precision is set.
+  private final byte[] int8Values;
+  private final short[] fp16Values;
+  private final float[] offsets = new float[STRIDE];
+  private final float[] scales = new float[STRIDE];
+
+  /**
+   * @param embeddings weighted embeddings in store coordinate order, {@link
+   *     PoseEmbeddingStore#STRIDE} floats per sample.
+   */
+  QuantizedEmbeddings(float[] embeddings, int numSamples, Precision precision) {
+    if (precision == Precision.FLOAT32) {
+      throw new IllegalArgumentException("FLOAT32 is not quantized");
+    }
+    this.precision = precision;
+    this.numSamples = numSamples;
+    float range = precision == Precision.INT8 ? INT8_MAX : 1;
+    for (int i = 0; i < STRIDE; i++) {
+      float minValue = Float.POSITIVE_INFINITY;
+      float maxValue = Float.NEGATIVE_INFINITY;
+      for (int sample = 0; sample < numSamples; sample++) {
+        float value = embeddings[sample * STRIDE + i];
+        minValue = min(minValue, value);
+        maxValue = max(maxValue, value);
+      }
+      if (numSamples == 0) {
+        minValue = 0;
+        maxValue = 0;
+      }
+      offsets[i] = (minValue + maxValue) / 2;
+      float halfRange = (maxValue - minValue) / 2;
+      scales[i] = halfRange > 0 ? halfRange / range : 1;
+    }
+
+    int numValues = numSamples * STRIDE;
+    int8Values = precision == Precision.INT8 ? new byte[numValues] : null;
+    fp16Values = precision == Precision.FP16 ? new short[numValues] : null;
+    for (int v = 0; v < numValues; v++) {
+      int i = v % STRIDE;
+      float normalized = (embeddings[v] - offsets[i]) / scales[i];
+      if (int8Values != null) {
+        int8Values[v] = (byte) max(-INT8_MAX, min(INT8_MAX, Math.round(normalized)));
+      } else {
+        fp16Values[v] = toHalf(max(-1, min(1, normalized)));
+      }
+    }
+  }
+
+  Precision getPrecision() {
+    return precision;
+  }
+
+  /** Returns the bytes taken by the stored values and their offsets and scales. */
+  long getSizeBytes() {
+    long valueBytes = precision == Precision.INT8 ? 1 : 2;
+    return numSamples * (long) STRIDE * valueBytes + 2L * STRIDE * Float.BYTES;
+  }
+
+  /** Dequantizes the {@code i}-th stored coordinate of {@code sample}. */
+  float get(int sample, int i) {
+    int v = sample * STRIDE + i;
+    float stored = int8Values != null ? int8Values[v] : fromHalf(fp16Values[v]);
+    return offsets[i] + scales[i] * stored;
+  }
+
+  /** Moves a weighted query in store coordinate order into the stored space. */
+  void encodeQuery(float[] query, float[] target) {
+    for (int i = 0; i < STRIDE; i++) {
+      target[i] = (query[i] - offsets[i]) / scales[i];
+    }
+  }
+
+  /**
+   * Returns the mirrored max distance of {@code sample}: the smaller of its max distances to the
+   * encoded query and flipped query. Gives up once both partial maxima reach {@code threshold},
+   * returning {@link Float#POSITIVE_INFINITY}; pass that as the threshold to always finish.
+   */
+  float maxDistance(int sample, float[] query, float[] flippedQuery, float threshold) {
+    int offset = sample * STRIDE;
+    float originalMax = 0;
+    float flippedMax = 0;
+    // Coordinates are sorted by decreasing variance, so the bound is usually hit early.
+    if (int8Values != null) {
+      for (int i = 0; i < STRIDE; i += NUM_DIMS) {
+        for (int j = i; j < i + NUM_DIMS; j++) {
+          float value = int8Values[offset + j];
+          float scale = scales[j];
+          originalMax = max(originalMax, scale * abs(value - query[j]));
+          flippedMax = max(flippedMax, scale * abs(value - flippedQuery[j]));
+        }
+        if (originalMax >= threshold && flippedMax >= threshold) {
+          return Float.POSITIVE_INFINITY;
+        }
+      }
+    } else {
+      for (int i = 0; i < STRIDE; i += NUM_DIMS) {
+        for (int j = i; j < i + NUM_DIMS; j++) {
+          float value = fromHalf(fp16Values[offset + j]);
+          float scale = scales[j];
+          originalMax = max(originalMax, scale * abs(value - query[j]));
+          flippedMax = max(flippedMax, scale * abs(value - flippedQuery[j]));
+        }
+        if (originalMax >= threshold && flippedMax >= threshold) {
+          return Float.POSITIVE_INFINITY;
+        }
+      }
+    }
+    return min(originalMax, flippedMax);
+  }
+
+  /**
+   * Returns the mirrored sum of distances of {@code sample}: the smaller of its summed coordinate
+   * distances to the encoded query and flipped query.
+   */
+  float sumDistance(int sample, float[] query, float[] flippedQuery) {
+    int offset = sample * STRIDE;
+    float originalSum = 0;
+    float flippedSum = 0;
+    if (int8Values != null) {
+      for (int i = 0; i < STRIDE; i++) {
+        float value = int8Values[offset + i];
+        float scale = scales[i];
+        originalSum += scale * abs(value - query[i]);
+        flippedSum += scale * abs(value - flippedQuery[i]);
+      }
+    } else {
+      for (int i = 0; i < STRIDE; i++) {
+        float value = fromHalf(fp16Values[offset + i]);
+        float scale = scales[i];
+        originalSum += scale * abs(value - query[i]);
+        flippedSum += scale * abs(value - flippedQuery[i]);
+      }
+    }
+    return min(originalSum, flippedSum);
+  }
+
+  /**
+   * Converts to the nearest IEEE 754 half-precision float, ties to even. Values beyond the half
+   * range become infinite.
+   */
+  static short toHalf(float value) {
+    int sign = (Float.floatToRawIntBits(value) >>> 16) & 0x8000;
+    float magnitude = abs(value);
+    if (Float.isNaN(value)) {
+      return (short) 0x7e00;
+    }
+    if (magnitude >= 65520f) {
+      return (short) (sign | 0x7c00);
+    }
+    if (magnitude < 0x1p-14f) {
+      // Subnormal half, in units of 2^-24.
+      return (short) (sign | (int) Math.rint(magnitude * 0x1p24f));
+    }
+    int bits = Float.floatToRawIntBits(magnitude);
+    // Round the 23 bit mantissa to 10 bits, then rebias the exponent from 127 to 15. A carry out of
+    // the mantissa correctly bumps the exponent.
+    int rounded = bits + 0xfff + ((bits >>> 13) & 1);
+    return (short) (sign | ((rounded >>> 13) - (112 << 10)));
+  }
+
+  /** Converts a finite half-precision float, including subnormals, to a float. */
+  static float fromHalf(short half) {
+    // Moving the exponent and mantissa into float position reads them with a bias of 127 instead
+    // of 15; multiplying by 2^112 corrects that, for subnormals too.
+    return Float.intBitsToFloat(((half & 0x8000) << 16) | ((half & 0x7fff) << 13)) * 0x1p112f;
+  }
+}
@@ -0,0 +1,417 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.NUM_DIMS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stream mode rep counting on landmark buffers, free of any camera or detector: classification,
+ * EMA smoothing, pose validation and the {@link RepetitionCounter}s, in that order.
+ *
+ * <p>The stages can be run one by one with {@link #classify}, {@link #smooth} and {@link
+ * #countReps} to time them, or together with {@link #process}. Time only comes from the frame
+ * timestamps passed in, so replaying the same frames counts the same reps. After a frame, the
+ * validation outcome and the counters' state before it can be read back for tracing.
+ *
+ * <p>With a {@link MotionGate} set, a frame whose pose did not move since the last classified one
+ * skips classification and reuses that frame's result. The reused result is still smoothed and
+ * counted, so only the K-Nearest Neighbors search is saved.
+ *
+ * <p>Not thread-safe.
+ */
+public class RepCountingPipeline {
+  // Specify classes for which we want rep counting.
+  // These are the labels in the pose samples csv. You can set your own class labels
+  // for your pose samples.
+  public static final String PUSHUPS_CLASS = "pushups_down";
+  public static final String SQUATS_CLASS = "squats_down";
+  public static final String FRONT_RAISE_CLASS = "front_raise_down";
+  public static final String HIP_THRUST_CLASS = "hip_thrust_down";
+  public static final String WINDMILL_LEFT_CLASS = "windmill_left";
+  public static final String WINDMILL_RIGHT_CLASS = "windmill_right";
+
+  /** Rep classes of every exercise, counted when no exercise is selected. */
+  public static final List<String> DEFAULT_REP_CLASSES =
+      Collections.unmodifiableList(
+          Arrays.asList(
+              PUSHUPS_CLASS,
+              SQUATS_CLASS,
+              FRONT_RAISE_CLASS,
+              HIP_THRUST_CLASS,
+              WINDMILL_LEFT_CLASS,
+              WINDMILL_RIGHT_CLASS));
+
+  /** Value of {@link #getLastRepClassId()} before any rep is counted. */
+  public static final int NO_CLASS = -1;
+
+  // Validators in the order they run, indices of getValidationCriteria().
+  public static final int VALIDATOR_PUSHUP = 0;
+  public static final int VALIDATOR_SQUAT = 1;
+  public static final int VALIDATOR_FRONT_RAISE = 2;
+  public static final int VALIDATOR_HIP_THRUST = 3;
+  public static final int VALIDATOR_WINDMILL = 4;
+  public static final int NUM_VALIDATORS = 5;
+
+  // Validation criteria bits. Bit 0 is the validator's verdict, higher bits its checks in the order
+  // they appear in the validator.
+  public static final int CRITERIA_VALID = 1;
+
+  // Consecutive frames a validator has to accept before reps are counted.
+  private static final int MIN_VALID_POSE_FRAMES = 3;
+
+  private final PoseClassifier poseClassifier;
+  private final ClassificationResult classification;
+  private final EMASmoothing emaSmoothing;
+  private final ClassificationResult smoothedResult;
+  private final List<RepetitionCounter> repCounters;
+  // Skips classifying frames that did not move, or null to classify every frame.
+  private MotionGate motionGate;
+
+  // Ids of the validated classes in the classifier's dictionary, -1 if absent.
+  private final int pushupsClassId;
+  private final int squatsClassId;
+  private final int frontRaiseClassId;
+  private final int hipThrustClassId;
+  private final int windmillLeftClassId;
+  private final int windmillRightClassId;
+
+  // Landmarks of the current frame, null if no pose was found in it.
+  private float[] landmarks;
+  private boolean classificationReused;
+  private int validPoseFrameCount;
+  private final int[] validationCriteria = new int[NUM_VALIDATORS];
+  private final float[] validationConfidences = new float[NUM_VALIDATORS * 2];
+  // Counters fed by the current frame and their state before it.
+  private int countersFed;
+  private final int[] repsBefore;
+  private final boolean[] poseEnteredBefore;
+  // Class whose reps were counted last and its count.
+  private int lastRepClassId = NO_CLASS;
+  private int lastRepCount;
+
+  /**
+   * Creates a pipeline over an already loaded store, counting the reps of {@code repClasses}.
+   * Only the per-session state is allocated: smoothing, rep counters and classifier scratch
+   * buffers.
+   */
+  public RepCountingPipeline(PoseEmbeddingStore store, List<String> repClasses) {
+    this(new PoseClassifier(store), repClasses);
+  }
+
+  public RepCountingPipeline(PoseClassifier poseClassifier, List<String> repClasses) {
+    this.poseClassifier = poseClassifier;
+    ClassDictionary classes = poseClassifier.getClassDictionary();
+    classification = new ClassificationResult(classes);
+    emaSmoothing = new EMASmoothing(classes);
+    smoothedResult = new ClassificationResult(classes);
+    repCounters = new ArrayList<>(repClasses.size());
+    for (String className : repClasses) {
+      repCounters.add(new RepetitionCounter(className));
+    }
+    repsBefore = new int[repCounters.size()];
+    poseEnteredBefore = new boolean[repCounters.size()];
+    pushupsClassId = classes.getId(PUSHUPS_CLASS);
+    squatsClassId = classes.getId(SQUATS_CLASS);
+    frontRaiseClassId = classes.getId(FRONT_RAISE_CLASS);
+    hipThrustClassId = classes.getId(HIP_THRUST_CLASS);
+    windmillLeftClassId = classes.getId(WINDMILL_LEFT_CLASS);
+    windmillRightClassId = classes.getId(WINDMILL_RIGHT_CLASS);
+  }
+
+  /**
+   * Runs every stage on one frame.
+   *
+   * @param landmarks landmark buffer of the frame, see {@link PoseEmbedding#LANDMARK_BUFFER_SIZE},
+   *     or null if no pose was found in it.
+   * @param timestampMs frame timestamp in milliseconds, on any monotonic clock.
+   * @return whether the frame completed a rep.
+   */
+  public boolean process(float[] landmarks, long timestampMs) {
+    classify(landmarks);
+    smooth(timestampMs);
+    return countReps(timestampMs);
+  }
+
+  /**
+   * Classifies a frame, see {@link #process}, unless the motion gate lets it reuse the previous
+   * classification. The buffer is read again by {@link #countReps}, so it must not change in
+   * between.
+   */
+  public void classify(float[] landmarks) {
+    this.landmarks = landmarks;
+    classificationReused = false;
+    if (landmarks == null) {
+      classification.clear();
+      if (motionGate != null) {
+        motionGate.reset();
+      }
+    } else if (motionGate != null && !motionGate.shouldClassify(landmarks)) {
+      classificationReused = true;
+    } else {
+      poseClassifier.classify(landmarks, classification);
+    }
+  }
+
+  /**
+   * Sets the gate deciding which frames are classified, or null to classify every frame. The gate
+   * is reset, so the next frame is classified.
+   */
+  public void setMotionGate(MotionGate motionGate) {
+    this.motionGate = motionGate;
+    if (motionGate != null) {
+      motionGate.reset();
+    }
+  }
+
+  /** Returns the motion gate, null if every frame is classified. */
+  public MotionGate getMotionGate() {
+    return motionGate;
+  }
+
+  /** Returns whether the current frame reused the previous frame's classification. */
+  public boolean isClassificationReused() {
+    return classificationReused;
+  }
+
+  /** Feeds the classification to smoothing, even if no pose was found. */
+  public void smooth(long timestampMs) {
+    emaSmoothing.getSmoothedResult(classification, timestampMs, smoothedResult);
+  }
+
+  /**
+   * Validates the pose and, after enough consecutive valid frames, feeds the smoothed result to the
+   * rep counters until one of them counts.
+   *
+   * @return whether the frame completed a rep.
+   */
+  public boolean countReps(long timestampMs) {
+    countersFed = 0;
+    // Return early without updating repCounter if no pose found.
+    if (landmarks == null) {
+      validPoseFrameCount = 0;
+      return false;
+    }
+
+    // Evaluate every validator so each one's outcome can be traced.
+    boolean isValidPose = validatePushupPose();
+    isValidPose |= validateSquatPose();
+    isValidPose |= validateFrontRaisePose();
+    isValidPose |= validateHipThrustPose();
+    isValidPose |= validateWindmillPose();
+
+    if (isValidPose) {
+      validPoseFrameCount++;
+    } else {
+      validPoseFrameCount = 0;
+    }
+
+    // Only proceed with counting if we have enough consecutive valid pose frames
+    if (validPoseFrameCount < MIN_VALID_POSE_FRAMES) {
+      return false;
+    }
+
+    ClassDictionary classes = classification.getDictionary();
+    for (RepetitionCounter repCounter : repCounters) {
+      int counter = countersFed++;
+      repsBefore[counter] = repCounter.getNumRepeats();
+      poseEnteredBefore[counter] = repCounter.isPoseEntered();
+      int repsAfter = repCounter.addClassificationResult(smoothedResult, timestampMs);
+      if (repsAfter > repsBefore[counter]) {
+        lastRepClassId = classes.getId(repCounter.getClassName());
+        lastRepCount = repsAfter;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Push-ups: wrists below shoulders, body horizontal.
+  private boolean validatePushupPose() {
+    boolean wristsLowerThanShoulders =
+        y(LandmarkType.LEFT_WRIST) > y(LandmarkType.LEFT_SHOULDER)
+            && y(LandmarkType.RIGHT_WRIST) > y(LandmarkType.RIGHT_SHOULDER);
+    boolean isHorizontal = Math.abs(shoulderY() - hipY()) < 0.15f;
+    float pushupConfidence = smoothedConfidence(pushupsClassId);
+    boolean isValid = wristsLowerThanShoulders && isHorizontal && pushupConfidence > 2.0f;
+    return setValidation(
+        VALIDATOR_PUSHUP,
+        isValid,
+        (wristsLowerThanShoulders ? 2 : 0) | (isHorizontal ? 4 : 0),
+        pushupConfidence,
+        0);
+  }
+
+  // Squats: shoulders above hips above ankles.
+  private boolean validateSquatPose() {
+    float hipY = hipY();
+    boolean isUpright = shoulderY() < hipY;
+    boolean legsAreVisible = hipY < ankleY();
+    float squatConfidence = smoothedConfidence(squatsClassId);
+    boolean isValid = isUpright && legsAreVisible && squatConfidence > 1.0f;
+    return setValidation(
+        VALIDATOR_SQUAT,
+        isValid,
+        (isUpright ? 2 : 0) | (legsAreVisible ? 4 : 0),
+        squatConfidence,
+        0);
+  }
+
+  // Front raises: standing, wrists in the frame.
+  private boolean validateFrontRaisePose() {
+    boolean isUpright = shoulderY() < hipY();
+    float avgWristY = (y(LandmarkType.LEFT_WRIST) + y(LandmarkType.RIGHT_WRIST)) / 2;
+    boolean armsAreVisible = avgWristY > 0;
+    float frontRaiseConfidence = smoothedConfidence(frontRaiseClassId);
+    boolean isValid = isUpright && armsAreVisible && frontRaiseConfidence > 1.0f;
+    return setValidation(
+        VALIDATOR_FRONT_RAISE,
+        isValid,
+        (isUpright ? 2 : 0) | (armsAreVisible ? 4 : 0),
+        frontRaiseConfidence,
+        0);
+  }
+
+  // Hip thrusts: shoulders and hips level, knees between hips and ankles.
+  private boolean validateHipThrustPose() {
+    float hipY = hipY();
+    float kneeY = (y(LandmarkType.LEFT_KNEE) + y(LandmarkType.RIGHT_KNEE)) / 2;
+    boolean isLyingPosition = Math.abs(shoulderY() - hipY) < 0.2f;
+    boolean legsBentProperly = hipY < kneeY && kneeY < ankleY();
+    float hipThrustConfidence = smoothedConfidence(hipThrustClassId);
+    boolean isValid = isLyingPosition && legsBentProperly && hipThrustConfidence > 1.0f;
+    return setValidation(
+        VALIDATOR_HIP_THRUST,
+        isValid,
+        (isLyingPosition ? 2 : 0) | (legsBentProperly ? 4 : 0),
+        hipThrustConfidence,
+        0);
+  }
+
+  // Windmills: standing, one arm up and the opposite arm down.
+  private boolean validateWindmillPose() {
+    boolean isUpright = shoulderY() < hipY();
+    boolean leftArmUp = y(LandmarkType.LEFT_WRIST) < y(LandmarkType.LEFT_SHOULDER) - 0.1f;
+    boolean rightArmUp = y(LandmarkType.RIGHT_WRIST) < y(LandmarkType.RIGHT_SHOULDER) - 0.1f;
+    boolean leftArmDown = y(LandmarkType.LEFT_WRIST) > y(LandmarkType.LEFT_HIP) + 0.1f;
+    boolean rightArmDown = y(LandmarkType.RIGHT_WRIST) > y(LandmarkType.RIGHT_HIP) + 0.1f;
+    boolean isWindmillPosition = (leftArmUp && rightArmDown) || (rightArmUp && leftArmDown);
+    float windmillLeftConfidence = smoothedConfidence(windmillLeftClassId);
+    float windmillRightConfidence = smoothedConfidence(windmillRightClassId);
+    boolean isValid =
+        isUpright
+            && isWindmillPosition
+            && Math.max(windmillLeftConfidence, windmillRightConfidence) > 1.0f;
+    return setValidation(
+        VALIDATOR_WINDMILL,
+        isValid,
+        (isUpright ? 2 : 0)
+            | (isWindmillPosition ? 4 : 0)
+            | (leftArmUp ? 8 : 0)
+            | (rightArmDown ? 16 : 0)
+            | (rightArmUp ? 32 : 0)
+            | (leftArmDown ? 64 : 0),
+        windmillLeftConfidence,
+        windmillRightConfidence);
+  }
+
+  private boolean setValidation(
+      int validator, boolean isValid, int checks, float confidence0, float confidence1) {
+    validationCriteria[validator] = (isValid ? CRITERIA_VALID : 0) | checks;
+    validationConfidences[validator * 2] = confidence0;
+    validationConfidences[validator * 2 + 1] = confidence1;
+    return isValid;
+  }
+
+  private float smoothedConfidence(int classId) {
+    return classId < 0 ? 0 : smoothedResult.getClassConfidence(classId);
+  }
+
+  private float y(int landmarkType) {
+    return landmarks[landmarkType * NUM_DIMS + 1];
+  }
+
+  private float shoulderY() {
+    return (y(LandmarkType.LEFT_SHOULDER) + y(LandmarkType.RIGHT_SHOULDER)) / 2;
+  }
+
+  private float hipY() {
+    return (y(LandmarkType.LEFT_HIP) + y(LandmarkType.RIGHT_HIP)) / 2;
+  }
+
+  private float ankleY() {
+    return (y(LandmarkType.LEFT_ANKLE) + y(LandmarkType.RIGHT_ANKLE)) / 2;
+  }
+
+  /** Resets the rep counters and pose validation, keeping the smoothing window. */
+  public void reset() {
+    for (RepetitionCounter counter : repCounters) {
+      counter.reset();
+    }
+    lastRepClassId = NO_CLASS;
+    lastRepCount = 0;
+    validPoseFrameCount = 0;
+    countersFed = 0;
+  }
+
+  public PoseClassifier getPoseClassifier() {
+    return poseClassifier;
+  }
+
+  /** Returns the classification of the current frame, empty if no pose was found. */
+  public ClassificationResult getClassification() {
+    return classification;
+  }
+
+  public ClassificationResult getSmoothedResult() {
+    return smoothedResult;
+  }
+
+  public List<RepetitionCounter> getRepCounters() {
+    return Collections.unmodifiableList(repCounters);
+  }
+
+  /** Returns whether a pose was found in the current frame, and so whether it was validated. */
+  public boolean isPoseFound() {
+    return landmarks != null;
+  }
+
+  /**
+   * Returns the criteria bits of a validator on the current frame: {@link #CRITERIA_VALID} if it
+   * accepted the pose, then one bit per check.
+   */
+  public int getValidationCriteria(int validator) {
+    return validationCriteria[validator];
+  }
+
+  /** Returns the smoothed confidence a validator checked, {@code index} 1 for its second class. */
+  public float getValidationConfidence(int validator, int index) {
+    return validationConfidences[validator * 2 + index];
+  }
+
+  /** Returns how many of {@link #getRepCounters()}, in order, the current frame was fed to. */
+  public int getCountersFed() {
+    return countersFed;
+  }
+
+  /** Returns the reps of the {@code counter}-th counter before the current frame. */
+  public int getRepsBefore(int counter) {
+    return repsBefore[counter];
+  }
+
+  /** Returns whether the {@code counter}-th counter was in its pose before the current frame. */
+  public boolean wasPoseEnteredBefore(int counter) {
+    return poseEnteredBefore[counter];
+  }
+
+  /** Returns the id of the class whose reps were counted last, {@link #NO_CLASS} if none. */
+  public int getLastRepClassId() {
+    return lastRepClassId;
+  }
+
+  public int getLastRepCount() {
+    return lastRepCount;
+  }
+}
@@ -16,8 +16,6 @@
 
 package com.example.physiqueaiapkfinal.visionutils.classification;
 
-import android.util.Log;
-
 /**
  * Counts reps for the give class.
  */
@@ -35,12 +33,14 @@ public class RepetitionCounter {
   private static final float SQUAT_ENTER_THRESHOLD = 2f;    // Lowered for better sensitivity
   private static final float SQUAT_EXIT_THRESHOLD = 1f;     // Lowered for better sensitivity
 
-  private static final String TAG = "RepetitionCounter";
-
   private final String className;
   private final float enterThreshold;
   private final float exitThreshold;
 
+  // Id of className in the dictionary of the last result, -1 if it is not in there.
+  private ClassDictionary resolvedDictionary;
+  private int classId = -1;
+
   private int numRepeats;
   private boolean poseEntered;
   private long lastRepTime = 0;
@@ -64,9 +64,6 @@ public class RepetitionCounter {
 
     numRepeats = 0;
     poseEntered = false;
-    Log.d(TAG, "Created counter for " + className +
-            " with enter threshold: " + enterThreshold +
-            ", exit threshold: " + exitThreshold);
   }
 
   public RepetitionCounter(String className, float enterThreshold, float exitThreshold) {
@@ -75,9 +72,6 @@ public class RepetitionCounter {
     this.exitThreshold = exitThreshold;
     numRepeats = 0;
     poseEntered = false;
-    Log.d(TAG, "Created counter for " + className +
-            " with enter threshold: " + enterThreshold +
-            ", exit threshold: " + exitThreshold);
   }
 
   /**
@@ -87,28 +81,30 @@ public class RepetitionCounter {
    * @return number of reps.
    */
   public int addClassificationResult(ClassificationResult classificationResult) {
-    float poseConfidence = classificationResult.getClassConfidence(className);
-    Log.d(TAG, "Class: " + className + ", Confidence: " + poseConfidence +
-            ", poseEntered: " + poseEntered + ", numRepeats: " + numRepeats);
+    return addClassificationResult(classificationResult, System.currentTimeMillis());
+  }
 
+  /**
+   * Same as {@link #addClassificationResult(ClassificationResult)} for a frame captured at {@code
+   * timestampMs}, which drives the minimum interval between reps so replayed frames count the same
+   * way every time.
+   *
+   * @param timestampMs frame timestamp in milliseconds, on any monotonic clock.
+   */
+  public int addClassificationResult(ClassificationResult classificationResult, long timestampMs) {
+    float poseConfidence = getClassConfidence(classificationResult);
     if (!poseEntered) {
       poseEntered = poseConfidence > enterThreshold;
-      if (poseEntered) {
-        Log.d(TAG, "Pose " + className + " ENTERED");
-      }
       return numRepeats;
     }
 
     if (poseConfidence < exitThreshold) {
       // Check minimum interval between reps to prevent rapid false positives
-      long currentTime = System.currentTimeMillis();
-      if (currentTime - lastRepTime >= MIN_REP_INTERVAL_MS) {
+      if (timestampMs - lastRepTime >= MIN_REP_INTERVAL_MS) {
         numRepeats++;
         poseEntered = false;
-        lastRepTime = currentTime;
-        Log.d(TAG, "Pose " + className + " EXITED - Repetition counted! Count now: " + numRepeats);
+        lastRepTime = timestampMs;
       } else {
-        Log.d(TAG, "Rep detected too soon, ignoring. Time since last: " + (currentTime - lastRepTime) + "ms");
         poseEntered = false; // Still exit the pose but don't count
       }
     }
@@ -116,6 +112,17 @@ public class RepetitionCounter {
     return numRepeats;
   }
 
+  /** Reads this counter's class by id, looking the name up only when the dictionary changes. */
+  private float getClassConfidence(ClassificationResult classificationResult) {
+    ClassDictionary dictionary = classificationResult.getDictionary();
+    // An unshared dictionary may have gained the class since it was last looked up.
+    if (dictionary != resolvedDictionary || classId < 0) {
+      resolvedDictionary = dictionary;
+      classId = dictionary.getId(className);
+    }
+    return classId < 0 ? 0 : classificationResult.getClassConfidence(classId);
+  }
+
   public String getClassName() {
     return className;
   }
@@ -124,11 +131,20 @@ public class RepetitionCounter {
     return numRepeats;
   }
 
+  /** Returns whether the class's pose was entered and the rep awaits its exit. */
+  public boolean isPoseEntered() {
+    return poseEntered;
+  }
+
+  /** Returns the timestamp of the last counted rep, 0 if none. */
+  public long getLastRepTimeMs() {
+    return lastRepTime;
+  }
+
   public void reset() {
     numRepeats = 0;
     poseEntered = false;
     lastRepTime = 0;
-    Log.d(TAG, "Reset counter for " + className);
   }
 }
 
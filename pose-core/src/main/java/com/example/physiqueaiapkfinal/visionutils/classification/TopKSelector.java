@@ -0,0 +1,130 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+/**
+ * Keeps the K entries with the smallest distance out of a stream of (id, distance) pairs.
+ *
+ * <p>Entries live in parallel {@code int[]} and {@code float[]} arrays arranged as a binary max
+ * heap, so the worst kept entry is always at the root and an offer costs O(log K) without
+ * allocating. Entries are ordered by distance and then by id, which makes the kept set independent
+ * of the order entries are offered in.
+ *
+ * <p>Typical use is {@link #clear()}, a series of {@link #offer}s and, if the entries are needed in
+ * order, {@link #sort()} before reading them with {@link #getId} and {@link #getDistance}.
+ */
+public class TopKSelector {
+  private final int[] ids;
+  private final float[] distances;
+  private int size;
+
+  public TopKSelector(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("Negative capacity " + capacity);
+    }
+    ids = new int[capacity];
+    distances = new float[capacity];
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return ids.length;
+  }
+
+  /**
+   * Returns the distance an offer has to beat to be kept: the worst kept distance once full,
+   * positive infinity before. An offer with exactly this distance is only kept if its id is smaller
+   * than the worst entry's.
+   */
+  public float threshold() {
+    if (size < ids.length) {
+      return Float.POSITIVE_INFINITY;
+    }
+    return ids.length == 0 ? Float.NEGATIVE_INFINITY : distances[0];
+  }
+
+  /**
+   * Offers an entry, evicting the worst kept entry if full.
+   *
+   * @return whether the entry was kept.
+   */
+  public boolean offer(int id, float distance) {
+    if (size < ids.length) {
+      siftUp(size++, id, distance);
+      return true;
+    }
+    if (size == 0 || !precedes(distance, id, distances[0], ids[0])) {
+      return false;
+    }
+    siftDown(0, size, id, distance);
+    return true;
+  }
+
+  /**
+   * Sorts the kept entries by ascending distance in place. Further offers are not allowed until the
+   * next {@link #clear()}.
+   */
+  public void sort() {
+    for (int end = size - 1; end > 0; end--) {
+      int id = ids[end];
+      float distance = distances[end];
+      ids[end] = ids[0];
+      distances[end] = distances[0];
+      siftDown(0, end, id, distance);
+    }
+  }
+
+  /** Returns the id of the {@code i}-th entry, in ascending order after {@link #sort()}. */
+  public int getId(int i) {
+    return ids[i];
+  }
+
+  /** Returns the distance of the {@code i}-th entry, in ascending order after {@link #sort()}. */
+  public float getDistance(int i) {
+    return distances[i];
+  }
+
+  private void siftUp(int position, int id, float distance) {
+    while (position > 0) {
+      int parent = (position - 1) >>> 1;
+      if (!precedes(distances[parent], ids[parent], distance, id)) {
+        break;
+      }
+      ids[position] = ids[parent];
+      distances[position] = distances[parent];
+      position = parent;
+    }
+    ids[position] = id;
+    distances[position] = distance;
+  }
+
+  private void siftDown(int position, int end, int id, float distance) {
+    while (true) {
+      int child = 2 * position + 1;
+      if (child >= end) {
+        break;
+      }
+      if (child + 1 < end
+          && precedes(distances[child], ids[child], distances[child + 1], ids[child + 1])) {
+        child++;
+      }
+      if (!precedes(distance, id, distances[child], ids[child])) {
+        break;
+      }
+      ids[position] = ids[child];
+      distances[position] = distances[child];
+      position = child;
+    }
+    ids[position] = id;
+    distances[position] = distance;
+  }
+
+  private static boolean precedes(float distance, int id, float otherDistance, int otherId) {
+    return distance < otherDistance || (distance == otherDistance && id < otherId);
+  }
+}
@@ -0,0 +1,219 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbedding.LANDMARK_BUFFER_SIZE;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Replays a {@link LandmarkTrace} through a fresh {@link RepCountingPipeline} as fast as the CPU
+ * allows, timing every stage. The frame timestamps of the trace are the only clock, so a replay
+ * counts the same reps as the session it was recorded from, and as every other replay.
+ *
+ * <p>Runnable from the command line with an index written by the app's build and a trace recorded
+ * on a device: {@code TraceReplay <index> <trace> [rep classes...]}. It replays the trace twice,
+ * without and with the default {@link MotionGate}.
+ */
+public final class TraceReplay {
+  private TraceReplay() {}
+
+  /** Replays {@code trace} counting the reps of {@code repClasses} on samples of {@code store}. */
+  public static Report replay(
+      PoseEmbeddingStore store, List<String> repClasses, LandmarkTrace trace) {
+    return replay(store, repClasses, trace, null);
+  }
+
+  /**
+   * Same as {@link #replay(PoseEmbeddingStore, List, LandmarkTrace)}, skipping the classification
+   * of frames {@code motionGate} finds still, or of none if it is null.
+   */
+  public static Report replay(
+      PoseEmbeddingStore store,
+      List<String> repClasses,
+      LandmarkTrace trace,
+      MotionGate motionGate) {
+    RepCountingPipeline pipeline = new RepCountingPipeline(store, repClasses);
+    pipeline.setMotionGate(motionGate);
+    float[] landmarks = new float[LANDMARK_BUFFER_SIZE];
+    long classifyNanos = 0;
+    long smoothNanos = 0;
+    long countNanos = 0;
+    int posesFound = 0;
+    int classificationsReused = 0;
+    long start = System.nanoTime();
+    for (int frame = 0; frame < trace.size(); frame++) {
+      long timestampMs = trace.getTimestampMs(frame);
+      float[] frameLandmarks = null;
+      if (trace.isPoseFound(frame)) {
+        trace.copyLandmarks(frame, landmarks);
+        frameLandmarks = landmarks;
+        posesFound++;
+      }
+      long t0 = System.nanoTime();
+      pipeline.classify(frameLandmarks);
+      long t1 = System.nanoTime();
+      pipeline.smooth(timestampMs);
+      long t2 = System.nanoTime();
+      pipeline.countReps(timestampMs);
+      long t3 = System.nanoTime();
+      if (pipeline.isClassificationReused()) {
+        classificationsReused++;
+      }
+      classifyNanos += t1 - t0;
+      smoothNanos += t2 - t1;
+      countNanos += t3 - t2;
+    }
+    long totalNanos = System.nanoTime() - start;
+
+    Map<String, Integer> reps = new LinkedHashMap<>();
+    for (RepetitionCounter counter : pipeline.getRepCounters()) {
+      reps.put(counter.getClassName(), counter.getNumRepeats());
+    }
+    return new Report(
+        trace.size(),
+        posesFound,
+        classificationsReused,
+        reps,
+        classifyNanos,
+        smoothNanos,
+        countNanos,
+        totalNanos);
+  }
+
+  /** Outcome and cost of one replay. */
+  public static final class Report {
+    private final int frames;
+    private final int posesFound;
+    private final int classificationsReused;
+    private final Map<String, Integer> reps;
+    private final long classifyNanos;
+    private final long smoothNanos;
+    private final long countNanos;
+    private final long totalNanos;
+
+    Report(
+        int frames,
+        int posesFound,
+        int classificationsReused,
+        Map<String, Integer> reps,
+        long classifyNanos,
+        long smoothNanos,
+        long countNanos,
+        long totalNanos) {
+      this.frames = frames;
+      this.posesFound = posesFound;
+      this.classificationsReused = classificationsReused;
+      this.reps = Collections.unmodifiableMap(reps);
+      this.classifyNanos = classifyNanos;
+      this.smoothNanos = smoothNanos;
+      this.countNanos = countNanos;
+      this.totalNanos = totalNanos;
+    }
+
+    public int getFrames() {
+      return frames;
+    }
+
+    public int getPosesFound() {
+      return posesFound;
+    }
+
+    /** Returns how many frames with a pose reused the previous classification. */
+    public int getClassificationsReused() {
+      return classificationsReused;
+    }
+
+    /** Returns the reps counted per rep class, in counter order. */
+    public Map<String, Integer> getReps() {
+      return reps;
+    }
+
+    /** Returns the reps counted for {@code className}, 0 if it was not counted. */
+    public int getReps(String className) {
+      Integer count = reps.get(className);
+      return count == null ? 0 : count;
+    }
+
+    /** Returns the time spent embedding and classifying frames. */
+    public long getClassifyNanos() {
+      return classifyNanos;
+    }
+
+    /** Returns the time spent in EMA smoothing. */
+    public long getSmoothNanos() {
+      return smoothNanos;
+    }
+
+    /** Returns the time spent validating poses and counting reps. */
+    public long getCountNanos() {
+      return countNanos;
+    }
+
+    /** Returns the wall time of the whole replay, including reading frames out of the trace. */
+    public long getTotalNanos() {
+      return totalNanos;
+    }
+
+    /** Returns the frames replayed per second of wall time. */
+    public double getFramesPerSecond() {
+      return totalNanos == 0 ? 0 : frames * 1e9 / totalNanos;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US,
+          "%d frames (%d with a pose, %d classifications reused), reps %s%n"
+              + "classify %.1f us/frame, smooth %.1f us/frame, count %.1f us/frame%n"
+              + "total %.1f ms, %.0f frames/s",
+          frames,
+          posesFound,
+          classificationsReused,
+          reps,
+          perFrameMicros(classifyNanos),
+          perFrameMicros(smoothNanos),
+          perFrameMicros(countNanos),
+          totalNanos / 1e6,
+          getFramesPerSecond());
+    }
+
+    private double perFrameMicros(long nanos) {
+      return frames == 0 ? 0 : nanos / 1e3 / frames;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: TraceReplay <pose sample index> <landmark trace> [rep classes]");
+      System.exit(2);
+    }
+    PoseEmbeddingStore store;
+    try (RandomAccessFile file = new RandomAccessFile(args[0], "r")) {
+      store =
+          PoseSampleIndex.read(
+              file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length()),
+              PoseClassifier.defaultAxesWeights());
+    }
+    LandmarkTrace trace;
+    try (InputStream in = new FileInputStream(args[1])) {
+      trace = LandmarkTrace.read(in);
+    }
+    List<String> repClasses =
+        args.length > 2
+            ? Arrays.asList(args).subList(2, args.length)
+            : RepCountingPipeline.DEFAULT_REP_CLASSES;
+    System.out.println(replay(store, repClasses, trace));
+    MotionGate motionGate = new MotionGate();
+    System.out.println("With the default motion gate:");
+    System.out.println(replay(store, repClasses, trace, motionGate));
+  }
+}
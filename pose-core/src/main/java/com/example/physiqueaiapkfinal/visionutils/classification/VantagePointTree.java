@@ -0,0 +1,237 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.STRIDE;
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Vantage-point tree over the weighted embeddings of a {@link PoseEmbeddingStore}, answering the
+ * max distance stage of {@link PoseClassifierEngine} with sublinear expected work.
+ *
+ * <p>The metric is the weighted Chebyshev distance used by the classifier, and the query is
+ * mirrored: a sample's distance is the min of its distance to the original and the flipped pose. A
+ * subtree is skipped when the triangle inequality proves none of its samples can beat the current
+ * worst of the top-K for either query.
+ *
+ * <p>Results equal an exhaustive scan, including which samples win distance ties, since {@link
+ * TopKSelector} orders entries by distance and then by sample index. The tree is immutable, but
+ * {@link #search} uses per-instance scratch space, so share a tree only between searches that run
+ * on one thread.
+ */
+public class VantagePointTree {
+  // Samples per leaf. Below this size a linear scan is cheaper than another level.
+  private static final int LEAF_SIZE = 8;
+  // Relative slack applied to triangle inequality bounds so float rounding never prunes a subtree
+  // that holds a true neighbor.
+  private static final float BOUND_SLACK = 1e-5f;
+
+  private final float[] samples;
+  private final int numSamples;
+
+  // Sample indexes, permuted so that every node covers a contiguous range.
+  private final int[] order;
+
+  // Flat node arrays. An inner node has a vantage point and two children; a leaf scans
+  // order[start, end).
+  private final int[] vantagePoints;
+  private final int[] start;
+  private final int[] end;
+  private final int[] inside;
+  private final int[] outside;
+  // Distances from the vantage point to the samples of each child: inside in [0, insideMax],
+  // outside in [outsideMin, outsideMax].
+  private final float[] insideMax;
+  private final float[] outsideMin;
+  private final float[] outsideMax;
+  private int numNodes;
+
+  // Search scratch.
+  private final int[] stackNodes;
+  private final float[] stackBounds;
+  private long evaluatedCount;
+
+  /** @throws IllegalArgumentException if {@code store} is quantized. */
+  public VantagePointTree(PoseEmbeddingStore store) {
+    if (store.getPrecision() != PoseEmbeddingStore.Precision.FLOAT32) {
+      throw new IllegalArgumentException("Vantage-point trees need a FLOAT32 store");
+    }
+    this.samples = store.getWeightedEmbeddings();
+    this.numSamples = store.getNumSamples();
+    this.order = new int[numSamples];
+    for (int i = 0; i < numSamples; i++) {
+      order[i] = i;
+    }
+    int maxNodes = countNodes(numSamples);
+    vantagePoints = new int[maxNodes];
+    start = new int[maxNodes];
+    end = new int[maxNodes];
+    inside = new int[maxNodes];
+    outside = new int[maxNodes];
+    insideMax = new float[maxNodes];
+    outsideMin = new float[maxNodes];
+    outsideMax = new float[maxNodes];
+
+    int depth = build(0, numSamples, new float[numSamples], new Random(numSamples), 1);
+    stackNodes = new int[2 * depth + 2];
+    stackBounds = new float[2 * depth + 2];
+  }
+
+  /** Returns how many nodes {@link #build} creates for {@code size} samples. */
+  private static int countNodes(int size) {
+    if (size <= LEAF_SIZE) {
+      return 1;
+    }
+    int insideSize = (size - 1) / 2;
+    return 1 + countNodes(insideSize) + countNodes(size - 1 - insideSize);
+  }
+
+  /**
+   * Builds the subtree over {@code order[from, to)} and returns its depth. Median splits keep the
+   * tree balanced, so the depth is logarithmic in the number of samples.
+   */
+  private int build(int from, int to, float[] distances, Random random, int depth) {
+    int node = numNodes++;
+    start[node] = from;
+    end[node] = to;
+    inside[node] = -1;
+    outside[node] = -1;
+    if (to - from <= LEAF_SIZE) {
+      vantagePoints[node] = -1;
+      return depth;
+    }
+
+    swap(order, from, from + random.nextInt(to - from));
+    int vantagePoint = order[from];
+    vantagePoints[node] = vantagePoint;
+    for (int i = from + 1; i < to; i++) {
+      distances[i] = distance(vantagePoint, order[i]);
+    }
+    sortByDistance(from + 1, to, distances);
+
+    int middle = (from + 1 + to) >>> 1;
+    insideMax[node] = distances[middle - 1];
+    outsideMin[node] = distances[middle];
+    outsideMax[node] = distances[to - 1];
+    int insideDepth = build(from + 1, middle, distances, random, depth + 1);
+    inside[node] = node + 1;
+    outside[node] = numNodes;
+    int outsideDepth = build(middle, to, distances, random, depth + 1);
+    return max(insideDepth, outsideDepth);
+  }
+
+  private void sortByDistance(int from, int to, float[] distances) {
+    long[] keys = new long[to - from];
+    for (int i = from; i < to; i++) {
+      // Non-negative floats sort like their raw bits.
+      keys[i - from] = ((long) Float.floatToRawIntBits(distances[i]) << 32) | order[i];
+    }
+    Arrays.sort(keys);
+    for (int i = from; i < to; i++) {
+      order[i] = (int) keys[i - from];
+      distances[i] = Float.intBitsToFloat((int) (keys[i - from] >>> 32));
+    }
+  }
+
+  private float distance(int a, int b) {
+    int offsetA = a * STRIDE;
+    int offsetB = b * STRIDE;
+    float result = 0;
+    for (int i = 0; i < STRIDE; i++) {
+      result = max(result, abs(samples[offsetA + i] - samples[offsetB + i]));
+    }
+    return result;
+  }
+
+  private static void swap(int[] array, int i, int j) {
+    int tmp = array[i];
+    array[i] = array[j];
+    array[j] = tmp;
+  }
+
+  /**
+   * Finds the samples with the smallest mirrored max distance.
+   *
+   * @param query weighted query in the store's coordinate order.
+   * @param flippedQuery weighted mirrored query in the store's coordinate order.
+   * @param topK receives the closest samples. Its capacity is the K of the search.
+   */
+  public void search(float[] query, float[] flippedQuery, TopKSelector topK) {
+    if (numSamples == 0) {
+      return;
+    }
+    int stackSize = 0;
+    stackNodes[stackSize] = 0;
+    stackBounds[stackSize++] = 0;
+    while (stackSize > 0) {
+      int node = stackNodes[--stackSize];
+      float bound = stackBounds[stackSize];
+      if (bound > topK.threshold()) {
+        continue;
+      }
+
+      int vantagePoint = vantagePoints[node];
+      if (vantagePoint < 0) {
+        for (int i = start[node]; i < end[node]; i++) {
+          int sample = order[i];
+          topK.offer(sample, mirroredDistance(sample, query, flippedQuery));
+        }
+        continue;
+      }
+
+      float originalDistance = queryDistance(vantagePoint, query);
+      float flippedDistance = queryDistance(vantagePoint, flippedQuery);
+      topK.offer(vantagePoint, min(originalDistance, flippedDistance));
+
+      float insideBound = min(
+          shellBound(originalDistance, 0, insideMax[node]),
+          shellBound(flippedDistance, 0, insideMax[node]));
+      float outsideBound = min(
+          shellBound(originalDistance, outsideMin[node], outsideMax[node]),
+          shellBound(flippedDistance, outsideMin[node], outsideMax[node]));
+      // Push the farther child first so the nearer one is explored first and tightens the bound.
+      if (insideBound <= outsideBound) {
+        stackNodes[stackSize] = outside[node];
+        stackBounds[stackSize++] = outsideBound;
+        stackNodes[stackSize] = inside[node];
+        stackBounds[stackSize++] = insideBound;
+      } else {
+        stackNodes[stackSize] = inside[node];
+        stackBounds[stackSize++] = insideBound;
+        stackNodes[stackSize] = outside[node];
+        stackBounds[stackSize++] = outsideBound;
+      }
+    }
+  }
+
+  /**
+   * Lower bound on the distance from a query to any sample whose distance to the vantage point is
+   * in {@code [low, high]}, given the query's distance to the vantage point.
+   */
+  private static float shellBound(float queryDistance, float low, float high) {
+    float bound = max(low - queryDistance, queryDistance - high);
+    return bound <= 0 ? 0 : bound - BOUND_SLACK * (queryDistance + high);
+  }
+
+  private float mirroredDistance(int sample, float[] query, float[] flippedQuery) {
+    return min(queryDistance(sample, query), queryDistance(sample, flippedQuery));
+  }
+
+  private float queryDistance(int sample, float[] query) {
+    evaluatedCount++;
+    int offset = sample * STRIDE;
+    float result = 0;
+    for (int i = 0; i < STRIDE; i++) {
+      result = max(result, abs(samples[offset + i] - query[i]));
+    }
+    return result;
+  }
+
+  /** Returns how many sample to query distances were computed, counting each query separately. */
+  long getEvaluatedCount() {
+    return evaluatedCount;
+  }
+}
@@ -0,0 +1,89 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class ClassificationResultTest {
+  @Test
+  public void getMaxConfidenceClass_comparesFractionalConfidences() {
+    ClassificationResult result = new ClassificationResult();
+    result.putClassConfidence("squats_up", 2.4f);
+    result.putClassConfidence("squats_down", 2.6f);
+    result.putClassConfidence("neutral_standing", 0.5f);
+
+    // Truncating to int used to make the first two tie.
+    assertEquals("squats_down", result.getMaxConfidenceClass());
+  }
+
+  @Test
+  public void getMaxConfidenceClass_withoutClasses_isNull() {
+    ClassificationResult result = new ClassificationResult(new ClassDictionary("a", "b"));
+    assertNull(result.getMaxConfidenceClass());
+    assertEquals(-1, result.getMaxConfidenceClassId());
+  }
+
+  @Test
+  public void nameAdapters_matchClassIds() {
+    ClassDictionary dictionary = new ClassDictionary("pushups_down", "pushups_up", "sitting");
+    ClassificationResult result = new ClassificationResult(dictionary);
+    result.putClassConfidence("sitting", 0);
+    result.incrementClassConfidence("pushups_up");
+    result.incrementClassConfidence(1);
+
+    assertEquals(new HashSet<>(Arrays.asList("pushups_up", "sitting")), result.getAllClasses());
+    assertEquals(2f, result.getClassConfidence(1), 0);
+    assertEquals(2f, result.getClassConfidence("pushups_up"), 0);
+    assertEquals(0f, result.getClassConfidence("pushups_down"), 0);
+    assertEquals(0f, result.getClassConfidence("unknown"), 0);
+    assertTrue(result.hasClass(2));
+    assertFalse(result.hasClass(0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void putClassConfidence_outsideSharedDictionary_throws() {
+    new ClassificationResult(new ClassDictionary("a")).putClassConfidence("b", 1);
+  }
+
+  @Test
+  public void clear_allowsReuse() {
+    ClassificationResult result = new ClassificationResult(new ClassDictionary("a", "b"));
+    result.putClassConfidence(0, 3);
+    result.clear();
+    result.putClassConfidence(1, 1);
+
+    assertEquals(new HashSet<>(Arrays.asList("b")), result.getAllClasses());
+    assertEquals("b", result.getMaxConfidenceClass());
+  }
+
+  @Test
+  public void emaSmoothing_overSharedDictionary_matchesNameBasedSmoothing() {
+    ClassDictionary dictionary = new ClassDictionary("down", "up", "rest");
+    EMASmoothing byId = new EMASmoothing(dictionary);
+    EMASmoothing byName = new EMASmoothing();
+    ClassificationResult input = new ClassificationResult(dictionary);
+    ClassificationResult smoothed = new ClassificationResult(dictionary);
+    for (int frame = 0; frame < 50; frame++) {
+      input.clear();
+      input.putClassConfidence(frame % 3, frame % 11);
+      if (frame % 4 == 0) {
+        input.putClassConfidence((frame + 1) % 3, 1);
+      }
+      byId.getSmoothedResult(input, frame * 33L, smoothed);
+      ClassificationResult expected = byName.getSmoothedResult(input, frame * 33L);
+
+      assertEquals(expected.getAllClasses(), smoothed.getAllClasses());
+      for (String className : expected.getAllClasses()) {
+        assertEquals(
+            Float.floatToRawIntBits(expected.getClassConfidence(className)),
+            Float.floatToRawIntBits(smoothed.getClassConfidence(className)));
+      }
+    }
+  }
+}
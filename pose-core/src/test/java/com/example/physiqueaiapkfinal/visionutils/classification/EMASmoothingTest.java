@@ -0,0 +1,102 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class EMASmoothingTest {
+  private static final int WINDOW_SIZE = 10;
+  private static final float ALPHA = 0.2f;
+
+  /** Re-walks the whole window per class, like smoothing did before it became incremental. */
+  private static class ReferenceSmoothing {
+    private final Deque<ClassificationResult> window = new ArrayDeque<>();
+    private long lastInputMs;
+
+    ClassificationResult smooth(ClassificationResult result, long timestampMs) {
+      if (timestampMs - lastInputMs > 100) {
+        window.clear();
+      }
+      lastInputMs = timestampMs;
+      if (window.size() == WINDOW_SIZE) {
+        window.pollLast();
+      }
+      window.addFirst(result);
+
+      Set<String> allClasses = new HashSet<>();
+      for (ClassificationResult windowResult : window) {
+        allClasses.addAll(windowResult.getAllClasses());
+      }
+      ClassificationResult smoothed = new ClassificationResult();
+      for (String className : allClasses) {
+        float factor = 1;
+        float topSum = 0;
+        float bottomSum = 0;
+        for (ClassificationResult windowResult : window) {
+          topSum += factor * windowResult.getClassConfidence(className);
+          bottomSum += factor;
+          factor = (float) (factor * (1.0 - ALPHA));
+        }
+        smoothed.putClassConfidence(className, topSum / bottomSum);
+      }
+      return smoothed;
+    }
+  }
+
+  @Test
+  public void getSmoothedResult_matchesWindowedReference() {
+    Random random = new Random(23);
+    EMASmoothing smoothing = new EMASmoothing(WINDOW_SIZE, ALPHA);
+    ReferenceSmoothing reference = new ReferenceSmoothing();
+    long timestampMs = 1000;
+    for (int frame = 0; frame < 5000; frame++) {
+      // Mostly steady 30 fps, with an occasional gap that resets the window.
+      timestampMs += random.nextInt(50) == 0 ? 500 : 33;
+      ClassificationResult result = new ClassificationResult();
+      // More classes than the smoother's initial capacity, each present in some frames only.
+      for (int classId = 0; classId < 12; classId++) {
+        if (random.nextInt(3) == 0) {
+          result.putClassConfidence("class_" + classId, random.nextInt(11));
+        }
+      }
+
+      ClassificationResult expected = reference.smooth(result, timestampMs);
+      ClassificationResult actual = smoothing.getSmoothedResult(result, timestampMs);
+
+      assertEquals("classes of frame " + frame, expected.getAllClasses(), actual.getAllClasses());
+      for (String className : expected.getAllClasses()) {
+        assertEquals(
+            "frame " + frame + " " + className,
+            expected.getClassConfidence(className),
+            actual.getClassConfidence(className),
+            1e-4f);
+      }
+    }
+  }
+
+  @Test
+  public void getSmoothedResult_isDeterministicForTheSameTimestamps() {
+    ClassificationResult up = new ClassificationResult();
+    up.putClassConfidence("squats_up", 10);
+    ClassificationResult down = new ClassificationResult();
+    down.putClassConfidence("squats_down", 10);
+
+    EMASmoothing first = new EMASmoothing();
+    EMASmoothing second = new EMASmoothing();
+    for (int frame = 0; frame < 100; frame++) {
+      ClassificationResult result = frame % 7 < 3 ? up : down;
+      long timestampMs = frame * 33L;
+      ClassificationResult a = first.getSmoothedResult(result, timestampMs);
+      ClassificationResult b = second.getSmoothedResult(result, timestampMs);
+      assertEquals(
+          Float.floatToRawIntBits(a.getClassConfidence("squats_down")),
+          Float.floatToRawIntBits(b.getClassConfidence("squats_down")));
+    }
+  }
+}
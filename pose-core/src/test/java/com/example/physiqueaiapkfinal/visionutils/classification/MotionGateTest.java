@@ -0,0 +1,126 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbedding.LANDMARK_BUFFER_SIZE;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.NUM_DIMS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MotionGateTest {
+  // A torso of 160 px, so the default threshold is a move of 8 px.
+  private static final float TORSO = 160;
+
+  /** Standing pose with the hips center at (240, 340) and the shoulders center 160 px above. */
+  private static float[] standing() {
+    float[] pose = new float[LANDMARK_BUFFER_SIZE];
+    set(pose, LandmarkType.LEFT_SHOULDER, 200, 180);
+    set(pose, LandmarkType.RIGHT_SHOULDER, 280, 180);
+    set(pose, LandmarkType.LEFT_ELBOW, 190, 250);
+    set(pose, LandmarkType.RIGHT_ELBOW, 290, 250);
+    set(pose, LandmarkType.LEFT_WRIST, 185, 320);
+    set(pose, LandmarkType.RIGHT_WRIST, 295, 320);
+    set(pose, LandmarkType.LEFT_HIP, 215, 340);
+    set(pose, LandmarkType.RIGHT_HIP, 265, 340);
+    set(pose, LandmarkType.LEFT_KNEE, 215, 440);
+    set(pose, LandmarkType.RIGHT_KNEE, 265, 440);
+    set(pose, LandmarkType.LEFT_ANKLE, 215, 540);
+    set(pose, LandmarkType.RIGHT_ANKLE, 265, 540);
+    return pose;
+  }
+
+  private static void set(float[] pose, int landmark, float x, float y) {
+    pose[landmark * NUM_DIMS] = x;
+    pose[landmark * NUM_DIMS + 1] = y;
+  }
+
+  private static void move(float[] pose, int landmark, float dx, float dy) {
+    pose[landmark * NUM_DIMS] += dx;
+    pose[landmark * NUM_DIMS + 1] += dy;
+  }
+
+  @Test
+  public void stillPose_reusesUntilMaxSkipped() {
+    MotionGate gate = new MotionGate(MotionGate.DEFAULT_THRESHOLD, 5);
+    float[] pose = standing();
+    float[] jittered = new float[LANDMARK_BUFFER_SIZE];
+    Random random = new Random(1);
+
+    for (int frame = 0; frame < 13; frame++) {
+      for (int i = 0; i < LANDMARK_BUFFER_SIZE; i++) {
+        jittered[i] = pose[i] + (float) random.nextGaussian() * 0.5f;
+      }
+      assertEquals("frame " + frame, frame % 6 == 0, gate.shouldClassify(jittered));
+    }
+    assertEquals(13, gate.getFramesSeen());
+    assertEquals(10, gate.getFramesSkipped());
+    assertEquals(10 / 13.0, gate.getSkipRate(), 1e-9);
+  }
+
+  @Test
+  public void movedWrist_classifies() {
+    MotionGate gate = new MotionGate();
+    float[] pose = standing();
+    assertTrue(gate.shouldClassify(pose));
+
+    move(pose, LandmarkType.LEFT_WRIST, 0, -20);
+
+    assertTrue(gate.shouldClassify(pose));
+    assertEquals(20 / TORSO, gate.getLastMotion(), 1e-6f);
+  }
+
+  @Test
+  public void wholeBodyMove_isIgnored() {
+    MotionGate gate = new MotionGate();
+    float[] pose = standing();
+    assertTrue(gate.shouldClassify(pose));
+
+    for (int landmark = 0; landmark < LandmarkType.COUNT; landmark++) {
+      move(pose, landmark, 30, 15);
+    }
+
+    assertFalse(gate.shouldClassify(pose));
+  }
+
+  @Test
+  public void slowDrift_isMeasuredFromLastClassifiedFrame() {
+    MotionGate gate = new MotionGate();
+    float[] pose = standing();
+    assertTrue(gate.shouldClassify(pose));
+
+    // 3 px per frame stays under the 8 px threshold frame to frame.
+    move(pose, LandmarkType.RIGHT_WRIST, 0, -3);
+    assertFalse(gate.shouldClassify(pose));
+    move(pose, LandmarkType.RIGHT_WRIST, 0, -3);
+    assertFalse(gate.shouldClassify(pose));
+    move(pose, LandmarkType.RIGHT_WRIST, 0, -3);
+    assertTrue(gate.shouldClassify(pose));
+    move(pose, LandmarkType.RIGHT_WRIST, 0, -3);
+    assertFalse(gate.shouldClassify(pose));
+  }
+
+  @Test
+  public void collapsedTorso_alwaysClassifies() {
+    MotionGate gate = new MotionGate();
+    float[] pose = new float[LANDMARK_BUFFER_SIZE];
+
+    assertTrue(gate.shouldClassify(pose));
+    assertTrue(gate.shouldClassify(pose));
+    assertEquals(0, gate.getFramesSkipped());
+  }
+
+  @Test
+  public void reset_classifiesNextFrame() {
+    MotionGate gate = new MotionGate();
+    float[] pose = standing();
+    assertTrue(gate.shouldClassify(pose));
+    assertFalse(gate.shouldClassify(pose));
+
+    gate.reset();
+
+    assertTrue(gate.shouldClassify(pose));
+  }
+}
@@ -0,0 +1,173 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.NUM_DIMS;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.STRIDE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.physiqueaiapkfinal.visionutils.classification.PoseClassifierEngine.SearchMode;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class PoseClassifierEngineTest {
+  private static final int NUM_CLASSES = 6;
+  private static final int MAX_DISTANCE_TOP_K = 30;
+  private static final int MEAN_DISTANCE_TOP_K = 10;
+  private static final float[] AXES_WEIGHTS = {1, 1, 0.2f};
+
+  /**
+   * Builds a store of {@code numSamples} embeddings scattered around one random center per class.
+   * Every tenth sample duplicates an earlier one so that distance ties are exercised too.
+   */
+  static PoseEmbeddingStore syntheticStore(int numSamples, long seed) {
+    Random random = new Random(seed);
+    float[][] centers = new float[NUM_CLASSES][STRIDE];
+    for (float[] center : centers) {
+      for (int i = 0; i < STRIDE; i++) {
+        center[i] = (random.nextFloat() - 0.5f) * 100;
+      }
+    }
+    float[] embeddings = new float[numSamples * STRIDE];
+    int[] classIds = new int[numSamples];
+    for (int sample = 0; sample < numSamples; sample++) {
+      if (sample % 10 == 9) {
+        int source = random.nextInt(sample);
+        classIds[sample] = classIds[source];
+        System.arraycopy(embeddings, source * STRIDE, embeddings, sample * STRIDE, STRIDE);
+        continue;
+      }
+      classIds[sample] = random.nextInt(NUM_CLASSES);
+      for (int i = 0; i < STRIDE; i++) {
+        embeddings[sample * STRIDE + i] =
+            centers[classIds[sample]][i] + (float) random.nextGaussian() * 8;
+      }
+    }
+    String[] classNames = new String[NUM_CLASSES];
+    for (int i = 0; i < NUM_CLASSES; i++) {
+      classNames[i] = "class_" + i;
+    }
+    return new PoseEmbeddingStore(embeddings, classIds, classNames, AXES_WEIGHTS);
+  }
+
+  /** Returns a query embedding with every coordinate uniformly drawn from [-scale/2, scale/2). */
+  static float[] syntheticQuery(Random random, float scale) {
+    float[] query = new float[STRIDE];
+    for (int i = 0; i < STRIDE; i++) {
+      query[i] = (random.nextFloat() - 0.5f) * scale;
+    }
+    return query;
+  }
+
+  /** The mirrored pose of an embedding only differs by the sign of its x coordinates. */
+  static float[] flip(float[] embedding) {
+    float[] flipped = embedding.clone();
+    for (int i = 0; i < STRIDE; i += NUM_DIMS) {
+      flipped[i] = -flipped[i];
+    }
+    return flipped;
+  }
+
+  @Test
+  public void prunedSearch_isBitIdenticalToExhaustiveSearch() {
+    PoseEmbeddingStore store = syntheticStore(5000, 42);
+    PoseClassifierEngine exhaustive =
+        new PoseClassifierEngine(
+            store, MAX_DISTANCE_TOP_K, MEAN_DISTANCE_TOP_K, SearchMode.EXHAUSTIVE);
+    PoseClassifierEngine pruned =
+        new PoseClassifierEngine(store, MAX_DISTANCE_TOP_K, MEAN_DISTANCE_TOP_K, SearchMode.PRUNED);
+    int[] exhaustiveVotes = new int[NUM_CLASSES];
+    int[] prunedVotes = new int[NUM_CLASSES];
+
+    Random random = new Random(7);
+    for (int frame = 0; frame < 500; frame++) {
+      float[] query = syntheticQuery(random, frame % 2 == 0 ? 100 : 10);
+      float[] flipped = flip(query);
+
+      int exhaustiveCount = exhaustive.classify(query, flipped, exhaustiveVotes);
+      int prunedCount = pruned.classify(query, flipped, prunedVotes);
+
+      assertEquals(exhaustiveCount, prunedCount);
+      assertArrayEquals("votes of frame " + frame, exhaustiveVotes, prunedVotes);
+      for (int k = 0; k < exhaustiveCount; k++) {
+        assertEquals(exhaustive.getNeighborId(k), pruned.getNeighborId(k));
+        assertEquals(
+            Float.floatToRawIntBits(exhaustive.getNeighborDistance(k)),
+            Float.floatToRawIntBits(pruned.getNeighborDistance(k)));
+      }
+    }
+
+    assertEquals(0, exhaustive.getPrunedCount());
+    assertEquals(500L * store.getNumSamples(), exhaustive.getFullyEvaluatedCount());
+    assertEquals(
+        500L * store.getNumSamples(), pruned.getFullyEvaluatedCount() + pruned.getPrunedCount());
+    assertTrue("expected most samples to be pruned", pruned.getPrunedCount() > 250L * 5000);
+  }
+
+  @Test
+  public void vpTreeSearch_isBitIdenticalToExhaustiveSearch() {
+    PoseEmbeddingStore store = syntheticStore(3000, 11);
+    PoseClassifierEngine exhaustive =
+        new PoseClassifierEngine(
+            store, MAX_DISTANCE_TOP_K, MEAN_DISTANCE_TOP_K, SearchMode.EXHAUSTIVE);
+    PoseClassifierEngine tree =
+        new PoseClassifierEngine(store, MAX_DISTANCE_TOP_K, MEAN_DISTANCE_TOP_K, SearchMode.VP_TREE);
+    int[] exhaustiveVotes = new int[NUM_CLASSES];
+    int[] treeVotes = new int[NUM_CLASSES];
+
+    Random random = new Random(5);
+    for (int frame = 0; frame < 300; frame++) {
+      // Alternate far away queries with copies of stored samples, which hit exact ties.
+      float[] query =
+          frame % 2 == 0 ? syntheticQuery(random, 100) : storedSample(store, random.nextInt(3000));
+      float[] flipped = flip(query);
+
+      int exhaustiveCount = exhaustive.classify(query, flipped, exhaustiveVotes);
+      int treeCount = tree.classify(query, flipped, treeVotes);
+
+      assertEquals(exhaustiveCount, treeCount);
+      assertArrayEquals("votes of frame " + frame, exhaustiveVotes, treeVotes);
+      for (int k = 0; k < exhaustiveCount; k++) {
+        assertEquals(exhaustive.getNeighborId(k), tree.getNeighborId(k));
+        assertEquals(
+            Float.floatToRawIntBits(exhaustive.getNeighborDistance(k)),
+            Float.floatToRawIntBits(tree.getNeighborDistance(k)));
+      }
+    }
+    assertEquals(
+        300L * store.getNumSamples(), tree.getFullyEvaluatedCount() + tree.getPrunedCount());
+  }
+
+  /** Returns the unweighted embedding of a stored sample, in embedding coordinate order. */
+  private static float[] storedSample(PoseEmbeddingStore store, int sample) {
+    float[] weighted = store.getWeightedEmbeddings();
+    int[] coordinateOrder = store.getCoordinateOrder();
+    float[] axesWeights = store.getAxesWeights();
+    float[] embedding = new float[STRIDE];
+    for (int i = 0; i < STRIDE; i++) {
+      int coordinate = coordinateOrder[i];
+      embedding[coordinate] =
+          weighted[sample * STRIDE + i] / axesWeights[coordinate % NUM_DIMS];
+    }
+    return embedding;
+  }
+
+  @Test
+  public void classify_withFewerSamplesThanTopK_votesForEverySample() {
+    PoseEmbeddingStore store = syntheticStore(4, 1);
+    float[] query = syntheticQuery(new Random(3), 100);
+    for (SearchMode searchMode : SearchMode.values()) {
+      PoseClassifierEngine engine =
+          new PoseClassifierEngine(store, MAX_DISTANCE_TOP_K, MEAN_DISTANCE_TOP_K, searchMode);
+      int[] votes = new int[NUM_CLASSES];
+
+      assertEquals(4, engine.classify(query, flip(query), votes));
+      int total = 0;
+      for (int vote : votes) {
+        total += vote;
+      }
+      assertEquals(searchMode.name(), 4, total);
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbedding.LANDMARK_BUFFER_SIZE;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbedding.NUM_LANDMARKS;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.NUM_DIMS;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.STRIDE;
+import static com.example.physiqueaiapkfinal.visionutils.classification.Utils.average;
+import static com.example.physiqueaiapkfinal.visionutils.classification.Utils.l2Norm2D;
+import static com.example.physiqueaiapkfinal.visionutils.classification.Utils.multiplyAll;
+import static com.example.physiqueaiapkfinal.visionutils.classification.Utils.subtract;
+import static com.example.physiqueaiapkfinal.visionutils.classification.Utils.subtractAll;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PoseEmbeddingTest {
+  private static final int CALLS = 100_000;
+
+  /** The {@link Point3D} based embedding the fused routine replaced, kept as a reference. */
+  private static List<Point3D> referenceEmbedding(List<Point3D> landmarks) {
+    List<Point3D> lm = new ArrayList<>(landmarks);
+    Point3D center =
+        average(landmarks.get(LandmarkType.LEFT_HIP), landmarks.get(LandmarkType.RIGHT_HIP));
+    subtractAll(center, lm);
+
+    Point3D hipsCenter = average(lm.get(LandmarkType.LEFT_HIP), lm.get(LandmarkType.RIGHT_HIP));
+    Point3D shouldersCenter =
+        average(lm.get(LandmarkType.LEFT_SHOULDER), lm.get(LandmarkType.RIGHT_SHOULDER));
+    float maxDistance = l2Norm2D(subtract(hipsCenter, shouldersCenter)) * 2.5f;
+    for (Point3D landmark : lm) {
+      maxDistance = Math.max(maxDistance, l2Norm2D(subtract(hipsCenter, landmark)));
+    }
+    multiplyAll(lm, 1 / maxDistance);
+    multiplyAll(lm, 100);
+
+    int[] pairs = {
+      LandmarkType.LEFT_SHOULDER, LandmarkType.LEFT_ELBOW,
+      LandmarkType.RIGHT_SHOULDER, LandmarkType.RIGHT_ELBOW,
+      LandmarkType.LEFT_ELBOW, LandmarkType.LEFT_WRIST,
+      LandmarkType.RIGHT_ELBOW, LandmarkType.RIGHT_WRIST,
+      LandmarkType.LEFT_HIP, LandmarkType.LEFT_KNEE,
+      LandmarkType.RIGHT_HIP, LandmarkType.RIGHT_KNEE,
+      LandmarkType.LEFT_KNEE, LandmarkType.LEFT_ANKLE,
+      LandmarkType.RIGHT_KNEE, LandmarkType.RIGHT_ANKLE,
+      LandmarkType.LEFT_SHOULDER, LandmarkType.LEFT_WRIST,
+      LandmarkType.RIGHT_SHOULDER, LandmarkType.RIGHT_WRIST,
+      LandmarkType.LEFT_HIP, LandmarkType.LEFT_ANKLE,
+      LandmarkType.RIGHT_HIP, LandmarkType.RIGHT_ANKLE,
+      LandmarkType.LEFT_HIP, LandmarkType.LEFT_WRIST,
+      LandmarkType.RIGHT_HIP, LandmarkType.RIGHT_WRIST,
+      LandmarkType.LEFT_SHOULDER, LandmarkType.LEFT_ANKLE,
+      LandmarkType.RIGHT_SHOULDER, LandmarkType.RIGHT_ANKLE,
+      LandmarkType.LEFT_HIP, LandmarkType.LEFT_WRIST,
+      LandmarkType.RIGHT_HIP, LandmarkType.RIGHT_WRIST,
+      LandmarkType.LEFT_ELBOW, LandmarkType.RIGHT_ELBOW,
+      LandmarkType.LEFT_KNEE, LandmarkType.RIGHT_KNEE,
+      LandmarkType.LEFT_WRIST, LandmarkType.RIGHT_WRIST,
+      LandmarkType.LEFT_ANKLE, LandmarkType.RIGHT_ANKLE
+    };
+    List<Point3D> embedding = new ArrayList<>();
+    embedding.add(subtract(
+        average(lm.get(LandmarkType.LEFT_HIP), lm.get(LandmarkType.RIGHT_HIP)),
+        average(lm.get(LandmarkType.LEFT_SHOULDER), lm.get(LandmarkType.RIGHT_SHOULDER))));
+    for (int i = 0; i < pairs.length; i += 2) {
+      embedding.add(subtract(lm.get(pairs[i]), lm.get(pairs[i + 1])));
+    }
+    return embedding;
+  }
+
+  private static List<Point3D> randomLandmarks(Random random) {
+    List<Point3D> landmarks = new ArrayList<>();
+    for (int i = 0; i < NUM_LANDMARKS; i++) {
+      landmarks.add(
+          Point3D.from(
+              random.nextFloat() * 480, random.nextFloat() * 640, random.nextFloat() * 200 - 100));
+    }
+    return landmarks;
+  }
+
+  private static void assertBitIdentical(String message, float expected, float actual) {
+    // Mirroring a zero may flip its sign, which no distance can tell apart.
+    if (expected == 0 && actual == 0) {
+      return;
+    }
+    assertEquals(message, Float.floatToRawIntBits(expected), Float.floatToRawIntBits(actual));
+  }
+
+  @Test
+  public void getPoseEmbedding_matchesReferenceForOriginalAndMirroredPose() {
+    Random random = new Random(17);
+    float[] landmarks = new float[LANDMARK_BUFFER_SIZE];
+    float[] embedding = new float[STRIDE];
+    float[] flippedEmbedding = new float[STRIDE];
+    for (int pose = 0; pose < 1000; pose++) {
+      List<Point3D> positions = randomLandmarks(random);
+      List<Point3D> flippedPositions = new ArrayList<>(positions);
+      multiplyAll(flippedPositions, Point3D.from(-1, 1, 1));
+
+      PoseEmbedding.copyLandmarks(positions, landmarks);
+      PoseEmbedding.getPoseEmbedding(landmarks, embedding, flippedEmbedding);
+
+      List<Point3D> expected = referenceEmbedding(positions);
+      List<Point3D> expectedFlipped = referenceEmbedding(flippedPositions);
+      for (int i = 0; i < expected.size(); i++) {
+        String message = "pose " + pose + " point " + i;
+        assertBitIdentical(message, expected.get(i).getX(), embedding[i * NUM_DIMS]);
+        assertBitIdentical(message, expected.get(i).getY(), embedding[i * NUM_DIMS + 1]);
+        assertBitIdentical(message, expected.get(i).getZ(), embedding[i * NUM_DIMS + 2]);
+        assertBitIdentical(message, expectedFlipped.get(i).getX(), flippedEmbedding[i * NUM_DIMS]);
+        assertBitIdentical(
+            message, expectedFlipped.get(i).getY(), flippedEmbedding[i * NUM_DIMS + 1]);
+        assertBitIdentical(
+            message, expectedFlipped.get(i).getZ(), flippedEmbedding[i * NUM_DIMS + 2]);
+      }
+    }
+  }
+
+  /**
+   * Runs the fused embedding in a hot loop and checks it never allocates. Its speed is measured by
+   * PoseStreamBenchmark.
+   */
+  @Test
+  public void getPoseEmbedding_doesNotAllocate() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    assumeTrue(
+        "thread allocation counters unavailable",
+        threads instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported());
+    com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+    long thread = Thread.currentThread().getId();
+
+    float[] landmarks = new float[LANDMARK_BUFFER_SIZE];
+    PoseEmbedding.copyLandmarks(randomLandmarks(new Random(3)), landmarks);
+    float[] embedding = new float[STRIDE];
+    float[] flippedEmbedding = new float[STRIDE];
+    // Warm up so the measured loop runs compiled code.
+    for (int i = 0; i < CALLS; i++) {
+      PoseEmbedding.getPoseEmbedding(landmarks, embedding, flippedEmbedding);
+    }
+
+    long bytesBefore = allocations.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < CALLS; i++) {
+      landmarks[i % LANDMARK_BUFFER_SIZE] += 1e-3f;
+      PoseEmbedding.getPoseEmbedding(landmarks, embedding, flippedEmbedding);
+    }
+    long bytes = allocations.getThreadAllocatedBytes(thread) - bytesBefore;
+
+    // Allow for the counter query itself, but not for a single object per call.
+    assertEquals("bytes allocated per call", 0, bytes / CALLS);
+  }
+}
@@ -0,0 +1,101 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.STRIDE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class PoseSampleIndexTest {
+  private static final float[] AXES_WEIGHTS = {1, 1, 1};
+  private static final String[] CLASS_NAMES = {"squats_down", "squats_up", "pushups_down"};
+  private static final int[] SHARD_SIZES = {2, 3, 4};
+
+  /**
+   * Writes an index like the {@code compilePoseSampleIndex} task does. Every coordinate of a
+   * sample holds its class id times 100 plus its index within the shard.
+   */
+  private static ByteBuffer index(int[] shardStarts) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(PoseSampleIndex.MAGIC);
+    out.writeInt(PoseSampleIndex.VERSION);
+    out.writeInt(PoseEmbeddingStore.EMBEDDING_SIZE);
+    out.writeInt(PoseEmbeddingStore.NUM_DIMS);
+    out.writeInt(CLASS_NAMES.length);
+    for (String className : CLASS_NAMES) {
+      byte[] name = className.getBytes(StandardCharsets.UTF_8);
+      out.writeShort(name.length);
+      out.write(name);
+    }
+    while (out.size() % 4 != 0) {
+      out.writeByte(0);
+    }
+    int numSamples = 0;
+    for (int i = 0; i < CLASS_NAMES.length; i++) {
+      out.writeInt(shardStarts[i]);
+      out.writeInt(SHARD_SIZES[i]);
+      numSamples += SHARD_SIZES[i];
+    }
+    out.writeInt(numSamples);
+    for (int classId = 0; classId < CLASS_NAMES.length; classId++) {
+      for (int sample = 0; sample < SHARD_SIZES[classId]; sample++) {
+        for (int i = 0; i < STRIDE; i++) {
+          out.writeFloat(classId * 100 + sample);
+        }
+      }
+    }
+    return ByteBuffer.wrap(bytes.toByteArray());
+  }
+
+  private static ByteBuffer index() throws IOException {
+    return index(new int[] {0, 2, 5});
+  }
+
+  @Test
+  public void read_withoutClassNames_loadsEveryShard() throws IOException {
+    PoseEmbeddingStore store = PoseSampleIndex.read(index(), AXES_WEIGHTS);
+
+    assertEquals(9, store.getNumSamples());
+    assertEquals(3, store.getNumClasses());
+    for (int sample = 0; sample < store.getNumSamples(); sample++) {
+      float value = store.getWeightedEmbeddings()[sample * STRIDE];
+      assertEquals(CLASS_NAMES[(int) value / 100], store.getClassName(store.getClassId(sample)));
+    }
+  }
+
+  @Test
+  public void read_withClassNames_loadsOnlyTheirShards() throws IOException {
+    PoseEmbeddingStore store =
+        PoseSampleIndex.read(
+            index(), AXES_WEIGHTS, Arrays.asList("pushups_down", "squats_down", "walking"));
+
+    assertEquals(6, store.getNumSamples());
+    assertEquals(2, store.getNumClasses());
+    assertEquals("squats_down", store.getClassName(0));
+    assertEquals("pushups_down", store.getClassName(1));
+    float[] embeddings = store.getWeightedEmbeddings();
+    float[] expected = {0, 1, 200, 201, 202, 203};
+    for (int sample = 0; sample < expected.length; sample++) {
+      assertEquals(expected[sample], embeddings[sample * STRIDE], 0);
+      assertEquals(sample < 2 ? 0 : 1, store.getClassId(sample));
+    }
+  }
+
+  @Test
+  public void read_withOverlappingShards_throws() throws IOException {
+    try {
+      PoseSampleIndex.read(index(new int[] {0, 1, 5}), AXES_WEIGHTS);
+      fail("expected an IOException");
+    } catch (IOException expected) {
+      // Expected.
+    }
+  }
+}
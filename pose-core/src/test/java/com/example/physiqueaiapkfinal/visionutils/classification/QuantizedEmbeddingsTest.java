@@ -0,0 +1,167 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.STRIDE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.example.physiqueaiapkfinal.visionutils.classification.PoseClassifierEngine.SearchMode;
+import com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.Precision;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class QuantizedEmbeddingsTest {
+  private static final float[] AXES_WEIGHTS = {1, 1, 0.2f};
+  private static final int NUM_CLASSES = 6;
+
+  /** Samples scattered around one random center per class. */
+  private static PoseEmbeddingStore store(Random random, int numSamples) {
+    float[][] centers = new float[NUM_CLASSES][STRIDE];
+    for (float[] center : centers) {
+      for (int i = 0; i < STRIDE; i++) {
+        center[i] = random.nextFloat() * 2 - 1;
+      }
+    }
+    float[] embeddings = new float[numSamples * STRIDE];
+    int[] classIds = new int[numSamples];
+    String[] classNames = new String[NUM_CLASSES];
+    for (int c = 0; c < NUM_CLASSES; c++) {
+      classNames[c] = "class_" + c;
+    }
+    for (int sample = 0; sample < numSamples; sample++) {
+      classIds[sample] = sample % NUM_CLASSES;
+      for (int i = 0; i < STRIDE; i++) {
+        embeddings[sample * STRIDE + i] =
+            centers[classIds[sample]][i] + (float) random.nextGaussian() * 0.3f;
+      }
+    }
+    return new PoseEmbeddingStore(embeddings, classIds, classNames, AXES_WEIGHTS);
+  }
+
+  @Test
+  public void half_roundTripsEveryFiniteValue() {
+    for (int bits = 0; bits < 0x10000; bits++) {
+      if ((bits & 0x7c00) == 0x7c00) {
+        continue; // Infinities and NaNs.
+      }
+      short half = (short) bits;
+      assertEquals(bits, QuantizedEmbeddings.toHalf(QuantizedEmbeddings.fromHalf(half)) & 0xFFFF);
+    }
+  }
+
+  @Test
+  public void half_readsKnownValues() {
+    assertEquals(1f, QuantizedEmbeddings.fromHalf((short) 0x3c00), 0);
+    assertEquals(-2f, QuantizedEmbeddings.fromHalf((short) 0xc000), 0);
+    assertEquals(65504f, QuantizedEmbeddings.fromHalf((short) 0x7bff), 0);
+    assertEquals(0x1p-24f, QuantizedEmbeddings.fromHalf((short) 0x0001), 0);
+    // Ties round to the even mantissa.
+    assertEquals(0x3c00, QuantizedEmbeddings.toHalf(1 + 0x1p-11f));
+    assertEquals(0x3c02, QuantizedEmbeddings.toHalf(1 + 3 * 0x1p-11f));
+  }
+
+  @Test
+  public void quantize_boundsErrorPerCoordinateRange() {
+    PoseEmbeddingStore store = store(new Random(1), 500);
+    float[] exact = new float[STRIDE];
+    float[] approximate = new float[STRIDE];
+    float[] min = new float[STRIDE];
+    float[] max = new float[STRIDE];
+    Arrays.fill(min, Float.POSITIVE_INFINITY);
+    Arrays.fill(max, Float.NEGATIVE_INFINITY);
+    for (int sample = 0; sample < store.getNumSamples(); sample++) {
+      store.copyWeightedEmbedding(sample, exact);
+      for (int i = 0; i < STRIDE; i++) {
+        min[i] = Math.min(min[i], exact[i]);
+        max[i] = Math.max(max[i], exact[i]);
+      }
+    }
+
+    for (Precision precision : new Precision[] {Precision.FP16, Precision.INT8}) {
+      PoseEmbeddingStore quantized = store.quantize(precision);
+      for (int sample = 0; sample < store.getNumSamples(); sample++) {
+        store.copyWeightedEmbedding(sample, exact);
+        quantized.copyWeightedEmbedding(sample, approximate);
+        for (int i = 0; i < STRIDE; i++) {
+          float halfRange = (max[i] - min[i]) / 2;
+          // Half a step of the stored type, plus float rounding.
+          float step = precision == Precision.INT8 ? halfRange / 127 : halfRange * 0x1p-10f;
+          float bound = step / 2 + 1e-6f;
+          assertTrue(
+              precision + " error at " + i, Math.abs(exact[i] - approximate[i]) <= bound);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void quantize_shrinksSamples() {
+    PoseEmbeddingStore store = store(new Random(2), 1000);
+
+    PoseEmbeddingStore fp16 = store.quantize(Precision.FP16);
+    PoseEmbeddingStore int8 = store.quantize(Precision.INT8);
+
+    assertEquals(1000L * STRIDE * 4, store.getSampleSizeBytes());
+    assertEquals(1000L * STRIDE * 2 + 2 * STRIDE * 4, fp16.getSampleSizeBytes());
+    assertEquals(1000L * STRIDE + 2 * STRIDE * 4, int8.getSampleSizeBytes());
+    assertSame(store.getClassDictionary(), int8.getClassDictionary());
+    assertSame(store, store.quantize(Precision.FLOAT32));
+  }
+
+  @Test
+  public void quantizedSearch_prunedMatchesExhaustive() {
+    Random random = new Random(3);
+    PoseEmbeddingStore store = store(random, 2000).quantize(Precision.INT8);
+    PoseClassifierEngine exhaustive =
+        new PoseClassifierEngine(store, 30, 10, SearchMode.EXHAUSTIVE);
+    PoseClassifierEngine pruned = new PoseClassifierEngine(store, 30, 10, SearchMode.PRUNED);
+    int[] exhaustiveVotes = new int[NUM_CLASSES];
+    int[] prunedVotes = new int[NUM_CLASSES];
+    float[] embedding = new float[STRIDE];
+    float[] flippedEmbedding = new float[STRIDE];
+
+    for (int q = 0; q < 200; q++) {
+      for (int i = 0; i < STRIDE; i++) {
+        embedding[i] = random.nextFloat() * 2 - 1;
+        flippedEmbedding[i] = i % 3 == 0 ? -embedding[i] : embedding[i];
+      }
+      exhaustive.classify(embedding, flippedEmbedding, exhaustiveVotes);
+      pruned.classify(embedding, flippedEmbedding, prunedVotes);
+      assertArrayEquals(exhaustiveVotes, prunedVotes);
+      for (int k = 0; k < 10; k++) {
+        assertEquals(exhaustive.getNeighborId(k), pruned.getNeighborId(k));
+      }
+    }
+    assertTrue(pruned.getPrunedCount() > 0);
+  }
+
+  @Test
+  public void report_quantizedStoresClassifyLikeFloat() {
+    PoseEmbeddingStore store = store(new Random(4), 3000);
+
+    QuantizationReport fp16 =
+        QuantizationReport.compare(store, Precision.FP16, 2000, new Random(5));
+    QuantizationReport int8 =
+        QuantizationReport.compare(store, Precision.INT8, 2000, new Random(5));
+
+    assertTrue(fp16.toString(), fp16.getTopClassAgreement() >= 0.999);
+    assertTrue(int8.toString(), int8.getTopClassAgreement() >= 0.99);
+  }
+
+  @Test
+  public void vpTree_rejectsQuantizedStore() {
+    PoseEmbeddingStore store = store(new Random(6), 100).quantize(Precision.FP16);
+
+    try {
+      new PoseClassifierEngine(store, 30, 10, SearchMode.VP_TREE);
+      fail("expected an IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+  }
+}
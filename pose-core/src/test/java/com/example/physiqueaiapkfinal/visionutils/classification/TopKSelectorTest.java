@@ -0,0 +1,62 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TopKSelectorTest {
+  @Test
+  public void offer_keepsSmallestDistancesThenSmallestIds() {
+    Random random = new Random(9);
+    TopKSelector selector = new TopKSelector(30);
+    for (int round = 0; round < 200; round++) {
+      int count = random.nextInt(100);
+      long[] expected = new long[count];
+      selector.clear();
+      for (int id = 0; id < count; id++) {
+        // Few distinct distances, so ties are common.
+        float distance = random.nextInt(20);
+        expected[id] = ((long) Float.floatToRawIntBits(distance) << 32) | id;
+        selector.offer(id, distance);
+      }
+      Arrays.sort(expected);
+      selector.sort();
+
+      assertEquals(Math.min(count, 30), selector.size());
+      for (int k = 0; k < selector.size(); k++) {
+        assertEquals((int) expected[k], selector.getId(k));
+        assertEquals(
+            Float.intBitsToFloat((int) (expected[k] >>> 32)), selector.getDistance(k), 0);
+      }
+    }
+  }
+
+  @Test
+  public void threshold_isInfiniteUntilFull() {
+    TopKSelector selector = new TopKSelector(2);
+    assertEquals(Float.POSITIVE_INFINITY, selector.threshold(), 0);
+    selector.offer(7, 5f);
+    assertEquals(Float.POSITIVE_INFINITY, selector.threshold(), 0);
+    selector.offer(3, 2f);
+    assertEquals(5f, selector.threshold(), 0);
+
+    assertFalse(selector.offer(9, 5f));
+    assertTrue(selector.offer(1, 5f));
+    assertEquals(5f, selector.threshold(), 0);
+    assertTrue(selector.offer(4, 1f));
+    assertEquals(2f, selector.threshold(), 0);
+  }
+
+  @Test
+  public void offer_withZeroCapacity_keepsNothing() {
+    TopKSelector selector = new TopKSelector(0);
+    assertFalse(selector.offer(0, 0f));
+    assertEquals(0, selector.size());
+    assertEquals(Float.NEGATIVE_INFINITY, selector.threshold(), 0);
+  }
+}
@@ -0,0 +1,208 @@
+package com.example.physiqueaiapkfinal.visionutils.classification;
+
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbedding.LANDMARK_BUFFER_SIZE;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.NUM_DIMS;
+import static com.example.physiqueaiapkfinal.visionutils.classification.PoseEmbeddingStore.STRIDE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TraceReplayTest {
+  private static final float[] AXES_WEIGHTS = {1, 1, 0.2f};
+  private static final List<String> REP_CLASSES =
+      Arrays.asList(
+          RepCountingPipeline.WINDMILL_LEFT_CLASS, RepCountingPipeline.WINDMILL_RIGHT_CLASS);
+  private static final int FPS = 30;
+  // Frame timestamps are on the device's uptime clock, which is well past 0 by the first frame.
+  private static final long START_MS = 3_600_000;
+  // Frames of one windmill rep on each side: hold left, swing, hold right, swing back.
+  private static final int PERIOD_FRAMES = 2 * FPS;
+  private static final int HOLD_FRAMES = 20;
+  private static final int SWING_FRAMES = 10;
+
+  // Stick figure standing in a 480x640 frame, arms hanging, indexed by LandmarkType.
+  private static final float[][] STANDING = {
+    {240, 100}, {230, 90}, {225, 90}, {220, 90}, {250, 90}, {255, 90}, {260, 90},
+    {210, 95}, {270, 95}, {232, 115}, {248, 115},
+    {200, 180}, {280, 180}, {190, 250}, {290, 250}, {185, 320}, {295, 320},
+    {183, 330}, {297, 330}, {185, 332}, {295, 332}, {188, 328}, {292, 328},
+    {215, 340}, {265, 340}, {215, 440}, {265, 440}, {215, 540}, {265, 540},
+    {210, 550}, {270, 550}, {225, 560}, {255, 560},
+  };
+  private static final int[] LEFT_ARM = {
+    LandmarkType.LEFT_ELBOW, LandmarkType.LEFT_WRIST, LandmarkType.LEFT_PINKY,
+    LandmarkType.LEFT_INDEX, LandmarkType.LEFT_THUMB
+  };
+  private static final int[] RIGHT_ARM = {
+    LandmarkType.RIGHT_ELBOW, LandmarkType.RIGHT_WRIST, LandmarkType.RIGHT_PINKY,
+    LandmarkType.RIGHT_INDEX, LandmarkType.RIGHT_THUMB
+  };
+
+  /** Windmill to the left: left arm straight up, torso bent so the right hand is below the hips. */
+  private static float[] windmill(boolean left) {
+    float[] pose = new float[LANDMARK_BUFFER_SIZE];
+    for (int i = 0; i < LandmarkType.COUNT; i++) {
+      pose[i * NUM_DIMS] = STANDING[i][0];
+      pose[i * NUM_DIMS + 1] = STANDING[i][1];
+    }
+    int[] upArm = left ? LEFT_ARM : RIGHT_ARM;
+    int[] downArm = left ? RIGHT_ARM : LEFT_ARM;
+    for (int i = 0; i < upArm.length; i++) {
+      // Elbow first, then the wrist and the hand.
+      pose[upArm[i] * NUM_DIMS + 1] = i == 0 ? 110 : 40;
+      pose[downArm[i] * NUM_DIMS + 1] = i == 0 ? 320 : 420;
+    }
+    return pose;
+  }
+
+  /** Jittered samples of both windmill sides and of standing still. */
+  private static PoseEmbeddingStore store(Random random) {
+    float[][] keyPoses = {windmill(true), windmill(false), windmill(true)};
+    for (int i = 0; i < LandmarkType.COUNT; i++) {
+      keyPoses[2][i * NUM_DIMS + 1] = STANDING[i][1];
+    }
+    String[] classNames = {
+      RepCountingPipeline.WINDMILL_LEFT_CLASS,
+      RepCountingPipeline.WINDMILL_RIGHT_CLASS,
+      "neutral_standing"
+    };
+    int numSamples = 90;
+    float[] embeddings = new float[numSamples * STRIDE];
+    int[] classIds = new int[numSamples];
+    float[] landmarks = new float[LANDMARK_BUFFER_SIZE];
+    float[] embedding = new float[STRIDE];
+    float[] flippedEmbedding = new float[STRIDE];
+    for (int sample = 0; sample < numSamples; sample++) {
+      classIds[sample] = sample % keyPoses.length;
+      jitter(random, keyPoses[classIds[sample]], 6, landmarks);
+      PoseEmbedding.getPoseEmbedding(landmarks, embedding, flippedEmbedding);
+      System.arraycopy(embedding, 0, embeddings, sample * STRIDE, STRIDE);
+    }
+    return new PoseEmbeddingStore(embeddings, classIds, classNames, AXES_WEIGHTS);
+  }
+
+  /** Records {@code numFrames} of alternating windmills at 30 fps with detector jitter. */
+  private static LandmarkTrace workout(Random random, int numFrames) {
+    float[] left = windmill(true);
+    float[] right = windmill(false);
+    float[] pose = new float[LANDMARK_BUFFER_SIZE];
+    float[] landmarks = new float[LANDMARK_BUFFER_SIZE];
+    float[] likelihoods = new float[LandmarkType.COUNT];
+    Arrays.fill(likelihoods, 0.99f);
+    LandmarkTrace trace = new LandmarkTrace();
+    for (int frame = 0; frame < numFrames; frame++) {
+      int phase = frame % PERIOD_FRAMES;
+      float swing;
+      if (phase < HOLD_FRAMES) {
+        swing = 0;
+      } else if (phase < HOLD_FRAMES + SWING_FRAMES) {
+        swing = (phase - HOLD_FRAMES + 1f) / SWING_FRAMES;
+      } else if (phase < 2 * HOLD_FRAMES + SWING_FRAMES) {
+        swing = 1;
+      } else {
+        swing = 1 - (phase - 2 * HOLD_FRAMES - SWING_FRAMES + 1f) / SWING_FRAMES;
+      }
+      for (int i = 0; i < LANDMARK_BUFFER_SIZE; i++) {
+        pose[i] = left[i] + (right[i] - left[i]) * swing;
+      }
+      jitter(random, pose, 2, landmarks);
+      trace.add(START_MS + frame * 1000L / FPS, landmarks, likelihoods);
+    }
+    return trace;
+  }
+
+  private static void jitter(Random random, float[] pose, float sigma, float[] out) {
+    for (int i = 0; i < LANDMARK_BUFFER_SIZE; i++) {
+      out[i] = pose[i] + (float) random.nextGaussian() * sigma;
+    }
+  }
+
+  @Test
+  public void tenMinuteWorkout_countsEveryRep() throws IOException {
+    PoseEmbeddingStore store = store(new Random(1));
+    LandmarkTrace trace = workout(new Random(2), 10 * 60 * FPS);
+
+    TraceReplay.Report report = TraceReplay.replay(store, REP_CLASSES, trace);
+
+    assertEquals(18000, report.getFrames());
+    assertEquals(18000, report.getPosesFound());
+    assertEquals(300, report.getReps(RepCountingPipeline.WINDMILL_LEFT_CLASS));
+    assertEquals(300, report.getReps(RepCountingPipeline.WINDMILL_RIGHT_CLASS));
+    assertTrue(report.getFramesPerSecond() > 0);
+  }
+
+  @Test
+  public void replay_isDeterministic() throws IOException {
+    PoseEmbeddingStore store = store(new Random(3));
+    LandmarkTrace trace = workout(new Random(4), 3 * 60 * FPS);
+
+    TraceReplay.Report first = TraceReplay.replay(store, REP_CLASSES, trace);
+    TraceReplay.Report second = TraceReplay.replay(store, REP_CLASSES, trace);
+
+    assertEquals(first.getReps(), second.getReps());
+  }
+
+  @Test
+  public void motionGate_countsSameRepsAndSkipsHolds() throws IOException {
+    PoseEmbeddingStore store = store(new Random(7));
+    LandmarkTrace trace = workout(new Random(8), 3 * 60 * FPS);
+
+    TraceReplay.Report ungated = TraceReplay.replay(store, REP_CLASSES, trace);
+    TraceReplay.Report gated = TraceReplay.replay(store, REP_CLASSES, trace, new MotionGate());
+
+    assertEquals(0, ungated.getClassificationsReused());
+    assertEquals(ungated.getReps(), gated.getReps());
+    assertEquals(90, gated.getReps(RepCountingPipeline.WINDMILL_LEFT_CLASS));
+    // Two thirds of the frames are holds, though jitter gets many of them past the gate.
+    assertTrue(gated.toString(), gated.getClassificationsReused() > trace.size() / 4);
+  }
+
+  @Test
+  public void writeThenRead_roundTrips() throws IOException {
+    LandmarkTrace trace = workout(new Random(5), 4);
+    trace.add(200, null, null);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    trace.write(bytes);
+    LandmarkTrace read = LandmarkTrace.read(new ByteArrayInputStream(bytes.toByteArray()));
+
+    assertEquals(5, read.size());
+    float[] expected = new float[LANDMARK_BUFFER_SIZE];
+    float[] actual = new float[LANDMARK_BUFFER_SIZE];
+    for (int frame = 0; frame < 4; frame++) {
+      assertEquals(trace.getTimestampMs(frame), read.getTimestampMs(frame));
+      assertTrue(read.isPoseFound(frame));
+      trace.copyLandmarks(frame, expected);
+      read.copyLandmarks(frame, actual);
+      assertArrayEquals(expected, actual, 0);
+      assertEquals(0.99f, read.getLikelihood(frame, LandmarkType.NOSE), 0);
+    }
+    assertEquals(200, read.getTimestampMs(4));
+    assertFalse(read.isPoseFound(4));
+  }
+
+  @Test
+  public void read_truncatedFrame_throws() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    workout(new Random(6), 2).write(bytes);
+    byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 1);
+
+    try {
+      LandmarkTrace.read(new ByteArrayInputStream(truncated));
+      fail("expected an IOException");
+    } catch (IOException expected) {
+      // Expected.
+    }
+  }
+}
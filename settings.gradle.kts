@@ -21,4 +21,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "physiqueaiapkfinal"
 include(":app")
+include(":pose-core")
  
\ No newline at end of file